@@ -0,0 +1,193 @@
+package com.dalmuri.dmr.common.controller;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.dmr.common.media.ThumbnailService;
+import com.dalmuri.dmr.common.upload.StreamingUploadWriter;
+import com.dalmuri.dmr.common.upload.UploadMetrics;
+import com.dalmuri.socket.ChatMediaWriter;
+import com.dalmuri.socket.ChatMetrics;
+import com.dalmuri.socket.ChunkedUploadService;
+import com.dalmuri.socket.MediachatHandler;
+import com.dalmuri.socket.SessionHeartbeat;
+import com.dalmuri.socket.SessionOutbound;
+import com.dalmuri.socket.StubWebSocketSession;
+import com.dalmuri.socket.broker.LocalChatBroker;
+import com.dalmuri.socket.history.ChatHistory;
+import com.dalmuri.socket.presence.PresenceService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.socket.BinaryMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+* [MediaWriteBenchmark : 미디어 저장 경로]
+* 같은 크기의 파일 하나를 받아서 디스크에 다 쓰기까지의 시간.
+* 1) chatBinary   : /chat 바이너리 메시지 (MediachatHandler.handleBinaryMessage)
+*                   방 사람에게 전달 + ChatMediaWriter 비동기 저장이 끝날 때까지 (pendingBytes == 0)
+* 2) uploadStream : POST /uploads/stream (FileUploadController.uploadStream, multipart 본문을 직접 파싱)
+*
+* 저장소는 내용 해시로 중복을 걸러내므로, 매번 본문 안의 카운터를 바꿔 항상 새 파일로 쓴다.
+* 이미지가 아닌 내용이라 썸네일은 만들지 않는다. 반복(iteration)마다 저장소 폴더를 비운다.
+*
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaWriteBenchmark {
+
+    private static final String BOUNDARY = "----dalmuri-bench";
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private Path dir;
+    private Path uploadDir;
+    private SessionOutbound outbound;
+    private ChatHistory history;
+    private ThumbnailService thumbnails;
+    private ChatMediaWriter mediaWriter;
+    private ChunkedUploadService uploads;
+    private PresenceService presence;
+    private SessionHeartbeat heartbeat;
+    private ChatMetrics chatMetrics;
+    private MediachatHandler handler;
+    private FileUploadController controller;
+    private StubWebSocketSession sender;
+
+    private byte[] payload;
+    private byte[] multipart;
+    private int multipartContentAt;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("media-write");
+        uploadDir = dir.resolve("uploads");
+        ChatProperties chatProperties = new ChatProperties();
+        chatProperties.getHistory().setDir(dir.resolve("history").toString());
+        chatProperties.getPresence().setEnabled(false);
+        chatProperties.getSocket().setPingInterval(Duration.ZERO);
+        chatProperties.getMetrics().setRoomRefreshInterval(Duration.ZERO);
+        MediaProperties mediaProperties = new MediaProperties();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UploadMetrics uploadMetrics = new UploadMetrics(meterRegistry);
+        chatMetrics = new ChatMetrics(meterRegistry, chatProperties);
+
+        MediaStore mediaStore = new MediaStore(uploadDir.toString());
+        thumbnails = new ThumbnailService(mediaStore, mediaProperties);
+        mediaWriter = new ChatMediaWriter(mediaStore, thumbnails, uploadMetrics, chatProperties);
+        outbound = new SessionOutbound(chatProperties);
+        history = new ChatHistory(chatProperties);
+        uploads = new ChunkedUploadService(mediaStore, thumbnails, new ObjectMapper(), chatProperties, uploadMetrics);
+        presence = new PresenceService(chatProperties, outbound);
+        heartbeat = new SessionHeartbeat(chatProperties, outbound);
+        handler = new MediachatHandler(outbound, mediaWriter, uploads, history, new LocalChatBroker(), presence, heartbeat,
+                chatMetrics);
+        controller = new FileUploadController(mediaStore, new StreamingUploadWriter(mediaStore, mediaProperties), thumbnails,
+                uploadMetrics);
+
+        sender = new StubWebSocketSession("s0", "sender", "bench");
+        handler.afterConnectionEstablished(sender);
+        handler.afterConnectionEstablished(new StubWebSocketSession("s1", "receiver", "bench"));
+
+        // 이미지 / 청크 / envelope 머리로 읽히지 않는 내용
+        payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        System.arraycopy("BNCH".getBytes(StandardCharsets.US_ASCII), 0, payload, 0, 4);
+
+        byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"bench.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        multipart = new byte[head.length + payload.length + tail.length];
+        System.arraycopy(head, 0, multipart, 0, head.length);
+        System.arraycopy(payload, 0, multipart, head.length, payload.length);
+        System.arraycopy(tail, 0, multipart, head.length + payload.length, tail.length);
+        multipartContentAt = head.length;
+    }
+
+    @Benchmark
+    public void chatBinary() throws Exception {
+        ByteBuffer.wrap(payload).putLong(4, ++counter);
+        handler.handleMessage(sender, new BinaryMessage(ByteBuffer.wrap(payload)));
+        while (mediaWriter.pendingBytes() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<Map<String, Object>> uploadStream() {
+        ByteBuffer.wrap(multipart).putLong(multipartContentAt + 4, ++counter);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/uploads/stream");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(multipart);
+        ResponseEntity<Map<String, Object>> response = controller.uploadStream(request);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("upload failed: " + response.getBody());
+        }
+        return response;
+    }
+
+    @TearDown(Level.Iteration)
+    public void clean() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outbound.queuedMessages() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        delete(uploadDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mediaWriter.destroy();
+        uploads.destroy();
+        thumbnails.destroy();
+        presence.destroy();
+        heartbeat.destroy();
+        outbound.destroy();
+        history.destroy();
+        chatMetrics.destroy();
+        delete(dir);
+    }
+
+    private static void delete(Path root) {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.dalmuri.dmr.web.diary.service;
+
+import com.dalmuri.config.SentimentProperties;
+import com.dalmuri.dmr.web.diary.model.DiaryRequestDTO;
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.dalmuri.dmr.web.diary.model.DiaryTrendDTO;
+import com.dalmuri.dmr.web.diary.sentiment.DiaryScoreCache;
+import com.dalmuri.dmr.web.diary.sentiment.FakeSentimentAnalyzer;
+import com.dalmuri.dmr.web.diary.sentiment.LexiconSentimentAnalyzer;
+import com.dalmuri.dmr.web.diary.sentiment.SentimentBatcher;
+import com.dalmuri.dmr.web.diary.sentiment.SentimentGateway;
+import com.dalmuri.dmr.web.diary.store.DiaryEntry;
+import com.dalmuri.dmr.web.diary.store.DiaryStore;
+import com.dalmuri.dmr.web.diary.store.MoodPeriod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* [DiaryScoreBenchmark : 일기 감정 점수 한 건]
+* 원격 백엔드 대신 FakeSentimentAnalyzer(지연 0)를 쓴다. → 우리 쪽 경로(캐시 / 묶음 / 로컬 사전)의 비용만 남는다.
+* 1) cached  : 같은 텍스트 반복 → DiaryScoreCache 적중
+* 2) batched : 32개 스레드가 매번 다른 텍스트 → SentimentBatcher로 묶여서 나간다. (batch.maxDelay 만큼의 대기 포함)
+*    가짜 백엔드도 Google처럼 텍스트마다 RPC 하나로 센다. → 묶어도 백엔드 호출 수는 그대로다.
+* 3) local   : local 모드, 사전 기반 분석만
+*
+* 설정 값은 SentimentProperties 기본값 그대로 (SentimentConfig와 같은 조립)
+*
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiaryScoreBenchmark {
+
+    private static final String TEXT = "오늘은 친구들과 바다에 가서 정말 즐겁고 행복한 하루를 보냈다.";
+
+    // 저장은 대기열에 넣기만 하는 비동기 경로라 점수 계산만 잰다.
+    private static final DiaryStore NO_STORE = new DiaryStore() {
+        @Override
+        public boolean record(DiaryEntry entry) {
+            return true;
+        }
+
+        @Override
+        public List<DiaryTrendDTO> trends(String userId, MoodPeriod period, LocalDate from, LocalDate to) {
+            return List.of();
+        }
+    };
+
+    private final AtomicLong counter = new AtomicLong();
+    private SentimentGateway gateway;
+    private SentimentBatcher batcher;
+    private DiaryService remote;
+    private DiaryService local;
+    private DiaryRequestDTO cachedRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SentimentProperties properties = new SentimentProperties();
+        SentimentProperties.Fake fake = properties.getFake();
+        SentimentProperties.Batch batch = properties.getBatch();
+        SentimentProperties.Cache cache = properties.getCache();
+
+        gateway = new SentimentGateway(new FakeSentimentAnalyzer(fake.getLatency(), fake.getScore(), fake.getMagnitude()),
+                properties.getMaxConcurrentCalls(), properties.getCallTimeout());
+        batcher = new SentimentBatcher(gateway, batch.getMaxSize(), batch.getMaxDelay(), batch.getQueueCapacity());
+        LexiconSentimentAnalyzer lexicon;
+        try (InputStream in = getClass().getResourceAsStream("/sentiment/lexicon.tsv")) {
+            lexicon = LexiconSentimentAnalyzer.load(in);
+        }
+        remote = new DiaryService(gateway, batcher, new DiaryScoreCache(cache.getMaximumSize(), cache.getTtl()), lexicon, properties, NO_STORE);
+
+        SentimentProperties localProperties = new SentimentProperties();
+        localProperties.setMode(SentimentProperties.Mode.LOCAL);
+        local = new DiaryService(gateway, batcher, new DiaryScoreCache(cache.getMaximumSize(), cache.getTtl()), lexicon, localProperties, NO_STORE);
+
+        cachedRequest = new DiaryRequestDTO(TEXT);
+        remote.getDiaryScore(cachedRequest);
+    }
+
+    @Benchmark
+    public ResponseEntity<DiaryResponseDTO> cached() {
+        return remote.getDiaryScore(cachedRequest);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public ResponseEntity<DiaryResponseDTO> batched() {
+        return remote.getDiaryScore(new DiaryRequestDTO(TEXT + " #" + counter.incrementAndGet()));
+    }
+
+    @Benchmark
+    public ResponseEntity<DiaryResponseDTO> local() {
+        return local.getDiaryScore(new DiaryRequestDTO(TEXT + " #" + counter.incrementAndGet()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        batcher.close();
+        gateway.close();
+    }
+}
@@ -0,0 +1,145 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.dmr.common.media.ThumbnailService;
+import com.dalmuri.dmr.common.upload.UploadMetrics;
+import com.dalmuri.socket.broker.LocalChatBroker;
+import com.dalmuri.socket.history.ChatHistory;
+import com.dalmuri.socket.presence.PresenceService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+* [ChatFanOutBenchmark : 방 메시지 한 개를 보내는 비용]
+* 한 방에 sessions명이 있을 때 메시지 하나를 받아서 모두의 보내기 대기열에 넣기까지의 시간.
+* (실제 소켓 쓰기는 StubWebSocketSession → 0에 가깝다. 대기열 / 가상 스레드 전환 / 방 기록 append 비용이 남는다)
+*
+* - handler : media(/chat, MediachatHandler), text(TextchatHandler)
+* - 방 기록(ChatHistory)은 켠 채로 임시 폴더에 쓴다. presence 틱 / heartbeat ping / 방별 지표 갱신은 꺼서 측정 중 끼어들지 않게 한다.
+* - 지표(ChatMetrics)는 SimpleMeterRegistry에 기록한다. (핸들러가 메시지마다 meter를 부르는 비용은 포함)
+* - 반복(iteration)이 끝날 때마다 대기열이 빌 때까지 기다린다. → 다음 반복이 앞 반복의 밀린 전송을 떠안지 않는다.
+*
+* */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatFanOutBenchmark {
+
+    private static final String ROOM = "bench";
+
+    @Param({"10", "1000", "10000"})
+    public int sessions;
+
+    @Param({"media", "text"})
+    public String handler;
+
+    private Path dir;
+    private SessionOutbound outbound;
+    private ChatHistory history;
+    private PresenceService presence;
+    private SessionHeartbeat heartbeat;
+    private ChatMediaWriter mediaWriter;
+    private ChunkedUploadService uploads;
+    private ThumbnailService thumbnails;
+    private ChatMetrics metrics;
+    private WebSocketHandler target;
+    private StubWebSocketSession sender;
+    private TextMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("chat-fanout");
+        ChatProperties properties = new ChatProperties();
+        properties.getHistory().setDir(dir.resolve("history").toString());
+        properties.getPresence().setEnabled(false);
+        properties.getSocket().setPingInterval(Duration.ZERO);
+        properties.getMetrics().setRoomRefreshInterval(Duration.ZERO);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        metrics = new ChatMetrics(meterRegistry, properties);
+
+        outbound = new SessionOutbound(properties);
+        history = new ChatHistory(properties);
+        if ("media".equals(handler)) {
+            MediaStore mediaStore = new MediaStore(dir.resolve("uploads").toString());
+            thumbnails = new ThumbnailService(mediaStore, new MediaProperties());
+            UploadMetrics uploadMetrics = new UploadMetrics(meterRegistry);
+            mediaWriter = new ChatMediaWriter(mediaStore, thumbnails, uploadMetrics, properties);
+            uploads = new ChunkedUploadService(mediaStore, thumbnails, new ObjectMapper(), properties, uploadMetrics);
+            presence = new PresenceService(properties, outbound);
+            heartbeat = new SessionHeartbeat(properties, outbound);
+            target = new MediachatHandler(outbound, mediaWriter, uploads, history, new LocalChatBroker(), presence, heartbeat,
+                    metrics);
+        } else {
+            target = new TextchatHandler(outbound, history, metrics);
+        }
+
+        for (int i = 0; i < sessions; i++) {
+            StubWebSocketSession session = new StubWebSocketSession("s" + i, "user" + i, ROOM);
+            target.afterConnectionEstablished(session);
+            if (sender == null) {
+                sender = session;
+            }
+        }
+        message = new TextMessage("{\"type\":\"message\",\"room\":\"" + ROOM + "\",\"text\":\"오늘 저녁 뭐 먹을까?\"}");
+        drain();
+    }
+
+    @Benchmark
+    public void broadcast() throws Exception {
+        target.handleMessage(sender, message);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outbound.queuedMessages() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        outbound.destroy();
+        history.destroy();
+        metrics.destroy();
+        if (mediaWriter != null) {
+            mediaWriter.destroy();
+            uploads.destroy();
+            thumbnails.destroy();
+            presence.destroy();
+            heartbeat.destroy();
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.dalmuri.config;
+
+import com.dalmuri.socket.broker.ChatBroker;
+import com.dalmuri.socket.broker.LocalChatBroker;
+import com.dalmuri.socket.broker.PostgresChatBroker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 채팅 노드 간 전달(broker) 설정
+ * - chat.broker.type = local (기본값) : 노드 하나. 다른 노드로 보내지 않는다.
+ * - chat.broker.type = postgres : 같은 DB를 쓰는 노드끼리 LISTEN / NOTIFY로 방 메시지를 주고받는다.
+ * */
+@Configuration
+@RequiredArgsConstructor
+public class ChatBrokerConfig {
+
+    private final ChatProperties properties;
+
+    /*
+    * [PostgresChatBroker Bean]
+    * LISTEN 전용 연결 하나를 DataSource에서 계속 빌려 쓴다. (풀 크기가 하나 줄어드는 것과 같음)
+    * destroyMethod = "close" : 종료 시 받기 / 보내기 스레드를 멈춘다.
+    *
+    * */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "chat.broker", name = "type", havingValue = "postgres")
+    public ChatBroker postgresChatBroker(DataSource dataSource) {
+        PostgresChatBroker broker = new PostgresChatBroker(dataSource, properties.getBroker());
+        broker.start();
+        return broker;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "chat.broker", name = "type", havingValue = "local", matchIfMissing = true)
+    public ChatBroker localChatBroker() {
+        return new LocalChatBroker();
+    }
+}
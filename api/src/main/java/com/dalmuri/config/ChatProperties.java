@@ -0,0 +1,232 @@
+package com.dalmuri.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "chat")
+public class ChatProperties {
+
+    /*
+    * [ChatProperties]
+    * application.yml의 chat : 아래 값을 바인딩한다. (application.yml은 git에 올라가지 않으므로 모든 값에 기본값을 둔다)
+    *
+    * chat:
+    *   outbound:
+    *     send-time-limit: 5s
+    *     buffer-size-limit: 512KB
+    *     max-queued-messages: 1000
+    *     overflow-policy: disconnect # drop | coalesce | disconnect
+    *   upload:
+    *     chunk-size: 64KB
+    *     window: 8
+    *     max-size: 2GB
+    *     idle-timeout: 30m
+    *     max-pending-media: 256MB
+    *   history:
+    *     enabled: true
+    *     dir: api/chat-history/
+    *     segment-size: 8MB
+    *     index-interval: 4KB
+    *     flush-interval: 200ms
+    *     retention: 7d
+    *     retention-size: 256MB
+    *     max-replay-messages: 500
+    *     max-replay-size: 256KB
+    *     idle-timeout: 10m
+    *   broker:
+    *     type: local          # local | postgres
+    *     inline-limit: 7900B
+    *     poll-interval: 250ms
+    *     publish-queue-capacity: 10000
+    *     payload-retention: 5m
+    *   presence:
+    *     enabled: true
+    *     tick-interval: 500ms
+    *     typing-timeout: 6s
+    *   socket:
+    *     max-text-message-size: 64KB
+    *     async-send-timeout: 10s
+    *     max-session-idle-timeout: 10m
+    *     deflate-text: true       # /chat, /diary/stream
+    *     deflate-media: false     # /chat/media
+    *     ping-interval: 25s
+    *     pong-timeout: 75s
+    *   metrics:
+    *     room-refresh-interval: 15s
+    *     max-rooms: 50
+    *
+    * */
+
+    private Outbound outbound = new Outbound();
+    private Upload upload = new Upload();
+    private History history = new History();
+    private Broker broker = new Broker();
+    private Presence presence = new Presence();
+    private Socket socket = new Socket();
+    private Metrics metrics = new Metrics();
+
+    public enum OverflowPolicy {
+        DROP,       // 새로 들어온 메시지를 버린다.
+        COALESCE,   // 가장 오래된 메시지부터 버리고 새 메시지를 넣는다. (최신 상태 우선)
+        DISCONNECT  // 느린 클라이언트의 연결을 끊는다.
+    }
+
+    @Getter
+    @Setter
+    public static class Outbound {
+
+        // 메시지 하나를 보내는 데 이 시간보다 오래 걸리고 있으면 느린 클라이언트로 보고 연결을 끊는다.
+        private Duration sendTimeLimit = Duration.ofSeconds(5);
+
+        // 세션 하나에 쌓아둘 수 있는 보내기 대기 메시지의 총 크기
+        private DataSize bufferSizeLimit = DataSize.ofKilobytes(512);
+
+        // 세션 하나에 쌓아둘 수 있는 보내기 대기 메시지 수
+        private int maxQueuedMessages = 1000;
+
+        // 대기열이 가득 찼을 때의 처리 방법. 채팅은 메시지가 빠지면 안 되므로 끊고 다시 접속(replay)하게 한다.
+        // COALESCE는 최신 값만 의미 있는 스트림(/diary/stream)에서 직접 지정해서 쓴다.
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DISCONNECT;
+    }
+
+    @Getter
+    @Setter
+    public static class Upload {
+
+        // 청크 하나의 최대 데이터 크기 (헤더 제외). 전송 하나가 쓰는 힙 메모리는 청크 하나 크기로 제한된다.
+        private DataSize chunkSize = DataSize.ofKilobytes(64);
+
+        // ack를 기다리지 않고 연달아 보낼 수 있는 청크 수
+        private int window = 8;
+
+        // 파일 하나의 최대 크기
+        private DataSize maxSize = DataSize.ofGigabytes(2);
+
+        // 이 시간 동안 청크가 오지 않은 전송은 지운다. (그 전까지는 이어 올리기 가능)
+        private Duration idleTimeout = Duration.ofMinutes(30);
+
+        // 한 사람이 동시에 열어 둘 수 있는 전송 수. 넘으면 upload-start에 "too many transfers"
+        private int maxTransfersPerOwner = 4;
+
+        // 채팅으로 통째로 받은 미디어 중 아직 디스크에 쓰지 못하고 힙에 들고 있는 총 크기.
+        // 넘으면 새 미디어는 받지 않고 보낸 사람에게 error 프레임 (ChatMediaWriter)
+        private DataSize maxPendingMedia = DataSize.ofMegabytes(256);
+    }
+
+    @Getter
+    @Setter
+    public static class History {
+
+        // false면 방 메시지를 기록하지 않는다. (replay 요청에는 빈 결과)
+        private boolean enabled = true;
+
+        // 방별 메시지 기록(segment 파일)을 두는 폴더
+        private String dir = "api/chat-history/";
+
+        // segment 파일 하나의 최대 크기. 가득 차면 다음 segment로 넘어간다. (mmap은 64KB부터 쓰는 만큼 두 배씩 늘린다)
+        private DataSize segmentSize = DataSize.ofMegabytes(8);
+
+        // 이 바이트마다 (offset → 파일 위치) 색인을 하나씩 남긴다. 작을수록 replay 시작 위치를 빨리 찾고 색인 메모리는 커진다.
+        private DataSize indexInterval = DataSize.ofKilobytes(4);
+
+        // 디스크 동기화(force) 주기. 그 사이에 쌓인 메시지는 한 번에 내려쓴다. (group commit)
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        // 이보다 오래된 segment는 지운다.
+        private Duration retention = Duration.ofDays(7);
+
+        // 방 하나의 기록이 이 크기를 넘으면 오래된 segment부터 지운다.
+        private DataSize retentionSize = DataSize.ofMegabytes(256);
+
+        // replay 한 번에 보내는 최대 메시지 수 / 크기. 더 있으면 "more": true → 클라이언트가 이어서 요청한다.
+        private int maxReplayMessages = 500;
+        private DataSize maxReplaySize = DataSize.ofKilobytes(256);
+
+        // 이 시간 동안 메시지가 없던 방은 파일을 닫는다. (다음 메시지 때 다시 연다)
+        private Duration idleTimeout = Duration.ofMinutes(10);
+
+        // 동시에 열어 두는 방 기록 수. 넘으면 가장 오래 안 쓴 방부터 닫는다.
+        private int maxOpenRooms = 1000;
+    }
+
+    public enum BrokerType {
+        LOCAL,      // 노드 하나 (다른 노드로 보내지 않음)
+        POSTGRES    // PostgreSQL LISTEN / NOTIFY로 노드끼리 전달
+    }
+
+    @Getter
+    @Setter
+    public static class Broker {
+
+        // 노드 간 메시지 전달 방식
+        private BrokerType type = BrokerType.LOCAL;
+
+        // NOTIFY 본문에 바로 싣는 최대 크기 (PostgreSQL 한도 8000바이트). 넘는 메시지는 테이블을 거친다. (미디어는 본문 대신 참조만 보냄)
+        private DataSize inlineLimit = DataSize.ofBytes(7900);
+
+        // LISTEN 연결에서 알림을 기다리는 최대 시간. 방 구독 변경도 이 주기 안에 반영된다.
+        private Duration pollInterval = Duration.ofMillis(250);
+
+        // 보내기 대기열 크기. 가득 차면 다른 노드로 보내지 않고 버린다. (이 노드 사람들에게는 이미 전달됨)
+        private int publishQueueCapacity = 10_000;
+
+        // 테이블을 거친 큰 메시지를 지우기까지의 시간
+        private Duration payloadRetention = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Presence {
+
+        // 접속 / 입력 중 표시를 보낼지
+        private boolean enabled = true;
+
+        // 바뀐 상태를 방별로 모아서 보내는 주기
+        private Duration tickInterval = Duration.ofMillis(500);
+
+        // typing 프레임 하나로 입력 중 표시가 유지되는 시간 (계속 입력하면 클라이언트가 다시 보낸다)
+        private Duration typingTimeout = Duration.ofSeconds(6);
+    }
+
+    @Getter
+    @Setter
+    public static class Socket {
+
+        // 텍스트 메시지 하나의 최대 크기. 톰캣은 세션마다 이 크기의 버퍼를 잡으므로 연결당 메모리 상한이 된다.
+        // 넘는 메시지가 오면 1009(too big)로 끊는다. 바이너리 버퍼는 따로 두지 않고 청크 프레임(upload.chunk-size + 헤더)에 맞춘다.
+        private DataSize maxTextMessageSize = DataSize.ofKilobytes(64);
+
+        // 컨테이너가 메시지 하나를 보내는 데 기다리는 최대 시간
+        private Duration asyncSendTimeout = Duration.ofSeconds(10);
+
+        // 컨테이너 수준 idle timeout (주고받은 프레임이 하나도 없을 때)
+        private Duration maxSessionIdleTimeout = Duration.ofMinutes(10);
+
+        // permessage-deflate 협상 여부. 톰캣은 협상된 연결의 모든 프레임을 압축하므로 경로 단위로 켜고 끈다.
+        private boolean deflateText = true;
+        private boolean deflateMedia = false;
+
+        // 이 주기마다 ping을 보낸다. pongTimeout 동안 pong(또는 아무 메시지)이 없으면 끊는다.
+        private Duration pingInterval = Duration.ofSeconds(25);
+        private Duration pongTimeout = Duration.ofSeconds(75);
+    }
+
+    @Getter
+    @Setter
+    public static class Metrics {
+
+        // 방별 세션 수(chat.room.sessions)를 다시 모으는 주기. 0이면 방별 지표를 내지 않는다.
+        private Duration roomRefreshInterval = Duration.ofSeconds(15);
+
+        // 방별 지표는 인원이 많은 방부터 이 개수까지만 낸다. (방 이름이 태그가 되므로 시계열 수 상한)
+        private int maxRooms = 50;
+    }
+}
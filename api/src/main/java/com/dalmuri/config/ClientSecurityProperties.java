@@ -36,7 +36,15 @@ public class ClientSecurityProperties {
     * private로 선언된 이유: 캡슐화를 위해! getter-setter로만 접근할 수 있도록 한다.
     *
     * */
-    private List<String> permitUrls;
+    private List<String> permitUrls = List.of();
+
+    /*
+    * [staticUrls]
+    * 세션 / 인증 정보가 전혀 필요 없는 정적 미디어 경로. permitUrls와 함께 상태 없는 보안 체인(SecurityConfig.publicFilterChain)으로 간다.
+    * application.yml에 security.static-urls가 없으면 기본값 /uploads/** 를 쓴다.
+    *
+    * */
+    private List<String> staticUrls = List.of("/uploads/**");
 
     /*
     * [기본 생성자]
@@ -77,4 +85,12 @@ public class ClientSecurityProperties {
     public void setPermitUrls(List<String> permitUrls) {
         this.permitUrls = permitUrls;
     }
+
+    public List<String> getStaticUrls() {
+        return staticUrls;
+    }
+
+    public void setStaticUrls(List<String> staticUrls) {
+        this.staticUrls = staticUrls;
+    }
 }
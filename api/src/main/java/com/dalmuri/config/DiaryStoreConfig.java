@@ -0,0 +1,34 @@
+package com.dalmuri.config;
+
+import com.dalmuri.dmr.web.diary.store.JdbcDiaryStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 일기 저장소 설정
+ * - compose.yaml의 postgres에 일기 / 감정 점수를 저장하고, 일 / 주 / 월 집계를 같이 갱신한다.
+ * */
+@Configuration
+@RequiredArgsConstructor
+public class DiaryStoreConfig {
+
+    private final DiaryStoreProperties properties;
+
+    /*
+    * [JdbcDiaryStore Bean]
+    * 쓰는 스레드 하나가 묶음마다 DataSource에서 연결을 빌렸다가 바로 돌려준다.
+    * destroyMethod = "close" : 종료 시 대기열에 남은 일기를 쓰고 멈춘다.
+    * 반환 타입을 JdbcDiaryStore로 둬야 MeterBinder로 잡혀서 diary.store.* 지표가 나간다.
+    *
+    * */
+    @Bean(destroyMethod = "close")
+    public JdbcDiaryStore diaryStore(DataSource dataSource) {
+        JdbcDiaryStore store = new JdbcDiaryStore(dataSource, properties.getZone(), properties.getMaxBatch(),
+                properties.getFlushInterval(), properties.getQueueCapacity(), properties.getMaxTrendBuckets());
+        store.start();
+        return store;
+    }
+}
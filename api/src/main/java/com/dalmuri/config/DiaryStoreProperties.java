@@ -0,0 +1,45 @@
+package com.dalmuri.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.time.ZoneId;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "diary.store")
+public class DiaryStoreProperties {
+
+    /*
+    * [DiaryStoreProperties]
+    * 일기 저장 / 감정 집계 설정 (JdbcDiaryStore)
+    *
+    * diary:
+    *   store:
+    *     max-batch: 500
+    *     flush-interval: 200ms
+    *     queue-capacity: 10000
+    *     zone: Asia/Seoul
+    *     max-trend-buckets: 1000
+    *
+    * */
+
+    // 한 번에(트랜잭션 하나에) 쓰는 최대 일기 수. 1000을 넘으면 1000
+    private int maxBatch = 500;
+
+    // 첫 일기가 대기열에 들어온 뒤 이만큼 지나면 maxBatch가 안 찼어도 쓴다.
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    // 저장 대기열 크기. DB가 느리거나 멈춰서 가득 차면 새 일기는 저장하지 않는다. (diary.store.dropped)
+    private int queueCapacity = 10_000;
+
+    // 일 / 주 / 월 집계의 날짜 기준 시간대
+    private ZoneId zone = ZoneId.of("Asia/Seoul");
+
+    // /diary/trends 응답 최대 bucket 수 (범위가 더 넓으면 최근 것부터)
+    private int maxTrendBuckets = 1_000;
+}
@@ -1,9 +1,22 @@
 package com.dalmuri.config;
 
+import com.dalmuri.dmr.common.media.MediaFileCache;
+import com.dalmuri.dmr.common.media.MediaStore;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 @Configuration
 public class MediaConfig implements WebMvcConfigurer {
@@ -17,6 +30,12 @@ public class MediaConfig implements WebMvcConfigurer {
 
     @Value("${file.upload-dir}") // 민감한 정보 보호하려고 ^^
     private String dir;
+
+    private final MediaStore mediaStore;
+
+    public MediaConfig(MediaStore mediaStore) {
+        this.mediaStore = mediaStore;
+    }
     
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry){
@@ -29,7 +48,9 @@ public class MediaConfig implements WebMvcConfigurer {
 
         registry
                 .addResourceHandler("/uploads/**") // http://localhost:3001/upload/파일명.jpg 라고 web에서 열려야 한다.
-                .addResourceLocations("file:" + dir); // 실제 파일이 있는 경로
+                .addResourceLocations("file:" + dir) // 실제 파일이 있는 경로
+                .resourceChain(false)
+                .addResolver(new MediaStoreResourceResolver());
 
         /*
         * 1) registry.addResourceHandler() : 웹 URL에서 접근할 경로를 지정
@@ -43,8 +64,50 @@ public class MediaConfig implements WebMvcConfigurer {
         * 기존의 addResourcesLocations는 files:uploads여서 오류가 났는데, 위와 같이 바꾸니 http://localhost:3001/uploads/파일명.jpg으로 해도 잘 보였다.
         * 물리 경로를 제대로 입력하지 못하면 403에러(권한 없음 에러)가 난다. 내가 Spring Security를 깔아서...
         *
+        * 3) MediaStoreResourceResolver : 새 파일은 MediaStore의 샤드 폴더({aa}/{bb}/{hash}.{ext})에 있다.
+        *   URL은 /uploads/{hash}.{ext} 그대로 두고, 여기서 실제 위치를 찾아준다. 없으면 예전 파일(폴더 바로 아래)을 찾는다.
+        *   (해시 이름 요청은 보통 MediaController가 먼저 받는다. Range, ETag, sendfile 처리. 여기는 예전 파일용)
+        *
         * */
 
     }
 
+    private class MediaStoreResourceResolver extends PathResourceResolver {
+
+        @Override
+        protected Resource getResource(String resourcePath, Resource location) throws IOException {
+            Path stored = mediaStore.resolve(resourcePath);
+            if (stored != null) {
+                return new FileSystemResource(stored);
+            }
+            return super.getResource(resourcePath, location);
+        }
+    }
+
+    // 작은 미디어 파일(프로필 사진, 썸네일)용 메모리 캐시 (MediaController)
+    @Bean
+    public MediaFileCache mediaFileCache(MediaProperties mediaProperties) {
+        MediaProperties.Serve serve = mediaProperties.getServe();
+        return new MediaFileCache(serve.getCacheMaxFileSize().toBytes(), serve.getCacheMaxBytes().toBytes());
+    }
+
+    /*
+    * [MultipartResolver]
+    * 스프링 부트 기본 MultipartResolver는 multipart 요청이 오면 컨트롤러보다 먼저 본문 전체를 파싱한다. (톰캣 임시 파일)
+    * 스트리밍 업로드 경로(media.stream.path)만 multipart가 아닌 것처럼 건너뛰게 해서, 컨트롤러가 본문을 직접 읽을 수 있게 한다.
+    * 이름이 "multipartResolver"인 Bean이 있으면 부트 기본값은 만들어지지 않는다.
+    *
+    * */
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public MultipartResolver multipartResolver(MediaProperties mediaProperties) {
+        String streamPath = mediaProperties.getStream().getPath();
+        return new StandardServletMultipartResolver() {
+            @Override
+            public boolean isMultipart(HttpServletRequest request) {
+                String path = request.getRequestURI().substring(request.getContextPath().length());
+                return !path.equals(streamPath) && super.isMultipart(request);
+            }
+        };
+    }
+
 }
@@ -0,0 +1,88 @@
+package com.dalmuri.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "media")
+public class MediaProperties {
+
+    /*
+    * [MediaProperties]
+    * application.yml의 media : 아래 값을 바인딩한다. (application.yml은 git에 올라가지 않으므로 모든 값에 기본값을 둔다)
+    * 저장 폴더는 예전처럼 file.upload-dir 을 쓴다.
+    *
+    * media:
+    *   stream:
+    *     path: /uploads/stream
+    *     max-file-size: 2GB
+    *     buffer-size: 64KB
+    *   serve:
+    *     max-age: 365d
+    *     cache-max-file-size: 256KB
+    *     cache-max-bytes: 64MB
+    *   thumbnail:
+    *     widths: 160, 480, 1080
+    *     quality: 0.82
+    *     workers: 2
+    *     queue-capacity: 256
+    *
+    * */
+
+    private Stream stream = new Stream();
+    private Serve serve = new Serve();
+    private Thumbnail thumbnail = new Thumbnail();
+
+    @Getter
+    @Setter
+    public static class Stream {
+
+        // 스트리밍 업로드 경로. 이 경로는 MultipartResolver가 본문을 미리 파싱하지 않는다.
+        private String path = "/uploads/stream";
+
+        // 파일 하나의 최대 크기. 받는 도중에 넘으면 413
+        private DataSize maxFileSize = DataSize.ofGigabytes(2);
+
+        // 요청 본문을 읽는 버퍼 크기 (요청 하나가 쓰는 힙 메모리)
+        private DataSize bufferSize = DataSize.ofKilobytes(64);
+    }
+
+    @Getter
+    @Setter
+    public static class Serve {
+
+        // Cache-Control max-age. 파일 이름이 내용 해시라서 내용이 바뀌면 URL이 바뀐다. (immutable)
+        private Duration maxAge = Duration.ofDays(365);
+
+        // 이 크기 이하의 파일(프로필 사진, 썸네일 등)은 메모리 LRU 캐시에서 보낸다.
+        private DataSize cacheMaxFileSize = DataSize.ofKilobytes(256);
+
+        // 메모리 캐시 전체 크기
+        private DataSize cacheMaxBytes = DataSize.ofMegabytes(64);
+    }
+
+    @Getter
+    @Setter
+    public static class Thumbnail {
+
+        // 만들 썸네일 가로 크기들. 파일명은 {hash}_w{가로}.jpg
+        private List<Integer> widths = List.of(160, 480, 1080);
+
+        // JPEG 품질 (0 ~ 1)
+        private float quality = 0.82f;
+
+        // 썸네일을 만드는 스레드 수 (CPU 작업이라 적게)
+        private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        // 대기 작업 수. 가득 차면 새 작업은 버린다. (업로드 응답은 기다리지 않음)
+        private int queueCapacity = 256;
+    }
+}
@@ -0,0 +1,26 @@
+package com.dalmuri.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+/**
+ * 운영 지표(actuator + Micrometer) 기본 설정
+ * - application.yml은 git에 올라가지 않으므로 기본값을 metrics-defaults.properties에 두고 여기서 읽는다.
+ * - @PropertySource는 application.yml보다 우선순위가 낮다. → yml에 같은 키를 쓰면 그 값이 이긴다.
+ * - Prometheus는 management 포트의 /actuator/prometheus를 긁어 간다. (서비스 포트에는 actuator가 없다)
+ * */
+
+/*
+* [지표 이름]
+* chat.*      : ChatMetrics(핸들러별 세션 수, fan-out 시간, 보낸 바이트, 실패), SessionOutbound / SessionHeartbeat / PresenceService
+* upload.*    : UploadMetrics(경로별 크기, 시간, 실패), ChunkedUploadService
+* sentiment.* : SentimentGateway(호출 시간, 실패 사유별 수, 진행 중인 호출)
+* cache.*     : DiaryScoreCache(diary.score), MediaFileCache(media.file)의 적중 / 미스 / 제거
+*
+* 메시지마다 부르는 곳에서는 미리 등록해 둔 meter만 쓰고, 이미 세고 있던 값은 MeterBinder가 긁어 갈 때만 읽는다.
+*
+* */
+@Configuration
+@PropertySource("classpath:metrics-defaults.properties")
+public class MetricsConfig {
+}
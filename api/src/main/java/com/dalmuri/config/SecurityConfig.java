@@ -1,10 +1,22 @@
 package com.dalmuri.config;
 
+import com.dalmuri.dmr.common.security.PathTrieRequestMatcher;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.util.List;
 
 /**
  * Spring Security 보안 설정
@@ -58,9 +70,65 @@ public class SecurityConfig {
     * */
 
     private final ClientSecurityProperties securityProperties;
+    private final RequestMatcher publicRoutes;
+
+    // 로그인한 사용자가 주인인 경로. permitUrls가 /diary/** 처럼 넓어도 여기는 항상 인증 체인으로 간다.
+    private final PathTrieRequestMatcher ownerRoutes = new PathTrieRequestMatcher(List.of("/diary/entries", "/diary/trends"));
 
+    /*
+    * [publicRoutes]
+    * permitUrls : 메소드와 상관없이 공개
+    * staticUrls : GET / HEAD만 공개. /uploads/** 는 POST /uploads, POST /uploads/stream(업로드)까지 덮기 때문에
+    *              메소드를 보지 않으면 업로드가 세션 없는 체인으로 빠진다.
+    *
+    * */
     public SecurityConfig(ClientSecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
+        List<String> permitUrls = securityProperties.getPermitUrls() != null ? securityProperties.getPermitUrls() : List.of();
+        List<String> staticUrls = securityProperties.getStaticUrls() != null ? securityProperties.getStaticUrls() : List.of();
+        this.publicRoutes = new OrRequestMatcher(
+                new PathTrieRequestMatcher(permitUrls),
+                new AndRequestMatcher(new PathTrieRequestMatcher(staticUrls), SecurityConfig::isReadOnly));
+    }
+
+    RequestMatcher publicRoutes() {
+        return publicRoutes;
+    }
+
+    private static boolean isReadOnly(HttpServletRequest request) {
+        String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    /*
+    * [공개 경로 전용 보안 필터 체인 : @Order(1)]
+    * permitUrls(chat, diary ...) + staticUrls(/uploads/** 의 GET / HEAD)는 누가 보내든 허용하는 경로다.
+    * 그런데 체인이 하나뿐이면 이 요청들도 필터 전부를 지나간다.
+    * (SecurityContext 불러오기 → HttpSession → Spring Session이 세션 SELECT, request cache, 익명 인증, 로그아웃 확인 ...)
+    * 썸네일 하나 받는 데 세션 조회가 붙는 셈.
+    *
+    * FilterChainProxy는 securityMatcher가 맞는 첫 번째 체인 하나만 쓴다.
+    * 1) securityMatcher(publicRoutes) : 공개 경로를 트리(PathTrieRequestMatcher)로 고른다. 정적 경로는 GET / HEAD일 때만.
+    *    ownerRoutes(일기 저장 / 추이)는 로그인한 사용자가 필요하므로 빼고 아래 체인으로 보낸다.
+    * 2) securityContext / requestCache / anonymous / logout 끔 + STATELESS : 세션을 열지도, 만들지도 않는다.
+    * 3) anyRequest().permitAll() : 인증 정보를 보지 않고 통과
+    * → 남는 필터는 헤더(HeaderWriterFilter)와 권한 확인 정도. 나머지 요청은 아래 filterChain(@Order(2))으로 간다.
+    *
+    * */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain publicFilterChain(HttpSecurity http) throws Exception {
+        http.securityMatcher(new AndRequestMatcher(publicRoutes, new NegatedRequestMatcher(ownerRoutes)))
+                .authorizeHttpRequests(auth -> auth.anyRequest().permitAll())
+                .securityContext(AbstractHttpConfigurer::disable)
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .requestCache(AbstractHttpConfigurer::disable)
+                .anonymous(AbstractHttpConfigurer::disable)
+                .logout(AbstractHttpConfigurer::disable)
+                .csrf(csrf->csrf.disable())
+                .headers(headers -> headers.frameOptions(frameOptions -> frameOptions.disable()));
+
+        return http.build();
     }
 
     /*
@@ -69,8 +137,11 @@ public class SecurityConfig {
     *
     * 1. authorizeHttpRequests : 접근 권한 설정 영역
     * 1 - (1) .authorizeHttpRequests(auth -> auth ... ) : Http 요청에 대한 검증 시작을 선언
-    * 1 - (2) .requestMatchers(...).permitAll() : ClientSecurityProperties에서 가져온 URL 목록에 해당하는 요청들은 인증 없이 접근을 허용
-    * 1 - (3) .anyRequest().authenticated() : 앞에 규칙에 해당되지 않는 모든 요청들은 접근을 허용하도록 강제 (ex. 로그인 필요 etc)
+    * 1 - (2) .requestMatchers(ownerRoutes).authenticated() : 일기 저장 / 추이는 permitUrls에 걸려도 로그인 필요
+    * 1 - (3) .requestMatchers(publicRoutes).permitAll() : ClientSecurityProperties에서 가져온 URL 목록에 해당하는 요청들은 인증 없이 접근을 허용
+    *   (보통은 publicFilterChain이 먼저 가져가서 여기까지 오지 않는다. 체인 순서가 바뀌어도 막히지 않도록 남겨 둠)
+    * 1 - (4) EndpointRequest.to("health", "prometheus") : 상태 확인, Prometheus 수집 경로는 인증 없이 (management 포트에서만 열림, MetricsConfig)
+    * 1 - (5) .anyRequest().authenticated() : 앞에 규칙에 해당되지 않는 모든 요청들은 접근을 허용하도록 강제 (ex. 로그인 필요 etc)
     *
     * 2. CSRF 보호 설정
     * 2 - (1) .csrf(csrf -> csrf.disable()) : CSRF 보호 기능을 비활성화
@@ -86,9 +157,12 @@ public class SecurityConfig {
     *
     * */
     @Bean
+    @Order(2)
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http.authorizeHttpRequests(auth -> auth
-                        .requestMatchers(securityProperties.getPermitUrls().toArray(new String[0])).permitAll()
+                        .requestMatchers(ownerRoutes).authenticated()
+                        .requestMatchers(publicRoutes).permitAll()
+                        .requestMatchers(EndpointRequest.to("health", "prometheus")).permitAll()
                         .anyRequest().authenticated())
                 .csrf(csrf->csrf.disable())
                 .headers(headers -> headers.frameOptions(frameOptions -> frameOptions.disable())
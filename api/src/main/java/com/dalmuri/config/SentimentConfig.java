@@ -0,0 +1,100 @@
+package com.dalmuri.config;
+
+import com.dalmuri.dmr.web.diary.sentiment.DiaryScoreCache;
+import com.dalmuri.dmr.web.diary.sentiment.FakeSentimentAnalyzer;
+import com.dalmuri.dmr.web.diary.sentiment.GoogleSentimentAnalyzer;
+import com.dalmuri.dmr.web.diary.sentiment.LexiconSentimentAnalyzer;
+import com.dalmuri.dmr.web.diary.sentiment.SentimentAnalyzer;
+import com.dalmuri.dmr.web.diary.sentiment.SentimentBatcher;
+import com.dalmuri.dmr.web.diary.sentiment.SentimentGateway;
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.cloud.language.v1.LanguageServiceClient;
+import com.google.cloud.language.v1.LanguageServiceSettings;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 감정 분석 백엔드 설정
+ * - sentiment.backend 값에 따라 Google Cloud 또는 로컬 가짜 백엔드를 원격 백엔드 Bean으로 등록
+ * - 원격 백엔드는 SentimentGateway를 통해서만 호출된다.
+ * - 사전 기반 로컬 엔진(LexiconSentimentAnalyzer)은 gateway 없이 DiaryService에서 바로 호출된다.
+ * */
+@Configuration
+@RequiredArgsConstructor
+public class SentimentConfig {
+
+    private final SentimentProperties properties;
+
+    /*
+    * [LanguageServiceClient Bean]
+    * 애플리케이션 전체에서 하나만 만들어 gRPC 채널, 인증 정보를 공유한다.
+    * destroyMethod = "close" : 애플리케이션 종료 시 채널을 정리한다. (예전 try-with-resources가 하던 일)
+    *
+    * RetrySettings : gRPC 레벨에도 deadline을 걸어서, SentimentGateway가 포기한 호출이 채널을 계속 잡고 있지 않게 한다.
+    *
+    * */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "sentiment", name = "backend", havingValue = "google")
+    public LanguageServiceClient languageServiceClient() throws IOException {
+        LanguageServiceSettings.Builder settings = LanguageServiceSettings.newBuilder();
+        RetrySettings retrySettings = settings.analyzeSentimentSettings().getRetrySettings().toBuilder()
+                .setInitialRpcTimeoutDuration(properties.getCallTimeout())
+                .setMaxRpcTimeoutDuration(properties.getCallTimeout())
+                .setTotalTimeoutDuration(properties.getCallTimeout())
+                .build();
+        settings.analyzeSentimentSettings().setRetrySettings(retrySettings);
+
+        return LanguageServiceClient.create(settings.build());
+    }
+
+    /*
+    * [@Primary]
+    * SentimentAnalyzer 구현체가 원격 백엔드 + LexiconSentimentAnalyzer 두 개가 되므로,
+    * 타입만으로 주입받는 곳(SentimentGateway)에는 원격 백엔드가 들어가도록 지정한다.
+    *
+    * */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "sentiment", name = "backend", havingValue = "google")
+    public SentimentAnalyzer googleSentimentAnalyzer(LanguageServiceClient languageServiceClient) {
+        return new GoogleSentimentAnalyzer(languageServiceClient);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "sentiment", name = "backend", havingValue = "fake", matchIfMissing = true)
+    public SentimentAnalyzer fakeSentimentAnalyzer() {
+        SentimentProperties.Fake fake = properties.getFake();
+        return new FakeSentimentAnalyzer(fake.getLatency(), fake.getScore(), fake.getMagnitude());
+    }
+
+    @Bean
+    public LexiconSentimentAnalyzer lexiconSentimentAnalyzer(ResourceLoader resourceLoader) throws IOException {
+        try (InputStream in = resourceLoader.getResource(properties.getLocal().getLexicon()).getInputStream()) {
+            return LexiconSentimentAnalyzer.load(in);
+        }
+    }
+
+    @Bean
+    public SentimentGateway sentimentGateway(SentimentAnalyzer sentimentAnalyzer) {
+        return new SentimentGateway(sentimentAnalyzer, properties.getMaxConcurrentCalls(), properties.getCallTimeout());
+    }
+
+    @Bean
+    public SentimentBatcher sentimentBatcher(SentimentGateway sentimentGateway) {
+        SentimentProperties.Batch batch = properties.getBatch();
+        return new SentimentBatcher(sentimentGateway, batch.getMaxSize(), batch.getMaxDelay(), batch.getQueueCapacity());
+    }
+
+    @Bean
+    public DiaryScoreCache diaryScoreCache() {
+        return new DiaryScoreCache(properties.getCache().getMaximumSize(), properties.getCache().getTtl());
+    }
+}
@@ -0,0 +1,138 @@
+package com.dalmuri.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "sentiment")
+public class SentimentProperties {
+
+    /*
+    * [SentimentProperties]
+    * application.yml의 sentiment : 아래 값을 바인딩한다. (application.yml은 git에 올라가지 않으므로 모든 값에 기본값을 둔다)
+    *
+    * sentiment:
+    *   mode: local-first      # remote | local | local-first
+    *   backend: google        # google | fake (원격 백엔드)
+    *   max-concurrent-calls: 64
+    *   call-timeout: 2s
+    *   fallback-score: 0.0
+    *   fallback-magnitude: 0.0
+    *   fake:
+    *     latency: 50ms
+    *   batch:
+    *     max-size: 32
+    *     max-delay: 5ms
+    *   cache:
+    *     maximum-size: 10000
+    *     ttl: 1h
+    *   local:
+    *     min-confidence: 0.3
+    *   pdf-import:
+    *     parallelism: 8       # 기본값 = CPU 코어 수
+    *     max-file-size: 100MB
+    *     max-pages: 1000
+    *     timeout: 10m
+    *
+    * */
+
+    // 분석 경로. remote = 원격 백엔드만, local = 사전 기반 로컬 엔진만, local-first = 로컬 먼저, 신뢰도가 낮으면 원격으로
+    private Mode mode = Mode.REMOTE;
+
+    // 원격 감정 분석 백엔드. google = Google Cloud Natural Language, fake = 네트워크 없이 동작하는 로컬 가짜 백엔드
+    private String backend = "fake";
+
+    // 동시에 진행될 수 있는 최대 호출 수. 초과하면 기다리지 않고 바로 fallback 결과를 돌려준다.
+    private int maxConcurrentCalls = 64;
+
+    // 호출 1건당 deadline. 넘기면 fallback 결과를 돌려준다.
+    private Duration callTimeout = Duration.ofSeconds(2);
+
+    private float fallbackScore = 0.0f;
+    private float fallbackMagnitude = 0.0f;
+
+    private Fake fake = new Fake();
+    private Batch batch = new Batch();
+    private Cache cache = new Cache();
+    private Local local = new Local();
+    private PdfImport pdfImport = new PdfImport();
+
+    public enum Mode {
+        REMOTE, LOCAL, LOCAL_FIRST
+    }
+
+    @Getter
+    @Setter
+    public static class Fake {
+
+        // 원격 호출을 흉내내기 위한 인위적인 지연 시간
+        private Duration latency = Duration.ZERO;
+
+        // 기존 [TEST LOGIC]과 같은 값
+        private float score = 1.0f;
+        private float magnitude = 0.2f;
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+
+        // 백엔드 호출 한 번에 묶는 최대 텍스트 수
+        private int maxSize = 32;
+
+        // 첫 요청이 도착한 뒤 묶음을 보내기 전까지 기다리는 최대 시간
+        private Duration maxDelay = Duration.ofMillis(5);
+
+        // 묶이기를 기다리는 단건 요청의 최대 개수. 넘치면 fallback
+        private int queueCapacity = 10_000;
+
+        // /diary/get-diary-scores 한 번에 받을 수 있는 최대 일기 수
+        private int maxRequestSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+
+        // 캐시에 담을 최대 항목 수. 넘치면 W-TinyLFU 정책으로 덜 쓰이는 항목부터 밀려난다.
+        private long maximumSize = 10_000;
+
+        // 저장 후 이 시간이 지나면 만료
+        private Duration ttl = Duration.ofHours(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Local {
+
+        // 감정 사전 위치 (classpath: 또는 file:)
+        private String lexicon = "classpath:sentiment/lexicon.tsv";
+
+        // local-first 모드에서 로컬 결과의 신뢰도가 이 값보다 낮으면 원격 백엔드로 다시 분석한다.
+        private float minConfidence = 0.3f;
+    }
+
+    @Getter
+    @Setter
+    public static class PdfImport {
+
+        // 동시에 분석 중일 수 있는 최대 페이지 수. 읽기는 이만큼 앞서 나가면 멈추고 기다린다.
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        // 업로드할 수 있는 PDF 최대 크기
+        private DataSize maxFileSize = DataSize.ofMegabytes(100);
+
+        // 이보다 페이지가 많으면 앞쪽 max-pages 페이지만 분석한다.
+        private int maxPages = 1000;
+
+        // 응답(NDJSON 스트림) 전체 제한 시간
+        private Duration timeout = Duration.ofMinutes(10);
+    }
+}
@@ -0,0 +1,43 @@
+package com.dalmuri.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "session-cache")
+public class SessionCacheProperties {
+
+    /*
+    * [SessionCacheProperties]
+    * Spring Session JDBC 앞에 두는 near-cache / write-behind 설정 (SessionConfig)
+    *
+    * session-cache:
+    *   enabled: true
+    *   ttl: 2s
+    *   maximum-size: 10000
+    *   flush-interval: 1s
+    *   max-batch: 500
+    *
+    * */
+
+    // false면 JdbcIndexedSessionRepository를 그대로 쓴다.
+    private boolean enabled = true;
+
+    // 읽어 온 세션을 이 노드에 들고 있는 시간. 다른 노드에서 바뀐 속성 / 로그아웃은 최대 이만큼 늦게 보인다.
+    private Duration ttl = Duration.ofSeconds(2);
+
+    // near-cache에 들고 있는 최대 세션 수
+    private long maximumSize = 10_000;
+
+    // 마지막 접근 시각만 바뀐 세션을 모아서 이 주기마다 한 번에 UPDATE 한다.
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    // 트랜잭션 하나에 넣는 UPDATE 최대 개수
+    private int maxBatch = 500;
+}
@@ -0,0 +1,48 @@
+package com.dalmuri.config;
+
+import com.dalmuri.dmr.common.session.LastAccessWriteBehind;
+import com.dalmuri.dmr.common.session.NearCacheSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class SessionConfig {
+
+    /*
+    * [SessionConfig : 세션 저장소 앞에 near-cache 두기]
+    * spring-session-jdbc는 요청마다 세션을 SELECT 하고(속성 역직렬화까지), 끝날 때 마지막 접근 시각을 UPDATE 한다.
+    * → 세션을 쓰는 요청 하나에 DB 왕복 두 번 이상.
+    *
+    * 부트가 만든 JdbcIndexedSessionRepository("sessionRepository")는 그대로 두고,
+    * 그것을 감싼 NearCacheSessionRepository를 @Primary로 올린다. → springSessionRepositoryFilter가 이쪽을 받는다.
+    *
+    * - near-cache hit + 접근 시각만 바뀜 : 요청 안에서 DB 왕복 0번 (접근 시각은 write-behind가 모아서 UPDATE)
+    * - near-cache miss : SELECT 한 번 (+ 속성이 바뀌었으면 저장 한 번)
+    *
+    * session-cache.enabled=false면 이 Bean이 없어서 예전처럼 JdbcIndexedSessionRepository를 바로 쓴다.
+    *
+    * */
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "session-cache", name = "enabled", matchIfMissing = true)
+    public LastAccessWriteBehind lastAccessWriteBehind(DataSource dataSource,
+                                                       SessionCacheProperties properties,
+                                                       @Value("${spring.session.jdbc.table-name:SPRING_SESSION}") String tableName) {
+        return new LastAccessWriteBehind(dataSource, tableName, properties.getFlushInterval(), properties.getMaxBatch());
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "session-cache", name = "enabled", matchIfMissing = true)
+    public NearCacheSessionRepository nearCacheSessionRepository(JdbcIndexedSessionRepository sessionRepository,
+                                                                 LastAccessWriteBehind writeBehind,
+                                                                 SessionCacheProperties properties) {
+        return new NearCacheSessionRepository(sessionRepository, writeBehind, properties.getTtl(), properties.getMaximumSize());
+    }
+}
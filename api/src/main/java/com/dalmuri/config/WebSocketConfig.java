@@ -1,8 +1,13 @@
 package com.dalmuri.config;
 
+import com.dalmuri.socket.ChunkedUploadService;
+import com.dalmuri.socket.DeflateHandshakeHandler;
+import com.dalmuri.socket.DiarySentimentHandler;
 import com.dalmuri.socket.MediachatHandler;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.*;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 @Configuration
 @EnableWebSocket
@@ -15,6 +20,17 @@ public class WebSocketConfig implements WebSocketConfigurer {
     *
     * */
 
+    private final MediachatHandler mediachatHandler;
+    private final DiarySentimentHandler diarySentimentHandler;
+    private final ChatProperties.Socket socket;
+
+    public WebSocketConfig(MediachatHandler mediachatHandler, DiarySentimentHandler diarySentimentHandler,
+                           ChatProperties chatProperties) {
+        this.mediachatHandler = mediachatHandler;
+        this.diarySentimentHandler = diarySentimentHandler;
+        this.socket = chatProperties.getSocket();
+    }
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry){
         /*
@@ -29,17 +45,48 @@ public class WebSocketConfig implements WebSocketConfigurer {
         * implements = "기능을 설계도로 받아서 내가 직접 만든다" (부모가 메서드의 이름만 알려줌)
         *
         * */
-        registry.addHandler(new MediachatHandler(), "/chat").setAllowedOrigins("*");
+        DeflateHandshakeHandler text = new DeflateHandshakeHandler(socket.isDeflateText());
+        DeflateHandshakeHandler media = new DeflateHandshakeHandler(socket.isDeflateMedia());
+        registry.addHandler(mediachatHandler, "/chat").setHandshakeHandler(text).setAllowedOrigins("*");
+        registry.addHandler(mediachatHandler, "/chat/media").setHandshakeHandler(media).setAllowedOrigins("*");
+        registry.addHandler(diarySentimentHandler, "/diary/stream").setHandshakeHandler(text).setAllowedOrigins("*");
 
         /*
         * 1) addHandler : 웹소켓 핸들러 추가
         * 2) new TextchatHandler : TextchatHandler(임의로 작성)라는 웹소켓 핸들러의 새로운 인스턴스를 생성. TextchatHandler에 실제로 웹소켓 메시지를 주고받는 로직(=채팅 처리 로직)을 담고 있을 것이다.
         *   => MediachatHandler로 변경 : AbstractWebSocketHandler로, 텍스트와
+        *   => 지금은 new로 만들지 않고 Bean(@Component)으로 주입받는다. (SessionOutbound 등 다른 Bean이 필요해서)
         * 3) /chat : 클라이언트 측에서 웹소켓 연결을 요청할 "경로"를 지정. ex : ws://localhost:8080/chat과 같은 주소로 웹소켓 연결을 시도한다면 ChatHandler가 이를 처리할 것이다.
         * 4) setAllowedOrigins("*") : 교차 출처(Cross Origin)요청을 허용하는 설정. *는 모든 출처(origin)에서의 접근을 허용하겠다는 의미. 단 보안상 권장되지 않으며, 실제 운영에선 특정 도메인만 허용되도록 설정할 것
         *   ex: "http://localhost:3000", "https://yourdomain.com"
         *
+        * 5) /diary/stream : 일기 편집 중 실시간 감정 분석. 수정된 문장만 다시 분석해서 문서 점수를 밀어준다. (DiarySentimentHandler)
+        * 6) /chat/media : /chat과 같은 핸들러(같은 방)인데 permessage-deflate를 협상하지 않는다. (DeflateHandshakeHandler)
+        *   이미지 / 동영상 / 청크 업로드를 주로 주고받는 클라이언트용. 텍스트 위주인 /chat은 압축해서 보낸다.
+        *
         * */
     }
 
+    /*
+    * [ServletServerContainerFactoryBean]
+    * 톰캣 웹소켓 컨테이너 설정. (chat.socket)
+    * - 메시지 버퍼 : 톰캣은 세션마다 이 크기의 버퍼를 잡는다. → 연결당 메모리 상한
+    *   버퍼보다 큰 메시지가 오면 톰캣이 1009(too big)로 연결을 끊는다.
+    *   바이너리 버퍼는 청크 프레임 하나(헤더 28 + upload.chunk-size)에 딱 맞춘다. 더 크게 잡으면 모든 세션이 쓰지도 않는 메모리를 잡고 있게 된다.
+    *   → 한 프레임으로 보내는 사진도 이 크기까지. 그보다 큰 파일은 청크 업로드로 보낸다.
+    * - asyncSendTimeout : 보내기 하나가 이보다 오래 걸리면 실패 처리 (SessionOutbound의 sendTimeLimit과 별개로 컨테이너 쪽 상한)
+    * - maxSessionIdleTimeout : 아무 프레임도 오가지 않는 세션을 컨테이너가 끊는다. 응답 없는 클라이언트는 SessionHeartbeat가 먼저 정리한다.
+    *
+    * */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer(ChatProperties chatProperties) {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        int chunkFrame = (int) chatProperties.getUpload().getChunkSize().toBytes() + ChunkedUploadService.HEADER_LENGTH;
+        container.setMaxBinaryMessageBufferSize(chunkFrame);
+        container.setMaxTextMessageBufferSize((int) socket.getMaxTextMessageSize().toBytes());
+        container.setAsyncSendTimeout(socket.getAsyncSendTimeout().toMillis());
+        container.setMaxSessionIdleTimeout(socket.getMaxSessionIdleTimeout().toMillis());
+        return container;
+    }
+
 }
@@ -1,5 +1,12 @@
 package com.dalmuri.dmr.common.controller;
 
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.dmr.common.media.ThumbnailService;
+import com.dalmuri.dmr.common.upload.MultipartStreamReader;
+import com.dalmuri.dmr.common.upload.StreamingUploadWriter;
+import com.dalmuri.dmr.common.upload.UploadMetrics;
+import com.dalmuri.dmr.common.upload.UploadTooLargeException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -8,43 +15,105 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
 @CrossOrigin(origins="http://localhost:1003") // 이거 없으면 통신 안됨
 public class FileUploadController { 
 
+    private static final String FILE_URL = "http://localhost:3001/uploads/";
+
+    private final MediaStore mediaStore;
+    private final StreamingUploadWriter streamingUploadWriter;
+    private final ThumbnailService thumbnailService;
+    // 경로별 업로드 크기 / 시간 / 실패 수
+    private final UploadMetrics uploadMetrics;
+
+    public FileUploadController(MediaStore mediaStore, StreamingUploadWriter streamingUploadWriter, ThumbnailService thumbnailService,
+                                UploadMetrics uploadMetrics) {
+        this.mediaStore = mediaStore;
+        this.streamingUploadWriter = streamingUploadWriter;
+        this.thumbnailService = thumbnailService;
+        this.uploadMetrics = uploadMetrics;
+    }
+
     @PostMapping("/uploads")
     public ResponseEntity<Map<String, Object>> uploadFile(@RequestParam("file") MultipartFile file){
         if(file.isEmpty()){
             return ResponseEntity.badRequest().body(Map.of("error", "No file uploaded"));
         }
 
+        long started = System.nanoTime();
         try{
-            // (1) 업로드 경로 설정
-            String uploadDir = "api/uploads/";
-            File dir = new File(uploadDir);
-            if(!dir.exists()) dir.mkdirs();
-            // System.out.println("업로드 절대경로: " + new File(uploadDir).getAbsolutePath()); // 업로드 절대경로: C:\\Dalmuri-api\\api\\uploads
+            // (1) 저장 : 예전엔 api/uploads/에 System.currentTimeMillis() + "_" + 원래 파일명으로 저장했다. (REPLACE_EXISTING)
+            //   → 같은 파일도 매번 새로 저장, 같은 밀리초 + 같은 이름이면 덮어쓰기
+            // 지금은 MediaStore가 내용 해시로 저장한다. 이미 있는 파일이면 해시 계산만 하고 쓰지 않는다.
+            MediaStore.StoredMedia stored = mediaStore.put(file);
+            uploadMetrics.stored(UploadMetrics.Route.MULTIPART, stored.size(), started);
 
-            // (2) 파일명 지정
-            String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-            Path filePath = Paths.get(uploadDir + fileName);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+            // (2) 썸네일은 백그라운드에서 만든다. (응답은 기다리지 않음)
+            thumbnailService.schedule(stored);
 
-            // (3) 저장된 파일 url 반환
-            String fileUrl = "http://localhost:3001/uploads/" + fileName;
-            return ResponseEntity.ok(Map.of("fileUrl", fileUrl));
+            // (3) 저장된 파일 url 반환 (+ 썸네일 url. 만들어지기 전에는 원본으로 리다이렉트된다)
+            return ResponseEntity.ok(Map.of("fileUrl", FILE_URL + stored.name(), "variants", variantUrls(stored)));
 
         } catch (IOException e) {
+            uploadMetrics.failed(UploadMetrics.Route.MULTIPART);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Failed to save files"));
         }
 
     }
+
+    /*
+    * [스트리밍 업로드]
+    * MultipartFile을 쓰면 톰캣이 요청 전체를 임시 파일에 먼저 다 받은 뒤에야 컨트롤러가 불린다.
+    * 이 경로는 MultipartResolver가 건너뛰도록 해두었고(MediaConfig), 본문을 직접 파싱해서 받는 대로 최종 위치에 쓴다.
+    * 응답은 /uploads와 같은 모양(fileUrl, variants) + sha256, size
+    *
+    * */
+    @PostMapping("${media.stream.path:/uploads/stream}")
+    public ResponseEntity<Map<String, Object>> uploadStream(HttpServletRequest request){
+        long started = System.nanoTime();
+        String boundary = MultipartStreamReader.boundaryOf(request.getContentType());
+        if(boundary == null){
+            return ResponseEntity.badRequest().body(Map.of("error", "multipart/form-data required"));
+        }
+        // Content-Length만 봐도 너무 크면 본문을 받기 전에 거절한다.
+        if(request.getContentLengthLong() > streamingUploadWriter.maxFileSize() + 64 * 1024){
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", "File too large"));
+        }
+
+        try{
+            MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary, streamingUploadWriter.bufferSize());
+            for(MultipartStreamReader.Part part; (part = reader.next()) != null; ){
+                if("file".equals(part.name()) && part.isFile()){
+                    MediaStore.StoredMedia stored = streamingUploadWriter.write(part.body(), part.filename());
+                    uploadMetrics.stored(UploadMetrics.Route.STREAM, stored.size(), started);
+                    thumbnailService.schedule(stored);
+                    return ResponseEntity.ok(Map.of("fileUrl", FILE_URL + stored.name(), "variants", variantUrls(stored),
+                            "sha256", stored.hash(), "size", stored.size()));
+                }
+            }
+            return ResponseEntity.badRequest().body(Map.of("error", "No file uploaded"));
+
+        } catch (UploadTooLargeException e) {
+            uploadMetrics.failed(UploadMetrics.Route.STREAM);
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", "File too large"));
+        } catch (MultipartStreamReader.MalformedMultipartException e) {
+            uploadMetrics.failed(UploadMetrics.Route.STREAM);
+            return ResponseEntity.badRequest().body(Map.of("error", "Malformed multipart body"));
+        } catch (IOException e) {
+            uploadMetrics.failed(UploadMetrics.Route.STREAM);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Failed to save files"));
+        }
+    }
+
+    // 썸네일 url 목록 (예: {"w160": ".../uploads/{hash}_w160.jpg"}). 이미지가 아니면 빈 목록
+    private Map<String, String> variantUrls(MediaStore.StoredMedia stored) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        thumbnailService.variantNames(stored).forEach((variant, name) -> urls.put(variant, FILE_URL + name));
+        return urls;
+    }
 }
@@ -0,0 +1,204 @@
+package com.dalmuri.dmr.common.controller;
+
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.media.MediaFileCache;
+import com.dalmuri.dmr.common.media.MediaStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+@RestController
+public class MediaController {
+
+    /*
+    * [MediaController : /uploads/{hash}.{ext} 전용 서빙]
+    * 예전엔 MediaConfig의 리소스 핸들러(file: 위치)가 캐시 헤더 없이 파일을 내려줬다.
+    *   → 브라우저가 같은 사진을 계속 다시 받고, 동영상은 건너뛰기(seek)가 안 됐다.
+    *
+    * 1) ETag = 내용 해시 (강한 ETag). If-None-Match가 같으면 본문 없이 304
+    * 2) Cache-Control: public, max-age=1년, immutable → 내용이 바뀌면 이름(해시)이 바뀌므로 다시 물어볼 필요가 없다.
+    * 3) Range: bytes=시작-끝 → 206 Partial Content (동영상 건너뛰기). 여러 구간 요청은 전체(200)로 보낸다.
+    * 4) 본문 보내기
+    *    - 작은 파일 : MediaFileCache(메모리 LRU)에서 바로
+    *    - 큰 파일 : 톰캣 sendfile (커널이 파일 → 소켓으로 바로 보냄. 자바 힙을 거치지 않음)
+    *    - sendfile을 못 쓰면 FileChannel.transferTo
+    * 5) 썸네일({hash}_w160.jpg)도 같은 규칙. 아직 없으면 원본으로 307 리다이렉트
+    *
+    * 해시 이름이 아닌 예전 파일(123_사진.jpg)은 이 경로에 걸리지 않고 MediaConfig의 리소스 핸들러가 그대로 처리한다.
+    *
+    * */
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final MediaStore mediaStore;
+    private final MediaFileCache mediaFileCache;
+    private final String cacheControl;
+
+    public MediaController(MediaStore mediaStore, MediaFileCache mediaFileCache, MediaProperties properties) {
+        this.mediaStore = mediaStore;
+        this.mediaFileCache = mediaFileCache;
+        this.cacheControl = "public, max-age=" + properties.getServe().getMaxAge().toSeconds() + ", immutable";
+    }
+
+    @RequestMapping(path = "/uploads/{name:[0-9a-f]{64}(?:_w[0-9]{2,4})?\\.[a-z0-9]{1,8}}",
+            method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serve(@PathVariable String name, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = mediaStore.resolve(name);
+        if (file == null) {
+            // 썸네일이 아직 없거나(만드는 중) 원본이 작아서 만들지 않았으면 원본으로 보낸다. (리다이렉트는 캐시하지 않음)
+            Path original = name.charAt(64) == '_' ? mediaStore.originalOf(name.substring(0, 64)) : null;
+            if (original != null) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+                response.setHeader(HttpHeaders.LOCATION, original.getFileName().toString());
+                return;
+            }
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = "\"" + name.substring(0, name.lastIndexOf('.')) + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long size = Files.size(file);
+        response.setContentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        // Range (If-Range가 있으면 ETag가 같을 때만 구간으로 보낸다)
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        if (mediaFileCache.isCacheable(size)) {
+            byte[] bytes = mediaFileCache.get(name, file);
+            response.getOutputStream().write(bytes, (int) start, (int) length);
+            return;
+        }
+
+        // 톰캣이 sendfile을 지원하면 속성만 넣고 돌아간다. 실제 전송은 톰캣이 응답을 마무리하면서 한다.
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+    * [parseRange]
+    * "bytes=0-499", "bytes=500-", "bytes=-500"(마지막 500바이트) 한 구간만 처리한다.
+    * - {start, end} : 206으로 보낼 구간
+    * - {} (빈 배열) : 여러 구간이거나 모르는 형식 → Range를 무시하고 전체 전송
+    * - null : 만족할 수 없는 구간 → 416
+    *
+    * */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if (start >= size || end < start) {
+                    return null;
+                }
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
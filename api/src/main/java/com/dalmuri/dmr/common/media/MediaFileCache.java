@@ -0,0 +1,70 @@
+package com.dalmuri.dmr.common.media;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MediaFileCache implements MeterBinder {
+
+    /*
+    * [MediaFileCache]
+    * 작고 자주 요청되는 파일(프로필 사진, 썸네일)을 byte[]로 메모리에 들고 있다가 디스크를 거치지 않고 보낸다.
+    * 1) key : 공개 이름 ({hash}.{ext}). 이름이 곧 내용 해시이므로 캐시가 오래된 내용을 돌려주는 일은 없다.
+    * 2) 크기 제한은 항목 수가 아니라 바이트 합계 (maximumWeight + weigher)
+    * 3) maxFileSize보다 큰 파일은 캐시에 넣지 않는다. (sendfile로 보내는 게 더 싸다)
+    *
+    * */
+
+    private final Cache<String, byte[]> cache;
+    private final long maxFileSize;
+
+    public MediaFileCache(long maxFileSize, long maxBytes) {
+        this.maxFileSize = maxFileSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String name, byte[] bytes) -> bytes.length)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isCacheable(long size) {
+        return size <= maxFileSize;
+    }
+
+    /** 캐시에 있으면 돌려주고, 없으면 파일을 읽어 넣는다. */
+    public byte[] get(String name, Path file) {
+        return cache.get(name, key -> {
+            try {
+                return Files.readAllBytes(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public void invalidate(String name) {
+        cache.invalidate(name);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long weightedSize() {
+        return cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    // cache.gets{cache="media.file",result=hit|miss}, cache.evictions ...
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "media.file");
+    }
+}
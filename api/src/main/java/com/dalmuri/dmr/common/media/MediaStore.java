@@ -0,0 +1,332 @@
+package com.dalmuri.dmr.common.media;
+
+import com.dalmuri.dmr.common.upload.UploadTooLargeException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Component
+public class MediaStore {
+
+    /*
+    * [MediaStore : 내용 주소(content-addressed) 저장소]
+    * 예전 파일명 : System.currentTimeMillis() + "_" + 원래 파일명 (REPLACE_EXISTING)
+    *   → 같은 사진을 올릴 때마다 또 저장되고, 같은 밀리초에 같은 이름이면 서로 덮어썼다.
+    *
+    * 지금은 파일 내용의 SHA-256이 곧 파일 이름이다.
+    *   {root}/{hash 앞 2글자}/{다음 2글자}/{hash}.{ext}   예) uploads/3f/a9/3fa9....jpg
+    *   → 폴더 하나에 파일이 몰리지 않도록 두 단계로 나눈다. (256 x 256)
+    *   → URL은 예전처럼 /uploads/{hash}.{ext} (MediaConfig가 샤드 경로로 찾아준다)
+    *
+    * 이미 있는 내용이면 파일은 다시 쓰지 않고 있는 파일을 돌려준다. (해시 계산 한 번이면 끝)
+    * 지우지는 않는다. 같은 파일을 채팅 기록 / 일기 / 프로필 어디서 쓰고 있는지 저장소는 알 수 없으므로
+    *   참조 수를 세어도 내려 줄 곳이 없다. (정리가 필요하면 참조하는 쪽을 모두 훑는 별도 작업으로)
+    *
+    * 같은 해시에 대한 작업은 잠금(해시 앞 바이트로 고른 64개 중 하나)으로 순서를 맞춘다.
+    * 가상 스레드에서도 불리므로 synchronized 대신 ReentrantLock (파일 I/O 중 캐리어 스레드 고정 방지)
+    *
+    * */
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Pattern NAME = Pattern.compile("([0-9a-f]{64})(_[a-z0-9]{1,16})?(\\.[a-z0-9]{1,8})?");
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern EXTENSION = Pattern.compile("\\.[a-z0-9]{1,8}");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path partDir;
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+
+    public MediaStore(@Value("${file.upload-dir:api/uploads/}") String root) {
+        this.root = Path.of(root);
+        this.partDir = this.root.resolve(".parts");
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /** 메모리에 있는 내용을 저장한다. (채팅 바이너리 메시지) 버퍼의 position은 건드리지 않는다. */
+    public StoredMedia put(ByteBuffer content) throws IOException {
+        String hash = sha256(content.duplicate());
+        String extension = extensionOf(content);
+        return putIfAbsent(hash, extension, part -> {
+            ByteBuffer src = content.duplicate();
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            }
+        });
+    }
+
+    /*
+    * [MultipartFile 저장]
+    * 톰캣이 이미 임시 파일에 받아둔 상태이므로, 먼저 해시만 계산한다. (읽기 한 번)
+    * 이미 있는 파일이면 쓰지 않고, 없을 때만 transferTo (같은 디스크면 rename)
+    *
+    * */
+    public StoredMedia put(MultipartFile file) throws IOException {
+        String hash;
+        try (InputStream in = file.getInputStream()) {
+            hash = sha256(in);
+        }
+        return putIfAbsent(hash, extensionOf(file.getOriginalFilename()), part -> {
+            Files.delete(part); // transferTo는 대상 파일이 없어야 rename으로 끝난다.
+            file.transferTo(part);
+        });
+    }
+
+    /**
+     * 스트림을 끝까지 읽으며 저장한다. 해시를 미리 알 수 없으므로 임시 파일에 쓰면서 해시를 계산하고,
+     * 이미 있는 내용이면 임시 파일만 지운다. maxBytes를 넘으면 UploadTooLargeException
+     */
+    public StoredMedia put(InputStream body, String extension, long maxBytes, int bufferSize) throws IOException {
+        MessageDigest digest = newDigest();
+        Path part = newPartFile();
+        try {
+            long size = 0;
+            byte[] bytes = new byte[bufferSize];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                int n;
+                while ((n = body.read(bytes, 0, bytes.length)) >= 0) {
+                    size += n;
+                    if (size > maxBytes) {
+                        throw new UploadTooLargeException(maxBytes);
+                    }
+                    digest.update(bytes, 0, n);
+                    buffer.clear().limit(n);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            }
+            return adopt(part, HEX.formatHex(digest.digest()), extension);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    /** 임시 파일을 만든다. 저장소와 같은 파일 시스템이라 adopt()의 rename이 원자적이다. */
+    public Path newPartFile() throws IOException {
+        Files.createDirectories(partDir);
+        return Files.createTempFile(partDir, "media-", ".part");
+    }
+
+    /**
+     * 다 쓴 임시 파일을 hash 자리로 옮긴다. (ATOMIC_MOVE 한 번, 복사 없음)
+     * 이미 같은 내용이 있으면(먼저 찾았거나 옮기는 순간 대상이 생겼으면) 임시 파일만 지우고 있는 파일을 돌려준다.
+     * */
+    public StoredMedia adopt(Path part, String hash, String extension) throws IOException {
+        ReentrantLock lock = lockOf(hash);
+        lock.lock();
+        try {
+            Path existing = find(hash);
+            return existing != null ? describe(hash, existing) : moveInto(part, hash, extension);
+        } finally {
+            lock.unlock();
+            Files.deleteIfExists(part);
+        }
+    }
+
+    /** 공개 이름({hash}.{ext} 또는 변형 {hash}_{variant}.{ext})에 해당하는 실제 파일. 저장소 파일이 아니면 null */
+    public Path resolve(String name) {
+        Matcher m = NAME.matcher(name);
+        if (!m.matches()) {
+            return null;
+        }
+        Path path = shardOf(m.group(1)).resolve(name);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /*
+    * [변형(variant) 파일]
+    * 썸네일처럼 원본에서 만들어지는 파일은 원본 옆에 {hash}_{variant}.{ext} 로 둔다.
+    * 원본과 수명이 같다. (원본처럼 지우지 않음)
+    *
+    * */
+    public Path variantPath(String hash, String variant, String extension) {
+        return shardOf(hash).resolve(hash + "_" + variant + extension);
+    }
+
+    /** 변형 파일을 임시 파일에 쓴 뒤 제자리로 옮긴다. */
+    public Path putVariant(String hash, String variant, String extension, PartWriter writer) throws IOException {
+        Path target = variantPath(hash, variant, extension);
+        Files.createDirectories(target.getParent());
+        Path part = newPartFile();
+        try {
+            writer.writeTo(part);
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    /** hash의 원본 파일. 없으면 null */
+    public Path originalOf(String hash) throws IOException {
+        return isHash(hash) ? find(hash) : null;
+    }
+
+    private StoredMedia putIfAbsent(String hash, String extension, PartWriter writer) throws IOException {
+        ReentrantLock lock = lockOf(hash);
+        lock.lock();
+        try {
+            Path existing = find(hash);
+            if (existing != null) {
+                return describe(hash, existing);
+            }
+            Path part = newPartFile();
+            try {
+                writer.writeTo(part);
+                return moveInto(part, hash, extension);
+            } finally {
+                Files.deleteIfExists(part);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    * [임시 파일 → 제자리] 잠금 안에서 부른다.
+    * REPLACE_EXISTING 없이 ATOMIC_MOVE 한 번. 그 사이 대상이 생겼으면(같은 폴더를 쓰는 다른 노드가 먼저 저장)
+    * FileAlreadyExistsException → 같은 내용이 이미 있는 것이므로 그 파일을 쓴다.
+    * (리눅스 rename은 예외 없이 바꿔치기할 수도 있지만 내용이 같아서 결과는 같다)
+    *
+    * */
+    private StoredMedia moveInto(Path part, String hash, String extension) throws IOException {
+        if (extension == null || extension.isEmpty()) {
+            extension = ".bin"; // find()가 {hash}.* 로 찾으므로 확장자는 항상 붙인다.
+        }
+        Path target = shardOf(hash).resolve(hash + extension);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Path existing = find(hash);
+            return describe(hash, existing != null ? existing : target);
+        }
+        return describe(hash, target);
+    }
+
+    // 확장자가 달라도 내용이 같으면 같은 파일이다. 샤드 폴더에서 {hash}.* 를 찾는다.
+    private Path find(String hash) throws IOException {
+        Path shard = shardOf(hash);
+        if (!Files.isDirectory(shard)) {
+            return null;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(shard, hash + ".*")) {
+            for (Path file : files) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private StoredMedia describe(String hash, Path file) throws IOException {
+        String name = file.getFileName().toString();
+        return new StoredMedia(hash, name, Files.size(file), file);
+    }
+
+    private Path shardOf(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4));
+    }
+
+    private ReentrantLock lockOf(String hash) {
+        return locks[Integer.parseInt(hash.substring(0, 2), 16) & (locks.length - 1)];
+    }
+
+    private static boolean isHash(String hash) {
+        return hash != null && hash.length() == 64 && HASH.matcher(hash).matches();
+    }
+
+    // 파일 앞부분(매직 넘버)으로 확장자를 정한다. 모르는 형식은 .bin
+    public static String extensionOf(ByteBuffer content) {
+        int p = content.position();
+        int n = content.remaining();
+        if (n >= 3 && (content.get(p) & 0xFF) == 0xFF && (content.get(p + 1) & 0xFF) == 0xD8 && (content.get(p + 2) & 0xFF) == 0xFF) {
+            return ".jpg";
+        }
+        if (n >= 8 && content.getLong(p) == 0x89504E470D0A1A0AL) {
+            return ".png";
+        }
+        if (n >= 4 && content.getInt(p) == 0x47494638) { // GIF8
+            return ".gif";
+        }
+        if (n >= 12 && content.getInt(p) == 0x52494646 && content.getInt(p + 8) == 0x57454250) { // RIFF....WEBP
+            return ".webp";
+        }
+        if (n >= 8 && content.getInt(p + 4) == 0x66747970) { // ....ftyp
+            return ".mp4";
+        }
+        if (n >= 4 && content.getInt(p) == 0x1A45DFA3) {
+            return ".webm";
+        }
+        return ".bin";
+    }
+
+    // 원래 파일명에서 확장자만 쓴다. (경로 조작 방지 : 파일명 자체는 저장 이름에 넣지 않음)
+    public static String extensionOf(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String ext = filename.substring(dot).toLowerCase(Locale.ROOT);
+        return EXTENSION.matcher(ext).matches() ? ext : "";
+    }
+
+    private static String sha256(ByteBuffer content) {
+        MessageDigest digest = newDigest();
+        digest.update(content);
+        return HEX.formatHex(digest.digest());
+    }
+
+    private static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            digest.update(buffer, 0, n);
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface PartWriter {
+        void writeTo(Path part) throws IOException;
+    }
+
+    /** 저장된 파일. name은 URL에 쓰는 공개 이름 ({hash}.{ext}) */
+    public record StoredMedia(String hash, String name, long size, Path path) {
+    }
+}
@@ -0,0 +1,250 @@
+package com.dalmuri.dmr.common.media;
+
+import com.dalmuri.config.MediaProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Component
+public class ThumbnailService implements DisposableBean {
+
+    /*
+    * [ThumbnailService : 업로드된 이미지의 작은 변형(썸네일) 만들기]
+    * 채팅/일기 목록은 작은 미리보기만 그리면 되는데, 지금까지는 원본 전체를 받아서 줄였다.
+    *
+    * 1) 업로드가 끝나면 schedule()로 작업만 넣고 바로 돌아간다. (업로드 응답 시간은 그대로)
+    * 2) 작업은 크기가 정해진 스레드 풀(workers)에서 돈다. 대기열(queueCapacity)이 가득 차면 버린다.
+    *    → 썸네일은 없어도 원본으로 대신할 수 있으므로, 서버가 밀릴 때는 만들지 않는 쪽을 택한다.
+    * 3) 원본은 한 번만 읽는다. 가장 큰 썸네일에 맞춰 subsampling으로 줄여 읽고(디코딩 메모리 절약),
+    *    그걸 다시 작은 크기로 줄인다.
+    * 4) 결과는 원본 옆에 {hash}_w160.jpg 처럼 둔다. (MediaStore.putVariant)
+    *    이름이 정해져 있어서 만들어지기 전에도 URL을 응답에 넣을 수 있다.
+    *    아직 없거나 원본보다 커서 만들지 않은 썸네일은 MediaController가 원본으로 돌려보낸다.
+    *
+    * */
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of(".jpg", ".jpeg", ".png", ".gif", ".bmp");
+    private static final String VARIANT_EXTENSION = ".jpg";
+
+    private final MediaStore mediaStore;
+    private final List<Integer> widths;
+    private final float quality;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public ThumbnailService(MediaStore mediaStore, MediaProperties properties) {
+        MediaProperties.Thumbnail thumbnail = properties.getThumbnail();
+        this.mediaStore = mediaStore;
+        this.widths = thumbnail.getWidths().stream().sorted().distinct().toList();
+        this.quality = thumbnail.getQuality();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(thumbnail.getWorkers(), thumbnail.getWorkers(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(thumbnail.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1); // 요청 처리 스레드보다 뒤로
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    // 대기열이 가득 차서 버려짐. 다음 업로드 때 다시 시도할 수 있도록 inFlight에서 뺀다.
+                    dropped.increment();
+                    inFlight.remove(((ThumbnailTask) runnable).media.hash());
+                });
+    }
+
+    /** 썸네일을 만들 수 있는 형식인지 */
+    public boolean supports(MediaStore.StoredMedia media) {
+        String name = media.name();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && IMAGE_EXTENSIONS.contains(name.substring(dot));
+    }
+
+    /** 썸네일 이름들 (예: "w160" → "{hash}_w160.jpg"). 이미지가 아니면 빈 Map */
+    public Map<String, String> variantNames(MediaStore.StoredMedia media) {
+        if (!supports(media)) {
+            return Map.of();
+        }
+        Map<String, String> names = new LinkedHashMap<>();
+        for (int width : widths) {
+            String variant = "w" + width;
+            names.put(variant, media.hash() + "_" + variant + VARIANT_EXTENSION);
+        }
+        return names;
+    }
+
+    /** 썸네일 작업을 넣고 바로 돌아간다. 이미 있거나 만드는 중이면 아무것도 하지 않는다. */
+    public void schedule(MediaStore.StoredMedia media) {
+        if (!supports(media) || allVariantsExist(media.hash()) || !inFlight.add(media.hash())) {
+            return;
+        }
+        executor.execute(new ThumbnailTask(media));
+    }
+
+    void generate(MediaStore.StoredMedia media) throws IOException {
+        BufferedImage source = readForWidth(media.path(), widths.get(widths.size() - 1));
+        if (source == null) {
+            return; // ImageIO가 읽을 수 없는 형식
+        }
+
+        // 큰 것부터 만들고, 다음 크기는 방금 만든 이미지에서 줄인다. (줄이는 비용이 점점 작아짐)
+        BufferedImage current = source;
+        for (int i = widths.size() - 1; i >= 0; i--) {
+            int width = widths.get(i);
+            if (width >= source.getWidth()) {
+                continue; // 원본보다 큰 썸네일은 만들지 않는다. (MediaController가 원본으로 대신)
+            }
+            current = scale(current, width);
+            BufferedImage variant = current;
+            mediaStore.putVariant(media.hash(), "w" + width, VARIANT_EXTENSION, part -> writeJpeg(variant, part));
+            generated.increment();
+        }
+    }
+
+    private boolean allVariantsExist(String hash) {
+        for (int width : widths) {
+            if (!Files.exists(mediaStore.variantPath(hash, "w" + width, VARIANT_EXTENSION))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 목표 가로의 2배 이상이면 subsampling으로 건너뛰며 읽는다. (12MP 사진을 전부 디코딩하지 않음)
+    private static BufferedImage readForWidth(Path file, int targetWidth) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int sourceWidth = reader.getWidth(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, sourceWidth / (targetWidth * 2));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // 한 번에 크게 줄이면 계단 현상이 생기므로 절반씩 줄이다가 마지막에 목표 크기로 맞춘다.
+    private static BufferedImage scale(BufferedImage image, int targetWidth) {
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int targetHeight = Math.max(1, (int) Math.round((double) height * targetWidth / width));
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = width == targetWidth ? targetHeight : Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.setColor(Color.WHITE); // 투명한 PNG는 흰 배경 위에 (JPEG은 투명도가 없음)
+                g.fillRect(0, 0, width, height);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width > targetWidth);
+        return current;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    public long generatedCount() {
+        return generated.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public int queuedCount() {
+        return executor.getQueue().size();
+    }
+
+    private final class ThumbnailTask implements Runnable {
+
+        private final MediaStore.StoredMedia media;
+
+        ThumbnailTask(MediaStore.StoredMedia media) {
+            this.media = media;
+        }
+
+        @Override
+        public void run() {
+            try {
+                generate(media);
+            } catch (Exception e) {
+                failed.increment();
+                log.debug("thumbnail generation failed for {}: {}", media.name(), e.toString());
+            } finally {
+                inFlight.remove(media.hash());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
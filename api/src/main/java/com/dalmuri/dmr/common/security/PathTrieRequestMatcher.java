@@ -0,0 +1,151 @@
+package com.dalmuri.dmr.common.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class PathTrieRequestMatcher implements RequestMatcher {
+
+    /*
+    * [PathTrieRequestMatcher : 경로 목록을 트리 하나로]
+    * requestMatchers("/a/**", "/b", ...)는 패턴마다 matcher를 하나씩 만들고, 요청마다 앞에서부터 하나씩 맞춰 본다.
+    * (패턴 수만큼 AntPathMatcher 파싱 / 비교. MVC matcher면 HandlerMappingIntrospector까지 거친다)
+    *
+    * 여기서는 패턴을 '/' 단위 조각(segment)으로 잘라서 트리 하나로 만들어 두고,
+    * 요청 경로를 앞에서부터 한 번만 따라 내려간다. → 패턴 수와 상관없이 경로 깊이만큼만 비교
+    *
+    * 지원하는 모양 (조각 단위)
+    * - /chat           : 딱 이 경로
+    * - /uploads/**     : /uploads 와 그 아래 전부 (AntPathMatcher와 같음)
+    * - /diary/*        : 조각 하나 아무거나
+    * 조각 안에 와일드카드가 섞인 패턴(*.png, {name}, ?)은 트리에 넣지 않고 AntPathRequestMatcher로 따로 맞춘다.
+    *
+    * 경로는 AntPathRequestMatcher와 같이 servletPath + pathInfo를 본다.
+    * (';', '//', '/../', 인코딩된 '/'는 그 전에 StrictHttpFirewall이 막는다)
+    *
+    * */
+
+    private final Node root = new Node();
+    private final List<RequestMatcher> fallback = new ArrayList<>();
+    private final List<String> patterns;
+
+    public PathTrieRequestMatcher(Collection<String> patterns) {
+        this.patterns = List.copyOf(patterns);
+        for (String pattern : this.patterns) {
+            if (!add(pattern)) {
+                fallback.add(new AntPathRequestMatcher(pattern));
+            }
+        }
+    }
+
+    private boolean add(String pattern) {
+        if (!pattern.startsWith("/")) {
+            return false;
+        }
+        String[] segments = pattern.substring(1).split("/", -1);
+        for (String segment : segments) {
+            if (!segment.equals("*") && !segment.equals("**") && hasWildcard(segment)) {
+                return false;
+            }
+        }
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals("**")) {
+                if (i != segments.length - 1) {
+                    return false; // 가운데 ** (/a/**/b)는 AntPathMatcher에 맡긴다.
+                }
+                node.prefix = true;
+                return true;
+            }
+            if (segment.equals("*")) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+        }
+        node.terminal = true;
+        return true;
+    }
+
+    private static boolean hasWildcard(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean matches(HttpServletRequest request) {
+        if (matches(requestPath(request))) {
+            return true;
+        }
+        for (RequestMatcher matcher : fallback) {
+            if (matcher.matches(request)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 트리에 들어간 패턴만 본다. (fallback 패턴은 요청이 있어야 맞출 수 있음) */
+    public boolean matches(String path) {
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return false;
+        }
+        return matches(root, path, 1);
+    }
+
+    // start : 지금 볼 조각의 시작 위치. 조각 끝은 다음 '/' 또는 경로 끝
+    private static boolean matches(Node node, String path, int start) {
+        if (node.prefix) {
+            return true; // /a/** 는 /a 와 그 아래 전부
+        }
+        if (start > path.length()) {
+            return node.terminal;
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        Node child = node.children.get(path.substring(start, end));
+        if (child != null && matches(child, path, end + 1)) {
+            return true;
+        }
+        // '*'는 빈 조각과는 맞지 않는다. (AntPathMatcher와 같음)
+        return node.wildcard != null && end > start && matches(node.wildcard, path, end + 1);
+    }
+
+    private static String requestPath(HttpServletRequest request) {
+        String servletPath = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        if (pathInfo == null) {
+            return servletPath;
+        }
+        return servletPath == null || servletPath.isEmpty() ? pathInfo : servletPath + pathInfo;
+    }
+
+    @Override
+    public String toString() {
+        return "PathTrieRequestMatcher " + patterns;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcard;
+        private boolean terminal;
+        private boolean prefix;
+    }
+}
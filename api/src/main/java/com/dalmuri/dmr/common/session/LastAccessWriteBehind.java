@@ -0,0 +1,152 @@
+package com.dalmuri.dmr.common.session;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+public class LastAccessWriteBehind implements AutoCloseable {
+
+    /*
+    * [LastAccessWriteBehind : 마지막 접근 시각 모아서 쓰기]
+    * Spring Session은 요청마다 세션의 lastAccessedTime을 바꾸고, 끝날 때 SPRING_SESSION 행을 UPDATE 한다.
+    * 화면을 넘겨 보기만 하는 요청도 세션 하나당 UPDATE 한 번 → 세션 테이블이 쓰기로 바빠진다.
+    *
+    * 접근 시각만 바뀐 세션은 여기에 (세션 id → 가장 최근 시각) 하나만 남겨 두고,
+    * flushInterval마다 트랜잭션 하나에 UPDATE 여러 개를 JDBC batch로 보내고 commit 한 번.
+    * 같은 세션을 그 사이 여러 번 건드려도 UPDATE는 한 번이다.
+    *
+    * - WHERE LAST_ACCESS_TIME < ? : 다른 노드가 더 최근 시각을 이미 썼으면 덮어쓰지 않는다.
+    * - 실패하면 다음 주기에 다시 쓴다. (그 사이 더 최근 시각이 들어왔으면 그것만)
+    * - 만료 정리(cleanup)는 EXPIRY_TIME을 보고 지운다. flushInterval은 세션 유지 시간(기본 30분)보다 훨씬 짧아야 한다.
+    *
+    * */
+
+    private final DataSource dataSource;
+    private final String updateSql;
+    private final int maxBatch;
+    private final Map<String, Touch> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public LastAccessWriteBehind(DataSource dataSource, String tableName, Duration flushInterval, int maxBatch) {
+        this.dataSource = dataSource;
+        this.updateSql = "UPDATE " + tableName
+                + " SET LAST_ACCESS_TIME = ?, EXPIRY_TIME = ? WHERE SESSION_ID = ? AND LAST_ACCESS_TIME < ?";
+        this.maxBatch = Math.max(1, maxBatch);
+        long flushMillis = Math.max(1, flushInterval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** 세션의 마지막 접근 시각을 다음 flush 때 쓴다. 이미 더 최근 시각이 있으면 그대로 둔다. */
+    public void touch(String sessionId, Instant lastAccessedTime, Duration maxInactiveInterval) {
+        long lastAccess = lastAccessedTime.toEpochMilli();
+        long expiry = maxInactiveInterval.isNegative() ? Long.MAX_VALUE : lastAccess + maxInactiveInterval.toMillis();
+        pending.merge(sessionId, new Touch(lastAccess, expiry), Touch::newer);
+    }
+
+    /** 삭제됐거나 id가 바뀐 세션 / 방금 통째로 저장한 세션은 따로 쓸 필요가 없다. */
+    public void forget(String sessionId) {
+        pending.remove(sessionId);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long writtenCount() {
+        return written.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    void flush() {
+        List<String> ids = new ArrayList<>(Math.min(pending.size(), maxBatch));
+        List<Touch> touches = new ArrayList<>(Math.min(pending.size(), maxBatch));
+        for (String id : pending.keySet()) {
+            Touch touch = pending.remove(id);
+            if (touch == null) {
+                continue;
+            }
+            ids.add(id);
+            touches.add(touch);
+            if (ids.size() == maxBatch) {
+                write(ids, touches);
+                ids.clear();
+                touches.clear();
+            }
+        }
+        if (!ids.isEmpty()) {
+            write(ids, touches);
+        }
+    }
+
+    private void write(List<String> ids, List<Touch> touches) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement update = connection.prepareStatement(updateSql)) {
+                for (int i = 0; i < ids.size(); i++) {
+                    Touch touch = touches.get(i);
+                    update.setLong(1, touch.lastAccess());
+                    update.setLong(2, touch.expiry());
+                    update.setString(3, ids.get(i));
+                    update.setLong(4, touch.lastAccess());
+                    update.addBatch();
+                }
+                update.executeBatch();
+                connection.commit();
+                written.add(ids.size());
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            failures.increment();
+            log.warn("session last-access flush failed ({} sessions), retrying next round: {}", ids.size(), e.toString());
+            for (int i = 0; i < ids.size(); i++) {
+                pending.merge(ids.get(i), touches.get(i), Touch::newer);
+            }
+        }
+    }
+
+    /** 남은 것을 쓰고 멈춘다. */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    record Touch(long lastAccess, long expiry) {
+
+        static Touch newer(Touch a, Touch b) {
+            return a.lastAccess >= b.lastAccess ? a : b;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.dalmuri.dmr.common.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class NearCacheSessionRepository
+        implements FindByIndexNameSessionRepository<NearCacheSessionRepository.NearSession>, MeterBinder {
+
+    /*
+    * [NearCacheSessionRepository : Spring Session JDBC 앞의 near-cache]
+    * 예전 : 세션을 쓰는 요청마다 SELECT(세션 + 속성) 한 번, 끝날 때 UPDATE(마지막 접근 시각) 한 번.
+    *   속성은 요청마다 다시 역직렬화된다.
+    *
+    * 지금 :
+    * 1) findById : 이 노드가 ttl 안에 읽은 세션이면 DB에 가지 않는다. (역직렬화된 속성을 그대로 복사해서 씀)
+    *    아니면 원래 저장소(JdbcIndexedSessionRepository)에서 읽고 cache에 넣는다. → SELECT 한 번
+    * 2) save : 바뀐 것에 따라
+    *    - 마지막 접근 시각만 바뀜 : LastAccessWriteBehind에 맡긴다. (요청 안에서는 DB에 가지 않음)
+    *    - 속성 / 유지 시간 / id가 바뀜 : 원래 저장소의 세션에 바뀐 것만 옮겨서 save (트랜잭션 한 번)
+    *      cache에서 꺼낸 세션이었다면 원래 세션을 이때 읽는다. (로그인 등 드문 경우에만 두 번)
+    * 3) 요청마다 cache의 세션을 복사해서 준다.(MapSession) 같은 세션으로 동시에 들어온 요청끼리 서로의 변경 표시(delta)를 섞지 않는다.
+    *    저장이 끝나면 이 요청이 바꾼 것만 cache의 세션에 합친다. (cache.asMap().computeIfPresent)
+    *    → 복사본 통째로 덮으면, 동시에 끝난 다른 요청이 바꾼 속성이 이 노드에서 ttl 동안 사라진다.
+    *    cache에 없으면 넣지 않는다. (다음 findById가 원래 저장소에서 최신으로 읽음)
+    * 4) changeSessionId로 바뀐 예전 id는 retired에 ttl 동안 남겨서 다시 cache에 올라오지 않게 한다.
+    *    같은 예전 id로 동시에 들어온 요청의 findById / save가 로그인 전 세션을 되살리면 session fixation 방지가 무너진다.
+    *
+    * 다른 노드에서 바뀐 속성 / 로그아웃은 최대 ttl만큼 늦게 보인다. (같은 노드의 변경은 바로 반영)
+    *
+    * */
+
+    private final FindByIndexNameSessionRepository<Session> delegate;
+    private final LastAccessWriteBehind writeBehind;
+    private final Cache<String, MapSession> cache;
+    // changeSessionId로 버려진 id. cache 항목보다 오래 남아야 하므로 같은 ttl로 잡는다.
+    private final Cache<String, Boolean> retired;
+
+    @SuppressWarnings("unchecked")
+    public NearCacheSessionRepository(FindByIndexNameSessionRepository<? extends Session> delegate,
+                                      LastAccessWriteBehind writeBehind, Duration ttl, long maximumSize) {
+        // 원래 저장소가 만든 세션만 원래 저장소에 돌려주므로 타입은 맞는다. (JdbcSession은 밖에서 이름을 쓸 수 없음)
+        this.delegate = (FindByIndexNameSessionRepository<Session>) delegate;
+        this.writeBehind = writeBehind;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        this.retired = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    @Override
+    public NearSession createSession() {
+        Session created = delegate.createSession();
+        return new NearSession(new MapSession(created), created, true);
+    }
+
+    @Override
+    public NearSession findById(String id) {
+        if (retired.getIfPresent(id) != null) {
+            return null;
+        }
+        MapSession cached = cache.getIfPresent(id);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return new NearSession(new MapSession(cached), null, false);
+            }
+            cache.invalidate(id);
+        }
+
+        Session loaded = delegate.findById(id); // 만료된 세션이면 원래 저장소가 지우고 null
+        if (loaded == null) {
+            writeBehind.forget(id);
+            return null;
+        }
+        MapSession snapshot = new MapSession(loaded);
+        cache.put(id, snapshot);
+        if (retired.getIfPresent(id) != null) {
+            // 읽는 사이 다른 요청이 id를 바꿨다.
+            cache.invalidate(id);
+            return null;
+        }
+        return new NearSession(new MapSession(snapshot), loaded, false);
+    }
+
+    @Override
+    public void save(NearSession session) {
+        String originalId = session.originalId;
+        if (session.isNew || session.needsWrite()) {
+            Session target = session.delegateSession();
+            if (target == null) {
+                // 그 사이 다른 노드에서 지워진 세션
+                cache.invalidate(originalId);
+                writeBehind.forget(originalId);
+                return;
+            }
+            session.applyTo(target);
+            delegate.save(target);
+            writeBehind.forget(originalId);
+        } else if (session.lastAccessChanged) {
+            writeBehind.touch(session.getId(), session.getLastAccessedTime(), session.getMaxInactiveInterval());
+        }
+
+        if (!originalId.equals(session.getId())) {
+            retired.put(originalId, Boolean.TRUE);
+            cache.invalidate(originalId);
+        } else if (session.isNew) {
+            cache.asMap().putIfAbsent(session.getId(), new MapSession(session.state));
+        } else {
+            cache.asMap().computeIfPresent(session.getId(), (id, cached) -> session.mergeInto(cached));
+        }
+        session.saved();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        cache.invalidate(id);
+        writeBehind.forget(id);
+        delegate.deleteById(id);
+    }
+
+    // principal 이름으로 찾기는 드물고(동시 로그인 관리 등) 항상 최신이어야 하므로 원래 저장소로 바로 간다.
+    @Override
+    public Map<String, NearSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        Map<String, Session> found = delegate.findByIndexNameAndIndexValue(indexName, indexValue);
+        Map<String, NearSession> sessions = new HashMap<>(found.size());
+        found.forEach((id, session) -> sessions.put(id, new NearSession(new MapSession(session), session, false)));
+        return sessions;
+    }
+
+    public long cachedSessions() {
+        return cache.estimatedSize();
+    }
+
+    // cache.gets{cache="session.near",result=hit|miss}, session.write-behind.*
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "session.near");
+        Gauge.builder("session.write-behind.pending", writeBehind, LastAccessWriteBehind::pendingCount)
+                .register(registry);
+        FunctionCounter.builder("session.write-behind.written", writeBehind, LastAccessWriteBehind::writtenCount)
+                .register(registry);
+        FunctionCounter.builder("session.write-behind.failures", writeBehind, LastAccessWriteBehind::failureCount)
+                .register(registry);
+    }
+
+    /**
+     * 요청 하나가 쓰는 세션. 읽기는 복사본(state)에서, 바뀐 것은 표시만 해 두고 save 때 원래 세션에 옮긴다.
+     * */
+    public final class NearSession implements Session {
+
+        private final MapSession state;
+        private final String originalId;
+        private final boolean isNew;
+        private Session loaded;
+
+        private final Set<String> changedAttributes = new HashSet<>();
+        private boolean maxInactiveChanged;
+        private boolean lastAccessChanged;
+        private boolean idChanged;
+
+        NearSession(MapSession state, Session loaded, boolean isNew) {
+            this.state = state;
+            this.originalId = state.getId();
+            this.loaded = loaded;
+            this.isNew = isNew;
+        }
+
+        @Override
+        public String getId() {
+            return state.getId();
+        }
+
+        /*
+        * [changeSessionId]
+        * 로그인할 때 Spring Security가 부른다. (session fixation 방지)
+        * 새 id는 원래 저장소의 세션이 정하고, save 때 원래 저장소가 행의 id를 바꾼다.
+        *
+        * */
+        @Override
+        public String changeSessionId() {
+            Session target = delegateSession();
+            if (target == null) {
+                throw new IllegalStateException("session " + originalId + " no longer exists");
+            }
+            String newId = target.changeSessionId();
+            state.setId(newId);
+            idChanged = true;
+            return newId;
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return state.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return state.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            state.setAttribute(attributeName, attributeValue);
+            changedAttributes.add(attributeName);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            state.removeAttribute(attributeName);
+            changedAttributes.add(attributeName);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return state.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            state.setLastAccessedTime(lastAccessedTime);
+            lastAccessChanged = true;
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return state.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            state.setMaxInactiveInterval(interval);
+            maxInactiveChanged = true;
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return state.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.isExpired();
+        }
+
+        boolean needsWrite() {
+            return !changedAttributes.isEmpty() || maxInactiveChanged || idChanged;
+        }
+
+        // 원래 저장소의 세션. cache에서 꺼낸 세션이면 이때 읽는다. (없어졌으면 null)
+        Session delegateSession() {
+            if (loaded == null) {
+                loaded = delegate.findById(originalId);
+            }
+            return loaded;
+        }
+
+        void applyTo(Session target) {
+            for (String name : changedAttributes) {
+                Object value = state.getAttribute(name);
+                if (value == null) {
+                    target.removeAttribute(name);
+                } else {
+                    target.setAttribute(name, value);
+                }
+            }
+            if (maxInactiveChanged || isNew) {
+                target.setMaxInactiveInterval(state.getMaxInactiveInterval());
+            }
+            target.setLastAccessedTime(state.getLastAccessedTime());
+        }
+
+        // cache의 세션에 이 요청이 바꾼 것만 얹은 새 복사본 (다른 요청이 바꾼 속성은 그대로)
+        MapSession mergeInto(MapSession cached) {
+            MapSession merged = new MapSession(cached);
+            for (String name : changedAttributes) {
+                merged.setAttribute(name, state.getAttribute(name)); // null이면 지워진다.
+            }
+            if (maxInactiveChanged) {
+                merged.setMaxInactiveInterval(state.getMaxInactiveInterval());
+            }
+            if (state.getLastAccessedTime().isAfter(merged.getLastAccessedTime())) {
+                merged.setLastAccessedTime(state.getLastAccessedTime());
+            }
+            return merged;
+        }
+
+        void saved() {
+            changedAttributes.clear();
+            maxInactiveChanged = false;
+            lastAccessChanged = false;
+            idChanged = false;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.dalmuri.dmr.common.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * multipart/form-data 본문을 들어오는 대로 읽는 파서
+ * - 파트 전체를 메모리나 임시 파일에 모으지 않고, 파트 본문을 InputStream으로 바로 넘겨준다.
+ * - 사용하는 메모리는 읽기 버퍼 하나뿐이다.
+ *
+ * <pre>
+ * MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary);
+ * for (MultipartStreamReader.Part part; (part = reader.next()) != null; ) {
+ *     part.body().transferTo(...);
+ * }
+ * </pre>
+ * */
+public class MultipartStreamReader {
+
+    /*
+    * [구분자 찾기]
+    * 파트 본문은 "\r\n--boundary" 가 나올 때까지다.
+    * 버퍼 끝에 구분자가 걸쳐 있을 수 있으므로, 구분자 길이 - 1 바이트는 다음 read 때까지 내보내지 않고 남겨둔다.
+    * 맨 앞의 "--boundary"도 같은 규칙으로 찾으려고 버퍼 앞에 "\r\n"을 붙여 시작한다. (preamble은 빈 파트처럼 건너뜀)
+    *
+    * */
+
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    // 버퍼 안 구분자 위치 캐시 (fill()로 버퍼가 바뀌기 전까지 유효). 작은 read를 여러 번 해도 같은 구간을 다시 찾지 않는다.
+    private int found = UNKNOWN;
+    private int safeEnd;
+
+    private PartInputStream current;
+    private boolean finished;
+
+    private static final int UNKNOWN = -2;
+
+    public MultipartStreamReader(InputStream in, String boundary) {
+        this(in, boundary, 64 * 1024);
+    }
+
+    public MultipartStreamReader(InputStream in, String boundary, int bufferSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buf = new byte[Math.max(bufferSize, delimiter.length * 2 + MAX_HEADER_BYTES)];
+        buf[0] = '\r';
+        buf[1] = '\n';
+        limit = 2;
+        // preamble을 빈 파트로 보고 건너뛴다.
+        current = new PartInputStream();
+    }
+
+    /** Content-Type 헤더에서 boundary를 꺼낸다. multipart가 아니면 null */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            String p = param.trim();
+            if (p.regionMatches(true, 0, "boundary=", 0, 9)) {
+                String value = p.substring(9);
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value.isEmpty() || value.length() > 70 ? null : value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 다음 파트로 넘어간다. 이전 파트의 본문을 다 읽지 않았으면 나머지는 버린다.
+     * 더 이상 파트가 없으면 null
+     * */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (current != null) {
+            current.skipRest();
+        }
+
+        // 구분자 바로 뒤 : "--" 이면 끝, 아니면 "\r\n" 다음에 헤더
+        ensure(2);
+        if (limit - pos >= 2 && buf[pos] == '-' && buf[pos + 1] == '-') {
+            finished = true;
+            current = null;
+            return null;
+        }
+        skipLineEnd();
+
+        String name = null;
+        String filename = null;
+        String contentType = null;
+        int headerBytes = 0;
+        String line;
+        while (!(line = readHeaderLine()).isEmpty()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw new MalformedMultipartException("part headers too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals("content-disposition")) {
+                name = parameter(value, "name");
+                filename = parameter(value, "filename");
+            } else if (header.equals("content-type")) {
+                contentType = value;
+            }
+        }
+
+        current = new PartInputStream();
+        return new Part(name, filename, contentType, current);
+    }
+
+    // "\r\n" (또는 transport padding 공백 뒤의 "\r\n")을 건너뛴다.
+    private void skipLineEnd() throws IOException {
+        readHeaderLine();
+    }
+
+    // 헤더 한 줄을 읽는다. 브라우저는 파일명을 UTF-8 그대로 보내므로 UTF-8로 읽는다.
+    private String readHeaderLine() throws IOException {
+        int scanned = 0; // pos 뒤로 이미 확인한 바이트 수
+        while (true) {
+            for (int i = pos + scanned; i + 1 < limit; i++) {
+                if (buf[i] == '\r' && buf[i + 1] == '\n') {
+                    String line = new String(buf, pos, i - pos, StandardCharsets.UTF_8);
+                    pos = i + 2;
+                    return line;
+                }
+            }
+            scanned = Math.max(0, limit - pos - 1);
+            if (limit - pos >= MAX_HEADER_BYTES) {
+                throw new MalformedMultipartException("part header line too long");
+            }
+            if (!fill()) {
+                throw new MalformedMultipartException("unexpected end of multipart body");
+            }
+        }
+    }
+
+    private static String parameter(String headerValue, String key) {
+        for (String param : headerValue.split(";")) {
+            String p = param.trim();
+            int eq = p.indexOf('=');
+            if (eq > 0 && p.substring(0, eq).trim().equalsIgnoreCase(key)) {
+                String value = p.substring(eq + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    // 버퍼에 최소 n바이트가 있도록 채운다. (스트림이 끝나면 그보다 적을 수 있음)
+    private void ensure(int n) throws IOException {
+        while (limit - pos < n && fill()) {
+            // 계속 채우기
+        }
+    }
+
+    // 남은 데이터를 버퍼 앞으로 당기고 뒤를 채운다. 더 읽을 게 없으면 false
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        found = UNKNOWN;
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    // buf[from, limit)에서 구분자 위치. 없으면 -1
+    private int indexOfDelimiter(int from) {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buf[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public record Part(String name, String filename, String contentType, InputStream body) {
+
+        public boolean isFile() {
+            return filename != null;
+        }
+    }
+
+    public static class MalformedMultipartException extends IOException {
+        public MalformedMultipartException(String message) {
+            super(message);
+        }
+    }
+
+    // 현재 파트의 본문. 구분자를 만나면 -1
+    private final class PartInputStream extends InputStream {
+
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done || current != this) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            while (true) {
+                if (found == UNKNOWN) {
+                    found = indexOfDelimiter(pos);
+                    // 구분자 앞까지, 또는 구분자가 걸쳐 있을 수 있는 끝부분을 뺀 만큼은 본문이 확실하다.
+                    safeEnd = found >= 0 ? found : limit - (delimiter.length - 1);
+                }
+                if (found == pos) {
+                    pos += delimiter.length;
+                    found = UNKNOWN;
+                    done = true;
+                    return -1;
+                }
+                if (safeEnd > pos) {
+                    int n = Math.min(len, safeEnd - pos);
+                    System.arraycopy(buf, pos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+                if (!fill()) {
+                    throw new MalformedMultipartException("unexpected end of multipart body");
+                }
+            }
+        }
+
+        void skipRest() throws IOException {
+            byte[] scratch = new byte[8192];
+            while (read(scratch, 0, scratch.length) >= 0) {
+                // 버리기
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.dalmuri.dmr.common.upload;
+
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.media.MediaStore;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@Component
+public class StreamingUploadWriter {
+
+    /*
+    * [StreamingUploadWriter : 요청 본문 → 최종 파일, 한 번에]
+    * 예전 : MultipartFile → 톰캣이 임시 파일에 한 번 쓰고 → Files.copy로 api/uploads/에 또 한 번 씀 (디스크 쓰기 2번)
+    * 지금 : 파트 본문을 읽는 대로
+    *   1) 저장 폴더 안의 .part 파일에 FileChannel로 쓰고
+    *   2) 같은 바이트로 SHA-256을 계산하고
+    *   3) 크기 제한을 넘으면 바로 멈춘다. (다 받은 뒤에 413을 주지 않음)
+    * 다 받으면 MediaStore가 해시 자리로 rename 한다. (같은 파일 시스템이라 복사 없이 이름만 바뀐다)
+    *
+    * */
+
+    private final MediaStore mediaStore;
+    private final long maxFileSize;
+    private final int bufferSize;
+
+    public StreamingUploadWriter(MediaStore mediaStore, MediaProperties properties) {
+        this.mediaStore = mediaStore;
+        this.maxFileSize = properties.getStream().getMaxFileSize().toBytes();
+        this.bufferSize = (int) properties.getStream().getBufferSize().toBytes();
+    }
+
+    public long maxFileSize() {
+        return maxFileSize;
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /** body를 끝까지 읽어 저장하고, 저장된 파일 정보를 돌려준다. */
+    public MediaStore.StoredMedia write(InputStream body, String originalFilename) throws IOException {
+        return mediaStore.put(body, MediaStore.extensionOf(originalFilename), maxFileSize, bufferSize);
+    }
+}
@@ -0,0 +1,66 @@
+package com.dalmuri.dmr.common.upload;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 업로드 경로별 크기 / 걸린 시간 / 실패 수
+ * - upload.size{route}     : 저장된 파일 크기 (histogram)
+ * - upload.duration{route} : 요청을 받기 시작해서 저장이 끝날 때까지 (청크 업로드는 upload-start부터)
+ * - upload.failures{route}
+ * route = multipart(/uploads), stream(/uploads/stream), chunked(채팅 청크 업로드), chat(채팅 바이너리 메시지)
+ * meter는 생성자에서 경로마다 미리 만들어 두고, 기록할 때는 EnumMap에서 꺼내기만 한다.
+ * */
+@Component
+public class UploadMetrics {
+
+    public enum Route {
+        MULTIPART, STREAM, CHUNKED, CHAT;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final EnumMap<Route, DistributionSummary> sizes = new EnumMap<>(Route.class);
+    private final EnumMap<Route, Timer> durations = new EnumMap<>(Route.class);
+    private final EnumMap<Route, Counter> failures = new EnumMap<>(Route.class);
+
+    public UploadMetrics(MeterRegistry registry) {
+        for (Route route : Route.values()) {
+            sizes.put(route, DistributionSummary.builder("upload.size")
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag("route", route.tag)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(1024.0)
+                    .maximumExpectedValue(2.0 * 1024 * 1024 * 1024)
+                    .register(registry));
+            durations.put(route, Timer.builder("upload.duration")
+                    .tag("route", route.tag)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(registry));
+            failures.put(route, Counter.builder("upload.failures")
+                    .tag("route", route.tag)
+                    .register(registry));
+        }
+    }
+
+    /** 저장이 끝났다. startNanos = System.nanoTime() (받기 시작한 시점) */
+    public void stored(Route route, long bytes, long startNanos) {
+        sizes.get(route).record(bytes);
+        durations.get(route).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void failed(Route route) {
+        failures.get(route).increment();
+    }
+}
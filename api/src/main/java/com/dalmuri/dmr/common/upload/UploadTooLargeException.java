@@ -0,0 +1,11 @@
+package com.dalmuri.dmr.common.upload;
+
+import java.io.IOException;
+
+/** 업로드 도중 파일 크기 제한을 넘었을 때 */
+public class UploadTooLargeException extends IOException {
+
+    public UploadTooLargeException(long maxBytes) {
+        super("upload exceeds " + maxBytes + " bytes");
+    }
+}
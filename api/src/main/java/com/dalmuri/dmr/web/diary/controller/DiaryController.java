@@ -2,10 +2,23 @@ package com.dalmuri.dmr.web.diary.controller;
 
 import com.dalmuri.dmr.web.diary.model.DiaryRequestDTO;
 import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.dalmuri.dmr.web.diary.model.DiarySaveRequestDTO;
+import com.dalmuri.dmr.web.diary.model.DiaryTrendDTO;
+import com.dalmuri.dmr.web.diary.service.DiaryPdfImportService;
 import com.dalmuri.dmr.web.diary.service.DiaryService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.time.LocalDate;
+import java.util.List;
 
 @RestController
 @CrossOrigin(origins="http://localhost:1003")
@@ -89,6 +102,7 @@ public class DiaryController {
     * */
 
     private final DiaryService service;
+    private final DiaryPdfImportService pdfImportService;
 
     /*
     * [Constructor]
@@ -122,5 +136,65 @@ public class DiaryController {
         return service.getDiaryScore(request);
     } // getDiaryScore
 
+    /*
+    * [여러 일기 한 번에 분석]
+    * 요청 Body : [{"text": "..."}, {"text": "..."}, ...]
+    * 응답 : 요청과 같은 순서의 [{"score": .., "magnitude": ..}, ...]
+    * 야간 재분석 작업, 모바일 동기화처럼 한꺼번에 몰려오는 요청을 HTTP 요청 한 번 + 백엔드 호출 몇 번으로 처리한다.
+    *
+    * */
+    @PostMapping("/get-diary-scores")
+    public ResponseEntity<List<DiaryResponseDTO>> getDiaryScores(@RequestBody List<DiaryRequestDTO> requests) {
+        return service.getDiaryScores(requests);
+    } // getDiaryScores
+
+    /*
+    * [PDF 일기장 가져오기]
+    * 요청 Body : PDF 파일 그대로 (Content-Type: application/pdf)
+    * 응답 : 페이지별 점수를 분석이 끝나는 대로 한 줄씩 보내는 NDJSON 스트림 (형식은 DiaryPdfImportService 참고)
+    *
+    * */
+    @PostMapping(value = "/import-pdf", consumes = MediaType.APPLICATION_PDF_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> importPdf(HttpServletRequest request) throws IOException {
+        return pdfImportService.importPdf(request.getContentLengthLong(), request.getInputStream());
+    } // importPdf
+
+    /*
+    * [일기 저장]
+    * 요청 Body : {"diaryId": "클라이언트가 정한 id", "text": "..."}
+    * 응답 : 202 + {"score": .., "magnitude": ..} (저장은 잠시 뒤 한꺼번에), 분석 실패 / 저장 대기열이 가득 차면 503
+    * 주인은 로그인한 사용자(Principal). 같은 diaryId로 다시 보내면 한 번만 저장된다.
+    *
+    * [Principal]
+    * Spring Security가 인증한 사용자. 로그인하지 않았으면 null
+    * (SecurityConfig에서 /diary/entries, /diary/trends는 인증 체인으로 보내므로 보통 여기까지 오지 않는다)
+    *
+    * */
+    @PostMapping("/entries")
+    public ResponseEntity<DiaryResponseDTO> saveDiary(Principal principal, @RequestBody DiarySaveRequestDTO request) {
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return service.saveDiary(principal.getName(), request);
+    } // saveDiary
+
+    /*
+    * [감정 추이]
+    * 요청 : GET /diary/trends?period=week&from=2026-01-01&to=2026-06-30 (from, to는 생략 가능)
+    * 응답 : 오래된 것부터 [{"bucket": "2026-01-05", "entries": 3, "averageScore": .., "averageMagnitude": .., "minScore": .., "maxScore": ..}, ...]
+    * 로그인한 사용자 자신의 일기만 집계된다. 일기가 없는 기간은 빠진다.
+    *
+    * */
+    @GetMapping("/trends")
+    public ResponseEntity<List<DiaryTrendDTO>> getTrends(
+            Principal principal,
+            @RequestParam(defaultValue = "day") String period,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (principal == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return service.getTrends(principal.getName(), period, from, to);
+    } // getTrends
 
-}
\ No newline at end of file
+}
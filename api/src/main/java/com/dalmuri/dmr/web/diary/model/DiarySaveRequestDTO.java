@@ -0,0 +1,15 @@
+package com.dalmuri.dmr.web.diary.model;
+
+import lombok.*;
+
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiarySaveRequestDTO {
+
+    // 클라이언트가 정한 일기 id (사용자 안에서 유일). 같은 id로 다시 보내면 한 번만 저장된다.
+    private String diaryId;
+    private String text;
+}
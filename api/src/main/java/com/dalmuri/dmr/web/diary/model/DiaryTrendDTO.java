@@ -0,0 +1,22 @@
+package com.dalmuri.dmr.web.diary.model;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiaryTrendDTO {
+
+    // 기간의 첫날 (일 : 그날, 주 : 월요일, 월 : 1일)
+    private LocalDate bucket;
+    private long entries;
+    private float averageScore;
+    private float averageMagnitude;
+    private float minScore;
+    private float maxScore;
+
+}
@@ -0,0 +1,114 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+public class DiaryScoreCache implements MeterBinder {
+
+    /*
+    * [DiaryScoreCache]
+    * 같은(혹은 거의 같은) 일기 텍스트가 다시 들어오면 원격 analyzeSentiment 호출 없이 바로 점수를 돌려주기 위한 캐시
+    *
+    * 1) key : 정규화한 텍스트의 SHA-256 해시 앞 128bit (TextKey). 원문은 캐시에 남기지 않는다.
+    *    정규화 = 유니코드 NFC + 소문자 + 연속 공백 하나로 + 앞뒤 공백 제거
+    *    → 임시저장/재전송처럼 공백만 달라진 텍스트도 같은 key가 된다.
+    * 2) value : score, magnitude 두 숫자만 저장 (CachedScore)
+    * 3) Caffeine : 크기 제한(maximumSize) + TTL(expireAfterWrite). 제거 정책은 Caffeine 기본값인 W-TinyLFU
+    *    recordStats() : hit / miss / eviction 카운터를 기록 → cache.gets{cache="diary.score",result=hit|miss} 등으로 낸다. (적중률)
+    *
+    * */
+
+    private final Cache<TextKey, CachedScore> cache;
+
+    public DiaryScoreCache(long maximumSize, Duration ttl) {
+        this(maximumSize, ttl, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    // 테스트용 : 시계를 직접 움직이고, 제거(eviction)를 호출한 스레드에서 바로 끝낸다.
+    DiaryScoreCache(long maximumSize, Duration ttl, Ticker ticker, Executor executor) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats()
+                .build();
+    }
+
+    public DiaryResponseDTO get(TextKey key) {
+        CachedScore cached = cache.getIfPresent(key);
+        return cached == null ? null : new DiaryResponseDTO(cached.score(), cached.magnitude());
+    }
+
+    public void put(TextKey key, DiaryResponseDTO response) {
+        cache.put(key, new CachedScore(response.getScore(), response.getMagnitude()));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "diary.score");
+    }
+
+    public static TextKey keyOf(String text) {
+        byte[] digest = sha256().digest(normalize(text).getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        return new TextKey(buffer.getLong(), buffer.getLong());
+    }
+
+    static String normalize(String text) {
+        String nfc = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(nfc.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < nfc.length(); i++) {
+            char c = nfc.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public record TextKey(long high, long low) {
+    }
+
+    private record CachedScore(float score, float magnitude) {
+    }
+}
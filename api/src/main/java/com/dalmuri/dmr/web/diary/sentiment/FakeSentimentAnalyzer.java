@@ -0,0 +1,64 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+public class FakeSentimentAnalyzer implements SentimentAnalyzer {
+
+    /*
+    * [로컬 가짜 백엔드]
+    * 네트워크, Google 인증 정보 없이 감정 분석 경로 전체를 테스트/부하 측정하기 위한 구현체
+    * latency 만큼 잠든 뒤(=원격 호출 흉내) 고정된 score, magnitude를 돌려준다.
+    * 가상 스레드 위에서 호출되므로 sleep 해도 플랫폼 스레드를 붙잡지 않는다.
+    *
+    * */
+    private final Duration latency;
+    private final float score;
+    private final float magnitude;
+    private final LongAdder calls = new LongAdder();
+
+    public FakeSentimentAnalyzer(Duration latency, float score, float magnitude) {
+        this.latency = latency;
+        this.score = score;
+        this.magnitude = magnitude;
+    }
+
+    @Override
+    public DiaryResponseDTO analyze(String text) {
+        calls.increment();
+        simulateRoundTrip();
+        return new DiaryResponseDTO(score, magnitude);
+    }
+
+    // GoogleSentimentAnalyzer와 같이 텍스트마다 RPC 하나. 한꺼번에 보내므로 기다리는 시간은 왕복 한 번
+    @Override
+    public List<DiaryResponseDTO> analyzeAll(List<String> texts) {
+        calls.add(texts.size());
+        simulateRoundTrip();
+        List<DiaryResponseDTO> results = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            results.add(new DiaryResponseDTO(score, magnitude));
+        }
+        return results;
+    }
+
+    // 지금까지 보낸 RPC 수
+    public long calls() {
+        return calls.sum();
+    }
+
+    private void simulateRoundTrip() {
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("fake sentiment call interrupted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.language.v1.AnalyzeSentimentRequest;
+import com.google.cloud.language.v1.AnalyzeSentimentResponse;
+import com.google.cloud.language.v1.Document;
+import com.google.cloud.language.v1.LanguageServiceClient;
+import com.google.cloud.language.v1.Sentiment;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+@RequiredArgsConstructor
+public class GoogleSentimentAnalyzer implements SentimentAnalyzer {
+
+    /*
+    * [LanguageServiceClient 재사용]
+    * 예전에는 요청마다 try (LanguageServiceClient language = LanguageServiceClient.create())로 클라이언트를 만들었다.
+    * 그러면 요청마다 gRPC 채널 생성 + 인증 정보 로드 + TLS handshake를 다시 하게 된다.
+    * LanguageServiceClient는 thread-safe 하므로 SentimentConfig에서 Bean으로 하나만 만들고 여기서 계속 재사용한다.
+    * (close()는 애플리케이션 종료 시 스프링이 호출)
+    *
+    * */
+    private final LanguageServiceClient language;
+
+    @Override
+    public DiaryResponseDTO analyze(String text) {
+        /*
+         * [구글에서 제공하는 감정 점수(Sentiment)의 범위]
+         * 출처 : https://cloud.google.com/natural-language/docs/basics?hl=ko#interpreting_sentiment_analysis_values
+         * 1) score : -1.0 → 매우 부정적, 0.0 → 중립, +1.0 → 매우 긍정적
+         * 2) magnitude : 감정의 강도 (0.0 이상), 높을수록 감정의 강도가 큼 (기쁨, 분노, 슬픔 등 강렬한 감정 표현)
+         * */
+        return responseOf(language.analyzeSentimentCallable().call(requestOf(text)));
+    }
+
+    /*
+    * [묶음 호출]
+    * Natural Language API에는 여러 문서를 한 번에 보내는 analyzeSentiment가 없다.
+    * 예전에는 텍스트들을 이어 붙여 한 번만 호출하고 문장별 감정의 평균을 냈는데, 그건 문서 전체 감정(documentSentiment)과 다르다.
+    * (같은 일기가 단건으로는 0.6, 묶음으로는 0.3처럼 호출 경로에 따라 점수가 달라짐)
+    * 이제 텍스트마다 문서 하나로 analyze와 똑같은 요청을 보낸다. 비동기(futureCall)로 한꺼번에 보내고 모두 기다리므로
+    * 걸리는 시간은 가장 느린 호출 하나 정도다. (gRPC 채널 하나를 같이 씀)
+    * → RPC 수는 단건으로 보낼 때와 같다. 그래서 SentimentGateway는 묶음의 텍스트 수만큼 동시 호출 자리를 잡는다.
+    *
+    * */
+    @Override
+    public List<DiaryResponseDTO> analyzeAll(List<String> texts) {
+        if (texts.size() == 1) {
+            return List.of(analyze(texts.get(0)));
+        }
+
+        List<ApiFuture<AnalyzeSentimentResponse>> calls = new ArrayList<>(texts.size());
+        try {
+            for (String text : texts) {
+                calls.add(language.analyzeSentimentCallable().futureCall(requestOf(text)));
+            }
+            List<DiaryResponseDTO> results = new ArrayList<>(texts.size());
+            for (ApiFuture<AnalyzeSentimentResponse> call : calls) {
+                results.add(responseOf(call.get()));
+            }
+            return results;
+        } catch (InterruptedException e) {
+            // SentimentGateway의 deadline이 지나서 취소됨
+            Thread.currentThread().interrupt();
+            throw new SentimentUnavailableException("sentiment batch interrupted", e);
+        } catch (ExecutionException e) {
+            throw new SentimentUnavailableException("sentiment call failed", e.getCause());
+        } finally {
+            // 실패 / 취소되면 남은 호출도 멈춘다. (이미 끝난 호출에는 영향 없음)
+            for (ApiFuture<AnalyzeSentimentResponse> call : calls) {
+                call.cancel(true);
+            }
+        }
+    }
+
+    // 단건과 묶음이 같은 요청을 보낸다.
+    private static AnalyzeSentimentRequest requestOf(String text) {
+        return AnalyzeSentimentRequest.newBuilder()
+                .setDocument(Document.newBuilder()
+                        .setContent(text)
+                        .setType(Document.Type.PLAIN_TEXT))
+                .build();
+    }
+
+    private static DiaryResponseDTO responseOf(AnalyzeSentimentResponse response) {
+        Sentiment sentiment = response.getDocumentSentiment();
+        return new DiaryResponseDTO(sentiment.getScore(), sentiment.getMagnitude());
+    }
+}
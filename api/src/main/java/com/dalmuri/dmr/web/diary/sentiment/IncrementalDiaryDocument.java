@@ -0,0 +1,270 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IncrementalDiaryDocument {
+
+    /*
+    * [IncrementalDiaryDocument]
+    * 편집 중인 일기 한 편을 문장 단위로 나눠 들고 있으면서, 수정된 문장만 다시 분석하게 해주는 문서 모델
+    *
+    * 1) 문장 목록은 텍스트 전체를 빈틈없이 덮는다. (문장 뒤 공백은 그 문장에 포함)
+    * 2) applyEdit() : 편집 위치가 걸친 문장 + 앞뒤 문장 하나씩만 다시 나누고,
+    *    내용이 그대로인 문장은 예전 점수를 재사용, 새로 생긴 문장만 "분석 필요"로 돌려준다.
+    *    뒤쪽 문장들은 시작 위치만 옮긴다. (정수 덧셈)
+    * 3) 문서 점수는 점수가 나온 문장들의 합계를 유지하면서 더하고 빼기만 한다.
+    *    score = 문장 score 평균, magnitude = 문장 magnitude 합 (Google 문서 감정과 같은 방식)
+    *
+    * thread-safe 하지 않다. 사용하는 쪽(DiarySentimentHandler)에서 문서 단위로 동기화한다.
+    *
+    * */
+
+    private final StringBuilder text = new StringBuilder();
+    private final List<Sentence> sentences = new ArrayList<>();
+    private final int maxLength;
+
+    private double scoreSum;
+    private double magnitudeSum;
+    private int scoredCount;
+    private int pendingCount;
+    private long version;
+
+    public IncrementalDiaryDocument(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /** 문서 전체를 바꾼다. 반환값 = 분석이 필요한 문장들 */
+    public List<Sentence> reset(String newText) {
+        return applyEdit(0, text.length(), newText);
+    }
+
+    /**
+     * offset(UTF-16 인덱스, JS 문자열 인덱스와 같음)부터 deleteCount 글자를 지우고 insert를 넣는다.
+     * 반환값 = 분석이 필요한 문장들
+     * */
+    public List<Sentence> applyEdit(int offset, int deleteCount, String insert) {
+        if (offset < 0 || deleteCount < 0 || offset + deleteCount > text.length()) {
+            throw new IllegalArgumentException("edit out of range: offset=" + offset + ", deleteCount=" + deleteCount);
+        }
+        if (text.length() - deleteCount + insert.length() > maxLength) {
+            throw new IllegalArgumentException("document exceeds " + maxLength + " characters");
+        }
+
+        // (1) 편집에 영향받는 문장 범위 [first, last] : 걸친 문장 + 앞뒤로 하나씩
+        int first = 0;
+        int last = sentences.size() - 1;
+        if (!sentences.isEmpty()) {
+            first = Math.max(0, indexAt(offset) - 1);
+            last = Math.min(sentences.size() - 1, indexAt(offset + deleteCount) + 1);
+        }
+        int regionStart = sentences.isEmpty() ? 0 : sentences.get(first).start;
+        int regionEnd = sentences.isEmpty() ? 0 : sentences.get(last).end;
+
+        // (2) 텍스트 수정
+        text.replace(offset, offset + deleteCount, insert);
+        int delta = insert.length() - deleteCount;
+        version++;
+
+        // (3) 영향받은 문장 제거
+        List<Sentence> removed = new ArrayList<>(sentences.subList(first, last + 1));
+        if (!sentences.isEmpty()) {
+            sentences.subList(first, last + 1).clear();
+        }
+        for (Sentence sentence : removed) {
+            sentence.alive = false;
+            if (sentence.scored) {
+                subtract(sentence);
+            } else if (!sentence.blank) {
+                pendingCount--;
+            }
+        }
+
+        // (4) 뒤쪽 문장 위치 이동
+        for (int i = first; i < sentences.size(); i++) {
+            sentences.get(i).start += delta;
+            sentences.get(i).end += delta;
+        }
+
+        // (5) 영향받은 구간만 다시 문장으로 나누기
+        List<Sentence> created = split(regionStart, regionEnd + delta);
+        List<Sentence> toScore = new ArrayList<>();
+        for (int i = 0; i < created.size(); i++) {
+            Sentence sentence = created.get(i);
+            if (sentence.blank) {
+                continue;
+            }
+
+            Sentence previous = takeSameContent(removed, sentence.content);
+            if (previous != null) {
+                // 내용이 그대로인 문장 : 예전 문장 객체를 그대로 살려서 다시 분석하지 않는다. (분석 중이던 것도 그대로 기다림)
+                previous.start = sentence.start;
+                previous.end = sentence.end;
+                previous.alive = true;
+                if (previous.scored) {
+                    add(previous);
+                } else {
+                    pendingCount++;
+                }
+                created.set(i, previous);
+            } else {
+                pendingCount++;
+                toScore.add(sentence);
+            }
+        }
+        sentences.addAll(first, created);
+        return toScore;
+    }
+
+    /** 분석 결과 반영. 그 사이 편집으로 사라진 문장이면 무시하고 false */
+    public boolean complete(Sentence sentence, DiaryResponseDTO result) {
+        if (!sentence.alive || sentence.scored) {
+            return false;
+        }
+        sentence.score = result.getScore();
+        sentence.magnitude = result.getMagnitude();
+        sentence.scored = true;
+        pendingCount--;
+        add(sentence);
+        return true;
+    }
+
+    public float score() {
+        return scoredCount == 0 ? 0f : (float) (scoreSum / scoredCount);
+    }
+
+    public float magnitude() {
+        return (float) magnitudeSum;
+    }
+
+    public int sentenceCount() {
+        return scoredCount + pendingCount;
+    }
+
+    public int pendingCount() {
+        return pendingCount;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    String text() {
+        return text.toString();
+    }
+
+    List<Sentence> sentences() {
+        return sentences;
+    }
+
+    private void add(Sentence sentence) {
+        scoreSum += sentence.score;
+        magnitudeSum += sentence.magnitude;
+        scoredCount++;
+    }
+
+    private void subtract(Sentence sentence) {
+        scoreSum -= sentence.score;
+        magnitudeSum -= sentence.magnitude;
+        scoredCount--;
+    }
+
+    // position을 포함하는 문장 번호 (문서 끝이면 마지막 문장)
+    private int indexAt(int position) {
+        int low = 0;
+        int high = sentences.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (sentences.get(mid).start <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static Sentence takeSameContent(List<Sentence> candidates, String content) {
+        for (int i = 0; i < candidates.size(); i++) {
+            Sentence candidate = candidates.get(i);
+            if (!candidate.blank && content.equals(candidate.content)) {
+                return candidates.remove(i);
+            }
+        }
+        return null;
+    }
+
+    /*
+    * [문장 나누기]
+    * 문장 끝 = 종결 문자(. ! ? … 。 줄바꿈)가 이어진 뒤, 그 뒤의 공백까지
+    * 예) "오늘 좋았다. 내일도!  " → ["오늘 좋았다. ", "내일도!  "]
+    *
+    * */
+    private List<Sentence> split(int from, int to) {
+        List<Sentence> result = new ArrayList<>();
+        int start = from;
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            i++;
+            if (!isTerminator(c)) {
+                continue;
+            }
+            while (i < to && isTerminator(text.charAt(i))) {
+                i++;
+            }
+            while (i < to && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            result.add(newSentence(start, i));
+            start = i;
+        }
+        if (start < to) {
+            result.add(newSentence(start, to));
+        }
+        return result;
+    }
+
+    private Sentence newSentence(int start, int end) {
+        String content = text.substring(start, end).strip();
+        return new Sentence(start, end, content);
+    }
+
+    private static boolean isTerminator(char c) {
+        return c == '.' || c == '!' || c == '?' || c == '…' || c == '。' || c == '\n';
+    }
+
+    public static final class Sentence {
+
+        private int start;
+        private int end;
+        private final String content;
+        private final boolean blank;
+        private float score;
+        private float magnitude;
+        private boolean scored;
+        private boolean alive = true;
+
+        private Sentence(int start, int end, String content) {
+            this.start = start;
+            this.end = end;
+            this.content = content;
+            this.blank = content.isEmpty();
+        }
+
+        public String content() {
+            return content;
+        }
+
+        /** 문서에 남아 있는 문장인지. 편집으로 지워졌으면 false */
+        public boolean alive() {
+            return alive;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+public class LexiconSentimentAnalyzer implements SentimentAnalyzer {
+
+    /*
+    * [LexiconSentimentAnalyzer : 프로세스 내부 감정 분석 엔진]
+    * 외부 호출 없이 감정 사전(lexicon)만으로 한국어/영어 텍스트의 score, magnitude를 계산한다.
+    *
+    * 1) 토큰 : 글자/숫자(+ 영어 축약형의 ')가 이어진 구간. 문자열을 자르지 않고 시작/끝 인덱스로만 다룬다.
+    * 2) 매칭 : LexiconTrie를 code point 단위로 따라가며 가장 긴 단어를 찾는다.
+    *    - 한글 토큰 : 조사/어미가 붙어 있으므로 어간(행복, 슬프)이 토큰 어디에서 시작해도 매칭 (재미없다 → 재미 + 없)
+    *    - 영어 토큰 : 토큰 시작에서만, 사전에 *로 표시한 단어만 뒤에 글자가 더 붙어도 매칭 (happ* → happiness)
+    *    - 부정어(안, not), 강조어(너무, very)는 토큰 전체가 그 단어일 때만
+    * 3) 점수 : 부정어 뒤 3토큰 안의 감정 단어는 반대로, 감정 단어 뒤 2토큰 안의 후치 부정(않, 없)도 반대로, 강조어는 배율
+    *    score = 합 / sqrt(합² + 15) (VADER 방식 정규화, -1 ~ 1), magnitude = |점수| 합 / 4
+    * 4) confidence : 감정 단어가 충분히 많고(3개 이상이면 1) 방향이 한쪽으로 모일수록 1에 가깝다.
+    *    local-first 모드에서 이 값이 낮으면 원격 백엔드로 넘긴다.
+    *
+    * 분석 중에는 토큰마다 객체를 만들지 않는다. (호출 1건당 결과 객체 하나)
+    *
+    * */
+
+    private static final double NORMALIZATION_ALPHA = 15.0;
+    private static final float MAGNITUDE_SCALE = 4.0f;
+    private static final float NEGATED_WEIGHT = -0.75f;
+    private static final int NEGATION_WINDOW = 3;
+    private static final int POST_NEGATION_WINDOW = 2;
+
+    private final LexiconTrie trie;
+
+    public LexiconSentimentAnalyzer(LexiconTrie trie) {
+        this.trie = trie;
+    }
+
+    /*
+    * [사전 파일 형식] (한 줄에 하나, #은 주석)
+    * 단어<TAB>점수      : 감정 단어 (예: 행복	3.0)
+    * 단어*<TAB>점수     : 뒤에 글자가 더 붙어도 매칭되는 영어 단어 (예: happ*	2.5)
+    * 단어<TAB>NEG       : 뒤를 부정
+    * 단어<TAB>NEG_POST  : 앞을 부정
+    * 단어<TAB>x배율     : 강조/약화 (예: 너무	x1.5)
+    *
+    * */
+    public static LexiconSentimentAnalyzer load(InputStream in) throws IOException {
+        LexiconTrie.Builder builder = LexiconTrie.builder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] columns = line.split("\t");
+                if (columns.length != 2) {
+                    throw new IOException("lexicon line " + lineNo + " must be <term>\\t<value>: " + line);
+                }
+
+                String term = columns[0].strip();
+                boolean prefix = term.endsWith("*");
+                if (prefix) {
+                    term = term.substring(0, term.length() - 1);
+                }
+
+                String value = columns[1].strip();
+                if (value.equals("NEG")) {
+                    builder.add(term, LexiconTrie.NEGATION, 0f, false);
+                } else if (value.equals("NEG_POST")) {
+                    builder.add(term, LexiconTrie.POST_NEGATION, 0f, prefix);
+                } else if (value.startsWith("x")) {
+                    builder.add(term, LexiconTrie.BOOSTER, Float.parseFloat(value.substring(1)), false);
+                } else {
+                    builder.add(term, LexiconTrie.POLARITY, Float.parseFloat(value), prefix);
+                }
+            }
+        }
+        return new LexiconSentimentAnalyzer(builder.build());
+    }
+
+    @Override
+    public DiaryResponseDTO analyze(String text) {
+        LexiconScore result = evaluate(text);
+        return new DiaryResponseDTO(result.score(), result.magnitude());
+    }
+
+    public LexiconScore evaluate(String text) {
+        float sum = 0f;
+        float sumAbs = 0f;
+        int hits = 0;
+        int tokens = 0;
+
+        float boost = 1f;
+        int negationLeft = 0;
+        float lastValence = 0f;
+        int lastValenceToken = Integer.MIN_VALUE / 2;
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int cp = text.codePointAt(i);
+            if (!isTokenChar(cp)) {
+                i += Character.charCount(cp);
+                continue;
+            }
+
+            int tokenStart = i;
+            int tokenEnd = i;
+            while (tokenEnd < length) {
+                int c = text.codePointAt(tokenEnd);
+                if (!isTokenChar(c)) {
+                    break;
+                }
+                tokenEnd += Character.charCount(c);
+            }
+            tokens++;
+            boolean hangul = isHangul(cp);
+            boolean negationSet = false;
+
+            int pos = tokenStart;
+            while (pos < tokenEnd) {
+                // 가장 긴 매칭 찾기 : 결과는 (끝 위치, 노드)
+                int node = LexiconTrie.ROOT;
+                int matchNode = -1;
+                int matchEnd = -1;
+                int p = pos;
+                while (p < tokenEnd) {
+                    int raw = text.codePointAt(p);
+                    node = trie.child(node, Character.toLowerCase(raw));
+                    if (node < 0) {
+                        break;
+                    }
+                    p += Character.charCount(raw);
+                    if (isValidMatch(node, pos == tokenStart, p == tokenEnd, hangul)) {
+                        matchNode = node;
+                        matchEnd = p;
+                    }
+                }
+
+                if (matchNode < 0) {
+                    if (!hangul) {
+                        break;
+                    }
+                    pos += Character.charCount(text.codePointAt(pos));
+                    continue;
+                }
+
+                switch (trie.kind(matchNode)) {
+                    case LexiconTrie.POLARITY -> {
+                        float valence = trie.value(matchNode) * boost;
+                        if (negationLeft > 0) {
+                            valence *= NEGATED_WEIGHT;
+                            negationLeft = 0;
+                        }
+                        sum += valence;
+                        sumAbs += Math.abs(valence);
+                        hits++;
+                        boost = 1f;
+                        lastValence = valence;
+                        lastValenceToken = tokens;
+                    }
+                    case LexiconTrie.NEGATION -> {
+                        negationLeft = NEGATION_WINDOW;
+                        negationSet = true;
+                    }
+                    case LexiconTrie.POST_NEGATION -> {
+                        if (lastValence != 0f && tokens - lastValenceToken <= POST_NEGATION_WINDOW) {
+                            float flipped = lastValence * NEGATED_WEIGHT;
+                            sum += flipped - lastValence;
+                            sumAbs += Math.abs(flipped) - Math.abs(lastValence);
+                            lastValence = 0f;
+                        }
+                    }
+                    case LexiconTrie.BOOSTER -> boost = trie.value(matchNode);
+                    default -> {
+                    }
+                }
+
+                if (!hangul) {
+                    break;
+                }
+                pos = matchEnd;
+            }
+
+            if (!negationSet && negationLeft > 0) {
+                negationLeft--;
+            }
+            i = tokenEnd;
+        }
+
+        float score = hits == 0 ? 0f : (float) (sum / Math.sqrt(sum * sum + NORMALIZATION_ALPHA));
+        float magnitude = sumAbs / MAGNITUDE_SCALE;
+        float agreement = sumAbs == 0f ? 0f : Math.abs(sum) / sumAbs;
+        float confidence = Math.min(1f, hits / 3f) * agreement;
+        return new LexiconScore(score, magnitude, confidence, hits, tokens);
+    }
+
+    private boolean isValidMatch(int node, boolean atTokenStart, boolean atTokenEnd, boolean hangul) {
+        byte kind = trie.kind(node);
+        if (kind == LexiconTrie.NONE) {
+            return false;
+        }
+        if (kind == LexiconTrie.NEGATION || kind == LexiconTrie.BOOSTER) {
+            return atTokenStart && atTokenEnd;
+        }
+        if (hangul) {
+            return true;
+        }
+        return atTokenEnd || trie.prefix(node);
+    }
+
+    private static boolean isTokenChar(int cp) {
+        return Character.isLetterOrDigit(cp) || cp == '\'' || cp == '’';
+    }
+
+    private static boolean isHangul(int cp) {
+        return (cp >= 0xAC00 && cp <= 0xD7A3)   // 완성형 음절
+                || (cp >= 0x1100 && cp <= 0x11FF) // 자모
+                || (cp >= 0x3130 && cp <= 0x318F); // 호환용 자모
+    }
+
+    /**
+     * @param confidence 0 ~ 1, 감정 단어 수와 방향 일치도로 계산한 결과 신뢰도
+     * @param hits 매칭된 감정 단어 수
+     * @param tokens 전체 토큰 수
+     * */
+    public record LexiconScore(float score, float magnitude, float confidence, int hits, int tokens) {
+    }
+}
@@ -0,0 +1,149 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class LexiconTrie {
+
+    /*
+    * [LexiconTrie]
+    * 감정 사전 단어를 code point(int) 단위로 저장하는 읽기 전용 trie
+    *
+    * 만들 때만 TreeMap 노드를 쓰고, 완성되면 아래 배열들로 평평하게 펼친다. (CSR 형식)
+    *   edgeStart[node] ~ edgeStart[node + 1] : node의 자식 간선 범위
+    *   edgeLabel[edge] : 간선의 code point (노드 안에서 오름차순 → 이진 탐색)
+    *   edgeTarget[edge] : 간선이 가리키는 자식 노드 번호
+    *   kind[node], value[node], prefix[node] : 단어가 끝나는 노드의 정보
+    *
+    * 조회(child)는 int 비교만 하므로 토큰마다 객체를 만들지 않는다. (Map<Character, Node>처럼 박싱도 없음)
+    *
+    * */
+
+    public static final byte NONE = 0;
+    public static final byte POLARITY = 1;      // 감정 단어 : value = 감정 점수(-4 ~ +4)
+    public static final byte NEGATION = 2;      // 앞에서 뒤를 부정 (not, 안, 못)
+    public static final byte POST_NEGATION = 3; // 뒤에서 앞을 부정 (않, 없, 아니)
+    public static final byte BOOSTER = 4;       // 강조/약화 : value = 배율 (너무, very)
+
+    public static final int ROOT = 0;
+
+    private final int[] edgeStart;
+    private final int[] edgeLabel;
+    private final int[] edgeTarget;
+    private final byte[] kind;
+    private final float[] value;
+    private final boolean[] prefix;
+
+    private LexiconTrie(int[] edgeStart, int[] edgeLabel, int[] edgeTarget, byte[] kind, float[] value, boolean[] prefix) {
+        this.edgeStart = edgeStart;
+        this.edgeLabel = edgeLabel;
+        this.edgeTarget = edgeTarget;
+        this.kind = kind;
+        this.value = value;
+        this.prefix = prefix;
+    }
+
+    /** node에서 codePoint 간선을 따라간 자식 노드, 없으면 -1 */
+    public int child(int node, int codePoint) {
+        int index = Arrays.binarySearch(edgeLabel, edgeStart[node], edgeStart[node + 1], codePoint);
+        return index < 0 ? -1 : edgeTarget[index];
+    }
+
+    public byte kind(int node) {
+        return kind[node];
+    }
+
+    public float value(int node) {
+        return value[node];
+    }
+
+    /** 단어 뒤에 글자가 더 붙어도 매칭되는지 (happ* → happy, happiness) */
+    public boolean prefix(int node) {
+        return prefix[node];
+    }
+
+    public int size() {
+        return kind.length;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private final Node root = new Node();
+        private int nodeCount = 1;
+        private int edgeCount = 0;
+
+        public Builder add(String term, byte kind, float value, boolean prefix) {
+            Node node = root;
+            for (int i = 0; i < term.length(); ) {
+                int cp = Character.toLowerCase(term.codePointAt(i));
+                Node next = node.children.get(cp);
+                if (next == null) {
+                    next = new Node();
+                    node.children.put(cp, next);
+                    nodeCount++;
+                    edgeCount++;
+                }
+                node = next;
+                i += Character.charCount(cp);
+            }
+            node.kind = kind;
+            node.value = value;
+            node.prefix = prefix;
+            return this;
+        }
+
+        public LexiconTrie build() {
+            int[] edgeStart = new int[nodeCount + 1];
+            int[] edgeLabel = new int[edgeCount];
+            int[] edgeTarget = new int[edgeCount];
+            byte[] kinds = new byte[nodeCount];
+            float[] values = new float[nodeCount];
+            boolean[] prefixes = new boolean[nodeCount];
+
+            // BFS 순서로 번호를 매기면 노드 번호 순서대로 간선을 이어 붙일 수 있다.
+            List<Node> order = new ArrayList<>(nodeCount);
+            ArrayDeque<Node> queue = new ArrayDeque<>();
+            root.id = 0;
+            queue.add(root);
+            int nextId = 1;
+            int cursor = 0;
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                order.add(node);
+                edgeStart[node.id] = cursor;
+                for (Map.Entry<Integer, Node> edge : node.children.entrySet()) {
+                    Node child = edge.getValue();
+                    child.id = nextId++;
+                    edgeLabel[cursor] = edge.getKey();
+                    edgeTarget[cursor] = child.id;
+                    cursor++;
+                    queue.add(child);
+                }
+            }
+            edgeStart[nodeCount] = cursor;
+
+            for (Node node : order) {
+                kinds[node.id] = node.kind;
+                values[node.id] = node.value;
+                prefixes[node.id] = node.prefix;
+            }
+            return new LexiconTrie(edgeStart, edgeLabel, edgeTarget, kinds, values, prefixes);
+        }
+
+        private static final class Node {
+            private final TreeMap<Integer, Node> children = new TreeMap<>();
+            private int id;
+            private byte kind = NONE;
+            private float value;
+            private boolean prefix;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 텍스트 한 건의 감정(score, magnitude)을 분석하는 백엔드
+ * - 구현체는 여러 스레드에서 동시에 호출되므로 thread-safe 해야 한다.
+ * */
+public interface SentimentAnalyzer {
+
+    DiaryResponseDTO analyze(String text);
+
+    /**
+     * 여러 텍스트를 한 번에 분석한다. 결과는 texts와 같은 순서
+     * - 기본 구현은 한 건씩 호출. 백엔드가 묶음 호출을 지원하면 재정의한다.
+     * */
+    default List<DiaryResponseDTO> analyzeAll(List<String> texts) {
+        List<DiaryResponseDTO> results = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            results.add(analyze(text));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,121 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class SentimentBatcher implements AutoCloseable {
+
+    /*
+    * [SentimentBatcher : 서버 측 요청 묶기(coalescing)]
+    * 동시에 들어온 단건 요청들을 잠깐(maxDelay) 모았다가, 또는 maxBatchSize개가 차면 바로
+    * SentimentGateway.submitAll() 한 번으로 보낸다. 결과는 기다리던 호출자 각각에게 나눠준다.
+    *
+    * 흐름 : submit() → queue → (가상 스레드 하나가 모아서) → gateway.submitAll() → 각 호출자의 CompletableFuture 완료
+    *
+    * - 첫 요청이 도착한 시점부터 maxDelay를 센다. 한가할 때 추가 지연은 최대 maxDelay.
+    * - 묶음을 보낸 뒤 응답을 기다리지 않고 바로 다음 묶음을 모은다. 동시에 나가는 묶음 수는 gateway의 동시 호출 제한을 따른다.
+    *   묶음 하나는 텍스트 수만큼 자리를 잡으므로(RPC 수) maxBatchSize는 gateway의 maxConcurrentCalls를 넘지 않게 줄인다.
+    * - Google 백엔드는 묶음도 텍스트마다 RPC를 보낸다. 백엔드 호출 수는 줄지 않고, 줄어드는 건 gateway를 거치는 횟수
+    *   (가상 스레드, deadline 타이머)뿐이다. 진짜 묶음 호출이 있는 백엔드에서 이득이 난다.
+    * - queue가 가득 차면 기다리지 않고 실패시킨다. (DiaryService에서 fallback 처리)
+    *
+    * */
+
+    private final SentimentGateway gateway;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public SentimentBatcher(SentimentGateway gateway, int maxBatchSize, Duration maxDelay, int queueCapacity) {
+        this.gateway = gateway;
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, gateway.maxConcurrentCalls()));
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.worker = Thread.ofVirtual().name("sentiment-batcher").start(this::run);
+    }
+
+    public CompletableFuture<DiaryResponseDTO> submit(String text) {
+        Pending pending = new Pending(text, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            return CompletableFuture.failedFuture(new SentimentUnavailableException("sentiment batch queue is full"));
+        }
+        return pending.result();
+    }
+
+    private void run() {
+        while (running) {
+            List<Pending> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                failAll(batch);
+                break;
+            }
+            dispatch(batch);
+        }
+
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        failAll(remaining);
+    }
+
+    private void dispatch(List<Pending> batch) {
+        if (batch.size() == 1) {
+            Pending single = batch.get(0);
+            gateway.submit(single.text()).whenComplete((result, error) -> {
+                if (error != null) {
+                    single.result().completeExceptionally(error);
+                } else {
+                    single.result().complete(result);
+                }
+            });
+            return;
+        }
+
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            texts.add(pending.text());
+        }
+        gateway.submitAll(texts).whenComplete((results, error) -> {
+            for (int i = 0; i < batch.size(); i++) {
+                if (error != null) {
+                    batch.get(i).result().completeExceptionally(error);
+                } else {
+                    batch.get(i).result().complete(results.get(i));
+                }
+            }
+        });
+    }
+
+    private void failAll(List<Pending> batch) {
+        for (Pending pending : batch) {
+            pending.result().completeExceptionally(new SentimentUnavailableException("sentiment batcher is closed"));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private record Pending(String text, CompletableFuture<DiaryResponseDTO> result) {
+    }
+}
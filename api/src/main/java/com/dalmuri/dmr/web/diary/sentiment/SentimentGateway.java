@@ -0,0 +1,174 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+@Slf4j
+public class SentimentGateway implements AutoCloseable, MeterBinder {
+
+    /*
+    * [SentimentGateway]
+    * SentimentAnalyzer(원격 백엔드) 호출을 감싸는 "제한된 비동기 호출 경로"
+    *
+    * 1) 가상 스레드(virtual thread) : 호출 1건마다 가상 스레드 하나. 원격 응답을 기다리는 동안 플랫폼 스레드를 점유하지 않는다.
+    * 2) Semaphore : 동시에 진행 중인 호출 수를 maxConcurrentCalls로 제한. 자리가 없으면 기다리지 않고 바로 실패시킨다.
+    *    (원격 서버가 느려졌을 때 요청이 계속 쌓여서 모두 같이 느려지는 것을 막기 위함)
+    *    자리 하나 = 백엔드 RPC 하나. 묶음 호출(submitAll)은 텍스트 수만큼 자리를 잡는다.
+    *    (Google에는 여러 문서를 한 번에 보내는 호출이 없어서 analyzeAll도 텍스트마다 RPC를 하나씩 보낸다)
+    * 3) deadline : callTimeout 안에 끝나지 않으면 호출을 취소(interrupt)하고 실패시킨다.
+    *
+    * 실패는 모두 SentimentUnavailableException으로 통일하고, fallback 결과로 바꾸는 건 호출하는 쪽(DiaryService)의 몫이다.
+    *
+    * 지표(MeterBinder) : sentiment.call{outcome} 호출 시간 histogram, sentiment.failures{reason}, sentiment.inflight
+    * 호출 시간 Timer는 Bean으로 등록될 때 한 번 만든다. (직접 만든 gateway는 시간을 재지 않음)
+    *
+    * */
+
+    private final SentimentAnalyzer analyzer;
+    private final int maxConcurrentCalls;
+    private final Semaphore permits;
+    private final Duration callTimeout;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("sentiment-", 0).factory());
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile Timer succeededCalls;
+    private volatile Timer failedCalls;
+
+    public SentimentGateway(SentimentAnalyzer analyzer, int maxConcurrentCalls, Duration callTimeout) {
+        this.analyzer = analyzer;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.callTimeout = callTimeout;
+    }
+
+    public CompletableFuture<DiaryResponseDTO> submit(String text) {
+        return call(1, () -> analyzer.analyze(text));
+    }
+
+    // 여러 텍스트를 한꺼번에 분석한다. RPC 수(= 텍스트 수)만큼 자리를 모두 잡아야 시작한다. (일부만 잡지 않음)
+    // maxConcurrentCalls보다 큰 묶음은 잡을 수 없으므로 호출하는 쪽이 maxConcurrentCalls() 이하로 자른다.
+    public CompletableFuture<List<DiaryResponseDTO>> submitAll(List<String> texts) {
+        return call(texts.size(), () -> analyzer.analyzeAll(texts));
+    }
+
+    private <T> CompletableFuture<T> call(int rpcs, Supplier<T> backendCall) {
+        if (!permits.tryAcquire(rpcs)) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(
+                    new SentimentUnavailableException("sentiment concurrency limit reached"));
+        }
+
+        long started = System.nanoTime();
+        CompletableFuture<T> call = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    call.complete(backendCall.get());
+                } catch (Throwable t) {
+                    call.completeExceptionally(t);
+                } finally {
+                    // 타임아웃으로 먼저 응답했더라도, 실제 호출이 끝난 시점에 자리를 반납한다.
+                    permits.release(rpcs);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release(rpcs);
+            return CompletableFuture.failedFuture(new SentimentUnavailableException("sentiment gateway is closed", e));
+        }
+
+        return call
+                .orTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((result, error) -> {
+                    Timer timer = error == null ? succeededCalls : failedCalls;
+                    if (timer != null) {
+                        timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    }
+                    if (error == null) {
+                        return result;
+                    }
+                    if (error instanceof TimeoutException) {
+                        timedOut.increment();
+                        task.cancel(true);
+                        throw new SentimentUnavailableException("sentiment call exceeded " + callTimeout);
+                    }
+                    failed.increment();
+                    log.warn("sentiment call failed: {}", error.toString());
+                    throw new SentimentUnavailableException("sentiment call failed", error);
+                });
+    }
+
+    public int maxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    // 진행 중인 백엔드 RPC 수
+    public int inFlight() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long timedOutCount() {
+        return timedOut.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        succeededCalls = callTimer(registry, "success");
+        failedCalls = callTimer(registry, "error");
+        Gauge.builder("sentiment.inflight", this, SentimentGateway::inFlight)
+                .register(registry);
+        FunctionCounter.builder("sentiment.failures", this, SentimentGateway::rejectedCount)
+                .tag("reason", "rejected")
+                .register(registry);
+        FunctionCounter.builder("sentiment.failures", this, SentimentGateway::timedOutCount)
+                .tag("reason", "timeout")
+                .register(registry);
+        FunctionCounter.builder("sentiment.failures", this, SentimentGateway::failedCount)
+                .tag("reason", "error")
+                .register(registry);
+    }
+
+    private static Timer callTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("sentiment.call")
+                .description("Sentiment backend call latency, including timeouts")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,16 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+/**
+ * 동시 호출 제한 초과, deadline 초과, 백엔드 오류 등으로 감정 분석 결과를 얻지 못했을 때 발생
+ * - DiaryService에서 잡아서 fallback 결과로 바꾼다.
+ * */
+public class SentimentUnavailableException extends RuntimeException {
+
+    public SentimentUnavailableException(String message) {
+        super(message);
+    }
+
+    public SentimentUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
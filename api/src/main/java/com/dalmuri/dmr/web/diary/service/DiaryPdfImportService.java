@@ -0,0 +1,283 @@
+package com.dalmuri.dmr.web.diary.service;
+
+import com.dalmuri.config.SentimentProperties;
+import com.dalmuri.dmr.common.upload.UploadTooLargeException;
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Service
+public class DiaryPdfImportService implements DisposableBean {
+
+    /*
+    * [PDF 일기 가져오기]
+    * 요청 Body : PDF 파일 그대로 (Content-Type: application/pdf)
+    * 응답 : NDJSON (application/x-ndjson). 한 줄에 JSON 하나, 분석이 끝나는 대로 바로 보낸다.
+    *   {"type":"start","pages":300}
+    *   {"type":"page","page":2,"score":0.4,"magnitude":1.1,"chars":812}   ← 끝난 순서대로 (페이지 순서가 아닐 수 있음)
+    *   {"type":"page","page":1,"chars":0}                                 ← 글자가 없는 페이지 (스캔 이미지 등)
+    *   {"type":"page","page":3,"chars":640,"failed":true}                 ← 분석 실패 (점수 없음, done의 scored / 평균에서 빠짐)
+    *   {"type":"done","pages":300,"scored":298,"score":0.12,"magnitude":240.5}
+    *   {"type":"error","message":"..."}                                   ← PDF를 읽지 못했을 때
+    *
+    * 1) 업로드 : 본문을 임시 파일로 바로 흘려 쓴다. (MultipartFile처럼 메모리/톰캣 임시 파일에 한 번 더 모으지 않음)
+    * 2) 읽기 : spring-ai의 PagePdfDocumentReader는 모든 페이지를 List<Document>로 만든 뒤에야 돌려준다.
+    *    여기서는 같은 PDFBox로 한 페이지씩 꺼내고, 정리는 spring-ai의 ExtractedTextFormatter로 한다.
+    *    PDF 내부 버퍼도 메모리 대신 임시 파일을 쓴다. (IOUtils.createTempFileOnlyStreamCache)
+    * 3) 분석 : 페이지마다 DiaryService.scoreOrNull (로컬 엔진 / 캐시 / 원격 묶음 호출 경로 그대로)
+    *    실패하면 fallback(0점) 대신 null → 그 페이지는 점수 없이 보내고 평균에 넣지 않는다.
+    *    Semaphore(parallelism)로 동시에 분석 중인 페이지 수를 제한한다. 자리가 없으면 읽기가 멈추고 기다린다.
+    *    → 페이지 수와 관계없이 메모리에는 최대 parallelism 페이지의 텍스트만 있다.
+    *    로컬 엔진(사전 분석)은 CPU 작업이라 가상 스레드 위에서 코어 수만큼 동시에 돈다.
+    * 4) 클라이언트가 연결을 끊으면 남은 페이지는 읽지 않는다.
+    *
+    * */
+
+    private static final byte[] PDF_MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+
+    private final DiaryService diaryService;
+    private final ObjectMapper objectMapper;
+    private final SentimentProperties.PdfImport settings;
+    private final ExtractedTextFormatter formatter = ExtractedTextFormatter.defaults();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("pdf-import-", 0).factory());
+
+    public DiaryPdfImportService(DiaryService diaryService, ObjectMapper objectMapper, SentimentProperties properties) {
+        this.diaryService = diaryService;
+        this.objectMapper = objectMapper;
+        this.settings = properties.getPdfImport();
+    }
+
+    public ResponseEntity<ResponseBodyEmitter> importPdf(long contentLength, InputStream body) {
+        long maxBytes = settings.getMaxFileSize().toBytes();
+        if (contentLength > maxBytes) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+
+        Path file;
+        try {
+            file = receive(body, maxBytes);
+        } catch (UploadTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IOException e) {
+            log.warn("PDF 업로드 실패: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (!isPdf(file)) {
+            deleteQuietly(file);
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(settings.getTimeout().toMillis());
+        ImportJob job = new ImportJob(file, emitter);
+        emitter.onTimeout(job::cancel);
+        emitter.onError(e -> job.cancel());
+        emitter.onCompletion(job::cancel);
+        executor.execute(job);
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    // 본문을 임시 파일로 복사한다. maxBytes를 넘으면 지우고 UploadTooLargeException
+    private static Path receive(InputStream body, long maxBytes) throws IOException {
+        Path file = Files.createTempFile("diary-import-", ".pdf");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            long total = 0;
+            for (int n; (n = body.read(buffer)) >= 0; ) {
+                total += n;
+                if (total > maxBytes) {
+                    throw new UploadTooLargeException(maxBytes);
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private static boolean isPdf(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Arrays.equals(in.readNBytes(PDF_MAGIC.length), PDF_MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("임시 파일 삭제 실패 {}: {}", file, e.toString());
+        }
+    }
+
+    /*
+    * [ImportJob : PDF 하나를 읽고 분석하는 작업]
+    * 읽기(PDFBox)는 이 스레드 하나에서만 한다. PDDocument는 여러 스레드에서 같이 쓰면 안 된다.
+    * 분석만 페이지별로 나눠서 executor에 넘긴다.
+    *
+    * */
+    private final class ImportJob implements Runnable {
+
+        private final Path file;
+        private final ResponseBodyEmitter emitter;
+        private final int parallelism = Math.max(1, settings.getParallelism());
+        private final Semaphore permits = new Semaphore(parallelism);
+        private final LongAdder scored = new LongAdder();
+        private final DoubleAdder scoreSum = new DoubleAdder();
+        private final DoubleAdder magnitudeSum = new DoubleAdder();
+        private volatile boolean cancelled;
+
+        ImportJob(Path file, ResponseBodyEmitter emitter) {
+            this.file = file;
+            this.emitter = emitter;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            try (PDDocument document = Loader.loadPDF(file.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+                int pages = Math.min(document.getNumberOfPages(), settings.getMaxPages());
+                send(new StartLine("start", pages));
+
+                PDFTextStripper stripper = new PDFTextStripper();
+                for (int page = 1; page <= pages && !cancelled; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    String text = formatter.format(stripper.getText(document)).strip();
+                    if (text.isEmpty()) {
+                        send(new PageLine("page", page, null, null, 0, null));
+                        continue;
+                    }
+                    permits.acquire();
+                    score(page, text);
+                }
+
+                // 아직 분석 중인 페이지가 모두 끝날 때까지
+                permits.acquire(parallelism);
+                if (!cancelled) {
+                    long count = scored.sum();
+                    float average = count == 0 ? 0f : (float) (scoreSum.sum() / count);
+                    send(new DoneLine("done", pages, count, average, (float) magnitudeSum.sum()));
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                log.warn("PDF 가져오기 실패: {}", e.getMessage());
+                send(new ErrorLine("error", "could not read pdf"));
+            } catch (RuntimeException e) {
+                // PDFBox 내부 오류(깨진 글꼴 등), 분석 작업 거절 등. 응답이 열린 채로 남지 않게 error 줄을 보낸다.
+                log.warn("PDF 가져오기 중 오류", e);
+                send(new ErrorLine("error", "import failed"));
+            } finally {
+                // 어떤 경우든 응답을 끝낸다. (끝내지 않으면 클라이언트는 타임아웃까지 기다린다)
+                complete();
+                deleteQuietly(file);
+            }
+        }
+
+        private void complete() {
+            synchronized (emitter) {
+                try {
+                    emitter.complete();
+                } catch (RuntimeException e) {
+                    log.debug("PDF 가져오기 응답 종료 실패: {}", e.toString());
+                }
+            }
+        }
+
+        private void score(int page, String text) {
+            CompletableFuture.supplyAsync(() -> diaryService.scoreOrNull(text), executor)
+                    .thenCompose(future -> future)
+                    .whenComplete((response, error) -> {
+                        try {
+                            if (error != null || response == null) {
+                                if (error != null) {
+                                    log.warn("PDF {}쪽 분석 실패: {}", page, error.toString());
+                                }
+                                send(new PageLine("page", page, null, null, text.length(), true));
+                            } else {
+                                record(response);
+                                send(new PageLine("page", page, response.getScore(), response.getMagnitude(), text.length(), null));
+                            }
+                        } finally {
+                            permits.release();
+                        }
+                    });
+        }
+
+        private void record(DiaryResponseDTO response) {
+            scored.increment();
+            scoreSum.add(response.getScore());
+            magnitudeSum.add(response.getMagnitude());
+        }
+
+        // 여러 분석 스레드가 동시에 보내므로 줄 단위로 묶어서 보낸다. 보내기에 실패하면(연결 끊김) 작업을 멈춘다.
+        private void send(Object line) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                String json = objectMapper.writeValueAsString(line) + "\n";
+                synchronized (emitter) {
+                    emitter.send(json, MediaType.APPLICATION_NDJSON);
+                }
+            } catch (IOException | IllegalStateException e) {
+                cancel();
+            }
+        }
+    }
+
+    private record StartLine(String type, int pages) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record PageLine(String type, int page, Float score, Float magnitude, int chars, Boolean failed) {
+    }
+
+    private record DoneLine(String type, int pages, long scored, float score, float magnitude) {
+    }
+
+    private record ErrorLine(String type, String message) {
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
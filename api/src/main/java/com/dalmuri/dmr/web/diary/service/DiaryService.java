@@ -1,15 +1,35 @@
 package com.dalmuri.dmr.web.diary.service;
 
+import com.dalmuri.config.SentimentProperties;
 import com.dalmuri.dmr.web.diary.model.DiaryRequestDTO;
 import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
-import com.google.cloud.language.v1.Document;
-import com.google.cloud.language.v1.LanguageServiceClient;
-import com.google.cloud.language.v1.Sentiment;
+import com.dalmuri.dmr.web.diary.model.DiarySaveRequestDTO;
+import com.dalmuri.dmr.web.diary.model.DiaryTrendDTO;
+import com.dalmuri.dmr.web.diary.sentiment.DiaryScoreCache;
+import com.dalmuri.dmr.web.diary.sentiment.LexiconSentimentAnalyzer;
+import com.dalmuri.dmr.web.diary.sentiment.SentimentBatcher;
+import com.dalmuri.dmr.web.diary.sentiment.SentimentGateway;
+import com.dalmuri.dmr.web.diary.store.DiaryEntry;
+import com.dalmuri.dmr.web.diary.store.DiaryStore;
+import com.dalmuri.dmr.web.diary.store.DiaryStoreException;
+import com.dalmuri.dmr.web.diary.store.MoodPeriod;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -26,46 +46,232 @@ public class DiaryService {
      * ex. 자원 해제 : 파일, 네트워크, DB연결 후 반납해야 할 때
      *     정리 작업 : 예외가 발생하더라도 반드시 수행해야 하는 로직이 있을 때
      *     보장된 실행 : try구문에서 예외가 실행되든, 실행되지 않든 반드시 수행해야 하는 로직이 있을 때
+     *
+     * +) 이제 LanguageServiceClient는 요청마다 만들지 않는다.
+     * SentimentConfig에서 Bean 하나로 만들어 재사용하고, 호출은 SentimentGateway(동시 호출 제한 + deadline)를 거친다.
      * */
 
+    private final SentimentGateway gateway;
+    private final SentimentBatcher batcher;
+    private final DiaryScoreCache scoreCache;
+    private final LexiconSentimentAnalyzer lexicon;
+    private final SentimentProperties properties;
+    private final DiaryStore store;
+
+    // diary_entry.diary_id / user_id 컬럼 길이
+    private static final int MAX_DIARY_ID_LENGTH = 64;
+    private static final int MAX_USER_ID_LENGTH = 128;
 
     public ResponseEntity<DiaryResponseDTO> getDiaryScore(DiaryRequestDTO request) {
-        DiaryResponseDTO response = new DiaryResponseDTO();
-
-//        try (LanguageServiceClient language = LanguageServiceClient.create()) {
-//
-//            String text = request.getText();
-//            Document doc = Document.newBuilder()    // Google Cloud Natural Language API에 넘겨줄 Document 객체 생성
-//                    .setContent(text)               // 분석할 실제 텍스트 설정
-//                    .setType(Document.Type.PLAIN_TEXT)       // 분석 대상이 일반 텍스트임을 지정
-//                    .build();                       // 최종 Document 객체 생성
-//
-//            Sentiment sentiment = language.analyzeSentiment(doc)    // Google Cloud에 감정 분석 요청을 보냄. 텍스트의 감정을 분석해서 점수를 메기고 반환
-//                    .getDocumentSentiment();                        // 문서 전체에 대한 평균 감정 점수(Sentiment)를 가져옴
-//
-//            /*
-//             * [구글에서 제공하는 감정 점수(Sentiment)의 범위]
-//             * 출처 : https://cloud.google.com/natural-language/docs/basics?hl=ko#interpreting_sentiment_analysis_values
-//             * 1) score : -1.0 → 매우 부정적, 0.0 → 중립, +1.0 → 매우 긍정적
-//             * 2) magnitude : 감정의 강도 (0.0 이상), 높을수록 감정의 강도가 큼 (기쁨, 분노, 슬픔 등 강렬한 감정 표현)
-//             * */
-//
-//            response.setScore(sentiment.getScore());
-//            response.setMagnitude(sentiment.getMagnitude());
-//
-//            return ResponseEntity.ok(response);
-//
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//            System.err.println("Google Cloud API 호출 중 예외 발생: " + e.getMessage());
-//
-//            return ResponseEntity.badRequest().build();
-//        }
-
-//        [TEST LOGIC]
-        response.setScore(1.0f);
-        response.setMagnitude(0.2f);
-        return ResponseEntity.ok(response);
+        String text = request.getText();
+        if (text == null || text.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(scoreAsync(text).join());
 
     } // getDiaryScore
+
+    /*
+    * [scoreAsync : 텍스트 한 건 분석, 비동기]
+    * 1) local / local-first 모드 : 사전 기반 로컬 엔진으로 충분하면 바로 완료
+    * 2) 같은 텍스트를 이미 분석했다면(캐시) 원격 호출 없이 바로 완료
+    * 3) 나머지는 동시에 들어온 다른 단건 요청들과 묶여서 원격 백엔드로 나간다. (SentimentBatcher)
+    * 원격 호출이 실패해도(동시 호출 제한 초과, deadline 초과, 백엔드 오류) 예외 대신 fallback 결과로 완료된다.
+    * REST(getDiaryScore)에서 쓴다.
+    * 분석만 한다. 저장은 saveDiary에서만.
+    *
+    * */
+    public CompletableFuture<DiaryResponseDTO> scoreAsync(String text) {
+        return scoreOrNull(text).thenApply(response -> response != null ? response : fallback());
+    }
+
+    /*
+    * [scoreOrNull : scoreAsync와 같은 경로, 실패하면 null]
+    * 원격 호출이 실패하면 fallback 대신 null로 완료된다.
+    * 가짜 점수(0점)가 저장되거나 합계에 섞이면 안 되는 곳에서 쓴다. (saveDiary, 실시간 편집 WebSocket, PDF 가져오기)
+    *
+    * */
+    public CompletableFuture<DiaryResponseDTO> scoreOrNull(String text) {
+        DiaryResponseDTO local = scoreLocally(text);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+
+        DiaryScoreCache.TextKey key = DiaryScoreCache.keyOf(text);
+        DiaryResponseDTO cached = scoreCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return batcher.submit(text).handle((response, error) -> {
+            if (error != null) {
+                log.warn("감정 분석 실패: {}", error.getMessage());
+                return null;
+            }
+            scoreCache.put(key, response); // fallback 결과는 캐시하지 않는다.
+            return response;
+        });
+    }
+
+    /*
+    * [getDiaryScores : 여러 일기 한 번에 분석]
+    * 1) 로컬 엔진으로 충분한 것, 캐시에 있는 것은 바로 채운다.
+    * 2) 요청 안에서 같은 텍스트(같은 key)는 한 번만 분석한다.
+    * 3) 나머지는 batch.max-size 단위로 잘라서 묶음마다 submitAll 한 번 (묶음끼리는 동시에 진행, 자리는 텍스트마다 하나)
+    * 4) 실패한 묶음의 일기만 fallback 결과로 채운다.
+    * 응답 순서는 요청 순서와 같다.
+    *
+    * */
+    public ResponseEntity<List<DiaryResponseDTO>> getDiaryScores(List<DiaryRequestDTO> requests) {
+        if (requests == null || requests.isEmpty() || requests.size() > properties.getBatch().getMaxRequestSize()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        DiaryResponseDTO[] results = new DiaryResponseDTO[requests.size()];
+        Map<DiaryScoreCache.TextKey, List<Integer>> misses = new LinkedHashMap<>();
+        List<String> missTexts = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            String text = requests.get(i).getText();
+            if (text == null || text.isBlank()) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            DiaryResponseDTO local = scoreLocally(text);
+            if (local != null) {
+                results[i] = local;
+                continue;
+            }
+
+            DiaryScoreCache.TextKey key = DiaryScoreCache.keyOf(text);
+            DiaryResponseDTO cached = scoreCache.get(key);
+            if (cached != null) {
+                results[i] = cached;
+                continue;
+            }
+
+            List<Integer> positions = misses.get(key);
+            if (positions == null) {
+                positions = new ArrayList<>(1);
+                misses.put(key, positions);
+                missTexts.add(text);
+            }
+            positions.add(i);
+        }
+
+        List<DiaryScoreCache.TextKey> missKeys = new ArrayList<>(misses.keySet());
+        int chunkSize = Math.max(1, Math.min(properties.getBatch().getMaxSize(), gateway.maxConcurrentCalls()));
+        List<CompletableFuture<List<DiaryResponseDTO>>> chunks = new ArrayList<>();
+        for (int from = 0; from < missTexts.size(); from += chunkSize) {
+            chunks.add(gateway.submitAll(missTexts.subList(from, Math.min(from + chunkSize, missTexts.size()))));
+        }
+
+        for (int c = 0; c < chunks.size(); c++) {
+            int from = c * chunkSize;
+            List<DiaryResponseDTO> scored = null;
+            try {
+                scored = chunks.get(c).join();
+            } catch (CompletionException | CancellationException e) {
+                log.warn("감정 분석 묶음 실패, fallback 결과 반환: {}", e.getMessage());
+            }
+
+            int to = Math.min(from + chunkSize, missKeys.size());
+            for (int k = from; k < to; k++) {
+                DiaryResponseDTO response = scored == null ? fallback() : scored.get(k - from);
+                if (scored != null) {
+                    scoreCache.put(missKeys.get(k), response);
+                }
+                for (int position : misses.get(missKeys.get(k))) {
+                    results[position] = response;
+                }
+            }
+        }
+
+        return ResponseEntity.ok(Arrays.asList(results));
+    } // getDiaryScores
+
+    /*
+    * [saveDiary : 일기 저장]
+    * 점수를 매기는 API(getDiaryScore, 실시간 편집)는 아무것도 저장하지 않는다. 저장은 여기서만.
+    * 1) 주인(userId)은 로그인한 사용자. 요청 Body로 받지 않는다.
+    * 2) 분석이 실패하면(fallback) 저장하지 않고 503. 가짜 중립 점수가 추이에 영원히 남지 않도록.
+    * 3) diaryId는 클라이언트가 정한 일기 id. (사용자, diaryId)가 이미 저장돼 있으면 다시 넣지도, 집계에 더하지도 않는다.
+    *    → 재시도 / 중복 전송해도 결과가 같다. (처음 저장한 내용이 남음)
+    * 4) 저장은 대기열에 넣기만 한다. (JdbcDiaryStore가 모아서 한 번에 씀) 대기열이 가득 차면 503
+    * 5) DB가 받지 않는 값(컬럼보다 긴 id, NUL 문자)은 대기열에 넣기 전에 400으로 막는다.
+    *    (묶음으로 쓰기 때문에 한 건이 실패하면 같이 묶인 다른 사람의 일기까지 다시 써야 한다)
+    *
+    * */
+    public ResponseEntity<DiaryResponseDTO> saveDiary(String userId, DiarySaveRequestDTO request) {
+        String diaryId = request.getDiaryId();
+        String text = request.getText();
+        if (diaryId == null || diaryId.isBlank() || diaryId.length() > MAX_DIARY_ID_LENGTH || text == null || text.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        // PostgreSQL TEXT / VARCHAR는 NUL(\u0000)을 저장하지 못한다.
+        if (userId == null || userId.isEmpty() || userId.length() > MAX_USER_ID_LENGTH
+                || hasNul(userId) || hasNul(diaryId) || hasNul(text)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        DiaryResponseDTO response = scoreOrNull(text).join();
+        if (response == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        DiaryEntry entry = new DiaryEntry(userId, diaryId, text, response.getScore(), response.getMagnitude(), Instant.now());
+        if (!store.record(entry)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.accepted().body(response);
+    } // saveDiary
+
+    private static boolean hasNul(String value) {
+        return value.indexOf('\u0000') >= 0;
+    }
+
+    /*
+    * [getTrends : 기간별 감정 추이]
+    * DiaryStore가 일기를 저장할 때 같이 갱신해 둔 일 / 주 / 월 집계만 읽는다. (원본 일기를 다시 훑지 않음)
+    * period : day | week | month, from / to가 없으면 최근 30일 / 26주 / 24개월
+    * 로그인한 사용자 자신의 추이만 본다.
+    *
+    * */
+    public ResponseEntity<List<DiaryTrendDTO>> getTrends(String userId, String period, LocalDate from, LocalDate to) {
+        MoodPeriod moodPeriod = MoodPeriod.parse(period);
+        if (moodPeriod == null || (from != null && to != null && from.isAfter(to))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            return ResponseEntity.ok(store.trends(userId, moodPeriod, from, to));
+        } catch (DiaryStoreException e) {
+            log.warn("감정 추이 조회 실패: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    } // getTrends
+
+    /*
+    * [로컬 엔진 우선 분석]
+    * remote : 항상 null (원격으로)
+    * local : 로컬 결과를 그대로 사용
+    * local-first : 로컬 결과의 신뢰도(confidence)가 min-confidence 이상일 때만 사용, 아니면 null (원격으로 넘김)
+    *
+    * */
+    private DiaryResponseDTO scoreLocally(String text) {
+        SentimentProperties.Mode mode = properties.getMode();
+        if (mode == SentimentProperties.Mode.REMOTE) {
+            return null;
+        }
+
+        LexiconSentimentAnalyzer.LexiconScore result = lexicon.evaluate(text);
+        if (mode == SentimentProperties.Mode.LOCAL || result.confidence() >= properties.getLocal().getMinConfidence()) {
+            return new DiaryResponseDTO(result.score(), result.magnitude());
+        }
+        return null;
+    }
+
+    private DiaryResponseDTO fallback() {
+        return new DiaryResponseDTO(properties.getFallbackScore(), properties.getFallbackMagnitude());
+    }
 }
@@ -0,0 +1,17 @@
+package com.dalmuri.dmr.web.diary.store;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * 저장할 일기 한 건과 분석 결과
+ * - userId : 로그인한 사용자 (필수)
+ * - diaryId : 클라이언트가 정한 일기 id. (userId, diaryId)당 한 번만 저장 / 집계된다.
+ * */
+public record DiaryEntry(String userId, String diaryId, String text, float score, float magnitude, Instant writtenAt) {
+
+    public DiaryEntry {
+        Objects.requireNonNull(userId, "userId");
+        Objects.requireNonNull(diaryId, "diaryId");
+    }
+}
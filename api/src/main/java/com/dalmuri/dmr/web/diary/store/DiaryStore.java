@@ -0,0 +1,24 @@
+package com.dalmuri.dmr.web.diary.store;
+
+import com.dalmuri.dmr.web.diary.model.DiaryTrendDTO;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 일기 / 감정 점수 저장소
+ * - record : 저장 대기열에 넣기만 하고 바로 돌아간다. (요청 스레드는 DB를 기다리지 않음)
+ *   같은 (userId, diaryId)는 몇 번 넣어도 한 번만 저장 / 집계된다.
+ * - trends : 미리 모아 둔 일 / 주 / 월 집계(rollup)에서 읽는다. 원본 일기는 보지 않는다.
+ * */
+public interface DiaryStore {
+
+    /** 대기열이 가득 찼거나 멈췄으면 false (저장하지 않음) */
+    boolean record(DiaryEntry entry);
+
+    /**
+     * from / to가 null이면 기간(period)별 기본 범위. 오래된 것부터 순서대로.
+     * @throws DiaryStoreException DB에서 읽지 못했을 때
+     * */
+    List<DiaryTrendDTO> trends(String userId, MoodPeriod period, LocalDate from, LocalDate to);
+}
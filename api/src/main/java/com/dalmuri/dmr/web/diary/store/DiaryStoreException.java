@@ -0,0 +1,12 @@
+package com.dalmuri.dmr.web.diary.store;
+
+/**
+ * 일기 저장소(DB)에서 읽지 못했을 때 발생
+ * - DiaryService에서 잡아서 503으로 바꾼다.
+ * */
+public class DiaryStoreException extends RuntimeException {
+
+    public DiaryStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,459 @@
+package com.dalmuri.dmr.web.diary.store;
+
+import com.dalmuri.dmr.web.diary.model.DiaryTrendDTO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+public class JdbcDiaryStore implements DiaryStore, AutoCloseable, MeterBinder {
+
+    /*
+    * [JdbcDiaryStore : 일기 저장 + 감정 집계(rollup)]
+    * compose.yaml에 이미 있는 postgres에 저장한다. 테이블은 처음 쓸 때 만든다. (PostgresChatBroker와 같은 방식)
+    *
+    * 1) 쓰기 : record()는 대기열에 넣기만 한다. 쓰는 스레드 하나가
+    *    maxBatch개가 차거나 첫 일기가 들어온 지 flushInterval이 지나면 모아서
+    *    트랜잭션 하나에
+    *    - diary_entry : 여러 행 INSERT 한 문장 (VALUES (..), (..), ...)
+    *      ON CONFLICT (user_id, diary_id) DO NOTHING RETURNING : 이미 저장된 일기는 건너뛰고, 새로 들어간 행만 돌려받는다.
+    *    - diary_mood_rollup : 새로 들어간 일기만 (사용자, 기간, bucket)별로 먼저 더해 두고, 여러 행 INSERT ... ON CONFLICT DO UPDATE 한 문장
+    *      → 기존 집계에 개수 / 합계를 더하고 최솟값 / 최댓값을 갱신한다.
+    *    commit 한 번. 일기 N개가 DB 왕복 두 번 + commit 한 번이 된다.
+    * 2) 읽기(trends) : diary_mood_rollup만 본다. 기간 하나에 행 하나라서 몇 년치 일기가 있어도 읽는 양은 bucket 수만큼.
+    *    평균 = 합계 / 개수
+    *
+    * - 같은 묶음 안에서 같은 키가 두 번 나오면 ON CONFLICT DO UPDATE가 실패하므로, 꼭 메모리에서 먼저 합친다.
+    * - 같은 일기(사용자, diaryId)를 여러 번 저장해도 집계에는 한 번만 더해진다. (처음 저장한 것이 남음)
+    * - 쓰기에 실패하면 그 묶음을 들고 있다가 다시 쓴다. (일기와 집계가 같은 트랜잭션이라 반만 들어가는 일은 없음)
+    *   그동안 대기열이 차면 새 일기는 버리고 dropped로 센다.
+    * - 단, 데이터 / 제약 오류(SQLState 22xxx, 23xxx : 너무 긴 값, 텍스트 안의 NUL 등)는 다시 써도 똑같이 실패한다.
+    *   이때는 묶음을 한 건씩 다시 쓰고, 실패한 일기만 버린다. (rejected) → 일기 하나 때문에 모두의 저장이 멈추지 않게
+    * - 날짜는 zone 기준. (자정 근처 일기가 UTC 기준 전날로 들어가지 않게)
+    *
+    * */
+
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    // 모으는 중에도 이 간격으로 멈춤(close)을 확인한다. (flushInterval이 길어도 close가 오래 기다리지 않게)
+    private static final long POLL_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // PostgreSQL 한 문장의 bind 파라미터는 32767개까지. 집계 8개 x 기간 3개 x maxBatch
+    private static final int MAX_BATCH_LIMIT = 1_000;
+
+    private static final String[] SCHEMA = {
+            """
+            CREATE TABLE IF NOT EXISTS diary_entry (
+                id         BIGSERIAL PRIMARY KEY,
+                user_id    VARCHAR(128) NOT NULL,
+                diary_id   VARCHAR(64) NOT NULL,
+                text       TEXT NOT NULL,
+                score      REAL NOT NULL,
+                magnitude  REAL NOT NULL,
+                written_at TIMESTAMPTZ NOT NULL,
+                UNIQUE (user_id, diary_id)
+            )""",
+            "CREATE INDEX IF NOT EXISTS diary_entry_user_written ON diary_entry (user_id, written_at)",
+            """
+            CREATE TABLE IF NOT EXISTS diary_mood_rollup (
+                user_id       VARCHAR(128) NOT NULL,
+                period        CHAR(1) NOT NULL,
+                bucket        DATE NOT NULL,
+                entries       BIGINT NOT NULL,
+                score_sum     DOUBLE PRECISION NOT NULL,
+                magnitude_sum DOUBLE PRECISION NOT NULL,
+                score_min     REAL NOT NULL,
+                score_max     REAL NOT NULL,
+                PRIMARY KEY (user_id, period, bucket)
+            )"""
+    };
+    private static final String INSERT_ENTRIES =
+            "INSERT INTO diary_entry (user_id, diary_id, text, score, magnitude, written_at) VALUES ";
+    private static final String INSERTED_ONLY = " ON CONFLICT (user_id, diary_id) DO NOTHING RETURNING user_id, diary_id";
+    private static final String UPSERT_ROLLUPS =
+            "INSERT INTO diary_mood_rollup (user_id, period, bucket, entries, score_sum, magnitude_sum, score_min, score_max) VALUES ";
+    private static final String ON_CONFLICT = """
+             ON CONFLICT (user_id, period, bucket) DO UPDATE SET
+                entries = diary_mood_rollup.entries + EXCLUDED.entries,
+                score_sum = diary_mood_rollup.score_sum + EXCLUDED.score_sum,
+                magnitude_sum = diary_mood_rollup.magnitude_sum + EXCLUDED.magnitude_sum,
+                score_min = LEAST(diary_mood_rollup.score_min, EXCLUDED.score_min),
+                score_max = GREATEST(diary_mood_rollup.score_max, EXCLUDED.score_max)""";
+    // 범위가 maxBuckets보다 넓으면 최근 것부터 maxBuckets개
+    private static final String SELECT_TRENDS = """
+            SELECT bucket, entries, score_sum, magnitude_sum, score_min, score_max FROM diary_mood_rollup
+            WHERE user_id = ? AND period = ? AND bucket BETWEEN ? AND ?
+            ORDER BY bucket DESC LIMIT ?""";
+
+    private final DataSource dataSource;
+    private final ZoneId zone;
+    private final int maxBatch;
+    private final long flushNanos;
+    private final int maxBuckets;
+    private final BlockingQueue<DiaryEntry> queue;
+    private volatile boolean schemaReady;
+    private volatile boolean running;
+    private Thread writeThread;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public JdbcDiaryStore(DataSource dataSource, ZoneId zone, int maxBatch, Duration flushInterval,
+                          int queueCapacity, int maxBuckets) {
+        this.dataSource = dataSource;
+        this.zone = zone;
+        this.maxBatch = Math.max(1, Math.min(maxBatch, MAX_BATCH_LIMIT));
+        this.flushNanos = flushInterval.toNanos();
+        this.maxBuckets = maxBuckets;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writeThread = new Thread(this::writeLoop, "diary-store-write");
+        writeThread.setDaemon(true);
+        writeThread.start();
+    }
+
+    @Override
+    public boolean record(DiaryEntry entry) {
+        if (!running || !queue.offer(entry)) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // ---------- 쓰기 ----------
+
+    private void writeLoop() {
+        List<DiaryEntry> batch = new ArrayList<>(maxBatch);
+        long backoff = 100;
+        while (true) {
+            try {
+                if (batch.isEmpty() && !collect(batch)) {
+                    return; // 멈췄고 남은 일기도 없다.
+                }
+                write(batch);
+                written.add(batch.size());
+                batch.clear();
+                backoff = 100;
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (SQLException | RuntimeException e) {
+                failures.increment();
+                if (e instanceof SQLException sql && isDataError(sql)) {
+                    log.warn("diary store batch rejected ({} entries, writing one by one): {}", batch.size(), e.toString());
+                    if (writeEach(batch)) {
+                        backoff = 100;
+                        continue;
+                    }
+                }
+                if (!running) {
+                    dropped.add(batch.size() + queue.size());
+                    log.warn("diary store write failed while closing ({} entries dropped): {}", batch.size() + queue.size(), e.toString());
+                    return;
+                }
+                log.warn("diary store write failed ({} entries kept for retry): {}", batch.size(), e.toString());
+                backoff = pause(backoff);
+            }
+        }
+    }
+
+    /*
+    * [writeEach : 한 건씩 다시 쓰기]
+    * 쓴 일기와 데이터 오류로 버린 일기는 batch에서 뺀다.
+    * 다른 오류(연결 끊김 등)가 나면 거기서 멈추고 false → 남은 일기는 들고 있다가 묶음으로 다시 쓴다.
+    *
+    * */
+    private boolean writeEach(List<DiaryEntry> batch) {
+        Iterator<DiaryEntry> entries = batch.iterator();
+        while (entries.hasNext()) {
+            DiaryEntry entry = entries.next();
+            try {
+                write(List.of(entry));
+                written.increment();
+            } catch (SQLException e) {
+                if (!isDataError(e)) {
+                    return false;
+                }
+                rejected.increment();
+                log.warn("diary entry rejected (user {}, diary {}): {}", entry.userId(), entry.diaryId(), e.toString());
+            } catch (RuntimeException e) {
+                return false;
+            }
+            entries.remove();
+        }
+        return true;
+    }
+
+    // 22xxx : data exception (값이 너무 김, 잘못된 문자 등), 23xxx : 제약 위반. 다시 써도 결과가 같다.
+    static boolean isDataError(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            String state = next.getSQLState();
+            if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // maxBatch개가 차거나 첫 일기부터 flushInterval이 지날 때까지 모은다. 멈췄고 비어 있으면 false
+    private boolean collect(List<DiaryEntry> batch) throws InterruptedException {
+        DiaryEntry first;
+        do {
+            first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+        } while (first == null && running);
+        if (first == null) {
+            return false;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushNanos;
+        while (batch.size() < maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !running) {
+                queue.drainTo(batch, maxBatch - batch.size()); // 멈추는 중이면 남은 것을 바로 쓴다.
+                break;
+            }
+            DiaryEntry next = queue.poll(Math.min(remaining, POLL_SLICE_NANOS), TimeUnit.NANOSECONDS);
+            if (next != null) {
+                batch.add(next);
+            }
+        }
+        return true;
+    }
+
+    private void write(List<DiaryEntry> batch) throws SQLException {
+        // 같은 묶음 안의 같은 일기는 처음 것만
+        Map<EntryKey, DiaryEntry> unique = new LinkedHashMap<>();
+        for (DiaryEntry entry : batch) {
+            unique.putIfAbsent(new EntryKey(entry.userId(), entry.diaryId()), entry);
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            ensureSchema(connection);
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(values(INSERT_ENTRIES, 6, unique.size()) + INSERTED_ONLY)) {
+                int p = 1;
+                for (DiaryEntry entry : unique.values()) {
+                    insert.setString(p++, entry.userId());
+                    insert.setString(p++, entry.diaryId());
+                    insert.setString(p++, entry.text());
+                    insert.setFloat(p++, entry.score());
+                    insert.setFloat(p++, entry.magnitude());
+                    insert.setObject(p++, entry.writtenAt().atOffset(ZoneOffset.UTC));
+                }
+
+                List<DiaryEntry> inserted = new ArrayList<>(unique.size());
+                try (ResultSet rs = insert.executeQuery()) {
+                    while (rs.next()) {
+                        inserted.add(unique.get(new EntryKey(rs.getString(1), rs.getString(2))));
+                    }
+                }
+                if (!inserted.isEmpty()) {
+                    upsertRollups(connection, rollup(inserted, zone));
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void upsertRollups(Connection connection, Map<RollupKey, Rollup> rollups) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(values(UPSERT_ROLLUPS, 8, rollups.size()) + ON_CONFLICT)) {
+            int p = 1;
+            for (Map.Entry<RollupKey, Rollup> rollup : rollups.entrySet()) {
+                RollupKey key = rollup.getKey();
+                Rollup sum = rollup.getValue();
+                upsert.setString(p++, key.userId());
+                upsert.setString(p++, key.period().code);
+                upsert.setObject(p++, key.bucket());
+                upsert.setLong(p++, sum.entries);
+                upsert.setDouble(p++, sum.scoreSum);
+                upsert.setDouble(p++, sum.magnitudeSum);
+                upsert.setFloat(p++, sum.scoreMin);
+                upsert.setFloat(p++, sum.scoreMax);
+            }
+            upsert.executeUpdate();
+        }
+    }
+
+    // "INSERT ... VALUES " + (?, ?, ...) x rows
+    static String values(String prefix, int columns, int rows) {
+        StringBuilder sql = new StringBuilder(prefix.length() + rows * (columns * 3 + 4));
+        sql.append(prefix);
+        for (int row = 0; row < rows; row++) {
+            sql.append(row == 0 ? "(" : ", (");
+            for (int column = 0; column < columns; column++) {
+                sql.append(column == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    // 묶음 안의 일기를 (사용자, 기간, bucket)별로 먼저 합친다.
+    static Map<RollupKey, Rollup> rollup(List<DiaryEntry> batch, ZoneId zone) {
+        Map<RollupKey, Rollup> rollups = new LinkedHashMap<>();
+        for (DiaryEntry entry : batch) {
+            String userId = entry.userId();
+            LocalDate date = entry.writtenAt().atZone(zone).toLocalDate();
+            for (MoodPeriod period : MoodPeriod.values()) {
+                rollups.computeIfAbsent(new RollupKey(userId, period, period.bucketOf(date)), key -> new Rollup())
+                        .add(entry.score(), entry.magnitude());
+            }
+        }
+        return rollups;
+    }
+
+    private void ensureSchema(Connection connection) throws SQLException {
+        if (schemaReady) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+        }
+        schemaReady = true;
+    }
+
+    private long pause(long backoff) {
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+        return Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+
+    // ---------- 읽기 ----------
+
+    @Override
+    public List<DiaryTrendDTO> trends(String userId, MoodPeriod period, LocalDate from, LocalDate to) {
+        LocalDate toBucket = period.bucketOf(to != null ? to : LocalDate.now(zone));
+        LocalDate fromBucket = from != null ? period.bucketOf(from) : period.defaultFrom(toBucket);
+
+        List<DiaryTrendDTO> trends = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            ensureSchema(connection);
+            try (PreparedStatement select = connection.prepareStatement(SELECT_TRENDS)) {
+                select.setString(1, userId);
+                select.setString(2, period.code);
+                select.setObject(3, fromBucket);
+                select.setObject(4, toBucket);
+                select.setInt(5, maxBuckets);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        long entries = rs.getLong(2);
+                        trends.add(new DiaryTrendDTO(
+                                rs.getObject(1, LocalDate.class),
+                                entries,
+                                (float) (rs.getDouble(3) / entries),
+                                (float) (rs.getDouble(4) / entries),
+                                rs.getFloat(5),
+                                rs.getFloat(6)));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DiaryStoreException("diary trends query failed", e);
+        }
+        Collections.reverse(trends); // 오래된 것부터
+        return trends;
+    }
+
+    public long writtenCount() {
+        return written.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    // diary.store.queued, diary.store.written, diary.store.dropped, diary.store.failures, diary.store.rejected
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("diary.store.queued", queue, BlockingQueue::size).register(registry);
+        FunctionCounter.builder("diary.store.written", this, JdbcDiaryStore::writtenCount).register(registry);
+        FunctionCounter.builder("diary.store.dropped", this, JdbcDiaryStore::droppedCount).register(registry);
+        FunctionCounter.builder("diary.store.failures", this, JdbcDiaryStore::failureCount).register(registry);
+        FunctionCounter.builder("diary.store.rejected", this, JdbcDiaryStore::rejectedCount).register(registry);
+    }
+
+    /** 남은 일기를 쓰고 멈춘다. (최대 10초) */
+    @Override
+    public void close() {
+        running = false;
+        Thread thread = writeThread;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record EntryKey(String userId, String diaryId) {
+    }
+
+    record RollupKey(String userId, MoodPeriod period, LocalDate bucket) {
+    }
+
+    static final class Rollup {
+        long entries;
+        double scoreSum;
+        double magnitudeSum;
+        float scoreMin = Float.POSITIVE_INFINITY;
+        float scoreMax = Float.NEGATIVE_INFINITY;
+
+        void add(float score, float magnitude) {
+            entries++;
+            scoreSum += score;
+            magnitudeSum += magnitude;
+            scoreMin = Math.min(scoreMin, score);
+            scoreMax = Math.max(scoreMax, score);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.dalmuri.dmr.web.diary.store;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+/**
+ * 감정 집계 단위. 각 기간의 첫날(bucket)을 키로 쓴다.
+ * - DAY : 그날, WEEK : 그 주 월요일 (ISO), MONTH : 그 달 1일
+ * */
+public enum MoodPeriod {
+
+    DAY("D"), WEEK("W"), MONTH("M");
+
+    // diary_mood_rollup.period 컬럼 값
+    final String code;
+
+    MoodPeriod(String code) {
+        this.code = code;
+    }
+
+    public LocalDate bucketOf(LocalDate date) {
+        return switch (this) {
+            case DAY -> date;
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+        };
+    }
+
+    // from을 안 줬을 때 : 최근 30일 / 26주 / 24개월
+    LocalDate defaultFrom(LocalDate toBucket) {
+        return switch (this) {
+            case DAY -> toBucket.minusDays(29);
+            case WEEK -> toBucket.minusWeeks(25);
+            case MONTH -> toBucket.minusMonths(23);
+        };
+    }
+
+    /** "day" / "week" / "month" (대소문자 무시). 모르는 값이면 null */
+    public static MoodPeriod parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "day", "daily" -> DAY;
+            case "week", "weekly" -> WEEK;
+            case "month", "monthly" -> MONTH;
+            default -> null;
+        };
+    }
+}
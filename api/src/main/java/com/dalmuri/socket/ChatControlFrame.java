@@ -0,0 +1,118 @@
+package com.dalmuri.socket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+
+/**
+ * 채팅 텍스트 프레임의 머리 부분(type, room)
+ * - {"type": "join", "room": "방"}  : 방에 들어가기 → {"type": "joined", "room": "방", "members": 3, "history": "이 노드 기록 id"}
+ * - {"type": "leave", "room": "방"} : 방에서 나가기 → {"type": "left", "room": "방"}
+ * - {"type": "replay", "room": "방", "since": 120, "history": "기록 id"} : 들어가 있는 방의 121번 메시지부터 다시 받기 (ChatHistory)
+ *   join에 since를 같이 보내면 들어가면서 바로 replay. history는 offset을 받았던 기록의 id (다른 노드 기록이면 거절)
+ * - {"type": "typing", "room": "방"} : 입력 중 표시 (PresenceService가 모아서 틱마다 {"type": "presence", ...}로 보냄)
+ * - {"type": "message", "room": "방", ...} : 그 방 사람들에게만 전달
+ * - 그 외(JSON이 아닌 예전 클라이언트의 일반 문자열 등) : 보낸 사람이 들어가 있는 방 사람들에게 전달
+ * 같은 프레임을 바이너리로 보낼 수도 있다. (ChatEnvelope)
+ * */
+public record ChatControlFrame(String type, String room, long since, String history) {
+
+    public static final String JOIN = "join";
+    public static final String LEAVE = "leave";
+    public static final String REPLAY = "replay";
+
+    // since가 없을 때
+    public static final long NO_REPLAY = -1;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // history를 실어 보낼 수 없는 바이너리 envelope용
+    public ChatControlFrame(String type, String room, long since) {
+        this(type, room, since, null);
+    }
+
+    /*
+    * [peek]
+    * 메시지마다 JSON 전체를 객체로 만들지 않고, 스트리밍 파서로 최상위 type, room (+ join / replay면 since, history) 필드만 읽고 멈춘다.
+    * 본문(나머지 필드)은 그대로 다른 세션에 전달하므로 파싱할 필요가 없다.
+    * JSON 객체가 아니면 null
+    *
+    * */
+    public static ChatControlFrame peek(String payload) {
+        if (payload.isEmpty() || payload.charAt(0) != '{') {
+            return null;
+        }
+
+        try (JsonParser parser = JSON.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            String type = null;
+            String room = null;
+            long since = NO_REPLAY;
+            String history = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+                    type = parser.getText();
+                } else if ("room".equals(field) && value == JsonToken.VALUE_STRING) {
+                    room = parser.getText();
+                } else if ("since".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    since = Math.max(0, parser.getLongValue());
+                } else if ("history".equals(field) && value == JsonToken.VALUE_STRING) {
+                    history = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+                // 일반 메시지는 since를 찾으려고 본문 끝까지 읽지 않는다.
+                if (type != null && room != null
+                        && ((since != NO_REPLAY && history != null) || !(JOIN.equals(type) || REPLAY.equals(type)))) {
+                    break;
+                }
+            }
+            return type == null ? null : new ChatControlFrame(type, room, since, history);
+        } catch (IOException e) {
+            return null; // JSON 처럼 보이지만 아닌 일반 문자열
+        }
+    }
+
+    public boolean isControl() {
+        return JOIN.equals(type) || LEAVE.equals(type) || REPLAY.equals(type);
+    }
+
+    /** join 또는 replay 프레임에 since가 있으면 (applyTo 다음에) 기록을 다시 보내야 한다. */
+    public boolean wantsReplay() {
+        return since != NO_REPLAY && (JOIN.equals(type) || REPLAY.equals(type));
+    }
+
+    /**
+     * join / leave를 registry에 반영하고, 보낸 사람에게 돌려줄 응답을 만든다. (joined에는 이 노드 기록 id)
+     * replay는 응답이 없다(null). 들어가 있지 않은 방이면 오류 응답
+     * */
+    public TextMessage applyTo(ChatSessionRegistry registry, WebSocketSession session, String historyId) {
+        if (!ChatSessionRegistry.isValidRoomId(room)) {
+            return new TextMessage("{\"type\":\"error\",\"message\":\"invalid room\"}");
+        }
+        if (REPLAY.equals(type)) {
+            return ChatSessionRegistry.roomsOf(session).contains(room)
+                    ? null
+                    : new TextMessage("{\"type\":\"error\",\"message\":\"not in room\"}");
+        }
+
+        String quotedRoom = new String(JsonStringEncoder.getInstance().quoteAsString(room));
+        if (JOIN.equals(type)) {
+            registry.join(session, room);
+            return new TextMessage("{\"type\":\"joined\",\"room\":\"" + quotedRoom
+                    + "\",\"members\":" + registry.membersOf(room).size() + ",\"history\":\"" + historyId + "\"}");
+        }
+        registry.leave(session, room);
+        return new TextMessage("{\"type\":\"left\",\"room\":\"" + quotedRoom + "\"}");
+    }
+}
@@ -0,0 +1,181 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.socket.presence.PresenceService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 바이너리 채팅 프레임 (envelope). 머리에 종류, 방, 보낸 사람, 순번을 싣고 뒤에 본문을 붙인다.
+ * <pre>
+ * [magic "DMRE" 4][version 1][type 1][room 길이 1][sender 길이 1][seq 8][body 길이 4][room UTF-8][sender UTF-8][body]
+ * </pre>
+ * - type : MESSAGE(본문 = UTF-8 텍스트), MEDIA(본문 = 이미지 등), TYPING, JOIN, LEAVE, REPLAY(seq = since)
+ * - room 길이 0 = 보낸 사람이 들어가 있는 방 전부
+ * - 서버가 보낼 때 : sender = 보낸 사람 userId, seq = 방 기록 offset (없으면 0)
+ *   클라이언트가 보낸 sender는 보지 않는다.
+ *
+ * JSON 텍스트 프레임(ChatControlFrame)은 그대로 쓸 수 있다. envelope을 한 번이라도 보낸 세션에게만 방 메시지를 envelope으로 보낸다.
+ * */
+public final class ChatEnvelope {
+
+    /*
+    * [flyweight]
+    * 프레임마다 DTO를 만들지 않는다. ChatEnvelope 하나를 받은 ByteBuffer 위에 올려놓고(wrap),
+    * 필요한 머리 필드만 절대 위치(getLong(base + 8) 등)로 바로 읽는다. → 본문을 읽지 않고도 type / room으로 분기할 수 있다.
+    * 보낼 때도 필드를 목적지 ByteBuffer에 바로 쓴다. (중간 byte[] 조립 없음)
+    * 받는 쪽(MediachatHandler)은 세션마다 하나를 만들어 두고 프레임마다 다시 wrap 한다. (한 세션의 프레임은 차례대로 온다)
+    * 다 쓰면 release()로 받은 버퍼를 놓아서 다음 프레임까지 붙잡고 있지 않는다.
+    *
+    * */
+
+    public static final int MAGIC = 0x444D5245; // "DMRE"
+    public static final byte VERSION = 1;
+    public static final int HEADER_LENGTH = 4 + 1 + 1 + 1 + 1 + 8 + 4;
+    public static final int MAX_NAME_LENGTH = 255;
+
+    public static final byte MESSAGE = 1;
+    public static final byte MEDIA = 2;
+    public static final byte TYPING = 3;
+    public static final byte JOIN = 4;
+    public static final byte LEAVE = 5;
+    public static final byte REPLAY = 6;
+
+    private static final int VERSION_AT = 4;
+    private static final int TYPE_AT = 5;
+    private static final int ROOM_LENGTH_AT = 6;
+    private static final int SENDER_LENGTH_AT = 7;
+    private static final int SEQ_AT = 8;
+    private static final int BODY_LENGTH_AT = 16;
+
+    private ByteBuffer buffer;
+    private int base;
+
+    public static boolean isEnvelope(ByteBuffer payload) {
+        return payload.remaining() >= HEADER_LENGTH && payload.getInt(payload.position()) == MAGIC;
+    }
+
+    /** payload 위에 올려놓는다. 버전이 다르거나 길이가 맞지 않으면 false (payload의 position은 바꾸지 않는다) */
+    public boolean wrap(ByteBuffer payload) {
+        release();
+        if (!isEnvelope(payload) || payload.get(payload.position() + VERSION_AT) != VERSION) {
+            return false;
+        }
+        int at = payload.position();
+        long total = (long) HEADER_LENGTH
+                + Byte.toUnsignedInt(payload.get(at + ROOM_LENGTH_AT))
+                + Byte.toUnsignedInt(payload.get(at + SENDER_LENGTH_AT))
+                + Integer.toUnsignedLong(payload.getInt(at + BODY_LENGTH_AT));
+        if (total != payload.remaining()) {
+            return false;
+        }
+        this.buffer = payload;
+        this.base = at;
+        return true;
+    }
+
+    /** 올려놓았던 버퍼를 놓는다. 다시 wrap 하기 전까지 필드를 읽을 수 없다. */
+    public void release() {
+        this.buffer = null;
+        this.base = 0;
+    }
+
+    public byte type() {
+        return buffer.get(base + TYPE_AT);
+    }
+
+    public long seq() {
+        return buffer.getLong(base + SEQ_AT);
+    }
+
+    public int roomLength() {
+        return Byte.toUnsignedInt(buffer.get(base + ROOM_LENGTH_AT));
+    }
+
+    public int senderLength() {
+        return Byte.toUnsignedInt(buffer.get(base + SENDER_LENGTH_AT));
+    }
+
+    public int bodyLength() {
+        return buffer.getInt(base + BODY_LENGTH_AT);
+    }
+
+    /** 방 이름. 비어 있으면 null (들어가 있는 방 전부) */
+    public String room() {
+        int length = roomLength();
+        return length == 0 ? null : string(base + HEADER_LENGTH, length);
+    }
+
+    public String sender() {
+        return string(base + HEADER_LENGTH + roomLength(), senderLength());
+    }
+
+    /** 본문 구간 (내용 복사 없음) */
+    public ByteBuffer body() {
+        return buffer.slice(bodyOffset(), bodyLength());
+    }
+
+    public String bodyText() {
+        return string(bodyOffset(), bodyLength());
+    }
+
+    private int bodyOffset() {
+        return base + HEADER_LENGTH + roomLength() + senderLength();
+    }
+
+    private String string(int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** JOIN / LEAVE / REPLAY / TYPING을 텍스트 프레임과 같은 type 이름으로. 그 외는 null */
+    public static String controlTypeOf(byte type) {
+        return switch (type) {
+            case JOIN -> ChatControlFrame.JOIN;
+            case LEAVE -> ChatControlFrame.LEAVE;
+            case REPLAY -> ChatControlFrame.REPLAY;
+            case TYPING -> PresenceService.TYPING;
+            default -> null;
+        };
+    }
+
+    /*
+    * [encode]
+    * 크기를 먼저 계산해서 딱 맞는 버퍼 하나를 만들고 순서대로 쓴다. body는 한 번만 복사된다.
+    * 255바이트를 넘는 방 / 보낸 사람 이름은 쓰지 않는다. (빈 값) 방 이름은 ChatSessionRegistry에서 64자로 제한됨
+    *
+    * */
+    public static ByteBuffer encode(byte type, String room, String sender, long seq, ByteBuffer body) {
+        byte[] roomBytes = nameBytes(room);
+        byte[] senderBytes = nameBytes(sender);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_LENGTH + roomBytes.length + senderBytes.length + body.remaining());
+        write(out, type, roomBytes, senderBytes, seq, body);
+        return out.flip();
+    }
+
+    /** dst의 position부터 envelope 하나를 쓴다. body의 position은 바꾸지 않는다. */
+    public static void write(ByteBuffer dst, byte type, byte[] room, byte[] sender, long seq, ByteBuffer body) {
+        dst.putInt(MAGIC)
+                .put(VERSION)
+                .put(type)
+                .put((byte) room.length)
+                .put((byte) sender.length)
+                .putLong(seq)
+                .putInt(body.remaining())
+                .put(room)
+                .put(sender)
+                .put(body.duplicate());
+    }
+
+    private static byte[] nameBytes(String name) {
+        if (name == null) {
+            return new byte[0];
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_NAME_LENGTH ? bytes : new byte[0];
+    }
+}
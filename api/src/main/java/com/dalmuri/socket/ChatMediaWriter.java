@@ -0,0 +1,144 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.dmr.common.media.ThumbnailService;
+import com.dalmuri.dmr.common.upload.UploadMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Component
+public class ChatMediaWriter implements DisposableBean, MeterBinder {
+
+    /*
+    * [ChatMediaWriter : 채팅으로 받은 이미지/동영상을 비동기로 저장]
+    * 예전에는 handleBinaryMessage 안에서 out.write(byteBuffer.get())로 1바이트씩 "uploaded_files" 한 파일에 덮어썼다.
+    *   → 바이트마다 시스템 콜, 저장이 끝나야 다른 사람에게 전달, 파일은 항상 마지막 것만 남음
+    *
+    * 지금은
+    * 1) 받는 사람에게 먼저 전달하고 (MediachatHandler)
+    * 2) 저장은 가상 스레드에서 FileChannel.write(ByteBuffer)로 한 번에 쓴다. (시스템 콜은 바이트마다가 아니라 몇 번)
+    *    받은 버퍼를 duplicate()로 그대로 넘기므로 따로 byte[]를 만들지 않는다.
+    *    단, 힙 버퍼라서 JDK가 내부 direct 버퍼로 한 번 옮겨 쓴다. (디스크 쓰기 경로의 복사는 남아 있음)
+    * 3) 파일명은 내용의 SHA-256 → 같은 사진을 여러 번 보내도 파일은 하나. 다른 사진끼리 덮어쓰는 일도 없다.
+    *    (저장은 MediaStore가 한다. 이미 있는 내용이면 다시 쓰지 않음)
+    * 4) 디스크가 받는 속도보다 빨리 들어오면 쓰기를 기다리는 버퍼가 힙에 쌓인다.
+    *    pendingBytes가 maxPendingBytes를 넘으면 persist()가 RejectedExecutionException을 던진다. (executor가 꽉 찼을 때와 같은 방식)
+    *    자리는 CAS로 먼저 잡고, 쓰기가 끝나면(성공 / 실패 모두) 돌려준다.
+    *
+    * */
+
+    private final MediaStore mediaStore;
+    private final ThumbnailService thumbnailService;
+    private final UploadMetrics uploadMetrics;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("chat-media-", 0).factory());
+    // 디스크 동시 쓰기 수 제한 (가상 스레드는 많이 만들 수 있지만, 디스크는 그렇지 않다)
+    private final Semaphore writers = new Semaphore(8);
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+    private final long maxPendingBytes;
+
+    public ChatMediaWriter(MediaStore mediaStore, ThumbnailService thumbnailService, UploadMetrics uploadMetrics,
+                           ChatProperties properties) {
+        this.mediaStore = mediaStore;
+        this.thumbnailService = thumbnailService;
+        this.uploadMetrics = uploadMetrics;
+        this.maxPendingBytes = properties.getUpload().getMaxPendingMedia().toBytes();
+    }
+
+    /**
+     * payload를 비동기로 저장하고, 저장된 파일 정보를 돌려준다.
+     * payload의 position / limit은 건드리지 않는다. (duplicate()로 읽음)
+     * @throws RejectedExecutionException 쓰기를 기다리는 바이트가 maxPendingBytes를 넘을 때
+     */
+    public CompletableFuture<MediaStore.StoredMedia> persist(ByteBuffer payload) {
+        ByteBuffer content = payload.duplicate();
+        long started = System.nanoTime();
+        if (!reserve(content.remaining())) {
+            rejected.increment();
+            throw new RejectedExecutionException("chat media backlog full (" + pendingBytes.get() + " bytes pending)");
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                writers.acquire();
+                try {
+                    return mediaStore.put(content);
+                } finally {
+                    writers.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("chat media write interrupted", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                pendingBytes.addAndGet(-content.remaining());
+            }
+        }, executor).whenComplete((stored, e) -> {
+            if (e != null) {
+                uploadMetrics.failed(UploadMetrics.Route.CHAT);
+                log.warn("chat media write failed: {}", e.toString());
+            } else {
+                uploadMetrics.stored(UploadMetrics.Route.CHAT, stored.size(), started);
+                thumbnailService.schedule(stored); // 저장이 끝난 뒤 썸네일 (백그라운드)
+            }
+        });
+    }
+
+    private boolean reserve(int size) {
+        long pending;
+        do {
+            pending = pendingBytes.get();
+            if (pending + size > maxPendingBytes) {
+                return false;
+            }
+        } while (!pendingBytes.compareAndSet(pending, pending + size));
+        return true;
+    }
+
+    // 아직 디스크에 쓰지 못한 바이트 수
+    public long pendingBytes() {
+        return pendingBytes.get();
+    }
+
+    // 대기 한도를 넘어서 받지 않은 미디어 수
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.media.pending", this, ChatMediaWriter::pendingBytes)
+                .description("Chat media bytes not yet written to disk")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        FunctionCounter.builder("chat.media.rejected", this, ChatMediaWriter::rejectedCount)
+                .description("Chat media refused because too many bytes were waiting for disk")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        // 남은 저장 작업은 끝내고 종료한다.
+        executor.close();
+    }
+}
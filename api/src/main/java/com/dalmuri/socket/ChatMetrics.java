@@ -0,0 +1,198 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Component
+public class ChatMetrics implements DisposableBean {
+
+    /*
+    * [ChatMetrics : 채팅 핸들러 계측]
+    * 핸들러마다 생성자에서 Handler 하나를 만들어 들고 있는다. (meter 등록은 그때 한 번)
+    * 메시지 경로에서는 미리 만든 Timer / Counter만 부른다. → 이름 / 태그로 meter를 찾거나 객체를 만들지 않는다.
+    *   Timer.record(nanos), Counter.increment(n)은 내부가 LongAdder / 버킷 배열이라 메시지마다 할당이 없다.
+    *
+    * - chat.sessions{handler}            : 열린 세션 수
+    * - chat.room.sessions{handler,room}  : 방별 세션 수 (큰 방 maxRooms개만, roomRefreshInterval마다)
+    * - chat.fanout{handler}              : 메시지 하나를 방 사람들 대기열에 다 넣기까지 걸린 시간 (histogram)
+    * - chat.relayed.messages / chat.relayed.bytes{handler,kind} : 받는 사람 수만큼 센다. (kind = text | binary)
+    * - chat.failures{handler,reason}     : transport(연결 오류), invalid_frame(잘못된 프레임)
+    *
+    * 보내기 대기열 / heartbeat / presence 수치는 각 클래스가 이미 세고 있는 값을 MeterBinder로 그대로 낸다.
+    *
+    * */
+
+    public static final String MEDIA = "media";
+    public static final String TEXT = "text";
+    public static final String DIARY = "diary";
+
+    private final MeterRegistry meterRegistry;
+    private final int maxRooms;
+    private final List<RoomGauge> roomGauges = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ChatMetrics(MeterRegistry meterRegistry, ChatProperties properties) {
+        ChatProperties.Metrics settings = properties.getMetrics();
+        this.meterRegistry = meterRegistry;
+        this.maxRooms = settings.getMaxRooms();
+        long refreshMillis = settings.getRoomRefreshInterval().toMillis();
+        if (refreshMillis > 0 && maxRooms > 0) {
+            scheduler.scheduleWithFixedDelay(this::refreshRooms, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** 핸들러 하나의 meter들. registry가 있으면 방별 세션 수도 낸다. */
+    public Handler handler(String name, ChatSessionRegistry registry) {
+        if (registry != null) {
+            roomGauges.add(new RoomGauge(registry, MultiGauge.builder("chat.room.sessions")
+                    .description("Open sessions per room on this node (largest rooms only)")
+                    .tag("handler", name)
+                    .register(meterRegistry)));
+        }
+        return new Handler(meterRegistry, name);
+    }
+
+    private void refreshRooms() {
+        try {
+            for (RoomGauge gauge : roomGauges) {
+                Map<String, Integer> rooms = gauge.registry.largestRooms(maxRooms);
+                List<MultiGauge.Row<?>> rows = new ArrayList<>(rooms.size());
+                rooms.forEach((room, sessions) -> rows.add(MultiGauge.Row.of(Tags.of("room", room), sessions)));
+                gauge.gauge.register(rows, true); // 사라진 방의 시계열은 지운다.
+            }
+        } catch (RuntimeException e) {
+            log.warn("chat room metrics refresh failed: {}", e.toString());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private record RoomGauge(ChatSessionRegistry registry, MultiGauge gauge) {
+    }
+
+    public static final class Handler {
+
+        private final AtomicInteger sessions = new AtomicInteger();
+        private final Timer fanOut;
+        private final Counter textMessages;
+        private final Counter textBytes;
+        private final Counter binaryMessages;
+        private final Counter binaryBytes;
+        private final Counter transportErrors;
+        private final Counter invalidFrames;
+
+        Handler(MeterRegistry registry, String name) {
+            Gauge.builder("chat.sessions", sessions, AtomicInteger::get)
+                    .description("Open WebSocket sessions")
+                    .tag("handler", name)
+                    .register(registry);
+            fanOut = Timer.builder("chat.fanout")
+                    .description("Time to enqueue one message for every recipient in its rooms")
+                    .tag("handler", name)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1_000))
+                    .maximumExpectedValue(Duration.ofSeconds(1))
+                    .register(registry);
+            textMessages = relayed(registry, "chat.relayed.messages", null, name, "text");
+            textBytes = relayed(registry, "chat.relayed.bytes", BaseUnits.BYTES, name, "text");
+            binaryMessages = relayed(registry, "chat.relayed.messages", null, name, "binary");
+            binaryBytes = relayed(registry, "chat.relayed.bytes", BaseUnits.BYTES, name, "binary");
+            transportErrors = failures(registry, name, "transport");
+            invalidFrames = failures(registry, name, "invalid_frame");
+        }
+
+        private static Counter relayed(MeterRegistry registry, String meter, String unit, String handler, String kind) {
+            return Counter.builder(meter)
+                    .description("Messages handed to recipients' outbound queues")
+                    .baseUnit(unit)
+                    .tags("handler", handler, "kind", kind)
+                    .register(registry);
+        }
+
+        private static Counter failures(MeterRegistry registry, String handler, String reason) {
+            return Counter.builder("chat.failures")
+                    .tags("handler", handler, "reason", reason)
+                    .register(registry);
+        }
+
+        public void opened() {
+            sessions.incrementAndGet();
+        }
+
+        public void closed() {
+            sessions.decrementAndGet();
+        }
+
+        /** 텍스트 메시지 하나를 recipients명에게 보냈다. startNanos = System.nanoTime() (받은 시점) */
+        public void relayedText(long startNanos, int recipients, String payload) {
+            fanOut.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (recipients > 0) {
+                textMessages.increment(recipients);
+                textBytes.increment((double) recipients * utf8Length(payload));
+            }
+        }
+
+        public void relayedBinary(long startNanos, int recipients, int bytes) {
+            fanOut.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (recipients > 0) {
+                binaryMessages.increment(recipients);
+                binaryBytes.increment((double) recipients * bytes);
+            }
+        }
+
+        public void transportError() {
+            transportErrors.increment();
+        }
+
+        public void invalidFrame() {
+            invalidFrames.increment();
+        }
+
+        // UTF-8 바이트 수. TextMessage.getPayloadLength()는 문자열로 만든 메시지면 byte[]를 새로 만든다.
+        static int utf8Length(String text) {
+            int length = text.length();
+            int bytes = length;
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    if (c < 0x800) {
+                        bytes += 1;
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length) {
+                        bytes += 2; // 4바이트 = 두 char
+                        i++;
+                    } else {
+                        bytes += 2;
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+}
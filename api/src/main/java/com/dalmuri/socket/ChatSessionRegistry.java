@@ -0,0 +1,206 @@
+package com.dalmuri.socket;
+
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ChatSessionRegistry {
+
+    /*
+    * [ChatSessionRegistry]
+    * 채팅 세션을 userId, roomId로 바로 찾을 수 있게 색인해두는 저장소
+    *
+    * 예전 방식 : CopyOnWriteArraySet 하나에 모든 세션을 넣고,
+    *   연결될 때마다 전체 세션을 돌면서 URI 쿼리를 다시 파싱해 중복 userId를 찾았다. (O(n))
+    *   게다가 add/remove 할 때마다 배열 전체를 복사한다. (O(n))
+    *   → 배포 직후처럼 재접속이 한꺼번에 몰리면 O(n²)
+    *
+    * 지금 방식 : ConcurrentHashMap 두 개
+    *   1) byUser : userId → 세션. put()이 돌려주는 이전 값이 곧 "중복 세션" (O(1))
+    *   2) byRoom : roomId → 세션 Set (ConcurrentHashMap.newKeySet, 복사 없음) (O(1))
+    *   userId, roomId는 연결될 때 한 번만 파싱해서 세션 attributes에 넣어둔다.
+    *   세션이 들어가 있는 방 목록도 세션 attributes(ROOMS)에 들고 있어서, 연결 종료 시 그 방들에서만 빠진다.
+    *
+    * 연결 URL : ws://host/chat?id=유저아이디&room=방아이디
+    *   - id가 없으면 익명 세션 : 세션 id로 색인해서 익명끼리 서로 끊지 않는다.
+    *   - room이 없으면 lobby (처음 들어가는 방. 이후 join / leave 프레임으로 방을 옮기거나 여러 방에 들어갈 수 있다)
+    *
+    * */
+
+    public static final String USER_ID = "chat.userId";
+    public static final String USER_KEY = "chat.userKey";
+    public static final String ROOMS = "chat.rooms";
+
+    public static final String ANONYMOUS = "unknown";
+    public static final String DEFAULT_ROOM = "lobby";
+    public static final int MAX_ROOM_ID_LENGTH = 64;
+
+    private final Map<String, WebSocketSession> byUser = new ConcurrentHashMap<>();
+    private final Map<String, Set<WebSocketSession>> byRoom = new ConcurrentHashMap<>();
+
+    /**
+     * 세션 등록
+     * @return 같은 userId로 이미 연결되어 있던 세션 (없으면 null). 끊는 것은 호출한 쪽에서 한다.
+     * */
+    public WebSocketSession register(WebSocketSession session) {
+        String initialRoom = parseQuery(session);
+
+        WebSocketSession previous = byUser.put(userKeyOf(session), session);
+        join(session, initialRoom);
+
+        return previous == session ? null : previous;
+    }
+
+    public void unregister(WebSocketSession session) {
+        String userKey = userKeyOf(session);
+        if (userKey == null) {
+            return;
+        }
+
+        // 중복 접속으로 밀려난 세션이 나중에 닫혀도, 새 세션의 색인은 지우지 않는다.
+        byUser.remove(userKey, session);
+        for (String roomId : roomsOf(session)) {
+            leave(session, roomId);
+        }
+    }
+
+    /** 방에 들어가기. 이미 들어가 있으면 false */
+    public boolean join(WebSocketSession session, String roomId) {
+        if (!roomsOf(session).add(roomId)) {
+            return false;
+        }
+        byRoom.compute(roomId, (key, members) -> {
+            Set<WebSocketSession> set = members != null ? members : ConcurrentHashMap.newKeySet();
+            set.add(session);
+            return set;
+        });
+        return true;
+    }
+
+    /** 방에서 나가기. 들어가 있지 않았으면 false. 마지막 사람이 나가면 방 자체를 지운다. */
+    public boolean leave(WebSocketSession session, String roomId) {
+        if (!roomsOf(session).remove(roomId)) {
+            return false;
+        }
+        byRoom.computeIfPresent(roomId, (key, members) -> {
+            members.remove(session);
+            return members.isEmpty() ? null : members;
+        });
+        return true;
+    }
+
+    /*
+    * [audienceOf : 메시지를 받을 세션들]
+    * roomId가 있으면 그 방 사람들만, 없으면 보낸 사람이 들어가 있는 모든 방 사람들 (보낸 사람 본인은 호출한 쪽에서 뺀다)
+    * 방 하나일 때는 그 방의 Set을 그대로 돌려주므로 복사가 없다.
+    * 여러 방일 때만 두 방에 같이 있는 사람이 중복으로 받지 않도록 합친다.
+    *
+    * */
+    public Collection<WebSocketSession> audienceOf(WebSocketSession sender, String roomId) {
+        if (roomId != null) {
+            return roomsOf(sender).contains(roomId) ? membersOf(roomId) : Collections.emptySet();
+        }
+
+        Set<String> rooms = roomsOf(sender);
+        if (rooms.size() == 1) {
+            return membersOf(rooms.iterator().next());
+        }
+        Set<WebSocketSession> audience = new HashSet<>();
+        for (String room : rooms) {
+            audience.addAll(membersOf(room));
+        }
+        return audience;
+    }
+
+    public WebSocketSession findByUser(String userId) {
+        return byUser.get(userId);
+    }
+
+    public Set<WebSocketSession> membersOf(String roomId) {
+        Set<WebSocketSession> members = byRoom.get(roomId);
+        return members == null ? Collections.emptySet() : Collections.unmodifiableSet(members);
+    }
+
+    public Collection<WebSocketSession> sessions() {
+        return Collections.unmodifiableCollection(byUser.values());
+    }
+
+    public int size() {
+        return byUser.size();
+    }
+
+    public int roomCount() {
+        return byRoom.size();
+    }
+
+    /** 인원이 많은 방부터 limit개 (방 이름 → 이 노드의 세션 수). 지표용이라 메시지 경로에서는 부르지 않는다. */
+    public Map<String, Integer> largestRooms(int limit) {
+        if (limit <= 0) {
+            return Map.of();
+        }
+        PriorityQueue<Map.Entry<String, Integer>> top = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<String, Set<WebSocketSession>> room : byRoom.entrySet()) {
+            top.offer(Map.entry(room.getKey(), room.getValue().size()));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        Map<String, Integer> rooms = new HashMap<>();
+        for (Map.Entry<String, Integer> room : top) {
+            rooms.put(room.getKey(), room.getValue());
+        }
+        return rooms;
+    }
+
+    public static String userIdOf(WebSocketSession session) {
+        return (String) session.getAttributes().get(USER_ID);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Set<String> roomsOf(WebSocketSession session) {
+        Set<String> rooms = (Set<String>) session.getAttributes().get(ROOMS);
+        return rooms != null ? rooms : Collections.emptySet();
+    }
+
+    public static boolean isValidRoomId(String roomId) {
+        return roomId != null && !roomId.isBlank() && roomId.length() <= MAX_ROOM_ID_LENGTH;
+    }
+
+    private static String userKeyOf(WebSocketSession session) {
+        return (String) session.getAttributes().get(USER_KEY);
+    }
+
+    // 연결 URL의 쿼리스트링을 한 번만 파싱해서 attributes에 넣어둔다. 반환값 = 처음 들어갈 방
+    private static String parseQuery(WebSocketSession session) {
+        Map<String, Object> attributes = session.getAttributes();
+
+        URI uri = session.getUri();
+        MultiValueMap<String, String> params = uri == null
+                ? null
+                : UriComponentsBuilder.fromUri(uri).build().getQueryParams();
+        String userId = decode(params == null ? null : params.getFirst("id"));
+        String roomId = decode(params == null ? null : params.getFirst("room"));
+
+        boolean anonymous = userId == null || userId.isBlank();
+        attributes.put(USER_ID, anonymous ? ANONYMOUS : userId);
+        attributes.put(USER_KEY, anonymous ? "anonymous:" + session.getId() : userId);
+        attributes.put(ROOMS, ConcurrentHashMap.<String>newKeySet());
+        return isValidRoomId(roomId) ? roomId : DEFAULT_ROOM;
+    }
+
+    private static String decode(String value) {
+        return value == null ? null : UriUtils.decode(value, StandardCharsets.UTF_8);
+    }
+}
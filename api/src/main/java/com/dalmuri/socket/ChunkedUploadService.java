@@ -0,0 +1,483 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.dmr.common.media.ThumbnailService;
+import com.dalmuri.dmr.common.upload.UploadMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@Slf4j
+@Component
+public class ChunkedUploadService implements DisposableBean, MeterBinder {
+
+    /*
+    * [청크 업로드 : 큰 동영상을 여러 조각으로 나눠 올리기]
+    * 예전에는 동영상 하나가 BinaryMessage 하나로 왔다.
+    *   → 파일 전체가 힙 메모리에 올라오고, 중간에 연결이 끊기면 처음부터 다시 보내야 했다.
+    *
+    * 프로토콜 (/chat 소켓 그대로 사용)
+    * 1) 시작 (텍스트) : {"type":"upload-start","size":1048576,"sha256":"<hex>","room":"방"}
+    *    → {"type":"upload-ack","transferId":"<uuid>","offset":0,"size":..,"window":8,"chunkSize":65536}
+    * 2) 청크 (바이너리) : [magic "DMRC" 4바이트][transferId 16바이트][offset 8바이트][데이터]
+    *    → 청크 몇 개마다 {"type":"upload-ack","transferId":..,"offset":지금까지 받은 바이트}
+    *    클라이언트는 ack 받지 않은 청크를 window개까지만 보낸다.
+    * 3) 완료 : sha256 확인 후 MediaStore에 넣고 {"type":"upload-complete","transferId":..,"name":"<hash>.mp4","size":..,"variants":{..}}
+    *    방 사람들에게는 {"type":"media","name":..,"size":..,"variants":{"w160":"<hash>_w160.jpg",..},"from":userId}
+    *
+    * 이미 저장소에 있는 sha256이어도 청크는 다 받는다. 해시만 알면 남의 파일을 가져갈 수 있으면 안 되므로
+    *   (sha256을 아는 것 ≠ 파일을 가진 것) 다 받은 뒤 MediaStore.adopt에서 같은 파일로 합친다. (저장은 한 벌)
+    *
+    * 한 사람이 동시에 열어 둘 수 있는 전송은 max-transfers-per-owner개까지. (미리 만드는 part 파일로 디스크를 채우지 못하게)
+    * idleTimeout 동안 청크가 오지 않은 전송은 백그라운드에서 주기적으로 지운다.
+    *
+    * 이어 올리기 : 연결이 끊긴 뒤 같은 upload-start(같은 transferId, 또는 같은 size + sha256)를 보내면
+    *   마지막으로 받은 offset을 ack로 돌려준다. 거기서부터 다시 보내면 된다.
+    *
+    * 청크는 미리 전체 크기로 만들어둔 파일의 offset 위치에 바로 쓴다. (FileChannel.write(buf, position))
+    * → 전송 하나가 쓰는 힙 메모리는 청크 하나 크기를 넘지 않는다.
+    * 해시는 청크를 받는 순서대로 이어서 계산하므로, 완료 후 파일을 다시 읽지 않는다.
+    *
+    * */
+
+    public static final String START = "upload-start";
+    public static final int MAGIC = 0x444D5243; // "DMRC"
+    public static final int HEADER_LENGTH = 4 + 16 + 8;
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+    private static final HexFormat HEX = HexFormat.of();
+    // 오래 놀고 있는 전송을 찾는 최대 간격
+    private static final long MAX_REAP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final MediaStore mediaStore;
+    private final ThumbnailService thumbnailService;
+    private final ObjectMapper objectMapper;
+    private final UploadMetrics uploadMetrics;
+    private final int chunkSize;
+    private final int window;
+    private final long maxSize;
+    private final long idleTimeoutNanos;
+    private final int maxTransfersPerOwner;
+
+    private final ConcurrentHashMap<UUID, Transfer> transfers = new ConcurrentHashMap<>();
+    // 같은 사람이 같은 파일(크기 + 해시)을 다시 시작하면 이어 올리기 (transferId를 잃어버린 클라이언트용)
+    private final ConcurrentHashMap<String, UUID> byContent = new ConcurrentHashMap<>();
+    // 사람별 열려 있는 전송 수
+    private final ConcurrentHashMap<String, Integer> openByOwner = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chunked-upload-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ChunkedUploadService(MediaStore mediaStore, ThumbnailService thumbnailService,
+                                ObjectMapper objectMapper, ChatProperties properties, UploadMetrics uploadMetrics) {
+        ChatProperties.Upload upload = properties.getUpload();
+        this.mediaStore = mediaStore;
+        this.thumbnailService = thumbnailService;
+        this.objectMapper = objectMapper;
+        this.uploadMetrics = uploadMetrics;
+        this.chunkSize = (int) upload.getChunkSize().toBytes();
+        this.window = upload.getWindow();
+        this.maxSize = upload.getMaxSize().toBytes();
+        this.idleTimeoutNanos = upload.getIdleTimeout().toNanos();
+        this.maxTransfersPerOwner = upload.getMaxTransfersPerOwner();
+        long reapNanos = Math.max(TimeUnit.SECONDS.toNanos(1), Math.min(idleTimeoutNanos, MAX_REAP_INTERVAL_NANOS));
+        reaper.scheduleWithFixedDelay(this::expireIdle, reapNanos, reapNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** 바이너리 프레임이 청크 프레임인지 (머리의 magic으로 구분. 아니면 예전 방식의 통째 전송) */
+    public static boolean isChunk(ByteBuffer payload) {
+        return payload.remaining() >= HEADER_LENGTH && payload.getInt(payload.position()) == MAGIC;
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public int activeTransfers() {
+        return transfers.size();
+    }
+
+    /**
+     * upload-start를 처리하고 보낸 사람에게 돌려줄 ack를 만든다.
+     * 같은 내용이 이미 저장소에 있어도 청크는 받는다. (완료할 때 저장소에서 합침)
+     */
+    public UploadResult start(WebSocketSession session, String payload) {
+        JsonNode frame;
+        try {
+            frame = objectMapper.readTree(payload);
+        } catch (JsonProcessingException e) {
+            return UploadResult.replyOnly(error(null, "invalid frame"));
+        }
+
+        long size = frame.path("size").asLong(-1);
+        String sha256 = frame.path("sha256").asText("").toLowerCase(Locale.ROOT);
+        String room = frame.path("room").asText(null);
+        if (size <= 0 || size > maxSize) {
+            return UploadResult.replyOnly(error(null, "invalid size"));
+        }
+        if (!SHA256.matcher(sha256).matches()) {
+            return UploadResult.replyOnly(error(null, "invalid sha256"));
+        }
+        if (room != null && !ChatSessionRegistry.isValidRoomId(room)) {
+            return UploadResult.replyOnly(error(null, "invalid room"));
+        }
+
+        String owner = ownerOf(session);
+        String contentKey = owner + '|' + sha256 + '|' + size;
+        Transfer resumed = resumable(frame.path("transferId").asText(null), contentKey);
+        if (resumed != null) {
+            synchronized (resumed) {
+                // 찾은 뒤 잠그기 전에 만료 / 폐기됐을 수 있다. 닫힌 전송에 ack를 주면 청크가 전부 "unknown transfer"가 된다.
+                if (!resumed.closed) {
+                    return UploadResult.replyOnly(acknowledge(resumed));
+                }
+            }
+        }
+
+        if (!reserve(owner)) {
+            return UploadResult.replyOnly(error(null, "too many transfers"));
+        }
+        Transfer transfer;
+        try {
+            transfer = open(owner, contentKey, sha256, size, room);
+        } catch (IOException e) {
+            release(owner);
+            log.warn("chunked upload could not be opened: {}", e.toString());
+            uploadMetrics.failed(UploadMetrics.Route.CHUNKED);
+            return UploadResult.replyOnly(error(null, "storage unavailable"));
+        }
+
+        synchronized (transfer) {
+            if (transfer.closed) {
+                // 같은 파일의 upload-start가 동시에 와서 방금 연 전송이 바로 대체됐다.
+                return UploadResult.replyOnly(error(transfer.id, "unknown transfer"));
+            }
+            return UploadResult.replyOnly(acknowledge(transfer));
+        }
+    }
+
+    // transfer를 잠근 상태에서 부른다.
+    private TextMessage acknowledge(Transfer transfer) {
+        transfer.touch();
+        transfer.chunksSinceAck = 0;
+        return ack(transfer);
+    }
+
+    /**
+     * 청크 하나를 파일에 쓴다.
+     * reply가 null이면 이번에는 ack를 보내지 않는다. announcement가 있으면 업로드가 끝난 것 (방 사람들에게 알림)
+     */
+    public UploadResult chunk(WebSocketSession session, ByteBuffer payload) {
+        ByteBuffer chunk = payload.duplicate();
+        chunk.getInt(); // magic
+        UUID id = new UUID(chunk.getLong(), chunk.getLong());
+        long offset = chunk.getLong();
+
+        Transfer transfer = transfers.get(id);
+        if (transfer == null || !transfer.owner.equals(ownerOf(session))) {
+            return UploadResult.replyOnly(error(id, "unknown transfer"));
+        }
+        if (!chunk.hasRemaining() || chunk.remaining() > chunkSize) {
+            return UploadResult.replyOnly(error(id, "invalid chunk size"));
+        }
+
+        synchronized (transfer) {
+            if (transfer.closed) {
+                return UploadResult.replyOnly(error(id, "unknown transfer"));
+            }
+            // 이미 받은 청크를 다시 보냈거나 중간이 비었으면, 받은 곳까지 알려주고 거기서부터 다시 받는다.
+            if (offset != transfer.committed) {
+                transfer.chunksSinceAck = 0;
+                return UploadResult.replyOnly(ack(transfer));
+            }
+            if (offset + chunk.remaining() > transfer.size) {
+                discard(transfer);
+                return UploadResult.replyOnly(error(id, "chunk exceeds declared size"));
+            }
+
+            try {
+                if (offset == 0) {
+                    transfer.extension = MediaStore.extensionOf(chunk);
+                }
+                transfer.digest.update(chunk.duplicate());
+                long position = offset;
+                while (chunk.hasRemaining()) {
+                    position += transfer.channel.write(chunk, position);
+                }
+                transfer.committed = position;
+                transfer.touch();
+            } catch (IOException e) {
+                log.warn("chunked upload {} write failed: {}", id, e.toString());
+                uploadMetrics.failed(UploadMetrics.Route.CHUNKED);
+                discard(transfer);
+                return UploadResult.replyOnly(error(id, "storage unavailable"));
+            }
+
+            if (transfer.committed < transfer.size) {
+                // 청크마다 ack를 보내지 않고 window의 절반마다 보낸다. (클라이언트는 window가 다 차기 전에 ack를 받음)
+                if (++transfer.chunksSinceAck < Math.max(1, window / 2)) {
+                    return UploadResult.NONE;
+                }
+                transfer.chunksSinceAck = 0;
+                return UploadResult.replyOnly(ack(transfer));
+            }
+            return finish(session, transfer);
+        }
+    }
+
+    private UploadResult finish(WebSocketSession session, Transfer transfer) {
+        String actual = HEX.formatHex(transfer.digest.digest());
+        if (!actual.equals(transfer.sha256)) {
+            uploadMetrics.failed(UploadMetrics.Route.CHUNKED);
+            discard(transfer);
+            return UploadResult.replyOnly(error(transfer.id, "sha256 mismatch"));
+        }
+
+        try {
+            transfer.channel.close();
+            MediaStore.StoredMedia stored = mediaStore.adopt(transfer.part, transfer.sha256, transfer.extension);
+            forget(transfer);
+            uploadMetrics.stored(UploadMetrics.Route.CHUNKED, stored.size(), transfer.startedAt);
+            return completed(session, transfer.id, stored, transfer.room);
+        } catch (IOException e) {
+            log.warn("chunked upload {} could not be stored: {}", transfer.id, e.toString());
+            uploadMetrics.failed(UploadMetrics.Route.CHUNKED);
+            discard(transfer);
+            return UploadResult.replyOnly(error(transfer.id, "storage unavailable"));
+        }
+    }
+
+    private UploadResult completed(WebSocketSession session, UUID id, MediaStore.StoredMedia stored, String room) {
+        thumbnailService.schedule(stored);
+        Map<String, String> variants = thumbnailService.variantNames(stored);
+        return new UploadResult(
+                json(new CompleteFrame("upload-complete", id.toString(), stored.name(), stored.size(), variants)),
+                json(new MediaFrame("media", stored.name(), stored.size(), variants, ChatSessionRegistry.userIdOf(session))),
+                room);
+    }
+
+    private Transfer resumable(String transferId, String contentKey) {
+        if (transferId != null) {
+            try {
+                Transfer transfer = transfers.get(UUID.fromString(transferId));
+                if (transfer != null && transfer.contentKey.equals(contentKey)) {
+                    return transfer;
+                }
+            } catch (IllegalArgumentException ignored) {
+                // 잘못된 transferId면 새로 시작
+            }
+        }
+        UUID id = byContent.get(contentKey);
+        return id == null ? null : transfers.get(id);
+    }
+
+    private Transfer open(String owner, String contentKey, String sha256, long size, String room) throws IOException {
+        Path part = mediaStore.newPartFile();
+        FileChannel channel = FileChannel.open(part, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // 마지막 바이트를 써서 파일을 전체 크기로 미리 만든다. 이후 청크는 제 위치에 바로 쓴다.
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(part);
+            throw e;
+        }
+
+        Transfer transfer = new Transfer(UUID.randomUUID(), owner, contentKey, sha256, size, room, part, channel);
+        transfers.put(transfer.id, transfer);
+        UUID previous = byContent.put(contentKey, transfer.id);
+        if (previous != null) {
+            Transfer stale = transfers.get(previous);
+            if (stale != null) {
+                synchronized (stale) {
+                    discard(stale);
+                }
+            }
+        }
+        return transfer;
+    }
+
+    // 사람별 전송 수 자리 잡기. 이미 maxTransfersPerOwner개면 false
+    private boolean reserve(String owner) {
+        boolean[] reserved = {false};
+        openByOwner.compute(owner, (key, open) -> {
+            int count = open == null ? 0 : open;
+            if (count >= maxTransfersPerOwner) {
+                return open;
+            }
+            reserved[0] = true;
+            return count + 1;
+        });
+        return reserved[0];
+    }
+
+    private void release(String owner) {
+        openByOwner.computeIfPresent(owner, (key, open) -> open > 1 ? open - 1 : null);
+    }
+
+    // idleTimeout 동안 청크가 오지 않은 전송을 지운다. (reaper 스레드)
+    // 잠그기 전에 청크 / 이어 올리기가 들어왔을 수 있으므로 잠근 뒤 lastTouched를 다시 본다.
+    void expireIdle() {
+        for (Transfer transfer : transfers.values()) {
+            if (!isIdle(transfer)) {
+                continue;
+            }
+            synchronized (transfer) {
+                if (!transfer.closed && isIdle(transfer)) {
+                    discard(transfer);
+                }
+            }
+        }
+    }
+
+    private boolean isIdle(Transfer transfer) {
+        return System.nanoTime() - transfer.lastTouched > idleTimeoutNanos;
+    }
+
+    private void discard(Transfer transfer) {
+        forget(transfer);
+        try {
+            transfer.channel.close();
+            Files.deleteIfExists(transfer.part);
+        } catch (IOException e) {
+            log.debug("chunked upload {} cleanup failed: {}", transfer.id, e.toString());
+        }
+    }
+
+    private void forget(Transfer transfer) {
+        transfer.closed = true;
+        // 두 번 불려도(완료와 만료가 겹침) 자리는 한 번만 돌려준다.
+        if (transfers.remove(transfer.id, transfer)) {
+            release(transfer.owner);
+        }
+        byContent.remove(transfer.contentKey, transfer.id);
+    }
+
+    private TextMessage ack(Transfer transfer) {
+        return json(new AckFrame("upload-ack", transfer.id.toString(), transfer.committed, transfer.size, window, chunkSize));
+    }
+
+    private TextMessage error(UUID id, String message) {
+        return json(new ErrorFrame("upload-error", id == null ? null : id.toString(), message));
+    }
+
+    private TextMessage json(Object frame) {
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(frame));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String ownerOf(WebSocketSession session) {
+        Object key = session.getAttributes().get(ChatSessionRegistry.USER_KEY);
+        return key != null ? key.toString() : "anonymous:" + session.getId();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("upload.chunked.active", this, ChunkedUploadService::activeTransfers)
+                .description("Chunked uploads in progress")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        reaper.shutdownNow();
+        for (Transfer transfer : transfers.values()) {
+            synchronized (transfer) {
+                discard(transfer);
+            }
+        }
+    }
+
+    /** 업로드 처리 결과. reply는 보낸 사람에게, announcement는 room(없으면 보낸 사람이 들어가 있는 방) 사람들에게 */
+    public record UploadResult(TextMessage reply, TextMessage announcement, String room) {
+
+        static final UploadResult NONE = new UploadResult(null, null, null);
+
+        static UploadResult replyOnly(TextMessage reply) {
+            return new UploadResult(reply, null, null);
+        }
+    }
+
+    private static final class Transfer {
+        final UUID id;
+        final String owner;
+        final String contentKey;
+        final String sha256;
+        final long size;
+        final String room;
+        final Path part;
+        final FileChannel channel;
+        final MessageDigest digest;
+
+        long committed;
+        int chunksSinceAck;
+        String extension = ".bin";
+        final long startedAt = System.nanoTime();
+        volatile long lastTouched = System.nanoTime();
+        volatile boolean closed;
+
+        Transfer(UUID id, String owner, String contentKey, String sha256, long size, String room, Path part, FileChannel channel) {
+            this.id = id;
+            this.owner = owner;
+            this.contentKey = contentKey;
+            this.sha256 = sha256;
+            this.size = size;
+            this.room = room;
+            this.part = part;
+            this.channel = channel;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void touch() {
+            lastTouched = System.nanoTime();
+        }
+    }
+
+    private record AckFrame(String type, String transferId, long offset, long size, int window, int chunkSize) {
+    }
+
+    private record CompleteFrame(String type, String transferId, String name, long size, Map<String, String> variants) {
+    }
+
+    private record ErrorFrame(String type, String transferId, String message) {
+    }
+
+    private record MediaFrame(String type, String name, long size, Map<String, String> variants, String from) {
+    }
+}
@@ -0,0 +1,40 @@
+package com.dalmuri.socket;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * 경로마다 permessage-deflate를 켜고 끄는 HandshakeHandler
+ * - 톰캣은 클라이언트가 요청하면 permessage-deflate를 협상하고, 협상된 연결에서는 모든 데이터 프레임을 압축한다.
+ *   (메시지마다 압축을 건너뛸 수 없음)
+ * - 그래서 텍스트 위주 경로(/chat, /diary/stream)는 켜고, 이미 압축된 이미지 / 동영상을 주고받는 경로(/chat/media)는
+ *   협상 단계에서 확장을 빼서 끈다. → 압축해도 줄지 않는 데이터에 CPU와 세션별 압축 버퍼(수십 KB)를 쓰지 않는다.
+ * */
+public class DeflateHandshakeHandler extends DefaultHandshakeHandler {
+
+    private final boolean deflate;
+
+    public DeflateHandshakeHandler(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requestedExtensions,
+                                                                 List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> extensions = super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+        if (deflate) {
+            return extensions;
+        }
+        return extensions.stream()
+                .filter(extension -> !isDeflate(extension.getName()))
+                .toList();
+    }
+
+    private static boolean isDeflate(String name) {
+        return "permessage-deflate".equalsIgnoreCase(name) || "x-webkit-deflate-frame".equalsIgnoreCase(name);
+    }
+}
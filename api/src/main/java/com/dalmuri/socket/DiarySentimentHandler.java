@@ -0,0 +1,252 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.dalmuri.dmr.web.diary.sentiment.IncrementalDiaryDocument;
+import com.dalmuri.dmr.web.diary.service.DiaryService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Slf4j
+@Component
+public class DiarySentimentHandler extends TextWebSocketHandler {
+
+    /*
+    * [DiarySentimentHandler : 실시간 일기 감정 분석]
+    * 편집기가 멈출 때마다 일기 전체를 /diary/get-diary-score로 다시 보내면, 일기가 길어질수록 호출 비용도 커진다.
+    * 여기서는 소켓 하나에 문서를 들고 있으면서 수정된 문장만 다시 분석하고, 문서 전체 점수를 계속 밀어준다.
+    *
+    * [클라이언트 → 서버]
+    * {"type": "reset", "text": "일기 전체"}                              : 처음 연결했을 때, 혹은 전체를 갈아엎을 때
+    * {"type": "edit", "offset": 12, "deleteCount": 3, "insert": "abc"} : offset은 JS 문자열 인덱스(UTF-16) 그대로
+    *
+    * [서버 → 클라이언트]
+    * {"type": "score", "version": 7, "score": 0.4, "magnitude": 1.2, "sentences": 5, "pending": 1, "failed": 0}
+    *   - 편집을 반영한 직후 한 번, 문장 분석이 끝날 때마다 한 번
+    *   - pending : 아직 점수가 없는 문장 수 (0이면 최종 점수)
+    *   - failed : pending 중 분석에 실패해서 다음 프레임 때 다시 보낼 문장 수
+    * {"type": "error", "message": "..."}
+    *
+    * 문장 분석은 DiaryService.scoreOrNull()을 사용 (로컬 엔진 / 캐시 / 묶음 호출은 scoreAsync와 동일)
+    * 1) 실패한 문장에 fallback(0점)을 넣으면 문서 평균이 조용히 0 쪽으로 끌려간다.
+    *    → 실패한 문장은 점수 없이 pending으로 남겨 두고, 다음 reset / edit 프레임이 올 때 다시 분석한다.
+    * 2) reset 한 번에 문장이 수천 개 나올 수 있다. 한꺼번에 보내면 게이트웨이 허가를 이 세션이 다 쓰고 대부분 거절된다.
+    *    → 세션마다 동시에 분석 중인 문장은 MAX_IN_FLIGHT개까지. 나머지는 waiting에서 차례를 기다린다.
+    *
+    * */
+
+    private static final String STREAM = "diary.stream";
+
+    private static final int MAX_DOCUMENT_LENGTH = 100_000;
+
+    // 세션 하나가 동시에 분석 요청하는 문장 수
+    static final int MAX_IN_FLIGHT = 4;
+
+    private final DiaryService diaryService;
+    private final ObjectMapper objectMapper;
+    private final SessionOutbound outbound;
+    private final SessionHeartbeat heartbeat;
+    // 열린 세션 수, 잘못된 프레임 / 연결 오류 수 (감정 분석 시간은 SentimentGateway가 잰다)
+    private final ChatMetrics.Handler meters;
+
+    public DiarySentimentHandler(DiaryService diaryService, ObjectMapper objectMapper, SessionOutbound outbound,
+                                 SessionHeartbeat heartbeat, ChatMetrics metrics) {
+        this.diaryService = diaryService;
+        this.objectMapper = objectMapper;
+        this.outbound = outbound;
+        this.heartbeat = heartbeat;
+        this.meters = metrics.handler(ChatMetrics.DIARY, null);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        session.getAttributes().put(STREAM, new DiaryStream(new IncrementalDiaryDocument(MAX_DOCUMENT_LENGTH)));
+        // 편집 응답과 분석 완료 응답이 서로 다른 스레드에서 동시에 나가므로, 세션별 보내기 대기열로 직렬화한다.
+        // 점수 프레임은 최신 것만 의미가 있으므로 밀리면 오래된 것부터 버린다. (COALESCE)
+        outbound.open(session, ChatProperties.OverflowPolicy.COALESCE);
+        heartbeat.track(session);
+        meters.opened();
+    }
+
+    // pong을 포함해 무엇이든 받으면 살아 있는 연결
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        heartbeat.seen(session);
+        super.handleMessage(session, message);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        DiaryStream stream = (DiaryStream) session.getAttributes().get(STREAM);
+        IncrementalDiaryDocument document = stream.document;
+        JsonNode frame;
+        try {
+            frame = objectMapper.readTree(message.getPayload());
+        } catch (JsonProcessingException e) {
+            // 깨진 프레임 하나로 연결을 끊지 않는다. 오류만 알려주고 문서는 그대로 둔다.
+            meters.invalidFrame();
+            send(session, new ErrorFrame("error", "invalid json"));
+            return;
+        }
+        String type = frame.path("type").asText();
+
+        List<IncrementalDiaryDocument.Sentence> toScore;
+        List<IncrementalDiaryDocument.Sentence> dispatched;
+        ScoreFrame snapshot;
+        synchronized (stream) {
+            try {
+                toScore = switch (type) {
+                    case "reset" -> document.reset(frame.path("text").asText(""));
+                    case "edit" -> document.applyEdit(
+                            frame.path("offset").asInt(-1),
+                            frame.path("deleteCount").asInt(0),
+                            frame.path("insert").asText(""));
+                    default -> throw new IllegalArgumentException("unknown frame type: " + type);
+                };
+            } catch (IllegalArgumentException e) {
+                meters.invalidFrame();
+                send(session, new ErrorFrame("error", e.getMessage()));
+                return;
+            }
+            // 지난번에 실패한 문장을 새 문장보다 먼저 다시 보낸다.
+            stream.waiting.addAll(stream.failed);
+            stream.failed.clear();
+            stream.waiting.addAll(toScore);
+            dispatched = stream.dispatch();
+            snapshot = ScoreFrame.of(stream);
+        }
+        send(session, snapshot);
+        score(session, stream, dispatched);
+    }
+
+    /*
+    * [score : 문장 분석 요청]
+    * 로컬 엔진 / 캐시에 걸리면 future가 이미 끝나 있다. 거기서 바로 다음 문장을 보내면 재귀가 문장 수만큼 깊어지므로
+    * 끝난 결과는 반복문 안에서 처리하고, 원격 호출만 콜백으로 이어 간다.
+    *
+    * */
+    private void score(WebSocketSession session, DiaryStream stream, List<IncrementalDiaryDocument.Sentence> sentences) {
+        List<IncrementalDiaryDocument.Sentence> next = sentences;
+        while (!next.isEmpty()) {
+            List<IncrementalDiaryDocument.Sentence> more = new ArrayList<>();
+            for (IncrementalDiaryDocument.Sentence sentence : next) {
+                CompletableFuture<DiaryResponseDTO> future = diaryService.scoreOrNull(sentence.content());
+                if (future.isDone()) {
+                    more.addAll(onScored(session, stream, sentence, future.join()));
+                } else {
+                    future.thenAccept(result -> score(session, stream, onScored(session, stream, sentence, result)));
+                }
+            }
+            next = more;
+        }
+    }
+
+    // 결과 반영 후 점수 프레임을 보낸다. 반환값 = 빈 자리에 새로 보낼 문장들
+    private List<IncrementalDiaryDocument.Sentence> onScored(WebSocketSession session, DiaryStream stream,
+                                                            IncrementalDiaryDocument.Sentence sentence, DiaryResponseDTO result) {
+        List<IncrementalDiaryDocument.Sentence> dispatched;
+        ScoreFrame snapshot = null;
+        synchronized (stream) {
+            stream.inFlight--;
+            if (result == null) {
+                // 점수 없이 pending으로 남긴다. 그 사이 지워진 문장이면 다시 보낼 필요도 없다.
+                if (sentence.alive()) {
+                    stream.failed.add(sentence);
+                    snapshot = ScoreFrame.of(stream);
+                }
+            } else if (stream.document.complete(sentence, result)) {
+                snapshot = ScoreFrame.of(stream);
+            } // false : 분석하는 사이 수정되어 사라진 문장
+            dispatched = stream.dispatch();
+        }
+        if (snapshot != null) {
+            send(session, snapshot);
+        }
+        return dispatched;
+    }
+
+    private void send(WebSocketSession session, Object frame) {
+        try {
+            outbound.send(session, new TextMessage(objectMapper.writeValueAsString(frame)));
+        } catch (IOException e) {
+            log.debug("diary stream frame serialization failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        session.getAttributes().remove(STREAM);
+        heartbeat.untrack(session);
+        outbound.close(session);
+        meters.closed();
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        meters.transportError();
+        log.debug("diary stream transport error on {}: {}", session.getId(), exception.toString());
+    }
+
+    // 세션 하나의 문서 + 분석 대기열. 모든 필드는 이 객체로 동기화한다.
+    private static final class DiaryStream {
+
+        final IncrementalDiaryDocument document;
+        final ArrayDeque<IncrementalDiaryDocument.Sentence> waiting = new ArrayDeque<>();
+        final List<IncrementalDiaryDocument.Sentence> failed = new ArrayList<>();
+        int inFlight;
+
+        DiaryStream(IncrementalDiaryDocument document) {
+            this.document = document;
+        }
+
+        // 빈 자리만큼 waiting에서 꺼낸다. 기다리는 사이 수정되어 사라진 문장은 버린다.
+        List<IncrementalDiaryDocument.Sentence> dispatch() {
+            List<IncrementalDiaryDocument.Sentence> dispatched = new ArrayList<>();
+            while (inFlight < MAX_IN_FLIGHT && !waiting.isEmpty()) {
+                IncrementalDiaryDocument.Sentence sentence = waiting.poll();
+                if (sentence.alive()) {
+                    inFlight++;
+                    dispatched.add(sentence);
+                }
+            }
+            return dispatched;
+        }
+
+        int failedCount() {
+            int count = 0;
+            for (IncrementalDiaryDocument.Sentence sentence : failed) {
+                if (sentence.alive()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private record ScoreFrame(String type, long version, float score, float magnitude, int sentences, int pending,
+                              int failed) {
+
+        static ScoreFrame of(DiaryStream stream) {
+            IncrementalDiaryDocument document = stream.document;
+            return new ScoreFrame("score", document.version(), document.score(), document.magnitude(),
+                    document.sentenceCount(), document.pendingCount(), stream.failedCount());
+        }
+    }
+
+    private record ErrorFrame(String type, String message) {
+    }
+}
@@ -1,104 +1,481 @@
 package com.dalmuri.socket;
 
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.socket.broker.BrokerMessage;
+import com.dalmuri.socket.broker.ChatBroker;
+import com.dalmuri.socket.history.ChatHistory;
+import com.dalmuri.socket.presence.PresenceService;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
-import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
-public class MediachatHandler extends AbstractWebSocketHandler {
+@Slf4j
+@Component
+public class MediachatHandler extends AbstractWebSocketHandler implements ChatBroker.Receiver {
     /*
     * [개발 순서]
     * 연결 설정 → 텍스트 메시지 처리 → 바이너리 메시지(이미지, 동영상 등) 처리 → 연결 종료
     * */
 
-    private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    /*
+    * [ChatSessionRegistry]
+    * 예전엔 CopyOnWriteArraySet에 세션을 모아두고, 연결될 때마다 모든 세션의 URI를 다시 파싱해서 중복 userId를 찾았다.
+    * 이제 userId / roomId로 색인된 registry를 쓴다. 중복 확인, 등록, 제거 모두 O(1)
+    * (userId 파싱은 ChatSessionRegistry.register에서 연결당 한 번)
+    * 메시지는 서버 전체가 아니라 같은 방 사람들에게만 간다. → 메시지 1건 비용 = 방 인원수
+    *
+    * */
+    private final ChatSessionRegistry registry = new ChatSessionRegistry();
 
-    /**
-     * 세션으로부터 클라이언트가 전달한 userId를 추출하는 메소드
-     * */
-    private String getUserIdFromSession(WebSocketSession session){
-        String query = session.getUri().getQuery();
-        if(query != null && query.contains("id=")){
-            return query.split("id=")[1];
-        }
-        return "unknown"; // 쿼리에 id없을 경우 unknown 반환
+    /*
+    * [SessionOutbound]
+    * 받는 사람마다 s.sendMessage()를 직접 부르지 않고, 세션별 보내기 대기열(OutboundQueue)에 넣기만 한다.
+    * 느린 클라이언트 한 명 때문에 다른 사람 전송이 밀리지 않고, 같은 세션에 동시에 보내는 일도 없다.
+    *
+    * */
+    private final SessionOutbound outbound;
+    private final ChatMediaWriter mediaWriter;
+    // 큰 파일은 청크로 나눠 받는다. (upload-start 텍스트 프레임 + DMRC 바이너리 프레임)
+    private final ChunkedUploadService uploads;
+    // 방별 메시지 기록. 재접속한 클라이언트는 마지막으로 받은 offset 다음부터 다시 받는다. (replay 프레임)
+    private final ChatHistory history;
+
+    /*
+    * [ChatBroker : 노드 여러 대로 늘리기]
+    * 세션 registry는 노드(서버 인스턴스)마다 따로다. 같은 방 사람이 다른 노드에 붙어 있을 수 있으므로
+    * 방 사람들에게 보낸 메시지를 broker로 publish하고, 다른 노드에서 온 메시지는 receive에서 이 노드의 방 사람들에게 보낸다.
+    * 방 구성이 바뀌면(연결, join / leave, 종료) membershipChanged로 알려서 이 노드에 사람이 있는 방만 구독하게 한다.
+    *
+    * */
+    private final ChatBroker broker;
+    // 접속 / 입력 중 표시. 바뀐 것을 방별로 모아서 틱마다 보낸다.
+    private final PresenceService presence;
+    // ping을 보내고 pong이 오지 않는 연결을 끊는다.
+    private final SessionHeartbeat heartbeat;
+    // 세션 수 / fan-out 시간 / 보낸 바이트 (미리 등록해 둔 meter)
+    private final ChatMetrics.Handler meters;
+
+    // envelope(ChatEnvelope)을 한 번이라도 보낸 세션 → 방 메시지도 envelope으로 받는다.
+    private static final String ENVELOPE = "chat.envelope";
+    // 세션마다 하나씩 두고 프레임마다 다시 wrap 하는 ChatEnvelope (flyweight)
+    private static final String ENVELOPE_READER = "chat.envelopeReader";
+
+    public MediachatHandler(SessionOutbound outbound, ChatMediaWriter mediaWriter, ChunkedUploadService uploads,
+                            ChatHistory history, ChatBroker broker, PresenceService presence,
+                            SessionHeartbeat heartbeat, ChatMetrics metrics) {
+        this.outbound = outbound;
+        this.mediaWriter = mediaWriter;
+        this.uploads = uploads;
+        this.history = history;
+        this.broker = broker;
+        this.presence = presence;
+        this.heartbeat = heartbeat;
+        this.meters = metrics.handler(ChatMetrics.MEDIA, registry);
+        broker.attach(this);
+        presence.attach(registry);
     }
 
     // 1. 연결 설정
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        String userId = getUserIdFromSession(session);
+        outbound.open(session);
+        heartbeat.track(session);
+        meters.opened();
+        WebSocketSession existingSession = registry.register(session);
+        for (String room : ChatSessionRegistry.roomsOf(session)) {
+            broker.membershipChanged(room);
+            presence.entered(session, room);
+        }
 
-        sessions.stream()
-                        .filter(s -> getUserIdFromSession(s).equals(userId))
-                                .forEach(existingSession -> {
-                                    try{
-                                        existingSession.close();
-//                                        System.out.println("🔴 기존 세션 종료 (중복): " + existingSession.getId());
+        // 같은 userId로 이미 연결된 세션이 있으면 끊는다. (중복 접속)
+        if (existingSession != null && existingSession.isOpen()) {
+            try{
+                existingSession.close(CloseStatus.NORMAL.withReason("duplicate session"));
+            } catch (Exception e){
+                log.warn("duplicate session close failed for {}: {}", existingSession.getId(), e.toString());
+            }
+        }
 
-                                    } catch (Exception e){
-                                        e.printStackTrace();
-                                    }
-                                });
+        log.debug("chat session opened: {} {}", session.getId(), session.getUri());
+    }
 
-        sessions.add(session);
-        System.out.println("🟢 연결됨: " + session.getUri());
+    // pong을 포함해 무엇이든 받으면 살아 있는 연결
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        heartbeat.seen(session);
+        super.handleMessage(session, message);
     }
 
     // 2. 텍스트 메시지 처리
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage msg)throws Exception {
         if (!session.isOpen()) {
-//            System.out.println("세션이 닫혀있음: 메시지 처리 안함");
             return;
         }
 
-//        System.out.println("💬 받은 메시지: " + msg.getPayload());
+        // join / leave / replay 프레임은 방 이동, 기록 다시 받기만 하고 다른 사람에게 전달하지 않는다.
+        ChatControlFrame frame = ChatControlFrame.peek(msg.getPayload());
+        if (frame != null && frame.isControl()) {
+            handleControl(session, frame);
+            return;
+        }
+        // 입력 중 표시는 전달하지 않고 PresenceService에 모아 둔다. (틱마다 방별로 한 번)
+        if (frame != null && PresenceService.TYPING.equals(frame.type())) {
+            handleTyping(session, frame.room());
+            return;
+        }
+        if (frame != null && ChunkedUploadService.START.equals(frame.type())) {
+            deliver(session, uploads.start(session, msg.getPayload()));
+            return;
+        }
 
-        for(WebSocketSession s : sessions){
-            if(s.isOpen() && !s.getId().equals(session.getId())){
-                s.sendMessage(msg);
+        // 서버 전체가 아니라 방 사람들에게만 전달 (room이 없으면 보낸 사람이 들어가 있는 방들)
+        broadcast(session, msg, frame == null ? null : frame.room());
+    }
+
+    private void handleControl(WebSocketSession session, ChatControlFrame frame) {
+        Set<String> joined = ChatSessionRegistry.roomsOf(session);
+        // ROOMS는 ConcurrentHashMap key set이라 null을 물어볼 수 없다.
+        boolean valid = ChatSessionRegistry.isValidRoomId(frame.room());
+        boolean wasMember = valid && joined.contains(frame.room());
+        TextMessage reply = frame.applyTo(registry, session, history.id());
+        if (reply != null) {
+            outbound.send(session, reply);
+        }
+        if (valid && joined.contains(frame.room()) != wasMember) {
+            broker.membershipChanged(frame.room());
+            if (wasMember) {
+                presence.exited(session, frame.room());
+            } else {
+                presence.entered(session, frame.room());
+            }
+        }
+        if (valid && frame.wantsReplay() && joined.contains(frame.room())) {
+            history.resume(frame.room(), frame.since(), frame.history(), replayed -> outbound.send(session, replayed));
+        }
+    }
+
+    private void handleTyping(WebSocketSession session, String room) {
+        for (String r : roomsFor(session, room)) {
+            presence.typing(session, r);
+        }
+    }
+
+    /*
+    * [broadcast : 방 기록에 남기고 방 사람들에게 전달]
+    * 방마다 ChatHistory에 붙여서 offset을 받고, JSON 메시지면 "offset"을 붙여서 그 방 사람들에게 보낸다.
+    * 여러 방에 같이 들어가 있는 사람은 한 번만 받는다. (예전 audienceOf와 같음)
+    * 다른 노드에는 offset을 붙이기 전 원래 메시지를 보낸다. (offset은 노드마다 자기 기록 기준으로 붙는다)
+    * 다른 노드에 그 방 사람이 없으면 보내지 않는다.
+    * envelope 세션은 같은 내용을 MESSAGE envelope으로 받는다. (offset은 seq에)
+    *
+    * */
+    private void broadcast(WebSocketSession session, TextMessage msg, String room) {
+        broadcast(session, msg, null, room);
+    }
+
+    // utf8 : msg 본문의 UTF-8 바이트를 이미 들고 있으면(envelope으로 받았을 때) 넘긴다. envelope 클라이언트에게 그대로 싣는다.
+    private void broadcast(WebSocketSession session, TextMessage msg, ByteBuffer utf8, String room) {
+        Collection<String> rooms = roomsFor(session, room);
+        Set<String> delivered = rooms.size() > 1 ? new HashSet<>() : null;
+        String sender = ChatSessionRegistry.userIdOf(session);
+        long started = System.nanoTime();
+        int recipients = 0;
+
+        for(String r : rooms){
+            RoomFrame out = new RoomFrame(r, sender, msg, utf8, history.append(r, msg.getPayload()));
+            for(WebSocketSession s : registry.membersOf(r)){
+                if(s.isOpen() && !s.getId().equals(session.getId()) && (delivered == null || delivered.add(s.getId()))){
+                    outbound.send(s, out.forSession(s));
+                    recipients++;
+                }
+            }
+            if (broker.hasRemoteMembers(r)) {
+                broker.publish(BrokerMessage.text(broker.nodeId(), r, msg.getPayload()));
             }
+            presence.messageSent(session, r);
         }
+        meters.relayedText(started, recipients, msg.getPayload());
+    }
+
+    // room이 있으면 그 방(들어가 있을 때만), 없으면 들어가 있는 방 전부
+    private static Collection<String> roomsFor(WebSocketSession session, String room) {
+        Set<String> joined = ChatSessionRegistry.roomsOf(session);
+        return room == null ? joined : (joined.contains(room) ? List.of(room) : List.of());
     }
 
     // 3. 바이너리 메시지 처리
     @Override
     protected void handleBinaryMessage(WebSocketSession session, BinaryMessage bMsg) throws Exception {
-//        System.out.println("💬 받은 메시지: " + bMsg.getPayload());
-        ByteBuffer byteBuffer = bMsg.getPayload();
+        ByteBuffer payload = bMsg.getPayload();
+
+        // 청크 프레임이면 파일에 이어 쓰기만 하고, 다 받았을 때 방 사람들에게 알린다.
+        if (ChunkedUploadService.isChunk(payload)) {
+            deliver(session, uploads.chunk(session, payload));
+            return;
+        }
+        if (ChatEnvelope.isEnvelope(payload)) {
+            handleEnvelope(session, payload);
+            return;
+        }
+        relayMedia(session, payload, null);
+    }
+
+    /*
+    * [handleEnvelope : 바이너리 envelope]
+    * 1) ChatEnvelope은 세션마다 하나를 두고 다시 쓴다. (프레임마다 객체를 만들지 않음)
+    * 2) 머리의 type / room만 보고 텍스트 프레임과 같은 길로 보낸다.
+    *    본문은 보낼 방이 정해진 뒤에야 읽는다. → 모르는 type, 들어가 있지 않은 방이면 본문을 건드리지 않고 끝난다.
+    * 3) MESSAGE 본문은 문자열로 한 번만 만든다. (방 기록 / 텍스트 클라이언트 / 다른 노드용)
+    *    envelope 클라이언트에게는 받은 UTF-8 본문을 그대로 다시 싣는다. (문자열 → byte[] 인코딩을 다시 하지 않음)
+    *
+    * */
+    private void handleEnvelope(WebSocketSession session, ByteBuffer payload) {
+        ChatEnvelope envelope = (ChatEnvelope) session.getAttributes()
+                .computeIfAbsent(ENVELOPE_READER, key -> new ChatEnvelope());
+        if (!envelope.wrap(payload)) {
+            meters.invalidFrame();
+            outbound.send(session, new TextMessage("{\"type\":\"error\",\"message\":\"invalid envelope\"}"));
+            return;
+        }
+        try {
+            session.getAttributes().put(ENVELOPE, Boolean.TRUE);
+            routeEnvelope(session, envelope);
+        } finally {
+            envelope.release();
+        }
+    }
+
+    private void routeEnvelope(WebSocketSession session, ChatEnvelope envelope) {
+        byte type = envelope.type();
+        String control = ChatEnvelope.controlTypeOf(type);
+        if (type != ChatEnvelope.MESSAGE && type != ChatEnvelope.MEDIA && control == null) {
+            outbound.send(session, new TextMessage("{\"type\":\"error\",\"message\":\"unknown envelope type\"}"));
+            return;
+        }
+        String room = envelope.room();
+        if (control != null && type != ChatEnvelope.TYPING) {
+            // envelope에는 history를 실을 곳이 없다. 노드가 여러 대면 seq로 이어 받기는 거절된다. (JSON replay 프레임을 쓴다)
+            long since = type == ChatEnvelope.LEAVE ? ChatControlFrame.NO_REPLAY : envelope.seq();
+            handleControl(session, new ChatControlFrame(control, room, since));
+            return;
+        }
+        // 나머지(MESSAGE / MEDIA / TYPING)는 들어가 있는 방에만 간다.
+        if (roomsFor(session, room).isEmpty()) {
+            return;
+        }
+        if (type == ChatEnvelope.TYPING) {
+            handleTyping(session, room);
+        } else if (type == ChatEnvelope.MEDIA) {
+            relayMedia(session, envelope.body(), room);
+        } else {
+            broadcast(session, new TextMessage(envelope.bodyText()), envelope.body(), room);
+        }
+    }
+
+    private static boolean prefersEnvelope(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get(ENVELOPE));
+    }
+
+    // room이 null이면 보낸 사람이 들어가 있는 방 전부
+    private void relayMedia(WebSocketSession session, ByteBuffer payload, String room) {
+        Collection<String> rooms = roomsFor(session, room);
+        if (rooms.isEmpty()) {
+            return;
+        }
 
         // 수신한 이미지를 저장하는 로직
-        try(FileOutputStream out = new FileOutputStream("uploaded_files")){
-            while(byteBuffer.hasRemaining()){
-                out.write(byteBuffer.get());
-            }
+        // 예전 : 1바이트씩 "uploaded_files"에 덮어쓰기 → 저장이 끝나야 전달이 시작됐다.
+        // 지금 : 저장은 ChatMediaWriter가 비동기로 한다. (내용 해시로 파일명) 기다리지 않고 바로 방 사람들에게 전달한다.
+        // 디스크에 쓰기를 기다리는 미디어가 한도를 넘으면 저장도 전달도 하지 않고 보낸 사람에게만 알린다.
+        // (전달만 하고 저장을 빼먹으면 replay 때 사라지는 메시지가 된다)
+        String from = ChatSessionRegistry.userIdOf(session);
+        CompletableFuture<MediaStore.StoredMedia> persisted;
+        try {
+            persisted = mediaWriter.persist(payload);
+        } catch (RejectedExecutionException e) {
+            outbound.send(session, new TextMessage("{\"type\":\"error\",\"message\":\"media backlog full\"}"));
+            return;
         }
 
-        // 연결된 모든 세션에 바이너리 메시지 전송하기
-        for(WebSocketSession s :  sessions){
+        // 보낸 사람이 들어가 있는 방 사람들에게 바이너리 메시지 전송하기
+        // 받는 사람마다 대기열에서 따로 읽으므로 ByteBuffer는 duplicate()로 위치(position)만 따로 둔다.
+        // → 받는 사람 수만큼 본문을 복사하지는 않는다. (envelope 클라이언트용 본문은 처음 한 번만 만들어 같이 씀)
+        //   복사가 아예 없는 것은 아니다. 톰캣이 받은 프레임을 이 버퍼로 한 번 옮기고, 보낼 때도 세션마다 소켓 버퍼로 옮긴다.
+        long started = System.nanoTime();
+        int recipients = 0;
+        MediaFrame out = new MediaFrame(room, from, payload);
+        for(WebSocketSession s : registry.audienceOf(session, room)){
             if(s.isOpen() && !s.getId().equals(session.getId())){
-                s.sendMessage(bMsg);
+                outbound.send(s, out.forSession(s));
+                recipients++;
             }
         }
+        meters.relayedBinary(started, recipients, payload.remaining());
+
+        // 바이너리 본문은 기록에 넣지 않는다. 저장이 끝나면 파일 이름만 {"type":"media",...}로 방 기록에 남긴다. (replay 때 /uploads에서 받음)
+        // 다른 노드에도 본문 대신 이 참조만 보낸다. (DB를 거쳐 큰 본문을 나르지 않음. 받은 노드는 자기 기록에도 남김)
+        // → 노드가 여러 대면 file.upload-dir은 모든 노드가 같이 보는 저장소여야 한다.
+        Set<String> recorded = Set.copyOf(rooms);
+        persisted.thenAccept(stored -> {
+            String reference = mediaReference(stored, from);
+            for (String r : recorded) {
+                history.append(r, reference);
+                if (broker.hasRemoteMembers(r)) {
+                    broker.publish(BrokerMessage.text(broker.nodeId(), r, reference));
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean hosts(String room) {
+        return !registry.membersOf(room).isEmpty();
+    }
+
+    /*
+    * [receive : 다른 노드에서 온 방 메시지]
+    * 이 노드의 방 기록에도 남겨서 여기 붙은 사람도 replay로 다시 받을 수 있게 한다.
+    * 미디어는 본문 대신 {"type":"media","name":..} 참조로 온다. (클라이언트는 /uploads에서 받음)
+    * 보낸 사람은 다른 노드에 있으므로 이 노드의 방 사람 모두에게 보낸다.
+    *
+    * */
+    @Override
+    public void receive(BrokerMessage message) {
+        Set<WebSocketSession> members = registry.membersOf(message.room());
+        if (members.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        int recipients = 0;
+        String payload = message.text();
+        RoomFrame out = new RoomFrame(message.room(), null, new TextMessage(payload), ByteBuffer.wrap(message.body()),
+                history.append(message.room(), payload));
+        for (WebSocketSession s : members) {
+            if (s.isOpen()) {
+                outbound.send(s, out.forSession(s));
+                recipients++;
+            }
+        }
+        meters.relayedText(started, recipients, payload);
+    }
+
+    /*
+    * [RoomFrame / MediaFrame : 받는 세션에 맞는 형식으로]
+    * 텍스트 클라이언트 : 예전 그대로 (JSON이면 "offset"을 붙인 텍스트, 미디어는 본문 그대로)
+    * envelope 클라이언트 : MESSAGE / MEDIA envelope
+    * 각 형식은 처음 필요할 때 한 번만 만들고 방 사람들이 같이 쓴다.
+    *
+    * */
+    private static final class RoomFrame {
+
+        private final String room;
+        private final String sender;
+        private final TextMessage original;
+        // original의 UTF-8 바이트 (없으면 null → 필요할 때 인코딩)
+        private final ByteBuffer utf8;
+        private final long offset;
+        private TextMessage text;
+        private ByteBuffer envelope;
+
+        RoomFrame(String room, String sender, TextMessage original, ByteBuffer utf8, long offset) {
+            this.room = room;
+            this.sender = sender;
+            this.original = original;
+            this.utf8 = utf8;
+            this.offset = offset;
+        }
+
+        WebSocketMessage<?> forSession(WebSocketSession session) {
+            if (prefersEnvelope(session)) {
+                if (envelope == null) {
+                    ByteBuffer body = utf8 != null ? utf8 : ByteBuffer.wrap(original.getPayload().getBytes(StandardCharsets.UTF_8));
+                    envelope = ChatEnvelope.encode(ChatEnvelope.MESSAGE, room, sender, offset, body);
+                }
+                return new BinaryMessage(envelope.duplicate());
+            }
+            if (text == null) {
+                String payload = original.getPayload();
+                String tagged = ChatHistory.withOffset(payload, offset);
+                text = tagged == payload ? original : new TextMessage(tagged);
+            }
+            return text;
+        }
+    }
+
+    private static final class MediaFrame {
+
+        private final String room;
+        private final String sender;
+        private final ByteBuffer body;
+        private ByteBuffer envelope;
+
+        MediaFrame(String room, String sender, ByteBuffer body) {
+            this.room = room;
+            this.sender = sender;
+            this.body = body;
+        }
+
+        WebSocketMessage<?> forSession(WebSocketSession session) {
+            if (!prefersEnvelope(session)) {
+                return new BinaryMessage(body.duplicate());
+            }
+            if (envelope == null) {
+                envelope = ChatEnvelope.encode(ChatEnvelope.MEDIA, room, sender, 0, body);
+            }
+            return new BinaryMessage(envelope.duplicate());
+        }
+    }
+
+    private static String mediaReference(MediaStore.StoredMedia stored, String from) {
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        return "{\"type\":\"media\",\"name\":\"" + stored.name() + "\",\"size\":" + stored.size()
+                + ",\"from\":\"" + new String(encoder.quoteAsString(from == null ? ChatSessionRegistry.ANONYMOUS : from)) + "\"}";
+    }
+
+    // 업로드 응답은 보낸 사람에게, 완료 알림은 방 사람들에게 (알림은 방 기록에도 남는다)
+    private void deliver(WebSocketSession session, ChunkedUploadService.UploadResult result) {
+        if (result.reply() != null) {
+            outbound.send(session, result.reply());
+        }
+        if (result.announcement() != null) {
+            broadcast(session, result.announcement(), result.room());
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        meters.transportError();
+        log.debug("chat transport error on {}: {}", session.getId(), exception.toString());
     }
 
     // 4. 연결 종료
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session);
-//        if (sessions.remove(session)) {
-//            System.out.println("🔴 연결 종료 - 세션 제거 완료: " + session.getId());
-//        } else {
-//            System.out.println("🔴 연결 종료 - 세션을 찾을 수 없음: " + session.getId());
-//        }
-
+        Set<String> rooms = Set.copyOf(ChatSessionRegistry.roomsOf(session));
+        registry.unregister(session);
+        heartbeat.untrack(session);
+        meters.closed();
+        for (String room : rooms) {
+            broker.membershipChanged(room);
+            presence.exited(session, room);
+        }
+        outbound.close(session);
     }
 
 }
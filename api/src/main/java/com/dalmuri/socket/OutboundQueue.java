@@ -0,0 +1,221 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties.OverflowPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+public class OutboundQueue {
+
+    /*
+    * [OutboundQueue : 세션 하나의 보내기 대기열]
+    * 예전에는 broadcast 반복문 안에서 s.sendMessage(msg)를 보낸 사람의 스레드가 직접 호출했다.
+    *   → 느린 클라이언트 하나가 그 뒤 순서의 모든 사람 전송을 막고,
+    *   → 여러 스레드가 같은 세션에 동시에 보내면 "TEXT_PARTIAL_WRITING" 상태 오류가 난다.
+    *
+    * 지금은 offer()로 대기열에 넣기만 하고 바로 돌아간다. (보낸 사람 스레드는 막히지 않음)
+    * 실제 전송은 세션마다 가상 스레드 하나가 대기열을 비우면서 순서대로 한다. (draining 플래그로 세션당 전송자는 항상 하나)
+    *
+    * 느린 클라이언트 처리
+    * 1) 전송 하나가 sendTimeLimit 넘게 끝나지 않고 있으면 → 연결 끊기 (정책과 무관)
+    *    - offer() : 새 메시지가 들어올 때 진행 중인 전송 시간을 본다.
+    *    - drain() : 전송이 끝날 때마다 걸린 시간을 본다. (새 메시지가 없어도 느린 전송이 끝나는 순간 끊긴다)
+    * 2) 대기열이 메시지 수 / 총 크기 제한을 넘으면 → overflowPolicy (DROP, COALESCE, DISCONNECT)
+    *
+    * 여러 스레드가 동시에 offer()할 때
+    * - 자리(depth, bufferedBytes)는 넣기 전에 CAS로 먼저 잡는다. "확인 → 넣기" 사이에 다른 스레드가 끼어들어 제한을 넘기지 않는다.
+    * - close()와 겹치면 : closed를 본 뒤에 넣은 메시지가 남을 수 있으므로, 넣은 뒤 closed를 다시 보고 직접 꺼낸다.
+    *
+    * */
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final SessionOutbound.Stats stats;
+    private final long sendTimeLimitNanos;
+    private final long bufferSizeLimit;
+    private final int maxQueuedMessages;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ConcurrentLinkedQueue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile long sendStartNanos;
+    private volatile boolean closed;
+
+    OutboundQueue(WebSocketSession session, Executor executor, SessionOutbound.Stats stats,
+                  long sendTimeLimitNanos, long bufferSizeLimit, int maxQueuedMessages, OverflowPolicy overflowPolicy) {
+        this.session = session;
+        this.executor = executor;
+        this.stats = stats;
+        this.sendTimeLimitNanos = sendTimeLimitNanos;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /** 대기열에 넣고 바로 돌아간다. 버려졌거나 연결이 끊겼으면 false */
+    public boolean offer(WebSocketMessage<?> message) {
+        if (closed) {
+            return false;
+        }
+
+        long started = sendStartNanos;
+        if (started != 0 && System.nanoTime() - started > sendTimeLimitNanos) {
+            disconnect("send time limit exceeded");
+            return false;
+        }
+
+        int size = message.getPayloadLength();
+        if (!reserve(size)) {
+            switch (overflowPolicy) {
+                case DROP -> {
+                    stats.dropped.increment();
+                    return false;
+                }
+                case DISCONNECT -> {
+                    disconnect("outbound buffer overflow");
+                    return false;
+                }
+                case COALESCE -> {
+                    if (!evictOldest(size)) {
+                        stats.dropped.increment(); // 대기열을 다 비워도 들어가지 않는 메시지
+                        return false;
+                    }
+                }
+            }
+        }
+
+        stats.queued.incrementAndGet();
+        queue.add(message);
+        if (closed) {
+            // 그 사이 close()가 대기열을 비웠다. close()가 이미 꺼내 갔으면 remove()는 false
+            if (queue.remove(message)) {
+                dequeued(message);
+            }
+            return false;
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    // 메시지 하나 + size 바이트 자리를 잡는다. 제한을 넘으면 아무것도 잡지 않고 false
+    private boolean reserve(int size) {
+        int queued;
+        do {
+            queued = depth.get();
+            if (queued + 1 > maxQueuedMessages) {
+                return false;
+            }
+        } while (!depth.compareAndSet(queued, queued + 1));
+
+        long bytes;
+        do {
+            bytes = bufferedBytes.get();
+            if (bytes + size > bufferSizeLimit) {
+                depth.decrementAndGet();
+                return false;
+            }
+        } while (!bufferedBytes.compareAndSet(bytes, bytes + size));
+        return true;
+    }
+
+    public int depth() {
+        return depth.get();
+    }
+
+    public long bufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    // 새 메시지 자리를 잡을 때까지 오래된 메시지부터 버린다. 대기열이 비어도 못 잡으면 false
+    private boolean evictOldest(int incomingSize) {
+        do {
+            WebSocketMessage<?> oldest = queue.poll();
+            if (oldest == null) {
+                return false;
+            }
+            dequeued(oldest);
+            stats.dropped.increment();
+        } while (!reserve(incomingSize));
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            WebSocketMessage<?> message;
+            while (!closed && (message = queue.poll()) != null) {
+                dequeued(message);
+                if (!session.isOpen()) {
+                    close();
+                    return;
+                }
+
+                long started = System.nanoTime();
+                sendStartNanos = started;
+                try {
+                    session.sendMessage(message);
+                    stats.sent.increment();
+                    if (System.nanoTime() - started > sendTimeLimitNanos) {
+                        disconnect("send time limit exceeded");
+                        return;
+                    }
+                } catch (Exception e) {
+                    log.debug("outbound send failed for session {}: {}", session.getId(), e.toString());
+                    disconnect("send failed");
+                    return;
+                } finally {
+                    sendStartNanos = 0;
+                }
+            }
+        } finally {
+            draining.set(false);
+            // draining을 내리는 사이에 들어온 메시지가 있으면 다시 비운다. (깨우기 누락 방지)
+            if (!closed && !queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void dequeued(WebSocketMessage<?> message) {
+        depth.decrementAndGet();
+        bufferedBytes.addAndGet(-message.getPayloadLength());
+        stats.queued.decrementAndGet();
+    }
+
+    private void disconnect(String reason) {
+        if (closed) {
+            return;
+        }
+        stats.disconnected.increment();
+        close();
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason(reason));
+        } catch (Exception e) {
+            log.debug("closing slow session {} failed: {}", session.getId(), e.toString());
+        }
+    }
+
+    /** 연결 종료 시 남은 메시지를 버린다. */
+    void close() {
+        closed = true;
+        WebSocketMessage<?> message;
+        while ((message = queue.poll()) != null) {
+            dequeued(message);
+        }
+    }
+}
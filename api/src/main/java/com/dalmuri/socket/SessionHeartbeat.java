@@ -0,0 +1,134 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Component
+public class SessionHeartbeat implements DisposableBean, MeterBinder {
+
+    /*
+    * [SessionHeartbeat : 죽은 연결 정리]
+    * 모바일 네트워크가 바뀌거나 절전에 들어가면 TCP가 끊겼다는 사실이 서버에 오지 않는다.
+    * 그런 세션은 방 구성원 / 보내기 대기열 / 톰캣 버퍼를 계속 잡고, 방 메시지를 받을 때마다 대기열만 쌓인다.
+    *
+    * pingInterval마다 열린 세션 모두에 ping을 보낸다. (SessionOutbound 대기열로 → 다른 메시지와 동시에 쓰지 않음)
+    * 브라우저는 ping에 자동으로 pong을 돌려준다. pong이든 일반 메시지든 받으면 seen()으로 시각을 갱신하고,
+    * pongTimeout 동안 아무것도 받지 못한 세션은 끊는다. (끊기면 핸들러의 afterConnectionClosed가 정리)
+    *
+    * 톰캣의 maxSessionIdleTimeout은 서버가 보낸 ping도 활동으로 치기 때문에 이 역할을 못 한다.
+    *
+    * */
+
+    private static final ByteBuffer PING = ByteBuffer.wrap(new byte[]{'h', 'b'}).asReadOnlyBuffer();
+
+    private final SessionOutbound outbound;
+    private final long pongTimeoutMillis;
+    private final Map<String, Tracked> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder reaped = new LongAdder();
+
+    public SessionHeartbeat(ChatProperties properties, SessionOutbound outbound) {
+        ChatProperties.Socket settings = properties.getSocket();
+        this.outbound = outbound;
+        this.pongTimeoutMillis = settings.getPongTimeout().toMillis();
+        long pingMillis = settings.getPingInterval().toMillis();
+        if (pingMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::beat, pingMillis, pingMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void track(WebSocketSession session) {
+        sessions.put(session.getId(), new Tracked(session));
+    }
+
+    public void untrack(WebSocketSession session) {
+        sessions.remove(session.getId());
+    }
+
+    /** pong이나 메시지를 받았다. */
+    public void seen(WebSocketSession session) {
+        Tracked tracked = sessions.get(session.getId());
+        if (tracked != null) {
+            tracked.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    private void beat() {
+        long deadline = System.currentTimeMillis() - pongTimeoutMillis;
+        for (Tracked tracked : sessions.values()) {
+            WebSocketSession session = tracked.session;
+            if (!session.isOpen()) {
+                sessions.remove(session.getId());
+            } else if (tracked.lastSeen < deadline) {
+                sessions.remove(session.getId());
+                reaped.increment();
+                close(session);
+            } else {
+                outbound.send(session, new PingMessage(PING.duplicate()));
+            }
+        }
+    }
+
+    private static void close(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("heartbeat timeout"));
+        } catch (IOException e) {
+            log.debug("heartbeat close failed for {}: {}", session.getId(), e.toString());
+        }
+    }
+
+    public int trackedSessions() {
+        return sessions.size();
+    }
+
+    public long reapedSessions() {
+        return reaped.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.heartbeat.tracked", this, SessionHeartbeat::trackedSessions)
+                .register(registry);
+        FunctionCounter.builder("chat.heartbeat.reaped", this, SessionHeartbeat::reapedSessions)
+                .description("Sessions closed after missing pongs")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class Tracked {
+
+        final WebSocketSession session;
+        volatile long lastSeen = System.currentTimeMillis();
+
+        Tracked(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.config.ChatProperties.OverflowPolicy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 세션별 보내기 대기열(OutboundQueue)을 만들고 관리하는 Bean
+ * - 대기열은 세션 attributes에 넣어두고, 연결이 끊기면 비운다.
+ * - 대기열을 비우는 가상 스레드 executor와 전체 통계(대기 중, 보냄, 버림, 느린 클라이언트 끊음)를 공유한다.
+ * - 통계는 MeterBinder로 그대로 낸다. (chat.outbound.*, 읽을 때만 합산)
+ * */
+@Component
+public class SessionOutbound implements DisposableBean, MeterBinder {
+
+    private static final String QUEUE = "outbound.queue";
+
+    private final ChatProperties.Outbound settings;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ws-outbound-", 0).factory());
+    private final Stats stats = new Stats();
+
+    public SessionOutbound(ChatProperties properties) {
+        this.settings = properties.getOutbound();
+    }
+
+    public OutboundQueue open(WebSocketSession session) {
+        return open(session, settings.getOverflowPolicy());
+    }
+
+    public OutboundQueue open(WebSocketSession session, OverflowPolicy overflowPolicy) {
+        OutboundQueue queue = new OutboundQueue(session, executor, stats,
+                settings.getSendTimeLimit().toNanos(),
+                settings.getBufferSizeLimit().toBytes(),
+                settings.getMaxQueuedMessages(),
+                overflowPolicy);
+        session.getAttributes().put(QUEUE, queue);
+        return queue;
+    }
+
+    /** 세션의 대기열에 넣는다. 대기열이 없거나(연결 종료) 버려졌으면 false */
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message) {
+        OutboundQueue queue = queueOf(session);
+        return queue != null && queue.offer(message);
+    }
+
+    public void close(WebSocketSession session) {
+        OutboundQueue queue = (OutboundQueue) session.getAttributes().remove(QUEUE);
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    public static OutboundQueue queueOf(WebSocketSession session) {
+        return (OutboundQueue) session.getAttributes().get(QUEUE);
+    }
+
+    // 전체 세션의 대기열에 쌓여 있는 메시지 수
+    public long queuedMessages() {
+        return stats.queued.get();
+    }
+
+    public long sentMessages() {
+        return stats.sent.sum();
+    }
+
+    public long droppedMessages() {
+        return stats.dropped.sum();
+    }
+
+    public long slowConsumerDisconnects() {
+        return stats.disconnected.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.outbound.queued", this, SessionOutbound::queuedMessages)
+                .description("Messages waiting in outbound queues")
+                .register(registry);
+        FunctionCounter.builder("chat.outbound.sent", this, SessionOutbound::sentMessages)
+                .register(registry);
+        FunctionCounter.builder("chat.outbound.dropped", this, SessionOutbound::droppedMessages)
+                .description("Messages dropped by the overflow policy")
+                .register(registry);
+        FunctionCounter.builder("chat.outbound.slow.consumers", this, SessionOutbound::slowConsumerDisconnects)
+                .description("Sessions closed because they could not keep up")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    static final class Stats {
+        final AtomicLong queued = new AtomicLong();
+        final LongAdder sent = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder disconnected = new LongAdder();
+    }
+}
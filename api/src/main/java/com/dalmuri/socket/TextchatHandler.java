@@ -1,13 +1,20 @@
 package com.dalmuri.socket;
 
+import com.dalmuri.socket.history.ChatHistory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
 
+@Slf4j
+@Component
 public class TextchatHandler extends TextWebSocketHandler {
     /*
     * 1) TextWebSocketHandler (텍스트 메시지 전용) : 스프링에서 텍스트 기반의 웹소켓 메시지를 처리하는데 필요한 기본적인 기능들을 미리 구현해 놓은 추상 클래스
@@ -31,7 +38,7 @@ public class TextchatHandler extends TextWebSocketHandler {
     *
     * */
 
-    private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    private final ChatSessionRegistry registry = new ChatSessionRegistry();
 
     /*
     * 1) Set : 웹소켓에 연결된 모든 클라이언트의 세션 정보(WebSocketSession)를 저장하는 공간을 제공.
@@ -45,31 +52,79 @@ public class TextchatHandler extends TextWebSocketHandler {
     *       단점 : 쓸 때 느림 = 데이터 추가 + 삭제 시 원본을 복사해야 해서 오버헤드가 큼
     *  ∴ 대부분의 작업이 "읽기"이고 "쓰기"는 드문 채팅 환경에 최적화된 set이다!
     *
+    * +) 지금은 CopyOnWriteArraySet 대신 ChatSessionRegistry를 쓴다.
+    * 재접속이 몰리면 "쓰기"도 많아지고, 메시지를 모든 세션에 뿌리면 다른 대화방에도 메시지가 샌다.
+    * registry는 방(room)별 세션 Set을 들고 있어서, 메시지를 같은 방 사람들에게만 보낸다. (메시지 1건 비용 = 방 인원수)
+    * 방 이동은 {"type":"join","room":"방"}, {"type":"leave","room":"방"} 프레임으로 한다. (ChatControlFrame)
+    *
     * */
 
+    // 세션별 보내기 대기열. 보낸 사람 스레드는 대기열에 넣기만 하고 바로 돌아간다. (MediachatHandler와 동일)
+    private final SessionOutbound outbound;
+    // 방별 메시지 기록 (MediachatHandler와 같은 기록을 쓴다)
+    private final ChatHistory history;
+    // 세션 수 / fan-out 시간 / 보낸 바이트 (MediachatHandler와 같은 이름, handler 태그만 다름)
+    private final ChatMetrics.Handler meters;
+
+    public TextchatHandler(SessionOutbound outbound, ChatHistory history, ChatMetrics metrics) {
+        this.outbound = outbound;
+        this.history = history;
+        this.meters = metrics.handler(ChatMetrics.TEXT, registry);
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-//        System.out.println("🟢 연결됨: " + session.getUri());
+        outbound.open(session);
+        registry.register(session);
+        meters.opened();
     }
 
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-//        System.out.println("💬 받은 메시지: " + message.getPayload());
+        ChatControlFrame frame = ChatControlFrame.peek(message.getPayload());
+        if (frame != null && frame.isControl()) {
+            TextMessage reply = frame.applyTo(registry, session, history.id());
+            if (reply != null) {
+                outbound.send(session, reply);
+            }
+            if (frame.wantsReplay() && ChatSessionRegistry.roomsOf(session).contains(frame.room())) {
+                history.resume(frame.room(), frame.since(), frame.history(), replayed -> outbound.send(session, replayed));
+            }
+            return;
+        }
 
-        // 연결된 모든 세션에 메시지 전송 (단, 메시지를 보낸 본인은 제외)
-        for(WebSocketSession s : sessions){
-//            System.out.println("너 누구냐 : " + s.getId() + ", 세션은 누구냐 : " + session.getId());
-            if(s.isOpen() && !s.getId().equals(session.getId())){
-                s.sendMessage(message);
+        // 같은 방 세션에 메시지 전송 (단, 메시지를 보낸 본인은 제외). 방마다 기록에 남기고 offset을 붙인다.
+        Set<String> joined = ChatSessionRegistry.roomsOf(session);
+        String room = frame == null ? null : frame.room();
+        Collection<String> rooms = room == null ? joined : (joined.contains(room) ? List.of(room) : List.of());
+        Set<String> delivered = rooms.size() > 1 ? new HashSet<>() : null;
+        long started = System.nanoTime();
+        int recipients = 0;
+        for(String r : rooms){
+            String payload = message.getPayload();
+            String tagged = ChatHistory.withOffset(payload, history.append(r, payload));
+            TextMessage out = tagged == payload ? message : new TextMessage(tagged);
+            for(WebSocketSession s : registry.membersOf(r)){
+                if(s.isOpen() && !s.getId().equals(session.getId()) && (delivered == null || delivered.add(s.getId()))){
+                    outbound.send(s, out);
+                    recipients++;
+                }
             }
         }
+        meters.relayedText(started, recipients, message.getPayload());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        meters.transportError();
+        log.debug("text chat transport error on {}: {}", session.getId(), exception.toString());
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception{
-        sessions.remove(session);
-//        System.out.println("🔴 연결 종료!");
+        registry.unregister(session);
+        outbound.close(session);
+        meters.closed();
     }
 
 
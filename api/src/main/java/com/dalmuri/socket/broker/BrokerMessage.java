@@ -0,0 +1,20 @@
+package com.dalmuri.socket.broker;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 노드 사이에 오가는 방 메시지 하나 (텍스트만. 이미지 / 동영상은 MediaStore에 저장한 뒤 {"type":"media",...} 참조로 보낸다)
+ * @param origin 보낸 노드 id
+ * @param room 방
+ * @param body 본문 (UTF-8)
+ * */
+public record BrokerMessage(String origin, String room, byte[] body) {
+
+    public static BrokerMessage text(String origin, String room, String text) {
+        return new BrokerMessage(origin, room, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String text() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package com.dalmuri.socket.broker;
+
+/**
+ * 노드(서버 인스턴스) 사이의 방 메시지 전달 통로
+ * - 이 노드에서 방 사람들에게 보낸 메시지를 publish하면, 그 방 사람이 있는 다른 노드들이 receive로 받는다.
+ * - 노드는 자기에게 구성원이 있는 방만 구독한다. 방 구성이 바뀌면 membershipChanged(room)로 알려준다.
+ *   (구독할지는 그때의 Receiver.hosts(room)로 다시 판단하므로, 들어오고 나가는 순서가 뒤섞여도 결과는 맞는다)
+ *
+ * 구현체 : LocalChatBroker (같은 프로세스 안, 테스트용), PostgresChatBroker (LISTEN / NOTIFY)
+ * */
+public interface ChatBroker {
+
+    /** 받은 메시지를 이 노드의 세션들에게 전달할 쪽. 노드당 하나 */
+    void attach(Receiver receiver);
+
+    /** 다른 노드들에게 보낸다. 기다리지 않는다. (순서는 보낸 순서대로) */
+    void publish(BrokerMessage message);
+
+    /** 이 노드의 방 구성원이 바뀌었다. (첫 사람이 들어왔거나 마지막 사람이 나갔을 수 있음) */
+    void membershipChanged(String room);
+
+    /**
+     * 다른 노드에 그 방 구성원이 있는지. false면 publish할 필요가 없다.
+     * 잘 모르면(아직 다른 노드 정보를 못 읽음) true
+     */
+    boolean hasRemoteMembers(String room);
+
+    /** 이 노드의 id. 자기가 보낸 메시지를 다시 받지 않는 데 쓴다. */
+    String nodeId();
+
+    interface Receiver {
+
+        /** 이 노드에 그 방 구성원이 있는지 */
+        boolean hosts(String room);
+
+        /** 다른 노드에서 온 메시지 */
+        void receive(BrokerMessage message);
+    }
+}
@@ -0,0 +1,98 @@
+package com.dalmuri.socket.broker;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class LocalChatBroker implements ChatBroker {
+
+    /*
+    * [LocalChatBroker : 프로세스 안에서만 도는 broker]
+    * chat.broker.type = local (기본값). 노드가 하나뿐이면 다른 노드로 보낼 일이 없으므로 publish는 아무것도 하지 않는 것과 같다.
+    * 테스트에서는 Bus 하나를 여러 LocalChatBroker가 같이 쓰게 해서 "노드 여러 개"를 흉내낸다.
+    * 방 구독은 Postgres 구현과 같은 규칙 : 구성원이 있는 방만 Bus에 등록하고, 그 방 메시지만 받는다.
+    *
+    * */
+
+    private final Bus bus;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+    private volatile Receiver receiver;
+
+    public LocalChatBroker() {
+        this(new Bus());
+    }
+
+    public LocalChatBroker(Bus bus) {
+        this.bus = bus;
+    }
+
+    @Override
+    public void attach(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void publish(BrokerMessage message) {
+        for (LocalChatBroker node : bus.subscribersOf(message.room())) {
+            if (node != this && node.receiver != null) {
+                node.receiver.receive(message);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void membershipChanged(String room) {
+        boolean hosts = receiver != null && receiver.hosts(room);
+        if (hosts && subscribed.add(room)) {
+            bus.subscribe(room, this);
+        } else if (!hosts && subscribed.remove(room)) {
+            bus.unsubscribe(room, this);
+        }
+    }
+
+    @Override
+    public boolean hasRemoteMembers(String room) {
+        for (LocalChatBroker node : bus.subscribersOf(room)) {
+            if (node != this) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public Set<String> subscribedRooms() {
+        return Set.copyOf(subscribed);
+    }
+
+    /** 같은 Bus를 쓰는 broker끼리 메시지가 오간다. */
+    public static final class Bus {
+
+        private final Map<String, Set<LocalChatBroker>> rooms = new ConcurrentHashMap<>();
+
+        void subscribe(String room, LocalChatBroker node) {
+            rooms.compute(room, (key, nodes) -> {
+                Set<LocalChatBroker> set = nodes != null ? nodes : ConcurrentHashMap.newKeySet();
+                set.add(node);
+                return set;
+            });
+        }
+
+        void unsubscribe(String room, LocalChatBroker node) {
+            rooms.computeIfPresent(room, (key, nodes) -> {
+                nodes.remove(node);
+                return nodes.isEmpty() ? null : nodes;
+            });
+        }
+
+        Set<LocalChatBroker> subscribersOf(String room) {
+            return rooms.getOrDefault(room, Set.of());
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.dalmuri.socket.broker;
+
+import com.dalmuri.config.ChatProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+public class PostgresChatBroker implements ChatBroker, AutoCloseable {
+
+    /*
+    * [PostgresChatBroker : PostgreSQL LISTEN / NOTIFY로 노드 간 전달]
+    * compose.yaml에 이미 있는 postgres를 메시지 통로로 쓴다. (별도 메시지 브로커 없이 노드를 늘릴 수 있게)
+    *
+    * 1) 방마다 채널 하나 : chat_ + 방 이름 SHA-256 앞 24자
+    *    노드는 자기에게 구성원이 있는 방 채널만 LISTEN 한다. → 그 방 사람이 없는 노드에는 NOTIFY가 가지 않는다.
+    * 2) 받기 : LISTEN 전용 연결 하나를 계속 잡고 getNotifications(pollInterval)로 기다린다.
+    *    방 구독 변경(LISTEN / UNLISTEN)도 이 스레드가 한다. (연결은 스레드 하나에서만 쓴다)
+    *    연결이 끊기면 다시 연결해서 구독하던 방을 다시 LISTEN 한다.
+    * 3) 보내기 : 보내기 대기열에 넣기만 하고 바로 돌아간다. 보내는 스레드가 모아서
+    *    트랜잭션 하나에 pg_notify 여러 번 + commit 한 번 (NOTIFY는 commit 때 한꺼번에 나간다)
+    *    메시지 하나가 데이터 오류(SQLState 22xxx, 23xxx : 너무 긴 방 이름으로 NOTIFY 본문이 8000바이트를 넘는 등)로 실패하면
+    *    트랜잭션 전체가 rollback 되어 아무것도 나가지 않은 상태다. → 묶음을 한 건씩(각자 트랜잭션) 다시 보내고 실패한 메시지만 버린다.
+    *    연결 오류 같은 나머지 오류는 다시 보내도 똑같으므로 묶음을 버리고 잠깐 쉰다.
+    * 4) NOTIFY 본문은 8000바이트까지. 넘는 텍스트는 chat_broker_payload 테이블에 넣고 id만 보낸다.
+    *    (받는 쪽이 id로 읽음. payloadRetention이 지나면 지운다)
+    *    이미지 / 동영상 본문은 보내지 않는다. 저장한 뒤 {"type":"media","name":..} 참조만 텍스트로 보낸다. (MediachatHandler)
+    * 5) 누가 어느 방을 LISTEN 하는지 chat_broker_listener 테이블에 남긴다. (LISTEN / UNLISTEN 할 때 + 1분마다 seen_at 갱신)
+    *    바뀔 때마다 chat_broker_listeners 채널로 알리고, 받은 노드는 "다른 노드가 LISTEN 중인 채널" 목록을 다시 읽는다.
+    *    → hasRemoteMembers가 false인 방은 publish하지 않는다. (다른 노드에 그 방 사람이 없으면 DB를 거치지 않음)
+    *    죽은 노드의 줄은 seen_at이 LISTENER_TTL보다 오래되면 지운다.
+    *
+    * NOTIFY 본문 : "{보낸 노드} {종류} {방 이름 길이}\n{방 이름}{내용}"
+    *   종류 t = 내용이 텍스트 그대로, T = 텍스트가 테이블에 (내용 = id)
+    *
+    * */
+
+    private static final int MAX_BATCH = 64;
+    private static final long CLEANUP_INTERVAL_MILLIS = 60_000;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+    private static final long LISTENER_TTL_SECONDS = 180;
+    private static final long LISTENER_REFRESH_MILLIS = 30_000;
+    private static final String LISTENERS_CHANNEL = "chat_broker_listeners";
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS chat_broker_payload (
+                id         BIGSERIAL PRIMARY KEY,
+                body       BYTEA NOT NULL,
+                created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+            )""";
+    private static final String CREATE_LISTENER_TABLE = """
+            CREATE TABLE IF NOT EXISTS chat_broker_listener (
+                channel VARCHAR(64) NOT NULL,
+                node_id VARCHAR(36) NOT NULL,
+                seen_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                PRIMARY KEY (channel, node_id)
+            )""";
+    private static final String UPSERT_LISTENER = """
+            INSERT INTO chat_broker_listener (channel, node_id) VALUES (?, ?)
+            ON CONFLICT (channel, node_id) DO UPDATE SET seen_at = now()""";
+    private static final String DELETE_LISTENER = "DELETE FROM chat_broker_listener WHERE channel = ? AND node_id = ?";
+    private static final String DELETE_NODE_LISTENERS = "DELETE FROM chat_broker_listener WHERE node_id = ?";
+    private static final String TOUCH_LISTENERS = "UPDATE chat_broker_listener SET seen_at = now() WHERE node_id = ?";
+    private static final String DELETE_STALE_LISTENERS = "DELETE FROM chat_broker_listener WHERE seen_at < now() - make_interval(secs => ?)";
+    private static final String SELECT_REMOTE_CHANNELS =
+            "SELECT DISTINCT channel FROM chat_broker_listener WHERE node_id <> ? AND seen_at >= now() - make_interval(secs => ?)";
+    private static final String INSERT_PAYLOAD = "INSERT INTO chat_broker_payload (body) VALUES (?) RETURNING id";
+    private static final String SELECT_PAYLOAD = "SELECT body FROM chat_broker_payload WHERE id = ?";
+    private static final String DELETE_PAYLOADS = "DELETE FROM chat_broker_payload WHERE created_at < now() - make_interval(secs => ?)";
+    private static final String NOTIFY = "SELECT pg_notify(?, ?)";
+
+    private final DataSource dataSource;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final int inlineLimit;
+    private final int pollMillis;
+    private final long payloadRetentionSeconds;
+
+    private final BlockingQueue<BrokerMessage> outgoing;
+    private final Queue<String> membershipChanges = new ConcurrentLinkedQueue<>();
+    // LISTEN 중인 방. 받는 스레드만 쓴다.
+    private final Set<String> listening = new HashSet<>();
+    private volatile int listeningCount;
+    // 다른 노드가 LISTEN 중인 채널. 받는 스레드가 다시 읽어서 통째로 바꾼다. (null이면 아직 모름)
+    private volatile Set<String> remoteChannels;
+    private volatile Receiver receiver;
+    private volatile boolean running;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private Thread listenThread;
+    private Thread publishThread;
+
+    public PostgresChatBroker(DataSource dataSource, ChatProperties.Broker settings) {
+        this.dataSource = dataSource;
+        this.inlineLimit = (int) Math.min(8000, settings.getInlineLimit().toBytes());
+        this.pollMillis = (int) Math.max(1, settings.getPollInterval().toMillis());
+        this.payloadRetentionSeconds = settings.getPayloadRetention().toSeconds();
+        this.outgoing = new ArrayBlockingQueue<>(settings.getPublishQueueCapacity());
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        listenThread = daemon("chat-broker-listen", this::listenLoop);
+        publishThread = daemon("chat-broker-publish", this::publishLoop);
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Override
+    public void attach(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void publish(BrokerMessage message) {
+        if (!outgoing.offer(message)) {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public void membershipChanged(String room) {
+        membershipChanges.add(room);
+    }
+
+    @Override
+    public boolean hasRemoteMembers(String room) {
+        Set<String> remote = remoteChannels;
+        return remote == null || remote.contains(channelOf(room));
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    static String channelOf(String room) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(room.getBytes(StandardCharsets.UTF_8));
+            return "chat_" + HexFormat.of().formatHex(digest, 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String envelope(String origin, char kind, String room, String content) {
+        return origin + ' ' + kind + ' ' + room.length() + '\n' + room + content;
+    }
+
+    // ---------- 보내기 ----------
+
+    private void publishLoop() {
+        List<BrokerMessage> batch = new ArrayList<>(MAX_BATCH);
+        long backoff = 100;
+        while (running) {
+            try {
+                BrokerMessage first = outgoing.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outgoing.drainTo(batch, MAX_BATCH - 1);
+                try {
+                    send(batch);
+                    published.add(batch.size());
+                } catch (SQLException e) {
+                    if (!isDataError(e) || batch.size() == 1) {
+                        throw e;
+                    }
+                    log.warn("chat broker batch rejected ({} messages, sending one by one): {}", batch.size(), e.toString());
+                    sendEach(batch);
+                }
+                backoff = 100;
+            } catch (InterruptedException e) {
+                return;
+            } catch (SQLException e) {
+                // 다른 노드로 못 보낸 메시지는 버린다. (이 노드 사람들에게는 이미 전달됨)
+                dropped.add(batch.size());
+                log.warn("chat broker publish failed ({} messages dropped): {}", batch.size(), e.toString());
+                if (!isDataError(e)) {
+                    backoff = pause(backoff);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // 한 건씩 각자 트랜잭션으로 보낸다. 보냈거나 버린 메시지는 batch에서 뺀다. (데이터 오류가 아니면 남은 것과 함께 던짐)
+    private void sendEach(List<BrokerMessage> batch) throws SQLException {
+        for (Iterator<BrokerMessage> it = batch.iterator(); it.hasNext(); ) {
+            BrokerMessage message = it.next();
+            try {
+                send(List.of(message));
+                published.increment();
+            } catch (SQLException e) {
+                if (!isDataError(e)) {
+                    throw e;
+                }
+                dropped.increment();
+                log.warn("chat broker message rejected (room length {}, {} bytes): {}",
+                        message.room().length(), message.body().length, e.toString());
+            }
+            it.remove();
+        }
+    }
+
+    static boolean isDataError(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            String state = next.getSQLState();
+            if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void send(List<BrokerMessage> batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement notify = connection.prepareStatement(NOTIFY);
+                 PreparedStatement store = connection.prepareStatement(INSERT_PAYLOAD)) {
+                for (BrokerMessage message : batch) {
+                    notify.setString(1, channelOf(message.room()));
+                    notify.setString(2, payloadOf(message, store));
+                    notify.execute();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private String payloadOf(BrokerMessage message, PreparedStatement store) throws SQLException {
+        String inline = envelope(nodeId, 't', message.room(), message.text());
+        if (inline.getBytes(StandardCharsets.UTF_8).length <= inlineLimit) {
+            return inline;
+        }
+        store.setBytes(1, message.body());
+        try (ResultSet rs = store.executeQuery()) {
+            rs.next();
+            return envelope(nodeId, 'T', message.room(), Long.toString(rs.getLong(1)));
+        }
+    }
+
+    // ---------- 받기 ----------
+
+    private void listenLoop() {
+        long backoff = 100;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                execute(connection, CREATE_TABLE);
+                execute(connection, CREATE_LISTENER_TABLE);
+                execute(connection, "LISTEN " + LISTENERS_CHANNEL);
+                PGConnection pg = connection.unwrap(PGConnection.class);
+
+                // 새 연결 : 구독하던 방을 다시 LISTEN (그 사이 구성원이 없어졌으면 건너뜀)
+                update(connection, DELETE_NODE_LISTENERS, nodeId);
+                membershipChanges.addAll(listening);
+                listening.clear();
+                listeningCount = 0;
+                backoff = 100;
+
+                long nextCleanup = System.currentTimeMillis() + CLEANUP_INTERVAL_MILLIS;
+                long nextRefresh = 0;
+                while (running) {
+                    applyMembershipChanges(connection);
+                    PGNotification[] notifications = pg.getNotifications(pollMillis);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            if (LISTENERS_CHANNEL.equals(notification.getName())) {
+                                nextRefresh = 0; // 다른 노드의 구독이 바뀜
+                                continue;
+                            }
+                            // 알림 하나가 잘못돼도(형식, 받는 쪽 오류) 받는 스레드는 계속 돈다.
+                            try {
+                                handle(connection, notification.getParameter());
+                            } catch (RuntimeException e) {
+                                log.warn("chat broker failed to handle notification: {}", e.toString());
+                            }
+                        }
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now >= nextCleanup) {
+                        deleteExpiredPayloads(connection);
+                        update(connection, TOUCH_LISTENERS, nodeId);
+                        update(connection, DELETE_STALE_LISTENERS, (double) LISTENER_TTL_SECONDS);
+                        nextCleanup = now + CLEANUP_INTERVAL_MILLIS;
+                    }
+                    if (now >= nextRefresh) {
+                        remoteChannels = loadRemoteChannels(connection);
+                        nextRefresh = now + LISTENER_REFRESH_MILLIS;
+                    }
+                }
+                // 멈출 때 : 이 노드의 구독을 지워서 다른 노드가 더 보내지 않게 한다.
+                update(connection, DELETE_NODE_LISTENERS, nodeId);
+                notifyListenersChanged(connection);
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("chat broker listen connection failed, reconnecting: {}", e.toString());
+                    backoff = pause(backoff);
+                }
+            }
+        }
+    }
+
+    private void applyMembershipChanges(Connection connection) throws SQLException {
+        Receiver current = receiver;
+        boolean changed = false;
+        for (String room; (room = membershipChanges.poll()) != null; ) {
+            boolean hosts = current != null && current.hosts(room);
+            String channel = channelOf(room);
+            if (hosts && !listening.contains(room)) {
+                execute(connection, "LISTEN " + channel);
+                update(connection, UPSERT_LISTENER, channel, nodeId);
+                listening.add(room);
+                changed = true;
+            } else if (!hosts && listening.contains(room)) {
+                execute(connection, "UNLISTEN " + channel);
+                update(connection, DELETE_LISTENER, channel, nodeId);
+                listening.remove(room);
+                changed = true;
+            }
+        }
+        listeningCount = listening.size();
+        if (changed) {
+            notifyListenersChanged(connection);
+        }
+    }
+
+    private void notifyListenersChanged(Connection connection) throws SQLException {
+        try (PreparedStatement notify = connection.prepareStatement(NOTIFY)) {
+            notify.setString(1, LISTENERS_CHANNEL);
+            notify.setString(2, nodeId);
+            notify.execute();
+        }
+    }
+
+    private Set<String> loadRemoteChannels(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_REMOTE_CHANNELS)) {
+            select.setString(1, nodeId);
+            select.setDouble(2, LISTENER_TTL_SECONDS);
+            Set<String> channels = new HashSet<>();
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    channels.add(rs.getString(1));
+                }
+            }
+            return Set.copyOf(channels);
+        }
+    }
+
+    private void handle(Connection connection, String payload) throws SQLException {
+        int newline = payload.indexOf('\n');
+        String[] head = newline < 0 ? new String[0] : payload.substring(0, newline).split(" ");
+        if (head.length != 3 || !(head[1].equals("t") || head[1].equals("T"))) {
+            log.debug("chat broker ignored malformed notification");
+            return;
+        }
+        if (head[0].equals(nodeId)) {
+            return; // 내가 보낸 것
+        }
+        char kind = head[1].charAt(0);
+        int roomEnd = newline + 1 + Integer.parseInt(head[2]);
+        String room = payload.substring(newline + 1, roomEnd);
+        String content = payload.substring(roomEnd);
+
+        byte[] body = kind == 't' ? content.getBytes(StandardCharsets.UTF_8) : loadPayload(connection, Long.parseLong(content));
+        Receiver current = receiver;
+        if (body != null && current != null) {
+            received.increment();
+            current.receive(new BrokerMessage(head[0], room, body));
+        }
+    }
+
+    private static byte[] loadPayload(Connection connection, long id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_PAYLOAD)) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getBytes(1) : null; // 이미 지워졌으면 버린다.
+            }
+        }
+    }
+
+    private void deleteExpiredPayloads(Connection connection) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_PAYLOADS)) {
+            delete.setDouble(1, payloadRetentionSeconds);
+            delete.executeUpdate();
+        }
+    }
+
+    private static void update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private long pause(long backoff) {
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+        return Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+
+    public int subscribedRooms() {
+        return listeningCount;
+    }
+
+    public long publishedCount() {
+        return published.sum();
+    }
+
+    public long receivedCount() {
+        return received.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public int pendingCount() {
+        return outgoing.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (Thread thread : new Thread[]{listenThread, publishThread}) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
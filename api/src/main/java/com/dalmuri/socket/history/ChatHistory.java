@@ -0,0 +1,319 @@
+package com.dalmuri.socket.history;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.socket.ChatSessionRegistry;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class ChatHistory implements DisposableBean {
+
+    /*
+    * [ChatHistory : 방별 메시지 기록 + 재접속 replay]
+    * 예전에는 서버가 메시지를 전달만 하고 남기지 않았다. 중복 접속으로 끊기거나 잠깐 연결이 끊긴 사이의 메시지는 그냥 사라졌다.
+    *
+    * 1) 방마다 append-only 기록 (RoomLog). segment 파일(최대 8MB)을 mmap 해서 뒤에 붙이기만 한다. (매핑은 쓰는 만큼 늘어남)
+    *    메시지마다 방 안에서 1씩 늘어나는 offset이 붙는다. JSON 메시지는 전달할 때 "offset" 필드를 붙여 보낸다.
+    * 2) group commit : 쓰기는 매핑된 메모리에 복사만 하고, flushInterval마다 그동안 쓴 구간을 force 한 번으로 내려쓴다.
+    *    (메시지마다 fsync 하지 않음. 프로세스가 죽어도 page cache에 있는 내용은 남고, 전원이 나가면 마지막 flushInterval만큼 잃을 수 있다)
+    * 3) replay : {"type":"replay","room":"방","since":마지막으로 받은 offset}
+    *    (또는 join 프레임에 since를 같이 보내면 들어가면서 바로)
+    *    sparse index로 since 근처 위치를 찾고 그 뒤로 순서대로 읽어서 보낸다.
+    *    끝나면 {"type":"replayed","room":"방","next":마지막 offset,"more":true|false}. more면 next로 다시 요청한다.
+    * 4) 보존 정책 : retention보다 오래됐거나 방 크기가 retentionSize를 넘는 segment는 통째로 지운다. (1분마다)
+    *    오래 조용한 방은 파일을 닫아둔다. 열린 방이 maxOpenRooms를 넘으면 가장 오래 안 쓴 방부터 닫는다. (LRU)
+    * 5) 방 이름은 ChatSessionRegistry.isValidRoomId를 통과해야 한다. (다른 노드에서 온 메시지도) 아니면 기록하지 않는다.
+    *
+    * 방 폴더 이름 = 방 이름 SHA-256 앞 32자 (방 이름에 파일 이름으로 못 쓰는 글자가 있어도 되도록)
+    *
+    * [노드 여러 대일 때 : offset은 노드마다 따로]
+    * 기록은 노드마다 자기 디스크에 남고, offset도 그 기록 안에서만 뜻이 있다. (다른 노드의 120번은 다른 메시지)
+    * 그래서 기록마다 id(history-id 파일, 재시작해도 같음)를 두고 joined / replayed 프레임에 "history"로 알려준다.
+    * 클라이언트는 since와 함께 받은 history를 보낸다. 다른 노드의 history면 replay하지 않고 "history mismatch" 오류
+    *   → 클라이언트는 오류에 담긴 이 노드의 history로 since 0부터 다시 받는다. (또는 since 없이 지금부터)
+    * broker가 local(노드 하나)이면 history 없이 보낸 예전 클라이언트의 since도 받아준다.
+    *
+    * */
+
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+    private static final String HISTORY_ID_FILE = "history-id";
+
+    private final ChatProperties.History settings;
+    private final Path root;
+    private final String historyId;
+    // 노드가 여러 대면 history 없이 보낸 since는 받지 않는다.
+    private final boolean strictResume;
+    private final Map<String, RoomLog> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ChatHistory(ChatProperties properties) {
+        this.settings = properties.getHistory();
+        this.root = Paths.get(settings.getDir());
+        this.historyId = loadHistoryId(root, settings.isEnabled());
+        this.strictResume = properties.getBroker().getType() != ChatProperties.BrokerType.LOCAL;
+        if (settings.isEnabled()) {
+            long flushMillis = Math.max(1, settings.getFlushInterval().toMillis());
+            scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /** 이 노드 기록의 id. offset은 이 id의 기록 안에서만 뜻이 있다. */
+    public String id() {
+        return historyId;
+    }
+
+    /**
+     * since부터 이어 받을 수 있는지. since가 없으면(처음) 항상 true
+     * history가 이 노드의 것이 아니면 false. history가 없으면 노드가 하나일 때만 true
+     * */
+    public boolean canResume(String history, long since) {
+        if (since <= 0) {
+            return true;
+        }
+        return history == null ? !strictResume : historyId.equals(history);
+    }
+
+    /** 방 기록에 붙이고 offset을 돌려준다. 기록하지 않았으면(꺼져 있음, 너무 큼, 디스크 오류) 0 */
+    public long append(String room, String payload) {
+        if (!settings.isEnabled() || !ChatSessionRegistry.isValidRoomId(room)) {
+            return 0;
+        }
+        try {
+            while (true) {
+                long offset = roomLog(room).append(payload);
+                if (offset >= 0) {
+                    return offset;
+                }
+                // 방금 닫힌 기록 → 다시 연다.
+            }
+        } catch (IOException e) {
+            log.warn("chat history append failed for room {}: {}", room, e.toString());
+            return 0;
+        }
+    }
+
+    /**
+     * since 다음 메시지부터 한 묶음을 sink로 보내고, 마지막에 replayed 프레임을 보낸다.
+     * 한 묶음은 maxReplayMessages / maxReplaySize를 넘지 않는다.
+     * */
+    public void replay(String room, long since, Consumer<TextMessage> sink) {
+        long next = Math.max(0, since);
+        boolean more = false;
+        if (settings.isEnabled() && ChatSessionRegistry.isValidRoomId(room)) {
+            try {
+                RoomLog roomLog = roomLog(room);
+                List<LogEntry> entries = roomLog.read(next, settings.getMaxReplayMessages(),
+                        (int) settings.getMaxReplaySize().toBytes());
+                for (LogEntry entry : entries) {
+                    sink.accept(new TextMessage(withOffset(entry.payload(), entry.offset())));
+                    next = entry.offset();
+                }
+                more = next + 1 < roomLog.nextOffset();
+            } catch (IOException e) {
+                log.warn("chat history replay failed for room {}: {}", room, e.toString());
+            }
+        }
+        String quotedRoom = new String(JsonStringEncoder.getInstance().quoteAsString(room));
+        sink.accept(new TextMessage("{\"type\":\"replayed\",\"room\":\"" + quotedRoom
+                + "\",\"history\":\"" + historyId + "\",\"next\":" + next + ",\"more\":" + more + "}"));
+    }
+
+    /** history가 이 노드의 기록이면 replay, 아니면 "history mismatch" 오류만 보낸다. */
+    public void resume(String room, long since, String history, Consumer<TextMessage> sink) {
+        if (canResume(history, since)) {
+            replay(room, since, sink);
+        } else {
+            sink.accept(mismatch(room));
+        }
+    }
+
+    private TextMessage mismatch(String room) {
+        String quotedRoom = new String(JsonStringEncoder.getInstance().quoteAsString(room));
+        return new TextMessage("{\"type\":\"error\",\"message\":\"history mismatch\",\"room\":\"" + quotedRoom
+                + "\",\"history\":\"" + historyId + "\"}");
+    }
+
+    // 기록 폴더의 history-id를 읽는다. 없으면 새로 만든다. (기록이 꺼져 있거나 못 쓰면 이번 실행만의 id)
+    private static String loadHistoryId(Path root, boolean enabled) {
+        if (enabled) {
+            Path file = root.resolve(HISTORY_ID_FILE);
+            try {
+                if (Files.exists(file)) {
+                    String id = Files.readString(file, StandardCharsets.UTF_8).trim();
+                    if (!id.isEmpty()) {
+                        return id;
+                    }
+                }
+                Files.createDirectories(root);
+                String id = UUID.randomUUID().toString();
+                Files.writeString(file, id, StandardCharsets.UTF_8);
+                return id;
+            } catch (IOException e) {
+                log.warn("chat history id could not be stored in {}: {}", root, e.toString());
+            }
+        }
+        return UUID.randomUUID().toString();
+    }
+
+    /*
+    * [withOffset]
+    * JSON 객체 메시지면 마지막 } 앞에 ,"offset":N 을 붙인다. (전체를 다시 파싱/직렬화하지 않음)
+    * JSON이 아닌 예전 클라이언트의 일반 문자열은 그대로 둔다.
+    *
+    * */
+    public static String withOffset(String payload, long offset) {
+        int close = payload.lastIndexOf('}');
+        if (offset <= 0 || payload.isEmpty() || payload.charAt(0) != '{' || close < 1) {
+            return payload;
+        }
+        String separator = payload.substring(1, close).isBlank() ? "" : ",";
+        return payload.substring(0, close) + separator + "\"offset\":" + offset + payload.substring(close);
+    }
+
+    private RoomLog roomLog(String room) throws IOException {
+        RoomLog roomLog = rooms.get(room);
+        if (roomLog != null) {
+            return roomLog;
+        }
+        try {
+            roomLog = rooms.computeIfAbsent(room, key -> {
+                try {
+                    return RoomLog.open(root.resolve(dirNameOf(key)), (int) settings.getSegmentSize().toBytes(),
+                            (int) settings.getIndexInterval().toBytes());
+                } catch (IOException e) {
+                    throw new HistoryUnavailableException(e);
+                }
+            });
+        } catch (HistoryUnavailableException e) {
+            throw e.getCause();
+        }
+        closeLeastRecentlyUsed(roomLog);
+        return roomLog;
+    }
+
+    /*
+    * [LRU 닫기]
+    * 방마다 열린 매핑 / 색인이 남으므로 열린 방 수를 maxOpenRooms로 묶는다.
+    * 새로 연 방 말고 가장 오래 안 쓴 방부터 닫는다. (닫힌 방에 쓰면 append가 -1 → 다시 연다)
+    * 새 방을 열 때만 훑는다. (O(열린 방 수))
+    *
+    * */
+    private void closeLeastRecentlyUsed(RoomLog keep) {
+        int maxOpen = Math.max(1, settings.getMaxOpenRooms());
+        while (rooms.size() > maxOpen) {
+            Map.Entry<String, RoomLog> oldest = null;
+            for (Map.Entry<String, RoomLog> entry : rooms.entrySet()) {
+                if (entry.getValue() != keep && (oldest == null || entry.getValue().lastAccess() < oldest.getValue().lastAccess())) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            RoomLog victim = oldest.getValue();
+            rooms.computeIfPresent(oldest.getKey(), (key, current) -> current == victim && current.closeIfIdle(Long.MAX_VALUE) ? null : current);
+        }
+    }
+
+    static String dirNameOf(String room) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(room.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // group commit
+    private void flush() {
+        for (RoomLog roomLog : rooms.values()) {
+            try {
+                roomLog.flush();
+            } catch (RuntimeException e) {
+                log.warn("chat history flush failed for {}: {}", roomLog.dir(), e.toString());
+            }
+        }
+    }
+
+    // 보존 정책 + 조용한 방 닫기
+    private void sweep() {
+        Instant expiredBefore = Instant.now().minus(settings.getRetention());
+        long retentionBytes = settings.getRetentionSize().toBytes();
+        long idleSince = System.currentTimeMillis() - settings.getIdleTimeout().toMillis();
+        try {
+            rooms.forEach((room, roomLog) -> rooms.computeIfPresent(room,
+                    (key, current) -> current.closeIfIdle(idleSince) ? null : current));
+
+            Map<Path, RoomLog> open = new HashMap<>();
+            rooms.values().forEach(roomLog -> open.put(roomLog.dir(), roomLog));
+            if (!Files.isDirectory(root)) {
+                return;
+            }
+            try (Stream<Path> dirs = Files.list(root)) {
+                for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                    RoomLog roomLog = open.get(dir);
+                    if (roomLog != null) {
+                        roomLog.applyRetention(expiredBefore, retentionBytes);
+                    } else {
+                        RoomLog.applyRetention(dir, expiredBefore, retentionBytes);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("chat history sweep failed: {}", e.toString());
+        }
+    }
+
+    public int openRooms() {
+        return rooms.size();
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        rooms.values().forEach(roomLog -> roomLog.closeIfIdle(Long.MAX_VALUE));
+        rooms.clear();
+    }
+
+    // computeIfAbsent 안에서 IOException을 밖으로 꺼내기 위한 포장
+    private static final class HistoryUnavailableException extends RuntimeException {
+
+        HistoryUnavailableException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
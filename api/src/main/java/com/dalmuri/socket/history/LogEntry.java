@@ -0,0 +1,5 @@
+package com.dalmuri.socket.history;
+
+/** 방 기록에서 읽은 메시지 하나 */
+record LogEntry(long offset, long timestamp, String payload) {
+}
@@ -0,0 +1,285 @@
+package com.dalmuri.socket.history;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * 방 기록 파일 하나 ({baseOffset}.log). 메모리 매핑해서 쓰고 읽는다.
+ * <pre>
+ * 레코드 = [offset 8][length 4][crc32c 4][timestamp 8][payload(UTF-8) length]
+ * </pre>
+ * - 매핑은 작게(64KB) 시작해서 모자랄 때마다 두 배로 다시 매핑한다. (segmentSize까지) → 조용한 방은 파일도 작다.
+ *   마지막 레코드 뒤는 0으로 남긴다. (다시 열 때 0 또는 깨진 레코드에서 멈춤)
+ * - 다 쓴 segment(다음 segment로 넘어감, 방 닫힘)는 쓴 곳(end)까지로 파일을 자른다. → 파일 크기 = 실제로 쓴 바이트
+ * - 쓰기는 RoomLog가 한 스레드씩만 한다. 읽기는 잠금 없이 end(volatile)까지만 읽는다.
+ * */
+@Slf4j
+final class LogSegment {
+
+    static final String SUFFIX = ".log";
+    static final int HEADER_LENGTH = 24;
+    static final int INITIAL_MAPPING = 64 * 1024;
+    private static final int TIMESTAMP_POSITION = 16;
+
+    private final Path path;
+    private final long baseOffset;
+    private final int indexInterval;
+
+    // 다시 매핑하면 바뀐다. 읽는 쪽은 end를 먼저 읽고 buffer를 읽는다. (end 이전은 새 매핑에 이미 있음)
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+    private boolean writable;
+    private volatile int end;
+    private volatile long nextOffset;
+    private int flushed;
+
+    /*
+    * [sparse index]
+    * 레코드마다 색인을 두지 않고 indexInterval 바이트마다 하나씩 (offset - baseOffset, 위치)를 남긴다.
+    * replay는 since 이하인 가장 가까운 색인 위치부터 순서대로 읽는다. → 건너뛰며 읽는 양은 indexInterval 이하
+    * long 하나에 (상대 offset << 32 | 위치)로 담아서 정렬된 배열로 둔다.
+    *
+    * */
+    private long[] index = new long[64];
+    private int indexCount;
+    private int lastIndexed;
+
+    LogSegment(Path path, long baseOffset, int indexInterval) {
+        this.path = path;
+        this.baseOffset = baseOffset;
+        this.indexInterval = indexInterval;
+        this.nextOffset = baseOffset;
+    }
+
+    static Path pathOf(Path dir, long baseOffset) {
+        return dir.resolve(String.format("%020d", baseOffset) + SUFFIX);
+    }
+
+    /** 파일 이름에서 baseOffset. 기록 파일이 아니면 -1 */
+    static long baseOffsetOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(SUFFIX) || name.length() != 20 + SUFFIX.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, 20));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 파일을 매핑하고 끝까지 훑어서 end, nextOffset, 색인을 복구한다. 이미 열려 있으면 아무것도 하지 않는다.
+     * writable이면 (없으면 새로 만들고) 지금 파일 크기 또는 INITIAL_MAPPING만큼 매핑한다. 쓰면서 capacity까지 늘어난다.
+     * 아니면 파일 크기만큼 읽기 전용으로 연다.
+     * */
+    synchronized void open(int capacity, boolean writable) throws IOException {
+        if (buffer != null) {
+            return;
+        }
+        this.capacity = capacity;
+        if (writable) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = Math.max(channel.size(), Math.min(INITIAL_MAPPING, capacity));
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, capacity));
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        this.writable = writable;
+        recover();
+    }
+
+    private void recover() {
+        CRC32C crc = new CRC32C();
+        int limit = buffer.capacity();
+        int position = 0;
+        long expected = baseOffset;
+        while (position + HEADER_LENGTH <= limit) {
+            long offset = buffer.getLong(position);
+            int length = buffer.getInt(position + 8);
+            if (offset != expected || length <= 0 || length > limit - position - HEADER_LENGTH) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_LENGTH, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 12)) {
+                break; // 쓰다가 멈춘 레코드. 여기서부터 다시 쓴다.
+            }
+            indexIfDue(offset, position);
+            position += HEADER_LENGTH + length;
+            expected++;
+        }
+        flushed = position;
+        nextOffset = expected;
+        end = position;
+    }
+
+    /** 레코드 하나를 붙인다. segmentSize까지 늘려도 모자라면 false (다음 segment로 넘어가야 함) */
+    boolean append(long offset, long timestamp, byte[] payload) throws IOException {
+        int position = end;
+        int next = position + HEADER_LENGTH + payload.length;
+        // 끝 표시(0)를 둘 자리까지 있어야 한다.
+        if (next + 8 > capacity) {
+            return false;
+        }
+        if (next + 8 > buffer.capacity()) {
+            grow(next + 8);
+        }
+        MappedByteBuffer buffer = this.buffer;
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        buffer.put(position + HEADER_LENGTH, payload);
+        buffer.putLong(position + 16, timestamp);
+        buffer.putInt(position + 12, (int) crc.getValue());
+        buffer.putInt(position + 8, payload.length);
+        buffer.putLong(position, offset);
+        buffer.putLong(next, 0L);
+
+        indexIfDue(offset, position);
+        nextOffset = offset + 1;
+        end = next; // 여기까지 쓴 뒤에 공개 → 읽는 쪽은 end 앞만 본다.
+        return true;
+    }
+
+    // 매핑을 두 배(최소 needed, 최대 capacity)로 다시 잡는다. 예전 매핑과 같은 파일이라 쓴 내용은 그대로 보인다.
+    private synchronized void grow(int needed) throws IOException {
+        int size = (int) Math.min(capacity, Math.max((long) buffer.capacity() * 2, needed));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    static boolean fits(int payloadLength, int capacity) {
+        return HEADER_LENGTH + payloadLength + 8 <= capacity;
+    }
+
+    /** from 이상인 레코드를 순서대로 out에 담는다. 개수 / 바이트 한도에 걸리면 멈춘다. 담은 바이트 수를 돌려준다. */
+    int read(long from, int maxCount, int maxBytes, List<LogEntry> out) {
+        int limit = end;
+        MappedByteBuffer buffer = this.buffer;
+        int position = floorPosition(from);
+        int bytes = 0;
+        while (position < limit && out.size() < maxCount) {
+            long offset = buffer.getLong(position);
+            int length = buffer.getInt(position + 8);
+            if (offset >= from) {
+                // 첫 메시지는 한도보다 커도 보낸다. (아니면 그 메시지에서 영원히 멈춤)
+                if (!out.isEmpty() && bytes + length > maxBytes) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(position + HEADER_LENGTH, payload);
+                out.add(new LogEntry(offset, buffer.getLong(position + 16), new String(payload, StandardCharsets.UTF_8)));
+                bytes += length;
+            }
+            position += HEADER_LENGTH + length;
+        }
+        return bytes;
+    }
+
+    private synchronized void indexIfDue(long offset, int position) {
+        if (position != 0 && position - lastIndexed < indexInterval) {
+            return;
+        }
+        if (indexCount == index.length) {
+            index = Arrays.copyOf(index, indexCount * 2);
+        }
+        index[indexCount++] = (offset - baseOffset) << 32 | position;
+        lastIndexed = position;
+    }
+
+    // offset 이하인 가장 가까운 색인의 파일 위치
+    private synchronized int floorPosition(long offset) {
+        long key = (Math.max(0, offset - baseOffset) << 32) | 0xFFFFFFFFL;
+        int i = Arrays.binarySearch(index, 0, indexCount, key);
+        int floor = i >= 0 ? i : -i - 2;
+        return floor < 0 ? 0 : (int) index[floor];
+    }
+
+    /** 마지막 force 이후에 쓴 부분만 디스크로 내린다. */
+    synchronized void force() {
+        int limit = end;
+        if (writable && limit > flushed) {
+            buffer.force(flushed, limit - flushed);
+            flushed = limit;
+        }
+    }
+
+    /**
+     * 다 쓴 segment : 내려쓰고 파일을 쓴 곳까지로 자른다. (늘려 둔 매핑 뒤쪽은 디스크에 남지 않음)
+     * 이미 연 매핑으로 end 앞은 계속 읽을 수 있다.
+     * */
+    synchronized void seal() {
+        if (!writable) {
+            return;
+        }
+        force();
+        writable = false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        } catch (IOException e) {
+            // 윈도우에서는 매핑된 파일을 자를 수 없다. 크기만 클 뿐 내용은 그대로
+            log.debug("chat history segment not truncated {}: {}", path, e.toString());
+        }
+    }
+
+    /** 쓴 바이트 수. 열지 않은 segment는 파일 크기 (다 쓴 segment는 seal에서 잘려 있다) */
+    long writtenBytes() {
+        if (buffer != null) {
+            return end;
+        }
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** 첫 레코드를 쓴 시각(ms). 레코드가 없으면 Long.MAX_VALUE */
+    long firstTimestamp() {
+        MappedByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            return end > 0 ? buffer.getLong(TIMESTAMP_POSITION) : Long.MAX_VALUE;
+        }
+        return firstTimestampOf(path);
+    }
+
+    /** 열지 않은 파일의 첫 레코드 시각. 머리만 읽는다. */
+    static long firstTimestampOf(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // 머리 24바이트를 다 읽을 때까지
+            }
+            if (header.hasRemaining() || header.getInt(8) <= 0) {
+                return Long.MAX_VALUE;
+            }
+            return header.getLong(TIMESTAMP_POSITION);
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    Path path() {
+        return path;
+    }
+}
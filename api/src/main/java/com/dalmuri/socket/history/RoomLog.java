@@ -0,0 +1,219 @@
+package com.dalmuri.socket.history;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * 방 하나의 기록. segment 파일 여러 개를 baseOffset 순서로 들고 있고, 마지막 것(active)에만 쓴다.
+ * - offset은 방마다 1부터 1씩 늘어난다. (replay since=0 이면 처음부터)
+ * - 예전 segment는 replay로 처음 필요할 때 연다.
+ * */
+@Slf4j
+final class RoomLog {
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final NavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private LogSegment active;
+    private volatile long lastAccess = System.currentTimeMillis();
+    private boolean closed;
+
+    private RoomLog(Path dir, int segmentSize, int indexInterval) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+    }
+
+    static RoomLog open(Path dir, int segmentSize, int indexInterval) throws IOException {
+        Files.createDirectories(dir);
+        RoomLog room = new RoomLog(dir, segmentSize, indexInterval);
+        for (Path file : segmentFiles(dir).values()) {
+            long base = LogSegment.baseOffsetOf(file);
+            room.segments.put(base, new LogSegment(file, base, indexInterval));
+        }
+        if (room.segments.isEmpty()) {
+            room.segments.put(1L, new LogSegment(LogSegment.pathOf(dir, 1), 1, indexInterval));
+        }
+        room.active = room.segments.lastEntry().getValue();
+        room.active.open(segmentSize, true);
+        return room;
+    }
+
+    /** 메시지를 붙이고 offset을 돌려준다. 닫힌 기록이면 -1, 너무 커서 기록하지 않았으면 0 */
+    synchronized long append(String payload) throws IOException {
+        if (closed) {
+            return -1;
+        }
+        lastAccess = System.currentTimeMillis();
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || !LogSegment.fits(bytes.length, segmentSize)) {
+            return 0;
+        }
+        long offset = active.nextOffset();
+        if (!active.append(offset, lastAccess, bytes)) {
+            roll(offset);
+            active.append(offset, lastAccess, bytes);
+        }
+        return offset;
+    }
+
+    // active segment를 다 내려쓰고(쓴 곳까지로 자름) offset부터 시작하는 새 segment로 넘어간다.
+    private void roll(long baseOffset) throws IOException {
+        active.seal();
+        LogSegment next = new LogSegment(LogSegment.pathOf(dir, baseOffset), baseOffset, indexInterval);
+        next.open(segmentSize, true);
+        segments.put(baseOffset, next);
+        active = next;
+    }
+
+    /** since 다음 offset부터 순서대로 읽는다. 개수 / 바이트 한도 안에서만 */
+    List<LogEntry> read(long since, int maxCount, int maxBytes) throws IOException {
+        lastAccess = System.currentTimeMillis();
+        long from = since + 1;
+        Long start = segments.floorKey(from);
+        List<LogEntry> entries = new ArrayList<>();
+        int bytes = 0;
+        for (LogSegment segment : (start == null ? segments : segments.tailMap(start, true)).values()) {
+            if (entries.size() >= maxCount || bytes >= maxBytes) {
+                break;
+            }
+            segment.open(segmentSize, false); // 예전 segment는 읽기 전용으로 (이미 열려 있으면 그대로)
+            bytes += segment.read(from, maxCount, maxBytes - bytes, entries);
+        }
+        return entries;
+    }
+
+    long nextOffset() {
+        return active.nextOffset();
+    }
+
+    /** group commit : 지난 flush 이후 쌓인 메시지를 한 번의 force로 내려쓴다. */
+    synchronized void flush() {
+        if (!closed) {
+            active.force();
+        }
+    }
+
+    /** 오래 쓰지 않은 기록이면 내려쓰고 닫는다. 닫았으면 true */
+    synchronized boolean closeIfIdle(long idleSince) {
+        if (lastAccess > idleSince) {
+            return false;
+        }
+        active.seal();
+        closed = true;
+        return true;
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    /*
+    * [보존 정책]
+    * active가 아닌 segment 중에서
+    * 1) 마지막으로 쓴 메시지가 retention보다 오래됐거나
+    * 2) 방 전체 크기가 retentionSize를 넘으면 오래된 것부터
+    * 통째로 지운다. (segment 단위로 지우므로 다시 쓰거나 옮기는 비용이 없다)
+    * 이미 replay 중인 읽기는 매핑이 남아 있어서 파일이 지워져도 끝까지 읽을 수 있다.
+    *
+    * 파일 mtime / 크기는 믿지 않는다. (mmap 쓰기는 mtime을 바로 바꾸지 않고, 매핑을 늘린 파일은 쓴 것보다 크다)
+    * - 크기 : 쓴 바이트 (열린 segment는 end, 다 쓴 segment는 seal에서 쓴 곳까지로 잘려 있다)
+    * - 시각 : segment의 마지막 메시지는 다음 segment의 첫 메시지보다 먼저 쓰였다. → 다음 segment 첫 레코드의 timestamp
+    *
+    * */
+    synchronized void applyRetention(Instant expiredBefore, long retentionBytes) {
+        List<LogSegment> ordered = List.copyOf(segments.values());
+        List<SegmentStat> stats = new ArrayList<>(ordered.size());
+        for (LogSegment segment : ordered) {
+            stats.add(new SegmentStat(segment.path(), segment.writtenBytes(), segment.firstTimestamp()));
+        }
+        for (Path file : expired(stats, expiredBefore, retentionBytes)) {
+            if (delete(file)) {
+                segments.remove(LogSegment.baseOffsetOf(file));
+            }
+        }
+    }
+
+    /** 열려 있지 않은 방 폴더에 보존 정책 적용 */
+    static void applyRetention(Path dir, Instant expiredBefore, long retentionBytes) throws IOException {
+        List<SegmentStat> stats = new ArrayList<>();
+        for (Path file : segmentFiles(dir).values()) {
+            stats.add(new SegmentStat(file, sizeOf(file), LogSegment.firstTimestampOf(file)));
+        }
+        for (Path file : expired(stats, expiredBefore, retentionBytes)) {
+            delete(file);
+        }
+    }
+
+    // stats : baseOffset 순서. 마지막(active)은 항상 남긴다.
+    private static List<Path> expired(List<SegmentStat> stats, Instant expiredBefore, long retentionBytes) {
+        List<Path> removed = new ArrayList<>();
+        long total = 0;
+        for (SegmentStat stat : stats) {
+            total += stat.bytes();
+        }
+        long expiredBeforeMillis = expiredBefore.toEpochMilli();
+        for (int i = 0; i + 1 < stats.size(); i++) {
+            // 다음 segment 첫 메시지 시각 = 이 segment의 마지막 메시지 시각 이후
+            boolean old = stats.get(i + 1).firstTimestamp() < expiredBeforeMillis;
+            if (total <= retentionBytes && !old) {
+                break;
+            }
+            total -= stats.get(i).bytes();
+            removed.add(stats.get(i).path());
+        }
+        return removed;
+    }
+
+    private record SegmentStat(Path path, long bytes, long firstTimestamp) {
+    }
+
+    private static Map<Long, Path> segmentFiles(Path dir) throws IOException {
+        Map<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            list.forEach(file -> {
+                long base = LogSegment.baseOffsetOf(file);
+                if (base > 0) {
+                    files.put(base, file);
+                }
+            });
+        }
+        return files;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // 윈도우에서는 매핑이 남아 있는 파일을 지울 수 없다. 실패하면 목록에 남겨두고 다음 정리 때 다시 시도한다.
+    private static boolean delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            log.debug("chat history segment not deleted yet {}: {}", file, e.toString());
+            return false;
+        }
+    }
+
+    Path dir() {
+        return dir;
+    }
+}
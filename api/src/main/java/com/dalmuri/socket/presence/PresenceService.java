@@ -0,0 +1,221 @@
+package com.dalmuri.socket.presence;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.socket.ChatSessionRegistry;
+import com.dalmuri.socket.SessionOutbound;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Component
+public class PresenceService implements DisposableBean, MeterBinder {
+
+    /*
+    * [PresenceService : 접속 / 입력 중 표시]
+    * 상태가 바뀔 때마다 방 사람 모두에게 보내면 (키 입력 수 × 방 인원수)만큼 프레임이 나간다.
+    * 그래서 바뀐 것은 방별로 모아만 두고(RoomPresence), tickInterval마다 방마다 delta 프레임 하나로 보낸다.
+    * → presence 프레임 수 = 바뀐 방 수 × 틱 횟수 (키 입력 수와 무관)
+    *
+    * 1) 연결 / 종료, join / leave : 그 방의 접속 상태를 바꾼다.
+    * 2) {"type":"typing","room":"방"} : typingTimeout 동안 입력 중. 계속 입력하면 클라이언트가 다시 보낸다.
+    *    메시지를 보내면 그 방의 입력 중 표시는 바로 꺼진다.
+    * 3) 틱마다 바뀐 방에만
+    *    {"type":"presence","room":"방","online":["a"],"offline":["b"],"typing":["a","c"]}
+    *    (typing은 바뀌었을 때만, 지금 입력 중인 사람 전체)
+    * 4) 방에 들어온 사람에게는 지금 상태 전체를 한 번 보낸다. ("snapshot":true)
+    *
+    * presence 프레임은 방 기록(ChatHistory)에 남기지 않는다. (지나간 상태는 replay할 필요가 없음)
+    *
+    * */
+
+    public static final String TYPING = "typing";
+
+    private final ChatProperties.Presence settings;
+    private final SessionOutbound outbound;
+    private final Map<String, RoomPresence> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-presence");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder framesSent = new LongAdder();
+    private volatile ChatSessionRegistry registry;
+
+    public PresenceService(ChatProperties properties, SessionOutbound outbound) {
+        this.settings = properties.getPresence();
+        this.outbound = outbound;
+        if (settings.isEnabled()) {
+            long tickMillis = Math.max(1, settings.getTickInterval().toMillis());
+            scheduler.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** 틱마다 방 사람들을 찾을 registry (핸들러가 하나 연결한다) */
+    public void attach(ChatSessionRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** 세션이 방에 들어왔다. (연결되면서 기본 방에 들어간 경우 포함) 지금 상태 전체를 그 세션에 보낸다. */
+    public void entered(WebSocketSession session, String room) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        String user = userOf(session);
+        RoomPresence presence = rooms.compute(room, (key, current) -> {
+            RoomPresence value = current != null ? current : new RoomPresence();
+            value.enter(user);
+            return value;
+        });
+        outbound.send(session, new TextMessage(snapshotFrame(room, presence.snapshot())));
+    }
+
+    /** 세션이 방에서 나갔다. (연결 종료 포함) */
+    public void exited(WebSocketSession session, String room) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        String user = userOf(session);
+        rooms.computeIfPresent(room, (key, presence) -> {
+            presence.exit(user);
+            return presence;
+        });
+    }
+
+    public void typing(WebSocketSession session, String room) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        String user = userOf(session);
+        long expiresAt = System.currentTimeMillis() + settings.getTypingTimeout().toMillis();
+        rooms.computeIfPresent(room, (key, presence) -> {
+            presence.typing(user, expiresAt);
+            return presence;
+        });
+    }
+
+    /** 메시지를 보냈으면 입력 중 표시를 끈다. */
+    public void messageSent(WebSocketSession session, String room) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        RoomPresence presence = rooms.get(room);
+        if (presence != null) {
+            presence.stopTyping(userOf(session));
+        }
+    }
+
+    /*
+    * [tick]
+    * 방마다 delta를 꺼내서, 바뀐 게 있으면 프레임 하나를 만들어 방 사람 모두에게 같은 TextMessage로 보낸다.
+    * 아무도 없고 알릴 것도 없는 방은 지운다. (compute 안에서 확인하므로 그 사이 들어온 사람을 잃지 않는다)
+    *
+    * */
+    private void tick() {
+        ChatSessionRegistry current = registry;
+        long now = System.currentTimeMillis();
+        try {
+            for (Map.Entry<String, RoomPresence> entry : rooms.entrySet()) {
+                String room = entry.getKey();
+                RoomPresence.Delta delta = entry.getValue().drain(now);
+                if (delta != null && current != null) {
+                    deliver(current.membersOf(room), new TextMessage(deltaFrame(room, delta)));
+                }
+                rooms.computeIfPresent(room, (key, presence) -> presence.isIdle() ? null : presence);
+            }
+        } catch (RuntimeException e) {
+            log.warn("chat presence tick failed: {}", e.toString());
+        }
+    }
+
+    private void deliver(Collection<WebSocketSession> members, TextMessage frame) {
+        for (WebSocketSession s : members) {
+            if (s.isOpen() && outbound.send(s, frame)) {
+                framesSent.increment();
+            }
+        }
+    }
+
+    private static String userOf(WebSocketSession session) {
+        String user = ChatSessionRegistry.userIdOf(session);
+        return user == null ? ChatSessionRegistry.ANONYMOUS : user;
+    }
+
+    static String deltaFrame(String room, RoomPresence.Delta delta) {
+        StringBuilder json = new StringBuilder(64).append("{\"type\":\"presence\",\"room\":");
+        quote(json, room);
+        if (!delta.online().isEmpty()) {
+            array(json.append(",\"online\":"), delta.online());
+        }
+        if (!delta.offline().isEmpty()) {
+            array(json.append(",\"offline\":"), delta.offline());
+        }
+        if (delta.typing() != null) {
+            array(json.append(",\"typing\":"), delta.typing());
+        }
+        return json.append('}').toString();
+    }
+
+    static String snapshotFrame(String room, RoomPresence.Snapshot snapshot) {
+        StringBuilder json = new StringBuilder(64).append("{\"type\":\"presence\",\"room\":");
+        quote(json, room);
+        json.append(",\"snapshot\":true");
+        array(json.append(",\"online\":"), snapshot.online());
+        array(json.append(",\"typing\":"), snapshot.typing());
+        return json.append('}').toString();
+    }
+
+    private static void array(StringBuilder json, List<String> values) {
+        json.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            quote(json, values.get(i));
+        }
+        json.append(']');
+    }
+
+    private static void quote(StringBuilder json, String value) {
+        json.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(value, json);
+        json.append('"');
+    }
+
+    public int trackedRooms() {
+        return rooms.size();
+    }
+
+    public long framesSent() {
+        return framesSent.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.presence.rooms", this, PresenceService::trackedRooms)
+                .register(registry);
+        FunctionCounter.builder("chat.presence.frames", this, PresenceService::framesSent)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
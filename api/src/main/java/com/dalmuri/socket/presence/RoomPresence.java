@@ -0,0 +1,113 @@
+package com.dalmuri.socket.presence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 방 하나의 접속 / 입력 중 상태
+ * - 바뀔 때마다 보내지 않고, 바뀐 사람만 표시해 두었다가 drain(틱)에서 지난번 보낸 상태와 비교해 차이만 꺼낸다.
+ *   (틱 사이에 나갔다가 다시 들어오면 아무것도 보내지 않는다)
+ * - 같은 사용자가 세션 여러 개로 들어와 있을 수 있으므로 세션 수를 센다. (0이 되면 offline)
+ * */
+final class RoomPresence {
+
+    // 사용자 → 이 방에 들어와 있는 세션 수
+    private final Map<String, Integer> sessions = new HashMap<>();
+    // 마지막 delta까지 online으로 알린 사용자
+    private final Set<String> published = new HashSet<>();
+    // 틱 사이에 접속 상태가 바뀐 사용자
+    private final Set<String> changed = new HashSet<>();
+
+    // 사용자 → 입력 중 표시가 끝나는 시각(ms)
+    private final Map<String, Long> typing = new HashMap<>();
+    private Set<String> publishedTyping = Set.of();
+    private boolean typingChanged;
+
+    /** 틱 하나 동안 바뀐 것. typing은 바뀌었을 때만 (지금 입력 중인 사람 전체), 아니면 null */
+    record Delta(List<String> online, List<String> offline, List<String> typing) {
+    }
+
+    /** 지금 상태 전체 (방에 막 들어온 사람에게) */
+    record Snapshot(List<String> online, List<String> typing) {
+    }
+
+    synchronized void enter(String user) {
+        if (sessions.merge(user, 1, Integer::sum) == 1) {
+            changed.add(user);
+        }
+    }
+
+    synchronized void exit(String user) {
+        Integer count = sessions.get(user);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            sessions.put(user, count - 1);
+            return;
+        }
+        sessions.remove(user);
+        changed.add(user);
+        stopTyping(user);
+    }
+
+    /** 방에 들어와 있는 사용자만 입력 중으로 표시한다. 이미 입력 중이면 끝나는 시각만 늦춘다. */
+    synchronized void typing(String user, long expiresAt) {
+        if (sessions.containsKey(user) && typing.put(user, expiresAt) == null) {
+            typingChanged = true;
+        }
+    }
+
+    synchronized void stopTyping(String user) {
+        if (typing.remove(user) != null) {
+            typingChanged = true;
+        }
+    }
+
+    /** 지난 drain 이후 달라진 것. 달라진 게 없으면 null */
+    synchronized Delta drain(long now) {
+        typingChanged |= typing.values().removeIf(expiresAt -> expiresAt <= now);
+
+        List<String> online = new ArrayList<>();
+        List<String> offline = new ArrayList<>();
+        for (String user : changed) {
+            boolean present = sessions.containsKey(user);
+            if (present && published.add(user)) {
+                online.add(user);
+            } else if (!present && published.remove(user)) {
+                offline.add(user);
+            }
+        }
+        changed.clear();
+
+        List<String> typingNow = null;
+        if (typingChanged) {
+            typingChanged = false;
+            if (!typing.keySet().equals(publishedTyping)) {
+                publishedTyping = Set.copyOf(typing.keySet());
+                typingNow = List.copyOf(new TreeSet<>(publishedTyping));
+            }
+        }
+
+        if (online.isEmpty() && offline.isEmpty() && typingNow == null) {
+            return null;
+        }
+        online.sort(null);
+        offline.sort(null);
+        return new Delta(online, offline, typingNow);
+    }
+
+    synchronized Snapshot snapshot() {
+        return new Snapshot(List.copyOf(new TreeSet<>(sessions.keySet())), List.copyOf(new TreeSet<>(typing.keySet())));
+    }
+
+    /** 아무도 없고 알릴 것도 남지 않았으면 true (방 상태를 버려도 됨) */
+    synchronized boolean isIdle() {
+        return sessions.isEmpty() && published.isEmpty() && changed.isEmpty() && typing.isEmpty() && publishedTyping.isEmpty();
+    }
+}
@@ -0,0 +1,35 @@
+package com.dalmuri.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SecurityConfigTest {
+
+    @Test
+    void staticUrlsArePublicOnlyForReads() {
+        ClientSecurityProperties properties = new ClientSecurityProperties();
+        properties.setPermitUrls(List.of("/chat"));
+        RequestMatcher publicRoutes = new SecurityConfig(properties).publicRoutes();
+
+        assertThat(publicRoutes.matches(request("GET", "/uploads/abc.jpg"))).isTrue();
+        assertThat(publicRoutes.matches(request("HEAD", "/uploads/abc.jpg"))).isTrue();
+        // 업로드는 세션이 있는 체인으로 간다.
+        assertThat(publicRoutes.matches(request("POST", "/uploads"))).isFalse();
+        assertThat(publicRoutes.matches(request("POST", "/uploads/stream"))).isFalse();
+        assertThat(publicRoutes.matches(request("DELETE", "/uploads/abc.jpg"))).isFalse();
+
+        // permitUrls는 메소드와 상관없이 공개
+        assertThat(publicRoutes.matches(request("POST", "/chat"))).isTrue();
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        return request;
+    }
+}
@@ -0,0 +1,133 @@
+package com.dalmuri.dmr.common.controller;
+
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.media.MediaFileCache;
+import com.dalmuri.dmr.common.media.MediaStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class MediaControllerTest {
+
+    private static final byte[] CONTENT = new byte[100];
+
+    static {
+        for (int i = 0; i < CONTENT.length; i++) {
+            CONTENT[i] = (byte) i;
+        }
+    }
+
+    @TempDir
+    Path root;
+
+    /*
+    * cacheMaxFileSize를 바꿔서 두 가지 본문 경로를 모두 확인한다.
+    * - 1KB : MediaFileCache(byte[])에서 보냄
+    * - 0 : FileChannel.transferTo로 보냄 (MockMvc 요청에는 sendfile 속성이 없다)
+    *
+    * */
+    @ParameterizedTest
+    @ValueSource(longs = {1024, 0})
+    void servesRequestedRangeAsPartialContent(long cacheMaxFileSize) throws Exception {
+        MediaStore.StoredMedia stored = store();
+
+        mockMvc(cacheMaxFileSize).perform(get("/uploads/" + stored.name()).header(HttpHeaders.RANGE, "bytes=10-19"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/100"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes(Arrays.copyOfRange(CONTENT, 10, 20)));
+    }
+
+    @Test
+    void answersUnsatisfiableRangeWith416() throws Exception {
+        MediaStore.StoredMedia stored = store();
+
+        mockMvc(1024).perform(get("/uploads/" + stored.name()).header(HttpHeaders.RANGE, "bytes=100-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100"));
+    }
+
+    @Test
+    void answersMatchingIfNoneMatchWith304() throws Exception {
+        MediaStore.StoredMedia stored = store();
+        String etag = "\"" + stored.hash() + "\"";
+
+        mockMvc(1024).perform(get("/uploads/" + stored.name()).header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeDoesNotMatch() throws Exception {
+        MediaStore.StoredMedia stored = store();
+
+        mockMvc(1024).perform(get("/uploads/" + stored.name())
+                        .header(HttpHeaders.RANGE, "bytes=10-19")
+                        .header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void honoursRangeWhenIfRangeMatches() throws Exception {
+        MediaStore.StoredMedia stored = store();
+
+        mockMvc(1024).perform(get("/uploads/" + stored.name())
+                        .header(HttpHeaders.RANGE, "bytes=-5")
+                        .header(HttpHeaders.IF_RANGE, "\"" + stored.hash() + "\""))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 95-99/100"))
+                .andExpect(content().bytes(Arrays.copyOfRange(CONTENT, 95, 100)));
+    }
+
+    @Test
+    void parsesSingleByteRanges() {
+        assertThat(MediaController.parseRange("bytes=0-499", 1000)).containsExactly(0, 499);
+        assertThat(MediaController.parseRange("bytes=500-", 1000)).containsExactly(500, 999);
+        assertThat(MediaController.parseRange("bytes=-200", 1000)).containsExactly(800, 999);
+        assertThat(MediaController.parseRange("bytes=900-5000", 1000)).containsExactly(900, 999);
+    }
+
+    @Test
+    void rejectsUnsatisfiableRanges() {
+        assertThat(MediaController.parseRange("bytes=1000-", 1000)).isNull();
+        assertThat(MediaController.parseRange("bytes=500-100", 1000)).isNull();
+        assertThat(MediaController.parseRange("bytes=-0", 1000)).isNull();
+    }
+
+    @Test
+    void ignoresMultipleOrUnknownRanges() {
+        assertThat(MediaController.parseRange("bytes=0-1,5-6", 1000)).isEmpty();
+        assertThat(MediaController.parseRange("items=0-1", 1000)).isEmpty();
+        assertThat(MediaController.parseRange("bytes=abc-", 1000)).isEmpty();
+    }
+
+    private MediaStore.StoredMedia store() throws IOException {
+        return new MediaStore(root.toString()).put(ByteBuffer.wrap(CONTENT));
+    }
+
+    private MockMvc mockMvc(long cacheMaxFileSize) {
+        MediaProperties properties = new MediaProperties();
+        MediaController controller = new MediaController(new MediaStore(root.toString()),
+                new MediaFileCache(cacheMaxFileSize, 1024 * 1024), properties);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+}
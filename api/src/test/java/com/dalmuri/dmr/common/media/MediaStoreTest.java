@@ -0,0 +1,75 @@
+package com.dalmuri.dmr.common.media;
+
+import com.dalmuri.dmr.common.upload.UploadTooLargeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MediaStoreTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3, 4};
+
+    @TempDir
+    Path root;
+
+    @Test
+    void storesUnderShardedContentAddress() throws IOException {
+        MediaStore store = new MediaStore(root.toString());
+
+        MediaStore.StoredMedia stored = store.put(ByteBuffer.wrap(PNG));
+
+        assertThat(stored.name()).isEqualTo(stored.hash() + ".png");
+        assertThat(stored.path()).isEqualTo(root.resolve(stored.hash().substring(0, 2))
+                .resolve(stored.hash().substring(2, 4)).resolve(stored.name()));
+        assertThat(Files.readAllBytes(stored.path())).isEqualTo(PNG);
+        assertThat(store.resolve(stored.name())).isEqualTo(stored.path());
+        assertThat(store.resolve("../secret.png")).isNull();
+    }
+
+    @Test
+    void deduplicatesAcrossEntryPoints() throws IOException {
+        MediaStore store = new MediaStore(root.toString());
+
+        MediaStore.StoredMedia first = store.put(ByteBuffer.wrap(PNG));
+        MediaStore.StoredMedia second = store.put(new MockMultipartFile("file", "photo.png", "image/png", PNG));
+        MediaStore.StoredMedia third = store.put(new ByteArrayInputStream(PNG), ".png", 1024, 4);
+
+        assertThat(second.path()).isEqualTo(first.path());
+        assertThat(third.path()).isEqualTo(first.path());
+        try (Stream<Path> files = Files.list(first.path().getParent())) {
+            assertThat(files).containsExactly(first.path());
+        }
+    }
+
+    @Test
+    void adoptTreatsExistingContentAsHit() throws IOException {
+        MediaStore store = new MediaStore(root.toString());
+        MediaStore.StoredMedia stored = store.put(ByteBuffer.wrap(PNG));
+        Path part = store.newPartFile();
+        Files.write(part, PNG);
+
+        MediaStore.StoredMedia adopted = store.adopt(part, stored.hash(), ".png");
+
+        assertThat(adopted.path()).isEqualTo(stored.path());
+        assertThat(Files.readAllBytes(adopted.path())).isEqualTo(PNG);
+        assertThat(part).doesNotExist();
+    }
+
+    @Test
+    void stopsStreamingPastSizeLimit() {
+        MediaStore store = new MediaStore(root.toString());
+
+        assertThatThrownBy(() -> store.put(new ByteArrayInputStream(new byte[100]), ".bin", 10, 4))
+                .isInstanceOf(UploadTooLargeException.class);
+    }
+}
@@ -0,0 +1,165 @@
+package com.dalmuri.dmr.common.media;
+
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.controller.MediaController;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ThumbnailServiceTest {
+
+    @TempDir
+    Path root;
+
+    private ThumbnailService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    void runsOnBoundedPoolAndDropsWhenQueueIsFull() throws Exception {
+        BlockingMediaStore store = new BlockingMediaStore(root);
+        service = new ThumbnailService(store, properties(List.of(16), 1, 1));
+        MediaStore.StoredMedia first = store.put(png(64, Color.RED));
+        MediaStore.StoredMedia second = store.put(png(64, Color.GREEN));
+        MediaStore.StoredMedia third = store.put(png(64, Color.BLUE));
+
+        // 작업자 하나가 첫 작업에서 멈춰 있는 동안 : 두 번째는 대기열, 세 번째는 자리가 없어 버려진다.
+        service.schedule(first);
+        assertThat(store.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        service.schedule(second);
+        service.schedule(third);
+
+        assertThat(service.queuedCount()).isEqualTo(1);
+        assertThat(service.droppedCount()).isEqualTo(1);
+
+        store.release.countDown();
+        await(() -> service.generatedCount() == 2);
+        assertThat(store.threads).hasSize(1);
+        assertThat(store.variantPath(third.hash(), "w16", ".jpg")).doesNotExist();
+
+        // 버려진 작업은 다음 업로드 때 다시 들어갈 수 있다.
+        service.schedule(third);
+        await(() -> service.generatedCount() == 3);
+        assertThat(store.variantPath(third.hash(), "w16", ".jpg")).exists();
+        assertThat(service.failedCount()).isZero();
+    }
+
+    @Test
+    void skipsVariantsWiderThanOriginalAndServesOriginalInstead() throws Exception {
+        MediaStore store = new MediaStore(root.toString());
+        service = new ThumbnailService(store, properties(List.of(16, 480), 1, 4));
+        MediaStore.StoredMedia original = store.put(png(100, Color.ORANGE));
+
+        service.generate(original);
+
+        Path small = store.variantPath(original.hash(), "w16", ".jpg");
+        assertThat(small).exists();
+        assertThat(ImageIO.read(small.toFile()).getWidth()).isEqualTo(16);
+        assertThat(store.variantPath(original.hash(), "w480", ".jpg")).doesNotExist();
+        assertThat(service.variantNames(original)).containsValue(original.hash() + "_w480.jpg");
+
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new MediaController(store,
+                new MediaFileCache(1024 * 1024, 1024 * 1024), new MediaProperties())).build();
+        mockMvc.perform(get("/uploads/" + original.hash() + "_w480.jpg"))
+                .andExpect(status().isTemporaryRedirect())
+                .andExpect(header().string(HttpHeaders.LOCATION, original.name()))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"));
+        mockMvc.perform(get("/uploads/" + original.hash() + "_w16.jpg"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void ignoresFilesThatAreNotImages() throws IOException {
+        MediaStore store = new MediaStore(root.toString());
+        service = new ThumbnailService(store, properties(List.of(16), 1, 1));
+        MediaStore.StoredMedia video = store.put(ByteBuffer.wrap(new byte[]{0, 0, 0, 0x18, 'f', 't', 'y', 'p'}));
+
+        service.schedule(video);
+
+        assertThat(service.supports(video)).isFalse();
+        assertThat(service.variantNames(video)).isEmpty();
+        assertThat(service.queuedCount()).isZero();
+    }
+
+    private static MediaProperties properties(List<Integer> widths, int workers, int queueCapacity) {
+        MediaProperties properties = new MediaProperties();
+        properties.getThumbnail().setWidths(widths);
+        properties.getThumbnail().setWorkers(workers);
+        properties.getThumbnail().setQueueCapacity(queueCapacity);
+        return properties;
+    }
+
+    private static ByteBuffer png(int width, Color color) throws IOException {
+        BufferedImage image = new BufferedImage(width, width / 2, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, color.getRGB());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("timed out").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    // 썸네일을 쓰기 직전에 멈춰서 작업자가 바쁜 상태를 만든다. 어떤 스레드가 썼는지도 남긴다.
+    private static final class BlockingMediaStore extends MediaStore {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        BlockingMediaStore(Path root) {
+            super(root.toString());
+        }
+
+        @Override
+        public Path putVariant(String hash, String variant, String extension, PartWriter writer) throws IOException {
+            threads.add(Thread.currentThread());
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return super.putVariant(hash, variant, extension, writer);
+        }
+    }
+}
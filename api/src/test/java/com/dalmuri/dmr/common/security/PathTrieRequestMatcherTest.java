@@ -0,0 +1,39 @@
+package com.dalmuri.dmr.common.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathTrieRequestMatcherTest {
+
+    private final PathTrieRequestMatcher matcher =
+            new PathTrieRequestMatcher(List.of("/chat", "/uploads/**", "/diary/*", "/profile/*.png"));
+
+    @Test
+    void matchesLikeAntPatterns() {
+        assertThat(matcher.matches("/chat")).isTrue();
+        assertThat(matcher.matches("/chat/")).isFalse();
+        assertThat(matcher.matches("/chats")).isFalse();
+
+        assertThat(matcher.matches("/uploads")).isTrue();
+        assertThat(matcher.matches("/uploads/ab/cd/thumb.jpg")).isTrue();
+        assertThat(matcher.matches("/uploadsX")).isFalse();
+
+        assertThat(matcher.matches("/diary/stream")).isTrue();
+        assertThat(matcher.matches("/diary")).isFalse();
+        assertThat(matcher.matches("/diary/")).isFalse();
+        assertThat(matcher.matches("/diary/stream/more")).isFalse();
+    }
+
+    @Test
+    void fallsBackForSegmentWildcards() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/profile/me.png");
+        request.setServletPath("/profile/me.png");
+
+        assertThat(matcher.matches("/profile/me.png")).isFalse();
+        assertThat(matcher.matches(request)).isTrue();
+    }
+}
@@ -0,0 +1,133 @@
+package com.dalmuri.dmr.common.session;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.MapSession;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NearCacheSessionRepositoryTest {
+
+    private final CountingRepository delegate = new CountingRepository();
+    private final LastAccessWriteBehind writeBehind = new LastAccessWriteBehind(null, "SPRING_SESSION", Duration.ofHours(1), 100);
+    private final NearCacheSessionRepository repository =
+            new NearCacheSessionRepository(delegate, writeBehind, Duration.ofMinutes(1), 100);
+
+    @Test
+    void servesRepeatedReadsFromCacheAndDefersTouches() {
+        MapSession stored = new MapSession();
+        stored.setAttribute("user", "dalmuri");
+        delegate.sessions.put(stored.getId(), stored);
+
+        NearCacheSessionRepository.NearSession first = repository.findById(stored.getId());
+        first.setLastAccessedTime(Instant.now());
+        repository.save(first);
+
+        NearCacheSessionRepository.NearSession second = repository.findById(stored.getId());
+        second.setLastAccessedTime(Instant.now());
+        repository.save(second);
+
+        assertThat(second.<String>getAttribute("user")).isEqualTo("dalmuri");
+        assertThat(delegate.finds).isEqualTo(1);
+        assertThat(delegate.saves).isZero();
+        assertThat(writeBehind.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void writesAttributeChangesThrough() {
+        MapSession stored = new MapSession();
+        delegate.sessions.put(stored.getId(), stored);
+        repository.findById(stored.getId()); // cache에 올려 둔다.
+
+        NearCacheSessionRepository.NearSession session = repository.findById(stored.getId());
+        session.setAttribute("room", "42");
+        repository.save(session);
+
+        assertThat(delegate.saves).isEqualTo(1);
+        assertThat(stored.<String>getAttribute("room")).isEqualTo("42");
+        assertThat(repository.findById(stored.getId()).<String>getAttribute("room")).isEqualTo("42");
+        assertThat(writeBehind.pendingCount()).isZero();
+    }
+
+    @Test
+    void mergesConcurrentAttributeChangesIntoCache() {
+        MapSession stored = new MapSession();
+        stored.setAttribute("theme", "dark");
+        delegate.sessions.put(stored.getId(), stored);
+
+        // 같은 세션으로 동시에 들어온 두 요청
+        NearCacheSessionRepository.NearSession first = repository.findById(stored.getId());
+        NearCacheSessionRepository.NearSession second = repository.findById(stored.getId());
+        first.setAttribute("room", "42");
+        second.setAttribute("cart", "3");
+        second.removeAttribute("theme");
+        repository.save(first);
+        repository.save(second);
+
+        NearCacheSessionRepository.NearSession next = repository.findById(stored.getId());
+        assertThat(next.<String>getAttribute("room")).isEqualTo("42");
+        assertThat(next.<String>getAttribute("cart")).isEqualTo("3");
+        assertThat(next.<String>getAttribute("theme")).isNull();
+        // 처음 읽기 + cache에서 꺼낸 second를 저장할 때 원래 세션 읽기. next는 cache에서
+        assertThat(delegate.finds).isEqualTo(2);
+    }
+
+    @Test
+    void neverBringsBackIdReplacedByChangeSessionId() {
+        MapSession stored = new MapSession();
+        String oldId = stored.getId();
+        delegate.sessions.put(oldId, stored);
+
+        NearCacheSessionRepository.NearSession login = repository.findById(oldId);
+        NearCacheSessionRepository.NearSession concurrent = repository.findById(oldId); // 로그인 전 id로 같이 들어온 요청
+        String newId = login.changeSessionId();
+        login.setAttribute("user", "dalmuri");
+        repository.save(login);
+
+        concurrent.setLastAccessedTime(Instant.now());
+        repository.save(concurrent);
+
+        assertThat(repository.findById(oldId)).isNull();
+        assertThat(repository.findById(newId).<String>getAttribute("user")).isEqualTo("dalmuri");
+    }
+
+    private static final class CountingRepository implements FindByIndexNameSessionRepository<MapSession> {
+
+        final Map<String, MapSession> sessions = new HashMap<>();
+        int finds;
+        int saves;
+
+        @Override
+        public MapSession createSession() {
+            return new MapSession();
+        }
+
+        @Override
+        public void save(MapSession session) {
+            saves++;
+            sessions.values().removeIf(existing -> existing == session); // changeSessionId : 행의 id가 바뀐다.
+            sessions.put(session.getId(), session);
+        }
+
+        @Override
+        public MapSession findById(String id) {
+            finds++;
+            return sessions.get(id);
+        }
+
+        @Override
+        public void deleteById(String id) {
+            sessions.remove(id);
+        }
+
+        @Override
+        public Map<String, MapSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+            return Map.of();
+        }
+    }
+}
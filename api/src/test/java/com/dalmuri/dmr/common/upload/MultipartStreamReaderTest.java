@@ -0,0 +1,93 @@
+package com.dalmuri.dmr.common.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultipartStreamReaderTest {
+
+    private static final String BOUNDARY = "----dmrBoundary7MA4YWxk";
+
+    @Test
+    void readsFieldsAndFileParts() throws IOException {
+        byte[] file = new byte[200_000];
+        new Random(7).nextBytes(file);
+        byte[] body = body(file);
+
+        // 버퍼보다 작은 조각으로 들어와도 (네트워크처럼) 똑같이 읽혀야 한다.
+        MultipartStreamReader reader = new MultipartStreamReader(trickle(body, 1_000), BOUNDARY, 4_096);
+
+        MultipartStreamReader.Part field = reader.next();
+        assertThat(field.name()).isEqualTo("caption");
+        assertThat(field.isFile()).isFalse();
+        assertThat(new String(field.body().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("오늘의 사진");
+
+        MultipartStreamReader.Part filePart = reader.next();
+        assertThat(filePart.name()).isEqualTo("file");
+        assertThat(filePart.filename()).isEqualTo("사진.jpg");
+        assertThat(filePart.contentType()).isEqualTo("image/jpeg");
+        assertThat(filePart.body().readAllBytes()).isEqualTo(file);
+
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void skipsUnreadPartBodies() throws IOException {
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(body(new byte[50_000])), BOUNDARY, 4_096);
+
+        assertThat(reader.next().name()).isEqualTo("caption");
+        assertThat(reader.next().name()).isEqualTo("file");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void rejectsTruncatedBody() throws IOException {
+        byte[] body = body(new byte[10_000]);
+        byte[] truncated = java.util.Arrays.copyOf(body, body.length - 100);
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(truncated), BOUNDARY);
+
+        reader.next();
+        MultipartStreamReader.Part filePart = reader.next();
+
+        assertThatThrownBy(() -> filePart.body().readAllBytes())
+                .isInstanceOf(MultipartStreamReader.MalformedMultipartException.class);
+    }
+
+    @Test
+    void parsesBoundaryFromContentType() {
+        assertThat(MultipartStreamReader.boundaryOf("multipart/form-data; boundary=" + BOUNDARY)).isEqualTo(BOUNDARY);
+        assertThat(MultipartStreamReader.boundaryOf("multipart/form-data; boundary=\"abc\"")).isEqualTo("abc");
+        assertThat(MultipartStreamReader.boundaryOf("application/json")).isNull();
+    }
+
+    private static byte[] body(byte[] file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("preamble\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"caption\"\r\n\r\n"
+                + "오늘의 사진\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"사진.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(file);
+        out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    // read 한 번에 최대 chunk 바이트만 돌려주는 스트림
+    private static InputStream trickle(byte[] bytes, int chunk) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+}
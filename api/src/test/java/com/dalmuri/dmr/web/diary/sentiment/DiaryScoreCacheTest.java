@@ -0,0 +1,109 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.config.SentimentProperties;
+import com.dalmuri.dmr.web.diary.model.DiaryRequestDTO;
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.dalmuri.dmr.web.diary.service.DiaryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiaryScoreCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final DiaryScoreCache cache = new DiaryScoreCache(3, Duration.ofMinutes(10), nanos::get, Runnable::run);
+
+    @Test
+    void normalizesWhitespaceCaseAndUnicodeFormBeforeHashing() {
+        DiaryScoreCache.TextKey key = DiaryScoreCache.keyOf("오늘은 Good Day");
+
+        assertThat(DiaryScoreCache.keyOf("  오늘은\t\tgood\n day  ")).isEqualTo(key);
+        assertThat(DiaryScoreCache.keyOf("오늘은 GOOD DAY")).isEqualTo(key);
+        // 조합형(NFD)으로 들어온 한글도 같은 key
+        assertThat(DiaryScoreCache.keyOf(Normalizer.normalize("오늘은 good day", Normalizer.Form.NFD))).isEqualTo(key);
+
+        assertThat(DiaryScoreCache.keyOf("오늘은 goodday")).isNotEqualTo(key);
+        assertThat(DiaryScoreCache.keyOf("오늘은 good day.")).isNotEqualTo(key);
+        assertThat(DiaryScoreCache.normalize(" \n ")).isEmpty();
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() {
+        DiaryScoreCache.TextKey key = DiaryScoreCache.keyOf("즐거운 하루");
+        cache.put(key, new DiaryResponseDTO(0.8f, 1.2f));
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(9));
+        DiaryResponseDTO hit = cache.get(key);
+        assertThat(hit.getScore()).isEqualTo(0.8f);
+        assertThat(hit.getMagnitude()).isEqualTo(1.2f);
+
+        // TTL은 쓰기 기준 : 읽어도 늘어나지 않는다.
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(cache.get(key)).isNull();
+    }
+
+    @Test
+    void evictsWhenFull() {
+        for (int i = 0; i < 10; i++) {
+            cache.put(DiaryScoreCache.keyOf("일기 " + i), new DiaryResponseDTO(0.1f * i, 1f));
+        }
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.stats().evictionCount()).isEqualTo(7);
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        DiaryScoreCache.TextKey key = DiaryScoreCache.keyOf("비 오는 날");
+
+        assertThat(cache.get(key)).isNull();
+        cache.put(key, new DiaryResponseDTO(-0.3f, 0.6f));
+        cache.get(key);
+        cache.get(DiaryScoreCache.keyOf("  비 오는   날 "));
+
+        assertThat(cache.stats().hitCount()).isEqualTo(2);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tag("cache", "diary.score").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("cache.gets").tag("cache", "diary.score").tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void neverCachesFallbackResults() {
+        AtomicInteger calls = new AtomicInteger();
+        SentimentAnalyzer failing = text -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("backend down");
+        };
+        SentimentProperties properties = new SentimentProperties();
+        properties.setFallbackScore(0.42f); // 알아보기 쉬운 fallback 점수
+        try (SentimentGateway gateway = new SentimentGateway(failing, 4, Duration.ofSeconds(1));
+             SentimentBatcher batcher = new SentimentBatcher(gateway, 8, Duration.ofMillis(1), 16)) {
+            DiaryService service = new DiaryService(gateway, batcher, cache, null, properties, null);
+
+            // 단건 : fallback으로 완료되지만 캐시에는 남지 않고, 다음 요청은 다시 백엔드로 간다.
+            assertThat(service.scoreAsync("우울한 하루").join().getScore()).isEqualTo(0.42f);
+            assertThat(service.scoreAsync("우울한 하루").join().getScore()).isEqualTo(0.42f);
+            assertThat(calls.get()).isEqualTo(2);
+
+            // 여러 건 : 실패한 묶음의 fallback도 캐시하지 않는다.
+            assertThat(service.getDiaryScores(List.of(new DiaryRequestDTO("지친 하루"))).getBody())
+                    .extracting(DiaryResponseDTO::getScore).containsExactly(0.42f);
+
+            assertThat(cache.size()).isZero();
+            assertThat(cache.get(DiaryScoreCache.keyOf("우울한 하루"))).isNull();
+            assertThat(cache.get(DiaryScoreCache.keyOf("지친 하루"))).isNull();
+        }
+    }
+}
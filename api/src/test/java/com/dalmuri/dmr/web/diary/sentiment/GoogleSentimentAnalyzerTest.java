@@ -0,0 +1,130 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.language.v1.AnalyzeSentimentRequest;
+import com.google.cloud.language.v1.AnalyzeSentimentResponse;
+import com.google.cloud.language.v1.LanguageServiceClient;
+import com.google.cloud.language.v1.Sentence;
+import com.google.cloud.language.v1.Sentiment;
+import com.google.cloud.language.v1.TextSpan;
+import com.google.cloud.language.v1.stub.LanguageServiceStub;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class GoogleSentimentAnalyzerTest {
+
+    private final FakeLanguageService backend = new FakeLanguageService();
+    private final GoogleSentimentAnalyzer analyzer = new GoogleSentimentAnalyzer(LanguageServiceClient.create(backend));
+
+    @Test
+    void batchReturnsSameDocumentSentimentAsSingleCalls() {
+        List<String> texts = List.of("오늘은 정말 좋았다. 그런데 저녁은 별로.", "그냥 그랬다.", "최악의 하루. 비도 오고. 지각도 했다.");
+
+        List<DiaryResponseDTO> batch = analyzer.analyzeAll(texts);
+
+        assertThat(batch).hasSize(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            DiaryResponseDTO single = analyzer.analyze(texts.get(i));
+            assertThat(batch.get(i).getScore()).isEqualTo(single.getScore());
+            assertThat(batch.get(i).getMagnitude()).isEqualTo(single.getMagnitude());
+        }
+    }
+
+    @Test
+    void usesDocumentSentimentNotSentenceMean() {
+        String text = "오늘은 정말 좋았다. 그런데 저녁은 별로.";
+
+        List<DiaryResponseDTO> batch = analyzer.analyzeAll(List.of(text, "그냥 그랬다."));
+
+        Sentiment document = FakeLanguageService.documentSentimentOf(text);
+        assertThat(batch.get(0)).extracting(DiaryResponseDTO::getScore, DiaryResponseDTO::getMagnitude)
+                .containsExactly(document.getScore(), document.getMagnitude());
+        // 문서 하나에 요청 하나
+        assertThat(backend.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void keepsRequestOrder() {
+        List<DiaryResponseDTO> batch = analyzer.analyzeAll(List.of("a", "bb", "ccc"));
+
+        assertThat(batch).extracting(DiaryResponseDTO::getScore, DiaryResponseDTO::getMagnitude).containsExactly(
+                tuple(FakeLanguageService.documentSentimentOf("a").getScore(), FakeLanguageService.documentSentimentOf("a").getMagnitude()),
+                tuple(FakeLanguageService.documentSentimentOf("bb").getScore(), FakeLanguageService.documentSentimentOf("bb").getMagnitude()),
+                tuple(FakeLanguageService.documentSentimentOf("ccc").getScore(), FakeLanguageService.documentSentimentOf("ccc").getMagnitude()));
+    }
+
+    /*
+    * 문서 감정은 텍스트 길이로 정하고, 문장 감정은 일부러 문서 감정과 평균이 다르게 준다.
+    * (문장 평균으로 계산하면 테스트가 깨지도록)
+    *
+    * */
+    private static final class FakeLanguageService extends LanguageServiceStub {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        static Sentiment documentSentimentOf(String text) {
+            return Sentiment.newBuilder()
+                    .setScore((text.length() % 20) / 10f - 1f)
+                    .setMagnitude(text.length() / 10f)
+                    .build();
+        }
+
+        @Override
+        public UnaryCallable<AnalyzeSentimentRequest, AnalyzeSentimentResponse> analyzeSentimentCallable() {
+            return new UnaryCallable<>() {
+                @Override
+                public ApiFuture<AnalyzeSentimentResponse> futureCall(AnalyzeSentimentRequest request, ApiCallContext context) {
+                    calls.incrementAndGet();
+                    String text = request.getDocument().getContent();
+                    AnalyzeSentimentResponse.Builder response = AnalyzeSentimentResponse.newBuilder()
+                            .setDocumentSentiment(documentSentimentOf(text));
+                    int begin = 0;
+                    for (String sentence : text.split("\\. ")) {
+                        response.addSentences(Sentence.newBuilder()
+                                .setText(TextSpan.newBuilder().setContent(sentence).setBeginOffset(begin))
+                                .setSentiment(Sentiment.newBuilder().setScore(0.9f).setMagnitude(0.9f)));
+                        begin += sentence.length() + 2;
+                    }
+                    return ApiFutures.immediateFuture(response.build());
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public void shutdownNow() {
+        }
+
+        @Override
+        public boolean awaitTermination(long duration, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+class IncrementalDiaryDocumentTest {
+
+    @Test
+    void rescoresOnlyTheEditedSentence() {
+        IncrementalDiaryDocument document = new IncrementalDiaryDocument(10_000);
+        List<IncrementalDiaryDocument.Sentence> initial = document.reset("첫 문장. 둘째 문장. 셋째 문장.");
+        assertThat(initial).extracting(IncrementalDiaryDocument.Sentence::content)
+                .containsExactly("첫 문장.", "둘째 문장.", "셋째 문장.");
+        initial.forEach(sentence -> document.complete(sentence, new DiaryResponseDTO(0.5f, 1.0f)));
+
+        // "둘째" → "두번째"
+        List<IncrementalDiaryDocument.Sentence> changed = document.applyEdit(6, 2, "두번째");
+
+        assertThat(changed).extracting(IncrementalDiaryDocument.Sentence::content).containsExactly("두번째 문장.");
+        assertThat(document.pendingCount()).isEqualTo(1);
+        assertThat(document.sentenceCount()).isEqualTo(3);
+    }
+
+    @Test
+    void keepsRunningAggregates() {
+        IncrementalDiaryDocument document = new IncrementalDiaryDocument(10_000);
+        List<IncrementalDiaryDocument.Sentence> sentences = document.reset("좋았다. 싫었다.");
+        document.complete(sentences.get(0), new DiaryResponseDTO(0.8f, 1.0f));
+        document.complete(sentences.get(1), new DiaryResponseDTO(-0.4f, 2.0f));
+
+        assertThat(document.score()).isCloseTo(0.2f, offset(1e-6f));
+        assertThat(document.magnitude()).isEqualTo(3.0f);
+
+        // 두 번째 문장 삭제
+        document.applyEdit(5, 4, "");
+
+        assertThat(document.score()).isEqualTo(0.8f);
+        assertThat(document.magnitude()).isEqualTo(1.0f);
+        assertThat(document.pendingCount()).isZero();
+    }
+
+    @Test
+    void ignoresResultsForSentencesRemovedWhileScoring() {
+        IncrementalDiaryDocument document = new IncrementalDiaryDocument(10_000);
+        IncrementalDiaryDocument.Sentence stale = document.reset("오늘은").get(0);
+
+        document.applyEdit(3, 0, " 맑음");
+
+        assertThat(document.complete(stale, new DiaryResponseDTO(1f, 1f))).isFalse();
+        assertThat(document.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsEditsOutsideTheDocument() {
+        IncrementalDiaryDocument document = new IncrementalDiaryDocument(10);
+        document.reset("abc");
+
+        assertThatThrownBy(() -> document.applyEdit(5, 0, "x")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> document.applyEdit(0, 0, "0123456789")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
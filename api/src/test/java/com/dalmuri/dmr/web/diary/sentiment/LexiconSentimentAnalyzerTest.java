@@ -0,0 +1,48 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LexiconSentimentAnalyzerTest {
+
+    private static LexiconSentimentAnalyzer analyzer;
+
+    @BeforeAll
+    static void loadLexicon() throws Exception {
+        try (InputStream in = LexiconSentimentAnalyzerTest.class.getResourceAsStream("/sentiment/lexicon.tsv")) {
+            analyzer = LexiconSentimentAnalyzer.load(in);
+        }
+    }
+
+    @Test
+    void scoresKoreanStemsWithParticles() {
+        assertThat(analyzer.evaluate("오늘은 정말 행복했다").score()).isPositive();
+        assertThat(analyzer.evaluate("너무 슬프고 우울한 하루였다").score()).isNegative();
+    }
+
+    @Test
+    void scoresEnglishWordsAndPrefixes() {
+        assertThat(analyzer.evaluate("What a wonderful day, I'm so grateful").score()).isPositive();
+        assertThat(analyzer.evaluate("Feeling hopeless and depressed").score()).isNegative();
+    }
+
+    @Test
+    void flipsPolarityAfterNegation() {
+        assertThat(analyzer.evaluate("기분이 좋지 않다").score()).isNegative();
+        assertThat(analyzer.evaluate("영화가 재미없었다").score()).isNegative();
+        assertThat(analyzer.evaluate("I am not happy").score()).isNegative();
+    }
+
+    @Test
+    void reportsNoConfidenceWithoutSentimentWords() {
+        LexiconSentimentAnalyzer.LexiconScore result = analyzer.evaluate("점심을 먹었다");
+
+        assertThat(result.hits()).isZero();
+        assertThat(result.confidence()).isZero();
+        assertThat(result.score()).isZero();
+    }
+}
@@ -0,0 +1,118 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SentimentBatcherTest {
+
+    private final RecordingAnalyzer analyzer = new RecordingAnalyzer();
+
+    @Test
+    void flushesAsSoonAsBatchIsFull() throws Exception {
+        try (SentimentGateway gateway = new SentimentGateway(analyzer, 64, Duration.ofSeconds(5));
+             SentimentBatcher batcher = new SentimentBatcher(gateway, 3, Duration.ofSeconds(30), 100)) {
+
+            List<CompletableFuture<DiaryResponseDTO>> results = submit(batcher, "a", "bb", "ccc");
+
+            // maxDelay(30초)를 기다리지 않는다.
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+            assertThat(analyzer.batches).containsExactly(3);
+        }
+    }
+
+    @Test
+    void flushesPartialBatchAfterMaxDelay() throws Exception {
+        try (SentimentGateway gateway = new SentimentGateway(analyzer, 64, Duration.ofSeconds(5));
+             SentimentBatcher batcher = new SentimentBatcher(gateway, 32, Duration.ofMillis(100), 100)) {
+
+            long started = System.nanoTime();
+            List<CompletableFuture<DiaryResponseDTO>> results = submit(batcher, "a", "bb");
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+            assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(90));
+            assertThat(analyzer.batches).containsExactly(2);
+        }
+    }
+
+    @Test
+    void handsEachCallerItsOwnResult() throws Exception {
+        try (SentimentGateway gateway = new SentimentGateway(analyzer, 64, Duration.ofSeconds(5));
+             SentimentBatcher batcher = new SentimentBatcher(gateway, 4, Duration.ofSeconds(30), 100)) {
+
+            List<CompletableFuture<DiaryResponseDTO>> results = submit(batcher, "a", "bbb", "bb", "bbbb");
+
+            assertThat(results).extracting(result -> result.get(5, TimeUnit.SECONDS).getScore())
+                    .containsExactly(1f, 3f, 2f, 4f);
+        }
+    }
+
+    @Test
+    void failsEveryCallerOfFailedBatch() {
+        analyzer.fail = true;
+        try (SentimentGateway gateway = new SentimentGateway(analyzer, 64, Duration.ofSeconds(5));
+             SentimentBatcher batcher = new SentimentBatcher(gateway, 2, Duration.ofSeconds(30), 100)) {
+
+            List<CompletableFuture<DiaryResponseDTO>> results = submit(batcher, "a", "b");
+
+            for (CompletableFuture<DiaryResponseDTO> result : results) {
+                assertThatThrownBy(result::join).hasCauseInstanceOf(SentimentUnavailableException.class);
+            }
+        }
+    }
+
+    @Test
+    void neverBatchesMoreTextsThanConcurrencyLimit() throws Exception {
+        try (SentimentGateway gateway = new SentimentGateway(analyzer, 2, Duration.ofSeconds(5));
+             SentimentBatcher batcher = new SentimentBatcher(gateway, 32, Duration.ofSeconds(30), 100)) {
+
+            List<CompletableFuture<DiaryResponseDTO>> results = submit(batcher, "a", "b");
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+            assertThat(analyzer.batches).containsExactly(2);
+        }
+    }
+
+    private static List<CompletableFuture<DiaryResponseDTO>> submit(SentimentBatcher batcher, String... texts) {
+        List<CompletableFuture<DiaryResponseDTO>> results = new ArrayList<>();
+        for (String text : texts) {
+            results.add(batcher.submit(text));
+        }
+        return results;
+    }
+
+    // score = 텍스트 길이. 묶음 크기를 남긴다.
+    private static final class RecordingAnalyzer implements SentimentAnalyzer {
+
+        final Queue<Integer> batches = new ConcurrentLinkedQueue<>();
+        volatile boolean fail;
+
+        @Override
+        public DiaryResponseDTO analyze(String text) {
+            return analyzeAll(List.of(text)).get(0);
+        }
+
+        @Override
+        public List<DiaryResponseDTO> analyzeAll(List<String> texts) {
+            batches.add(texts.size());
+            if (fail) {
+                throw new IllegalStateException("backend down");
+            }
+            List<DiaryResponseDTO> results = new ArrayList<>();
+            for (String text : texts) {
+                results.add(new DiaryResponseDTO(text.length(), 0f));
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.dalmuri.dmr.web.diary.sentiment;
+
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SentimentGatewayTest {
+
+    @Test
+    void returnsBackendResult() {
+        try (SentimentGateway gateway = new SentimentGateway(
+                new FakeSentimentAnalyzer(Duration.ZERO, 0.5f, 1.5f), 4, Duration.ofSeconds(1))) {
+
+            DiaryResponseDTO result = gateway.submit("오늘은 좋은 날").join();
+
+            assertThat(result.getScore()).isEqualTo(0.5f);
+            assertThat(result.getMagnitude()).isEqualTo(1.5f);
+        }
+    }
+
+    @Test
+    void rejectsCallsOverConcurrencyLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SentimentAnalyzer blocking = text -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new DiaryResponseDTO(0.1f, 0.1f);
+        };
+
+        try (SentimentGateway gateway = new SentimentGateway(blocking, 1, Duration.ofSeconds(5))) {
+            CompletableFuture<DiaryResponseDTO> first = gateway.submit("first");
+
+            assertThatThrownBy(() -> gateway.submit("second").join())
+                    .isInstanceOf(CompletionException.class)
+                    .hasCauseInstanceOf(SentimentUnavailableException.class);
+            assertThat(gateway.rejectedCount()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(first.get(1, TimeUnit.SECONDS).getScore()).isEqualTo(0.1f);
+        }
+    }
+
+    @Test
+    void failsSlowCallsAtDeadlineAndReleasesPermit() throws Exception {
+        try (SentimentGateway gateway = new SentimentGateway(
+                new FakeSentimentAnalyzer(Duration.ofSeconds(5), 1.0f, 0.2f), 1, Duration.ofMillis(50))) {
+
+            assertThatThrownBy(() -> gateway.submit("slow").join())
+                    .hasCauseInstanceOf(SentimentUnavailableException.class);
+            assertThat(gateway.timedOutCount()).isEqualTo(1);
+
+            // 취소된 호출이 자리를 반납할 때까지 잠깐 기다린다.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (gateway.inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(gateway.inFlight()).isZero();
+        }
+    }
+
+    @Test
+    void batchTakesOnePermitPerBackendCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SentimentAnalyzer blocking = text -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new DiaryResponseDTO(0.1f, 0.1f);
+        };
+
+        try (SentimentGateway gateway = new SentimentGateway(blocking, 4, Duration.ofSeconds(5))) {
+            CompletableFuture<List<DiaryResponseDTO>> batch = gateway.submitAll(List.of("a", "b", "c"));
+            assertThat(gateway.inFlight()).isEqualTo(3);
+
+            CompletableFuture<DiaryResponseDTO> single = gateway.submit("d");
+            assertThatThrownBy(() -> gateway.submit("e").join())
+                    .hasCauseInstanceOf(SentimentUnavailableException.class);
+            release.countDown();
+            assertThat(batch.get(1, TimeUnit.SECONDS)).hasSize(3);
+            assertThat(single.get(1, TimeUnit.SECONDS).getScore()).isEqualTo(0.1f);
+        }
+    }
+
+    @Test
+    void rejectsBatchLargerThanConcurrencyLimit() {
+        try (SentimentGateway gateway = new SentimentGateway(
+                new FakeSentimentAnalyzer(Duration.ZERO, 0.5f, 1.5f), 2, Duration.ofSeconds(1))) {
+
+            // 자리가 하나라도 모자라면 묶음 전체를 거절한다.
+            assertThatThrownBy(() -> gateway.submitAll(List.of("a", "b", "c")).join())
+                    .hasCauseInstanceOf(SentimentUnavailableException.class);
+            assertThat(gateway.submitAll(List.of("a", "b")).join()).hasSize(2);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.dalmuri.dmr.web.diary.service;
+
+import com.dalmuri.config.SentimentProperties;
+import com.dalmuri.dmr.web.diary.controller.DiaryController;
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class DiaryPdfImportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DiaryService diaryService = mock(DiaryService.class);
+    private final SentimentProperties properties = new SentimentProperties();
+    private DiaryPdfImportService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    void streamsStartPagesAndDoneInOrderAndLeavesFailedPagesOutOfAverage() throws Exception {
+        // 페이지 글자 수를 점수로 돌려준다. "fail"이 들어간 페이지는 분석 실패(null)
+        when(diaryService.scoreOrNull(anyString())).thenAnswer(invocation -> {
+            String text = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(text.contains("fail") ? null : new DiaryResponseDTO(text.length() / 10f, 1.0f));
+        });
+        properties.getPdfImport().setParallelism(2);
+
+        List<JsonNode> lines = importAll(pdf("first page", "", "fail here", "longer fourth page"));
+
+        assertThat(lines.get(0).path("type").asText()).isEqualTo("start");
+        assertThat(lines.get(0).path("pages").asInt()).isEqualTo(4);
+        assertThat(lines.get(lines.size() - 1).path("type").asText()).isEqualTo("done");
+        List<JsonNode> pages = lines.subList(1, lines.size() - 1);
+        assertThat(pages).extracting(line -> line.path("type").asText()).containsOnly("page");
+        assertThat(pages).extracting(line -> line.path("page").asInt()).containsExactlyInAnyOrder(1, 2, 3, 4);
+
+        JsonNode empty = page(pages, 2);
+        assertThat(empty.path("chars").asInt()).isZero();
+        assertThat(empty.has("score")).isFalse();
+
+        JsonNode failed = page(pages, 3);
+        assertThat(failed.path("failed").asBoolean()).isTrue();
+        assertThat(failed.has("score")).isFalse();
+        assertThat(page(pages, 1).has("failed")).isFalse();
+
+        JsonNode done = lines.get(lines.size() - 1);
+        assertThat(done.path("scored").asInt()).isEqualTo(2);
+        float expected = ("first page".length() / 10f + "longer fourth page".length() / 10f) / 2;
+        assertThat(done.path("score").floatValue()).isEqualTo(expected);
+    }
+
+    @Test
+    void rejectsFilesOverSizeCap() throws Exception {
+        properties.getPdfImport().setMaxFileSize(DataSize.ofBytes(100));
+        service = new DiaryPdfImportService(diaryService, objectMapper, properties);
+        byte[] body = pdf("a page that makes the file bigger than the cap");
+
+        assertThat(service.importPdf(body.length, new ByteArrayInputStream(body)).getStatusCode())
+                .isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+        // 길이를 모르는 요청(chunked)은 받는 도중에 잘린다.
+        assertThat(service.importPdf(-1, new ByteArrayInputStream(body)).getStatusCode())
+                .isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    void rejectsBodyThatIsNotPdf() {
+        service = new DiaryPdfImportService(diaryService, objectMapper, properties);
+        byte[] body = "hello".getBytes();
+
+        assertThat(service.importPdf(body.length, new ByteArrayInputStream(body)).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void stopsReadingPagesOnceResponseIsCancelled() throws Exception {
+        List<CompletableFuture<DiaryResponseDTO>> calls = new CopyOnWriteArrayList<>();
+        when(diaryService.scoreOrNull(anyString())).thenAnswer(invocation -> {
+            CompletableFuture<DiaryResponseDTO> future = new CompletableFuture<>();
+            calls.add(future);
+            return future;
+        });
+        properties.getPdfImport().setParallelism(2);
+        String[] texts = new String[10];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = "page " + (i + 1);
+        }
+
+        MvcResult result = mockMvc().perform(post("/diary/import-pdf")
+                        .contentType(MediaType.APPLICATION_PDF).content(pdf(texts)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // 자리(parallelism)가 다 차서 읽기가 멈춰 있다.
+        await(() -> calls.size() == 2);
+
+        // 응답 시간 초과 → 작업 취소
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        calls.forEach(call -> call.complete(new DiaryResponseDTO(0.1f, 1.0f)));
+        Thread.sleep(200);
+        calls.forEach(call -> call.complete(new DiaryResponseDTO(0.1f, 1.0f)));
+
+        // 멈춰 있던 한 페이지까지만 나가고 나머지는 읽지 않는다.
+        assertThat(calls.size()).isLessThanOrEqualTo(3);
+    }
+
+    private List<JsonNode> importAll(byte[] pdf) throws Exception {
+        MvcResult result = mockMvc().perform(post("/diary/import-pdf")
+                        .contentType(MediaType.APPLICATION_PDF).content(pdf))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk())
+                .andReturn();
+        result.getAsyncResult(TimeUnit.SECONDS.toMillis(10));
+
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : result.getResponse().getContentAsString().split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    private MockMvc mockMvc() {
+        service = new DiaryPdfImportService(diaryService, objectMapper, properties);
+        return MockMvcBuilders.standaloneSetup(new DiaryController(diaryService, service)).build();
+    }
+
+    private static JsonNode page(List<JsonNode> pages, int number) {
+        return pages.stream().filter(line -> line.path("page").asInt() == number).findFirst().orElseThrow();
+    }
+
+    // 페이지마다 글자 한 줄. 빈 문자열이면 글자가 없는 페이지
+    private static byte[] pdf(String... texts) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (String text : texts) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                if (text.isEmpty()) {
+                    continue;
+                }
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 12);
+                    content.newLineAtOffset(50, 700);
+                    content.showText(text);
+                    content.endText();
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("timed out").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
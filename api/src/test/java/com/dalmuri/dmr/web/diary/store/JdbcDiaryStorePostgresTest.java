@@ -0,0 +1,113 @@
+package com.dalmuri.dmr.web.diary.store;
+
+import com.dalmuri.dmr.web.diary.model.DiaryTrendDTO;
+import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@Testcontainers(disabledWithoutDocker = true)
+class JdbcDiaryStorePostgresTest {
+
+    private static final ZoneId SEOUL = ZoneId.of("Asia/Seoul");
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    // maxBatch 2 : 묶음 여러 개로 나눠 쓰고, flushInterval이 길어서 나머지는 close() 때 쓴다.
+    private static JdbcDiaryStore store(int maxBuckets) {
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setURL(POSTGRES.getJdbcUrl());
+        dataSource.setUser(POSTGRES.getUsername());
+        dataSource.setPassword(POSTGRES.getPassword());
+        JdbcDiaryStore store = new JdbcDiaryStore(dataSource, SEOUL, 2, Duration.ofHours(1), 100, maxBuckets);
+        store.start();
+        return store;
+    }
+
+    @Test
+    void rollsUpAcrossDayWeekAndMonthBoundaries() {
+        JdbcDiaryStore store = store(1_000);
+        // KST 2/28(토) 23:30, 3/1(일) 00:30, 3/2(월) 00:30
+        store.record(new DiaryEntry("kim", "d1", "a", 0.5f, 1.0f, Instant.parse("2026-02-28T14:30:00Z")));
+        store.record(new DiaryEntry("kim", "d2", "b", -0.5f, 2.0f, Instant.parse("2026-02-28T15:30:00Z")));
+        store.record(new DiaryEntry("kim", "d3", "c", 1.0f, 0.5f, Instant.parse("2026-03-01T15:30:00Z")));
+        store.record(new DiaryEntry("kim", "d1", "a again", -1.0f, 3.0f, Instant.parse("2026-03-01T15:30:00Z")));
+        store.record(new DiaryEntry("lee", "d1", "other user", 0.9f, 0.1f, Instant.parse("2026-03-01T15:30:00Z")));
+        store.close(); // 남은 묶음을 쓰고 멈춘다.
+
+        assertThat(store.writtenCount()).isEqualTo(5);
+
+        List<DiaryTrendDTO> days = store.trends("kim", MoodPeriod.DAY, LocalDate.of(2026, 2, 28), LocalDate.of(2026, 3, 2));
+        assertThat(days).extracting(DiaryTrendDTO::getBucket)
+                .containsExactly(LocalDate.of(2026, 2, 28), LocalDate.of(2026, 3, 1), LocalDate.of(2026, 3, 2));
+        assertThat(days).extracting(DiaryTrendDTO::getEntries).containsExactly(1L, 1L, 1L);
+        assertThat(days.get(0).getAverageScore()).isEqualTo(0.5f); // 중복 저장(d1 again)은 무시
+
+        List<DiaryTrendDTO> weeks = store.trends("kim", MoodPeriod.WEEK, LocalDate.of(2026, 2, 23), LocalDate.of(2026, 3, 8));
+        assertThat(weeks).extracting(DiaryTrendDTO::getBucket)
+                .containsExactly(LocalDate.of(2026, 2, 23), LocalDate.of(2026, 3, 2));
+        DiaryTrendDTO lastWeekOfFebruary = weeks.get(0);
+        assertThat(lastWeekOfFebruary.getEntries()).isEqualTo(2);
+        assertThat(lastWeekOfFebruary.getAverageScore()).isCloseTo(0.0f, within(1e-6f));
+        assertThat(lastWeekOfFebruary.getAverageMagnitude()).isCloseTo(1.5f, within(1e-6f));
+        assertThat(lastWeekOfFebruary.getMinScore()).isEqualTo(-0.5f);
+        assertThat(lastWeekOfFebruary.getMaxScore()).isEqualTo(0.5f);
+
+        List<DiaryTrendDTO> months = store.trends("kim", MoodPeriod.MONTH, LocalDate.of(2026, 1, 15), LocalDate.of(2026, 3, 31));
+        assertThat(months).extracting(DiaryTrendDTO::getBucket)
+                .containsExactly(LocalDate.of(2026, 2, 1), LocalDate.of(2026, 3, 1));
+        assertThat(months).extracting(DiaryTrendDTO::getEntries).containsExactly(1L, 2L);
+        assertThat(months.get(1).getAverageScore()).isCloseTo(0.25f, within(1e-6f));
+
+        // 범위 밖 bucket은 빠진다. 다른 사용자의 일기는 섞이지 않는다.
+        assertThat(store.trends("kim", MoodPeriod.DAY, LocalDate.of(2026, 3, 1), LocalDate.of(2026, 3, 1)))
+                .extracting(DiaryTrendDTO::getBucket).containsExactly(LocalDate.of(2026, 3, 1));
+        assertThat(store.trends("lee", MoodPeriod.MONTH, LocalDate.of(2026, 1, 1), LocalDate.of(2026, 3, 31)))
+                .extracting(DiaryTrendDTO::getEntries).containsExactly(1L);
+    }
+
+    @Test
+    void ignoresResavedDiariesAcrossFlushesAndCapsBuckets() {
+        JdbcDiaryStore first = store(1_000);
+        first.record(new DiaryEntry("park", "d1", "a", 0.2f, 1.0f, Instant.parse("2026-05-01T03:00:00Z")));
+        first.record(new DiaryEntry("park", "d2", "b", 0.4f, 1.0f, Instant.parse("2026-05-02T03:00:00Z")));
+        first.record(new DiaryEntry("park", "d3", "c", 0.6f, 1.0f, Instant.parse("2026-05-03T03:00:00Z")));
+        first.close();
+
+        JdbcDiaryStore second = store(2);
+        second.record(new DiaryEntry("park", "d2", "b", 0.4f, 1.0f, Instant.parse("2026-05-02T03:00:00Z")));
+        second.close();
+
+        assertThat(second.trends("park", MoodPeriod.MONTH, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31)))
+                .extracting(DiaryTrendDTO::getEntries).containsExactly(3L);
+        // maxBuckets = 2 : 범위가 넓으면 최근 것부터
+        assertThat(second.trends("park", MoodPeriod.DAY, LocalDate.of(2026, 5, 1), LocalDate.of(2026, 5, 31)))
+                .extracting(DiaryTrendDTO::getBucket).containsExactly(LocalDate.of(2026, 5, 2), LocalDate.of(2026, 5, 3));
+    }
+
+    @Test
+    void dropsRejectedEntryAndKeepsWritingTheRest() {
+        JdbcDiaryStore store = store(1_000);
+        // 같은 묶음(maxBatch 2) 안에 PostgreSQL이 받지 않는 NUL 문자가 섞여 있다.
+        store.record(new DiaryEntry("choi", "d1", "bad\u0000text", 0.1f, 1.0f, Instant.parse("2026-06-01T03:00:00Z")));
+        store.record(new DiaryEntry("choi", "d2", "good", 0.3f, 1.0f, Instant.parse("2026-06-01T03:00:00Z")));
+        store.record(new DiaryEntry("choi", "d3", "after", 0.5f, 1.0f, Instant.parse("2026-06-02T03:00:00Z")));
+        store.close();
+
+        assertThat(store.rejectedCount()).isEqualTo(1);
+        assertThat(store.writtenCount()).isEqualTo(2);
+        assertThat(store.trends("choi", MoodPeriod.MONTH, LocalDate.of(2026, 6, 1), LocalDate.of(2026, 6, 30)))
+                .extracting(DiaryTrendDTO::getEntries).containsExactly(2L);
+    }
+}
@@ -0,0 +1,64 @@
+package com.dalmuri.dmr.web.diary.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class JdbcDiaryStoreTest {
+
+    private static final ZoneId SEOUL = ZoneId.of("Asia/Seoul");
+
+    @Test
+    void rollsUpBatchPerUserPeriodAndBucket() {
+        // 2026-03-01(일) 23:30 KST = 14:30 UTC, 2026-03-02(월) 00:30 KST = 2026-03-01 15:30 UTC
+        List<DiaryEntry> batch = List.of(
+                new DiaryEntry("kim", "d1", "a", 0.8f, 1.0f, Instant.parse("2026-03-01T14:30:00Z")),
+                new DiaryEntry("kim", "d2", "b", -0.4f, 2.0f, Instant.parse("2026-03-01T15:30:00Z")),
+                new DiaryEntry("lee", "d1", "c", 0.1f, 0.5f, Instant.parse("2026-03-01T15:30:00Z")));
+
+        Map<JdbcDiaryStore.RollupKey, JdbcDiaryStore.Rollup> rollups = JdbcDiaryStore.rollup(batch, SEOUL);
+
+        JdbcDiaryStore.Rollup sunday = rollups.get(new JdbcDiaryStore.RollupKey("kim", MoodPeriod.DAY, LocalDate.of(2026, 3, 1)));
+        assertThat(sunday.entries).isEqualTo(1);
+
+        // 일요일은 앞 주(2/23 월요일), 월요일은 새 주
+        assertThat(rollups.get(new JdbcDiaryStore.RollupKey("kim", MoodPeriod.WEEK, LocalDate.of(2026, 2, 23))).entries).isEqualTo(1);
+        assertThat(rollups.get(new JdbcDiaryStore.RollupKey("kim", MoodPeriod.WEEK, LocalDate.of(2026, 3, 2))).entries).isEqualTo(1);
+
+        JdbcDiaryStore.Rollup march = rollups.get(new JdbcDiaryStore.RollupKey("kim", MoodPeriod.MONTH, LocalDate.of(2026, 3, 1)));
+        assertThat(march.entries).isEqualTo(2);
+        assertThat(march.scoreSum).isCloseTo(0.4, within(1e-6));
+        assertThat(march.magnitudeSum).isEqualTo(3.0);
+        assertThat(march.scoreMin).isEqualTo(-0.4f);
+        assertThat(march.scoreMax).isEqualTo(0.8f);
+
+        assertThat(rollups.get(new JdbcDiaryStore.RollupKey("lee", MoodPeriod.DAY, LocalDate.of(2026, 3, 2))).entries).isEqualTo(1);
+        assertThat(rollups).hasSize(8);
+    }
+
+    @Test
+    void buildsMultiRowValues() {
+        assertThat(JdbcDiaryStore.values("INSERT INTO t (a, b) VALUES ", 2, 3))
+                .isEqualTo("INSERT INTO t (a, b) VALUES (?, ?), (?, ?), (?, ?)");
+    }
+
+    @Test
+    void treatsOnlyDataAndConstraintErrorsAsRejections() {
+        assertThat(JdbcDiaryStore.isDataError(new SQLException("nul", "22021"))).isTrue();
+        assertThat(JdbcDiaryStore.isDataError(new SQLException("not null", "23502"))).isTrue();
+        assertThat(JdbcDiaryStore.isDataError(new SQLException("connection", "08006"))).isFalse();
+
+        // 배치 오류는 바깥 예외의 SQLState가 비어 있고 원인이 next exception에 달려 있다.
+        SQLException batch = new SQLException("batch entry 0 was aborted");
+        batch.setNextException(new SQLException("too long", "22001"));
+        assertThat(JdbcDiaryStore.isDataError(batch)).isTrue();
+    }
+}
@@ -0,0 +1,33 @@
+package com.dalmuri.socket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatControlFrameTest {
+
+    @Test
+    void readsSinceAndHistoryOfReplay() {
+        ChatControlFrame frame = ChatControlFrame.peek(
+                "{\"type\":\"replay\",\"room\":\"lobby\",\"since\":120,\"history\":\"node-a\"}");
+
+        assertThat(frame).isEqualTo(new ChatControlFrame("replay", "lobby", 120, "node-a"));
+        assertThat(frame.wantsReplay()).isTrue();
+    }
+
+    @Test
+    void historyIsOptional() {
+        ChatControlFrame frame = ChatControlFrame.peek("{\"type\":\"join\",\"room\":\"lobby\",\"since\":3}");
+
+        assertThat(frame.history()).isNull();
+        assertThat(frame.since()).isEqualTo(3);
+    }
+
+    @Test
+    void ordinaryMessagesStopAfterTypeAndRoom() {
+        ChatControlFrame frame = ChatControlFrame.peek(
+                "{\"type\":\"message\",\"room\":\"lobby\",\"history\":\"ignored\",\"text\":\"hi\"}");
+
+        assertThat(frame).isEqualTo(new ChatControlFrame("message", "lobby", ChatControlFrame.NO_REPLAY, null));
+    }
+}
@@ -0,0 +1,73 @@
+package com.dalmuri.socket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatEnvelopeTest {
+
+    @Test
+    void roundTripsHeaderAndBody() {
+        ByteBuffer body = ByteBuffer.wrap("{\"text\":\"안녕\"}".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer frame = ChatEnvelope.encode(ChatEnvelope.MESSAGE, "lobby", "user-1", 42, body);
+
+        ChatEnvelope envelope = new ChatEnvelope();
+
+        assertThat(ChatEnvelope.isEnvelope(frame)).isTrue();
+        assertThat(envelope.wrap(frame)).isTrue();
+        assertThat(envelope.type()).isEqualTo(ChatEnvelope.MESSAGE);
+        assertThat(envelope.room()).isEqualTo("lobby");
+        assertThat(envelope.sender()).isEqualTo("user-1");
+        assertThat(envelope.seq()).isEqualTo(42);
+        assertThat(envelope.bodyText()).isEqualTo("{\"text\":\"안녕\"}");
+        assertThat(frame.position()).isZero();
+        assertThat(body.position()).isZero();
+    }
+
+    @Test
+    void readsFromANonZeroPositionWithoutCopying() {
+        ByteBuffer media = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        ByteBuffer encoded = ChatEnvelope.encode(ChatEnvelope.MEDIA, null, "", 0, media);
+        ByteBuffer frame = ByteBuffer.allocate(encoded.remaining() + 3).position(3);
+        frame.put(encoded).position(3);
+
+        ChatEnvelope envelope = new ChatEnvelope();
+
+        assertThat(envelope.wrap(frame)).isTrue();
+        assertThat(envelope.room()).isNull();
+        assertThat(envelope.body().remaining()).isEqualTo(4);
+        assertThat(envelope.body().get(3)).isEqualTo((byte) 4);
+    }
+
+    @Test
+    void reusesOneInstanceAcrossFrames() {
+        ChatEnvelope envelope = new ChatEnvelope();
+        ByteBuffer first = ChatEnvelope.encode(ChatEnvelope.MESSAGE, "lobby", "kim", 1, ByteBuffer.wrap("하나".getBytes(StandardCharsets.UTF_8)));
+        ByteBuffer second = ChatEnvelope.encode(ChatEnvelope.TYPING, null, "lee", 0, ByteBuffer.allocate(0));
+
+        assertThat(envelope.wrap(first)).isTrue();
+        assertThat(envelope.bodyText()).isEqualTo("하나");
+        envelope.release();
+
+        assertThat(envelope.wrap(second)).isTrue();
+        assertThat(envelope.type()).isEqualTo(ChatEnvelope.TYPING);
+        assertThat(envelope.room()).isNull();
+        assertThat(envelope.sender()).isEqualTo("lee");
+        assertThat(envelope.bodyLength()).isZero();
+        assertThat(envelope.wrap(ByteBuffer.wrap(new byte[3]))).isFalse();
+    }
+
+    @Test
+    void rejectsTruncatedFramesAndUnknownVersions() {
+        ByteBuffer frame = ChatEnvelope.encode(ChatEnvelope.MESSAGE, "lobby", "a", 1, ByteBuffer.wrap(new byte[10]));
+        ChatEnvelope envelope = new ChatEnvelope();
+
+        assertThat(envelope.wrap(frame.slice(0, frame.remaining() - 1))).isFalse();
+
+        frame.put(4, (byte) (ChatEnvelope.VERSION + 1));
+        assertThat(envelope.wrap(frame)).isFalse();
+    }
+}
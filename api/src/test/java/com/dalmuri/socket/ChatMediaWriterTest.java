@@ -0,0 +1,113 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.dmr.common.media.ThumbnailService;
+import com.dalmuri.dmr.common.upload.UploadMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatMediaWriterTest {
+
+    @TempDir
+    Path root;
+
+    private ThumbnailService thumbnailService;
+    private ChatMediaWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.destroy();
+        }
+        if (thumbnailService != null) {
+            thumbnailService.destroy();
+        }
+    }
+
+    @Test
+    void refusesMediaWhilePendingBytesWouldPassTheLimit() throws Exception {
+        BlockingMediaStore store = new BlockingMediaStore(root);
+        writer = writer(store, DataSize.ofBytes(100));
+
+        // 첫 번째 쓰기가 디스크 앞에서 멈춰 있는 동안 : 60 + 60 > 100 이므로 두 번째는 받지 않는다.
+        CompletableFuture<MediaStore.StoredMedia> first = writer.persist(ByteBuffer.wrap(new byte[60]));
+        assertThat(store.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThatThrownBy(() -> writer.persist(ByteBuffer.wrap(new byte[60])))
+                .isInstanceOf(RejectedExecutionException.class);
+        CompletableFuture<MediaStore.StoredMedia> small = writer.persist(ByteBuffer.wrap(new byte[40]));
+
+        assertThat(writer.pendingBytes()).isEqualTo(100);
+        assertThat(writer.rejectedCount()).isEqualTo(1);
+
+        // 쓰기가 끝나면 자리가 돌아온다.
+        store.release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        small.get(5, TimeUnit.SECONDS);
+        assertThat(writer.pendingBytes()).isZero();
+        writer.persist(ByteBuffer.wrap(new byte[60])).get(5, TimeUnit.SECONDS);
+        assertThat(writer.rejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givesBackReservedBytesWhenWriteFails() throws Exception {
+        MediaStore failing = new MediaStore(root.toString()) {
+            @Override
+            public StoredMedia put(ByteBuffer content) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        writer = writer(failing, DataSize.ofBytes(100));
+
+        CompletableFuture<MediaStore.StoredMedia> failed = writer.persist(ByteBuffer.wrap(new byte[80]));
+
+        assertThat(failed).failsWithin(5, TimeUnit.SECONDS);
+        assertThat(writer.pendingBytes()).isZero();
+    }
+
+    private ChatMediaWriter writer(MediaStore store, DataSize maxPending) {
+        ChatProperties properties = new ChatProperties();
+        properties.getUpload().setMaxPendingMedia(maxPending);
+        thumbnailService = new ThumbnailService(store, new MediaProperties());
+        return new ChatMediaWriter(store, thumbnailService, new UploadMetrics(new SimpleMeterRegistry()), properties);
+    }
+
+    // 첫 쓰기를 디스크 앞에서 멈춰서 쓰기 대기 중인 바이트를 만든다.
+    private static final class BlockingMediaStore extends MediaStore {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingMediaStore(Path root) {
+            super(root.toString());
+        }
+
+        @Override
+        public StoredMedia put(ByteBuffer content) throws IOException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return super.put(content);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ChatMetrics metrics;
+
+    ChatMetricsTest() {
+        ChatProperties properties = new ChatProperties();
+        properties.getMetrics().setRoomRefreshInterval(Duration.ZERO);
+        metrics = new ChatMetrics(registry, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        metrics.destroy();
+    }
+
+    @Test
+    void countsUtf8BytesPerRecipient() {
+        ChatMetrics.Handler meters = metrics.handler(ChatMetrics.TEXT, null);
+        String payload = "{\"text\":\"안녕 👋\"}";
+
+        meters.relayedText(System.nanoTime(), 3, payload);
+
+        int bytes = payload.getBytes(StandardCharsets.UTF_8).length;
+        assertThat(registry.get("chat.relayed.bytes").tags("handler", "text", "kind", "text").counter().count())
+                .isEqualTo(3.0 * bytes);
+        assertThat(registry.get("chat.relayed.messages").tags("handler", "text", "kind", "text").counter().count())
+                .isEqualTo(3.0);
+        assertThat(registry.get("chat.fanout").tag("handler", "text").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void tracksOpenSessionsPerHandler() {
+        ChatMetrics.Handler media = metrics.handler(ChatMetrics.MEDIA, null);
+        ChatMetrics.Handler diary = metrics.handler(ChatMetrics.DIARY, null);
+
+        media.opened();
+        media.opened();
+        diary.opened();
+        media.closed();
+
+        assertThat(registry.get("chat.sessions").tag("handler", "media").gauge().value()).isEqualTo(1.0);
+        assertThat(registry.get("chat.sessions").tag("handler", "diary").gauge().value()).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,178 @@
+package com.dalmuri.socket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatSessionRegistryTest {
+
+    private static final int THREADS = 8;
+    private static final int SESSIONS_PER_THREAD = 200;
+    private static final List<String> ROOMS = List.of("a", "b", "c", "d");
+
+    private final ChatSessionRegistry registry = new ChatSessionRegistry();
+
+    @Test
+    void replacesEarlierSessionOfTheSameUser() {
+        WebSocketSession first = session("ws://host/chat?id=kim&room=study");
+        WebSocketSession second = session("ws://host/chat?id=kim&room=study");
+
+        assertThat(registry.register(first)).isNull();
+        assertThat(registry.register(second)).isSameAs(first);
+        assertThat(registry.findByUser("kim")).isSameAs(second);
+        assertThat(registry.size()).isEqualTo(1);
+
+        // 밀려난 세션이 나중에 닫혀도 새 세션의 색인은 그대로
+        registry.unregister(first);
+        assertThat(registry.findByUser("kim")).isSameAs(second);
+        assertThat(registry.membersOf("study")).containsExactly(second);
+
+        registry.unregister(second);
+        assertThat(registry.findByUser("kim")).isNull();
+        assertThat(registry.roomCount()).isZero();
+    }
+
+    @Test
+    void keysAnonymousSessionsBySessionId() {
+        WebSocketSession first = session("ws://host/chat");
+        WebSocketSession second = session("ws://host/chat?id=%20&room=");
+
+        assertThat(registry.register(first)).isNull();
+        assertThat(registry.register(second)).isNull(); // 익명끼리는 서로 끊지 않는다.
+
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(ChatSessionRegistry.userIdOf(first)).isEqualTo(ChatSessionRegistry.ANONYMOUS);
+        assertThat(ChatSessionRegistry.userIdOf(second)).isEqualTo(ChatSessionRegistry.ANONYMOUS);
+        assertThat(registry.findByUser(ChatSessionRegistry.ANONYMOUS)).isNull();
+        assertThat(registry.membersOf(ChatSessionRegistry.DEFAULT_ROOM)).containsExactlyInAnyOrder(first, second);
+
+        registry.unregister(first);
+        assertThat(registry.size()).isEqualTo(1);
+        assertThat(registry.membersOf(ChatSessionRegistry.DEFAULT_ROOM)).containsExactly(second);
+    }
+
+    @Test
+    void decodesQueryAndFallsBackToLobbyForInvalidRoom() {
+        WebSocketSession session = session("ws://host/chat?id=%EA%B9%80&room=" + "x".repeat(ChatSessionRegistry.MAX_ROOM_ID_LENGTH + 1));
+
+        registry.register(session);
+
+        assertThat(ChatSessionRegistry.userIdOf(session)).isEqualTo("김");
+        assertThat(registry.findByUser("김")).isSameAs(session);
+        assertThat(ChatSessionRegistry.roomsOf(session)).containsExactly(ChatSessionRegistry.DEFAULT_ROOM);
+    }
+
+    @Test
+    void joinsAndLeavesRoomsAndMergesAudience() {
+        WebSocketSession kim = session("ws://host/chat?id=kim&room=a");
+        WebSocketSession lee = session("ws://host/chat?id=lee&room=a");
+        WebSocketSession park = session("ws://host/chat?id=park&room=b");
+        registry.register(kim);
+        registry.register(lee);
+        registry.register(park);
+
+        assertThat(registry.join(kim, "b")).isTrue();
+        assertThat(registry.join(kim, "b")).isFalse();
+        assertThat(registry.join(lee, "b")).isTrue();
+
+        // 두 방에 같이 있는 lee도 한 번만
+        assertThat(registry.audienceOf(kim, null)).containsExactlyInAnyOrder(kim, lee, park);
+        assertThat(registry.audienceOf(park, "b")).containsExactlyInAnyOrder(kim, lee, park);
+        assertThat(registry.audienceOf(park, "a")).isEmpty(); // 들어가 있지 않은 방
+
+        assertThat(registry.leave(park, "b")).isTrue();
+        assertThat(registry.leave(park, "b")).isFalse();
+        assertThat(registry.leave(kim, "a")).isTrue();
+        assertThat(registry.leave(lee, "a")).isTrue();
+        assertThat(registry.membersOf("a")).isEmpty();
+        assertThat(registry.roomCount()).isEqualTo(1); // 빈 방은 지운다.
+    }
+
+    @Test
+    void keepsRoomIndexConsistentUnderConcurrentConnectAndDisconnect() throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<List<WebSocketSession>>> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    // 스레드마다 접속 → 방 옮기기 → 절반은 접속 종료. 같은 방들을 동시에 건드린다.
+                    List<WebSocketSession> kept = new ArrayList<>();
+                    for (int i = 0; i < SESSIONS_PER_THREAD; i++) {
+                        String room = ROOMS.get(i % ROOMS.size());
+                        WebSocketSession session = session("ws://host/chat?id=u" + thread + "-" + i + "&room=" + room);
+                        registry.register(session);
+                        registry.join(session, ROOMS.get((i + 1) % ROOMS.size()));
+                        if (i % 3 == 0) {
+                            registry.leave(session, room);
+                        }
+                        if (i % 2 == 0) {
+                            registry.unregister(session);
+                        } else {
+                            kept.add(session);
+                        }
+                    }
+                    return kept;
+                }));
+            }
+            for (Future<List<WebSocketSession>> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, Set<WebSocketSession>> expected = new HashMap<>();
+        int kept = 0;
+        for (Future<List<WebSocketSession>> result : results) {
+            for (WebSocketSession session : result.get()) {
+                kept++;
+                for (String room : ChatSessionRegistry.roomsOf(session)) {
+                    expected.computeIfAbsent(room, key -> new HashSet<>()).add(session);
+                }
+            }
+        }
+
+        assertThat(registry.size()).isEqualTo(kept);
+        assertThat(registry.roomCount()).isEqualTo(expected.size());
+        for (String room : ROOMS) {
+            assertThat(registry.membersOf(room)).as(room)
+                    .containsExactlyInAnyOrderElementsOf(expected.getOrDefault(room, Set.of()));
+        }
+
+        // 남은 세션이 모두 나가면 색인도 비어야 한다.
+        for (Future<List<WebSocketSession>> result : results) {
+            result.get().forEach(registry::unregister);
+        }
+        assertThat(registry.size()).isZero();
+        assertThat(registry.roomCount()).isZero();
+    }
+
+    private static WebSocketSession session(String uri) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getId()).thenReturn(UUID.randomUUID().toString());
+        when(session.getUri()).thenReturn(URI.create(uri));
+        return session;
+    }
+}
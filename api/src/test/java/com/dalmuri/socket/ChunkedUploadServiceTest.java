@@ -0,0 +1,236 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.config.MediaProperties;
+import com.dalmuri.dmr.common.media.MediaStore;
+import com.dalmuri.dmr.common.media.ThumbnailService;
+import com.dalmuri.dmr.common.upload.UploadMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChunkedUploadServiceTest {
+
+    // 청크 4바이트, window 4 → ack는 청크 2개마다
+    private static final byte[] CONTENT = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path root;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatProperties properties = new ChatProperties();
+    private MediaStore mediaStore;
+    private ThumbnailService thumbnailService;
+    private ChunkedUploadService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+        if (thumbnailService != null) {
+            thumbnailService.destroy();
+        }
+    }
+
+    @Test
+    void acksEveryHalfWindowAndCompletesWhenAllBytesArrive() throws Exception {
+        WebSocketSession session = session("kim");
+        UUID id = transferId(start(session, CONTENT, null));
+
+        assertThat(chunk(session, id, 0, 0, 4).reply()).isNull();
+        JsonNode ack = json(chunk(session, id, 4, 4, 8).reply());
+        assertThat(ack.path("type").asText()).isEqualTo("upload-ack");
+        assertThat(ack.path("offset").asLong()).isEqualTo(8);
+        assertThat(chunk(session, id, 8, 8, 12).reply()).isNull();
+
+        ChunkedUploadService.UploadResult done = chunk(session, id, 12, 12, 16);
+
+        JsonNode complete = json(done.reply());
+        assertThat(complete.path("type").asText()).isEqualTo("upload-complete");
+        assertThat(complete.path("name").asText()).isEqualTo(sha256(CONTENT) + ".bin");
+        assertThat(Files.readAllBytes(mediaStore.resolve(complete.path("name").asText()))).isEqualTo(CONTENT);
+        assertThat(json(done.announcement()).path("from").asText()).isEqualTo("kim");
+        assertThat(service.activeTransfers()).isZero();
+    }
+
+    @Test
+    void answersOutOfOrderChunkWithCommittedOffset() throws Exception {
+        WebSocketSession session = session("kim");
+        UUID id = transferId(start(session, CONTENT, null));
+        chunk(session, id, 0, 0, 4);
+
+        // 중간이 빈 청크, 이미 받은 청크 : 쓰지 않고 받은 곳(4)을 알려준다.
+        assertThat(json(chunk(session, id, 8, 8, 12).reply()).path("offset").asLong()).isEqualTo(4);
+        assertThat(json(chunk(session, id, 0, 0, 4).reply()).path("offset").asLong()).isEqualTo(4);
+
+        chunk(session, id, 4, 4, 8);
+        chunk(session, id, 8, 8, 12);
+        assertThat(json(chunk(session, id, 12, 12, 16).reply()).path("type").asText()).isEqualTo("upload-complete");
+    }
+
+    @Test
+    void resumesFromCommittedOffsetByTransferIdOrContent() throws Exception {
+        WebSocketSession first = session("kim");
+        UUID id = transferId(start(first, CONTENT, null));
+        chunk(first, id, 0, 0, 4);
+        chunk(first, id, 4, 4, 8);
+
+        // 다시 연결한 소켓에서 transferId로
+        WebSocketSession second = session("kim");
+        JsonNode byId = json(start(second, CONTENT, id).reply());
+        assertThat(byId.path("transferId").asText()).isEqualTo(id.toString());
+        assertThat(byId.path("offset").asLong()).isEqualTo(8);
+
+        // transferId를 잃어버렸으면 같은 size + sha256으로
+        JsonNode byContent = json(start(second, CONTENT, null).reply());
+        assertThat(byContent.path("transferId").asText()).isEqualTo(id.toString());
+        assertThat(byContent.path("offset").asLong()).isEqualTo(8);
+
+        // 다른 사람은 이어 받을 수 없다.
+        JsonNode stranger = json(start(session("lee"), CONTENT, id).reply());
+        assertThat(stranger.path("transferId").asText()).isNotEqualTo(id.toString());
+        assertThat(stranger.path("offset").asLong()).isZero();
+    }
+
+    @Test
+    void discardsTransferWhoseSha256DoesNotMatch() throws Exception {
+        WebSocketSession session = session("kim");
+        byte[] claimed = "fedcba9876543210".getBytes(StandardCharsets.US_ASCII);
+        UUID id = transferId(start(session, claimed, null));
+
+        chunk(session, id, 0, 0, 4);
+        chunk(session, id, 4, 4, 8);
+        chunk(session, id, 8, 8, 12);
+        JsonNode error = json(chunk(session, id, 12, 12, 16).reply());
+
+        assertThat(error.path("type").asText()).isEqualTo("upload-error");
+        assertThat(error.path("message").asText()).isEqualTo("sha256 mismatch");
+        assertThat(service.activeTransfers()).isZero();
+        assertThat(json(chunk(session, id, 0, 0, 4).reply()).path("message").asText()).isEqualTo("unknown transfer");
+    }
+
+    @Test
+    void capsOpenTransfersPerOwner() throws Exception {
+        properties.getUpload().setMaxTransfersPerOwner(2);
+        WebSocketSession kim = session("kim");
+        start(kim, "a".getBytes(StandardCharsets.US_ASCII), null);
+        start(kim, "b".getBytes(StandardCharsets.US_ASCII), null);
+
+        JsonNode third = json(start(kim, "c".getBytes(StandardCharsets.US_ASCII), null).reply());
+        assertThat(third.path("message").asText()).isEqualTo("too many transfers");
+        // 이어 올리기는 새 자리가 필요 없다. 다른 사람은 따로 센다.
+        assertThat(json(start(kim, "a".getBytes(StandardCharsets.US_ASCII), null).reply()).path("type").asText())
+                .isEqualTo("upload-ack");
+        assertThat(json(start(session("lee"), "c".getBytes(StandardCharsets.US_ASCII), null).reply()).path("type").asText())
+                .isEqualTo("upload-ack");
+
+        // 끝난 전송은 자리를 돌려준다.
+        UUID a = transferId(start(kim, "a".getBytes(StandardCharsets.US_ASCII), null));
+        chunk(kim, a, 0, "a".getBytes(StandardCharsets.US_ASCII));
+        assertThat(json(start(kim, "c".getBytes(StandardCharsets.US_ASCII), null).reply()).path("type").asText())
+                .isEqualTo("upload-ack");
+    }
+
+    @Test
+    void expiresIdleTransfersButNotOnesTouchedSince() throws Exception {
+        properties.getUpload().setIdleTimeout(Duration.ofMillis(50));
+        WebSocketSession session = session("kim");
+        UUID idle = transferId(start(session, CONTENT, null));
+        UUID busy = transferId(start(session, "other".getBytes(StandardCharsets.US_ASCII), null));
+
+        Thread.sleep(80);
+        chunk(session, busy, 0, "ot".getBytes(StandardCharsets.US_ASCII));
+        service.expireIdle();
+
+        assertThat(service.activeTransfers()).isEqualTo(1);
+        assertThat(json(chunk(session, idle, 0, 0, 4).reply()).path("message").asText()).isEqualTo("unknown transfer");
+
+        // 만료된 transferId로 다시 시작하면 처음부터 새 전송
+        JsonNode restarted = json(start(session, CONTENT, idle).reply());
+        assertThat(restarted.path("transferId").asText()).isNotEqualTo(idle.toString());
+        assertThat(restarted.path("offset").asLong()).isZero();
+    }
+
+    private ChunkedUploadService.UploadResult start(WebSocketSession session, byte[] content, UUID transferId) throws Exception {
+        if (service == null) {
+            properties.getUpload().setChunkSize(DataSize.ofBytes(4));
+            properties.getUpload().setWindow(4);
+            mediaStore = new MediaStore(root.toString());
+            thumbnailService = new ThumbnailService(mediaStore, new MediaProperties());
+            service = new ChunkedUploadService(mediaStore, thumbnailService, objectMapper, properties,
+                    new UploadMetrics(new SimpleMeterRegistry()));
+        }
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", ChunkedUploadService.START);
+        frame.put("size", content.length);
+        frame.put("sha256", sha256(content));
+        if (transferId != null) {
+            frame.put("transferId", transferId.toString());
+        }
+        return service.start(session, objectMapper.writeValueAsString(frame));
+    }
+
+    private ChunkedUploadService.UploadResult chunk(WebSocketSession session, UUID id, long offset, int from, int to) {
+        byte[] data = new byte[to - from];
+        System.arraycopy(CONTENT, from, data, 0, data.length);
+        return chunk(session, id, offset, data);
+    }
+
+    private ChunkedUploadService.UploadResult chunk(WebSocketSession session, UUID id, long offset, byte[] data) {
+        ByteBuffer frame = ByteBuffer.allocate(ChunkedUploadService.HEADER_LENGTH + data.length);
+        frame.putInt(ChunkedUploadService.MAGIC)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .putLong(offset)
+                .put(data)
+                .flip();
+        assertThat(ChunkedUploadService.isChunk(frame)).isTrue();
+        return service.chunk(session, frame);
+    }
+
+    private UUID transferId(ChunkedUploadService.UploadResult result) throws Exception {
+        JsonNode ack = json(result.reply());
+        assertThat(ack.path("type").asText()).isEqualTo("upload-ack");
+        return UUID.fromString(ack.path("transferId").asText());
+    }
+
+    private JsonNode json(TextMessage message) throws Exception {
+        return objectMapper.readTree(message.getPayload());
+    }
+
+    private static WebSocketSession session(String user) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ChatSessionRegistry.USER_ID, user);
+        attributes.put(ChatSessionRegistry.USER_KEY, user);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getId()).thenReturn(UUID.randomUUID().toString());
+        return session;
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
@@ -0,0 +1,123 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.dmr.web.diary.model.DiaryResponseDTO;
+import com.dalmuri.dmr.web.diary.service.DiaryService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DiarySentimentHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DiaryService diaryService = mock(DiaryService.class);
+    private final SessionOutbound outbound = mock(SessionOutbound.class);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+    private ChatMetrics metrics;
+    private DiarySentimentHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ChatProperties properties = new ChatProperties();
+        properties.getMetrics().setRoomRefreshInterval(Duration.ZERO);
+        metrics = new ChatMetrics(new SimpleMeterRegistry(), properties);
+        handler = new DiarySentimentHandler(diaryService, objectMapper, outbound, mock(SessionHeartbeat.class), metrics);
+
+        Map<String, Object> attributes = new HashMap<>();
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getId()).thenReturn("s1");
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(1);
+            frames.add((String) message.getPayload());
+            return true;
+        }).when(outbound).send(any(), any());
+        handler.afterConnectionEstablished(session);
+    }
+
+    @AfterEach
+    void tearDown() {
+        metrics.destroy();
+    }
+
+    @Test
+    void keepsFailedSentencesPendingAndRetriesThemOnNextFrame() throws Exception {
+        when(diaryService.scoreOrNull(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+
+        handler.handleTextMessage(session, reset("좋았다. 싫었다."));
+
+        JsonNode failed = lastFrame();
+        assertThat(failed.path("pending").asInt()).isEqualTo(2);
+        assertThat(failed.path("failed").asInt()).isEqualTo(2);
+        assertThat(failed.path("score").floatValue()).isZero();
+
+        when(diaryService.scoreOrNull(anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new DiaryResponseDTO(0.8f, 1.0f)));
+        // 내용이 그대로인 편집이라도 실패한 문장은 다시 분석한다.
+        handler.handleTextMessage(session, new TextMessage("{\"type\":\"edit\",\"offset\":0,\"deleteCount\":0,\"insert\":\"\"}"));
+
+        JsonNode scored = lastFrame();
+        assertThat(scored.path("pending").asInt()).isZero();
+        assertThat(scored.path("failed").asInt()).isZero();
+        assertThat(scored.path("sentences").asInt()).isEqualTo(2);
+        assertThat(scored.path("score").floatValue()).isEqualTo(0.8f);
+    }
+
+    @Test
+    void limitsSentencesInFlightPerSession() throws Exception {
+        Map<String, CompletableFuture<DiaryResponseDTO>> calls = new ConcurrentHashMap<>();
+        when(diaryService.scoreOrNull(anyString())).thenAnswer(invocation -> {
+            CompletableFuture<DiaryResponseDTO> future = new CompletableFuture<>();
+            calls.put(invocation.getArgument(0), future);
+            return future;
+        });
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("문장").append(i).append(". ");
+        }
+        handler.handleTextMessage(session, reset(text.toString()));
+
+        assertThat(calls).hasSize(DiarySentimentHandler.MAX_IN_FLIGHT);
+
+        // 하나가 끝나면 하나가 더 나간다.
+        calls.get("문장0.").complete(new DiaryResponseDTO(0.5f, 1.0f));
+        assertThat(calls).hasSize(DiarySentimentHandler.MAX_IN_FLIGHT + 1);
+
+        // 끝날 때마다 다음 문장이 나가므로 순서대로 끝내면 10개 모두 한 번씩 호출된다.
+        for (int i = 1; i < 10; i++) {
+            calls.get("문장" + i + ".").complete(new DiaryResponseDTO(0.5f, 1.0f));
+        }
+        assertThat(calls).hasSize(10);
+        assertThat(lastFrame().path("pending").asInt()).isZero();
+    }
+
+    private static TextMessage reset(String text) {
+        return new TextMessage("{\"type\":\"reset\",\"text\":\"" + text + "\"}");
+    }
+
+    private JsonNode lastFrame() throws Exception {
+        return objectMapper.readTree(frames.get(frames.size() - 1));
+    }
+}
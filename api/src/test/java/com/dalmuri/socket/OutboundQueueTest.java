@@ -0,0 +1,158 @@
+package com.dalmuri.socket;
+
+import com.dalmuri.config.ChatProperties;
+import com.dalmuri.config.ChatProperties.OverflowPolicy;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundQueueTest {
+
+    private static final int THREADS = 8;
+
+    private final SessionOutbound.Stats stats = new SessionOutbound.Stats();
+    private final WebSocketSession session = mock(WebSocketSession.class);
+
+    @Test
+    void chatDefaultsToDisconnectOnOverflow() {
+        assertThat(new ChatProperties().getOutbound().getOverflowPolicy()).isEqualTo(OverflowPolicy.DISCONNECT);
+    }
+
+    @Test
+    void disconnectsWhenSendFinishesOverTimeLimitWithoutNewOffers() throws Exception {
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            Thread.sleep(50);
+            return null;
+        }).when(session).sendMessage(any());
+        // 전송 스레드를 테스트 스레드로 돌려서 drain()이 끝난 뒤에 확인한다.
+        OutboundQueue queue = new OutboundQueue(session, Runnable::run, stats,
+                TimeUnit.MILLISECONDS.toNanos(10), 1024, 10, OverflowPolicy.DROP);
+
+        queue.offer(new TextMessage("first"));
+
+        verify(session).close(any(CloseStatus.class));
+        assertThat(stats.disconnected.sum()).isEqualTo(1);
+        assertThat(queue.offer(new TextMessage("second"))).isFalse();
+    }
+
+    @Test
+    void keepsSendingWhileUnderTimeLimit() throws Exception {
+        when(session.isOpen()).thenReturn(true);
+        OutboundQueue queue = new OutboundQueue(session, Runnable::run, stats,
+                TimeUnit.SECONDS.toNanos(5), 1024, 10, OverflowPolicy.DROP);
+
+        queue.offer(new TextMessage("first"));
+        queue.offer(new TextMessage("second"));
+
+        verify(session, times(2)).sendMessage(any());
+        verify(session, never()).close(any(CloseStatus.class));
+        assertThat(stats.sent.sum()).isEqualTo(2);
+    }
+
+    @Test
+    void neverQueuesPastLimitsUnderConcurrentOffers() throws Exception {
+        when(session.isOpen()).thenReturn(true);
+        for (int round = 0; round < 50; round++) {
+            SessionOutbound.Stats roundStats = new SessionOutbound.Stats();
+            // 전송자를 돌리지 않아서 넣은 메시지가 그대로 쌓인다.
+            OutboundQueue queue = new OutboundQueue(session, task -> { }, roundStats,
+                    TimeUnit.SECONDS.toNanos(5), 1024, 1, OverflowPolicy.DROP);
+            // 여러 스레드가 크기를 읽은 뒤 거의 동시에 자리를 확인하게 맞춘다.
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+            runConcurrently(() -> queue.offer(new HookedMessage("hello", () -> {
+                try {
+                    barrier.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            })));
+
+            assertThat(queue.depth()).isEqualTo(1);
+            assertThat(queue.bufferedBytes()).isEqualTo(5);
+            assertThat(roundStats.dropped.sum()).isEqualTo(THREADS - 1);
+        }
+    }
+
+    @Test
+    void takesBackMessageQueuedWhileClosing() {
+        when(session.isOpen()).thenReturn(true);
+        OutboundQueue queue = new OutboundQueue(session, task -> { }, stats,
+                TimeUnit.SECONDS.toNanos(5), 1024, 10, OverflowPolicy.DROP);
+
+        // closed를 확인한 뒤, 대기열에 넣기 전에 close()가 끼어든 경우
+        boolean accepted = queue.offer(new HookedMessage("hello", queue::close));
+
+        assertThat(accepted).isFalse();
+        assertThat(queue.depth()).isZero();
+        assertThat(queue.bufferedBytes()).isZero();
+        assertThat(stats.queued.get()).isZero();
+    }
+
+    private static void runConcurrently(Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // offer()가 처음 크기를 읽을 때 hook을 한 번 실행한다. (경쟁 상황을 정해진 순서로 만들기 위해)
+    private static final class HookedMessage implements WebSocketMessage<String> {
+
+        private final String payload;
+        private Runnable hook;
+
+        HookedMessage(String payload, Runnable hook) {
+            this.payload = payload;
+            this.hook = hook;
+        }
+
+        @Override
+        public String getPayload() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            Runnable once = hook;
+            hook = null;
+            if (once != null) {
+                once.run();
+            }
+            return payload.length();
+        }
+
+        @Override
+        public boolean isLast() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.dalmuri.socket.broker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalChatBrokerTest {
+
+    @Test
+    void deliversOnlyToOtherNodesHostingTheRoom() {
+        LocalChatBroker.Bus bus = new LocalChatBroker.Bus();
+        Node a = new Node(new LocalChatBroker(bus), "lobby");
+        Node b = new Node(new LocalChatBroker(bus), "lobby");
+        Node c = new Node(new LocalChatBroker(bus), "other");
+
+        a.broker.publish(BrokerMessage.text(a.broker.nodeId(), "lobby", "hello"));
+
+        assertThat(a.received).isEmpty();
+        assertThat(b.received).extracting(BrokerMessage::text).containsExactly("hello");
+        assertThat(c.received).isEmpty();
+    }
+
+    @Test
+    void unsubscribesWhenLastMemberLeaves() {
+        LocalChatBroker.Bus bus = new LocalChatBroker.Bus();
+        Node a = new Node(new LocalChatBroker(bus), "lobby");
+        Node b = new Node(new LocalChatBroker(bus), "lobby");
+
+        b.rooms.remove("lobby");
+        b.broker.membershipChanged("lobby");
+        a.broker.publish(BrokerMessage.text(a.broker.nodeId(), "lobby", "anyone?"));
+
+        assertThat(b.broker.subscribedRooms()).isEmpty();
+        assertThat(b.received).isEmpty();
+    }
+
+    @Test
+    void knowsWhetherOtherNodesHostTheRoom() {
+        LocalChatBroker.Bus bus = new LocalChatBroker.Bus();
+        Node a = new Node(new LocalChatBroker(bus), "lobby");
+        Node b = new Node(new LocalChatBroker(bus), "other");
+
+        assertThat(a.broker.hasRemoteMembers("lobby")).isFalse();
+        assertThat(a.broker.hasRemoteMembers("other")).isTrue();
+        assertThat(b.broker.hasRemoteMembers("nobody")).isFalse();
+    }
+
+    private static final class Node implements ChatBroker.Receiver {
+
+        final LocalChatBroker broker;
+        final Set<String> rooms = new HashSet<>();
+        final List<BrokerMessage> received = new ArrayList<>();
+
+        Node(LocalChatBroker broker, String room) {
+            this.broker = broker;
+            broker.attach(this);
+            rooms.add(room);
+            broker.membershipChanged(room);
+        }
+
+        @Override
+        public boolean hosts(String room) {
+            return rooms.contains(room);
+        }
+
+        @Override
+        public void receive(BrokerMessage message) {
+            received.add(message);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.dalmuri.socket.broker;
+
+import com.dalmuri.config.ChatProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.util.unit.DataSize;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresChatBrokerPostgresTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private final List<PostgresChatBroker> brokers = new ArrayList<>();
+    // 테스트끼리 같은 DB를 쓰므로 방 이름을 따로 둔다. (앞 테스트의 구독 줄과 섞이지 않게)
+    private final String lobby = "lobby-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        brokers.forEach(PostgresChatBroker::close);
+    }
+
+    @Test
+    void deliversInlineAndTableMessagesToTheOtherNode() throws Exception {
+        Node a = node(lobby);
+        Node b = node(lobby);
+        await(() -> a.broker.subscribedRooms() == 1 && b.broker.subscribedRooms() == 1);
+
+        // inline-limit 200B : 짧은 메시지는 NOTIFY 본문에 (t), 긴 메시지는 테이블을 거친다. (T)
+        String small = "{\"type\":\"message\",\"text\":\"안녕\\n줄바꿈\"}";
+        String large = "{\"type\":\"message\",\"text\":\"" + "가".repeat(1_000) + "\"}";
+        a.broker.publish(BrokerMessage.text(a.broker.nodeId(), lobby, small));
+        a.broker.publish(BrokerMessage.text(a.broker.nodeId(), lobby, large));
+
+        await(() -> b.received.size() == 2);
+        assertThat(b.received).extracting(BrokerMessage::text).containsExactly(small, large);
+        assertThat(b.received).extracting(BrokerMessage::origin).containsOnly(a.broker.nodeId());
+        assertThat(b.received).extracting(BrokerMessage::room).containsOnly(lobby);
+        assertThat(count("SELECT count(*) FROM chat_broker_payload")).isPositive();
+        // 자기가 보낸 메시지는 다시 받지 않는다.
+        assertThat(a.received).isEmpty();
+        await(() -> a.broker.publishedCount() == 2);
+    }
+
+    @Test
+    void tracksWhichRoomsOtherNodesListenTo() throws Exception {
+        Node a = node(lobby);
+        Node b = node(lobby);
+        await(() -> a.broker.hasRemoteMembers(lobby) && !a.broker.hasRemoteMembers("other"));
+        assertThat(count("SELECT count(*) FROM chat_broker_listener WHERE channel = '"
+                + PostgresChatBroker.channelOf(lobby) + "'")).isEqualTo(2);
+
+        // b의 마지막 사람이 나감 → UNLISTEN + 줄 삭제 → a는 더 이상 lobby를 publish할 필요가 없다.
+        b.rooms.remove(lobby);
+        b.broker.membershipChanged(lobby);
+        await(() -> b.broker.subscribedRooms() == 0 && !a.broker.hasRemoteMembers(lobby));
+
+        // 다시 들어오면 다시 LISTEN
+        b.rooms.add(lobby);
+        b.broker.membershipChanged(lobby);
+        await(() -> a.broker.hasRemoteMembers(lobby));
+
+        // 멈춘 노드의 줄은 바로 지운다.
+        b.broker.close();
+        await(() -> !a.broker.hasRemoteMembers(lobby));
+        assertThat(count("SELECT count(*) FROM chat_broker_listener WHERE node_id = '" + b.broker.nodeId() + "'")).isZero();
+    }
+
+    @Test
+    void dropsOnlyTheMessageThatPostgresRejects() throws Exception {
+        Node b = node(lobby);
+        await(() -> b.broker.subscribedRooms() == 1);
+
+        // 보내는 스레드가 돌기 전에 넣어서 셋이 한 묶음으로 나가게 한다.
+        // 방 이름이 길면 'T' 봉투도 NOTIFY 한도(8000바이트)를 넘는다. → 그 메시지만 실패
+        PostgresChatBroker a = broker();
+        a.publish(BrokerMessage.text(a.nodeId(), lobby, "before"));
+        a.publish(BrokerMessage.text(a.nodeId(), "x".repeat(9_000), "poison"));
+        a.publish(BrokerMessage.text(a.nodeId(), lobby, "after"));
+        a.start();
+
+        await(() -> b.received.size() == 2);
+        assertThat(b.received).extracting(BrokerMessage::text).containsExactly("before", "after");
+        await(() -> a.publishedCount() == 2);
+        assertThat(a.droppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void treatsOnlyDataAndConstraintErrorsAsRejections() {
+        assertThat(PostgresChatBroker.isDataError(new SQLException("payload string too long", "22023"))).isTrue();
+        assertThat(PostgresChatBroker.isDataError(new SQLException("duplicate key", "23505"))).isTrue();
+        assertThat(PostgresChatBroker.isDataError(new SQLException("connection refused", "08001"))).isFalse();
+        assertThat(PostgresChatBroker.isDataError(new SQLException("pool timeout"))).isFalse();
+    }
+
+    private Node node(String room) {
+        PostgresChatBroker broker = broker();
+        Node node = new Node(broker, room);
+        broker.start();
+        return node;
+    }
+
+    private PostgresChatBroker broker() {
+        ChatProperties.Broker settings = new ChatProperties.Broker();
+        settings.setInlineLimit(DataSize.ofBytes(200));
+        settings.setPollInterval(Duration.ofMillis(50));
+        PostgresChatBroker broker = new PostgresChatBroker(dataSource(), settings);
+        brokers.add(broker);
+        return broker;
+    }
+
+    private static PGSimpleDataSource dataSource() {
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setURL(POSTGRES.getJdbcUrl());
+        dataSource.setUser(POSTGRES.getUsername());
+        dataSource.setPassword(POSTGRES.getPassword());
+        return dataSource;
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Connection connection = dataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("timed out").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static final class Node implements ChatBroker.Receiver {
+
+        final PostgresChatBroker broker;
+        final Set<String> rooms = ConcurrentHashMap.newKeySet();
+        final List<BrokerMessage> received = new CopyOnWriteArrayList<>();
+
+        Node(PostgresChatBroker broker, String room) {
+            this.broker = broker;
+            broker.attach(this);
+            rooms.add(room);
+            broker.membershipChanged(room);
+        }
+
+        @Override
+        public boolean hosts(String room) {
+            return rooms.contains(room);
+        }
+
+        @Override
+        public void receive(BrokerMessage message) {
+            received.add(message);
+        }
+    }
+}
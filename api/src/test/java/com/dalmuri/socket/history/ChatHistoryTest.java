@@ -0,0 +1,65 @@
+package com.dalmuri.socket.history;
+
+import com.dalmuri.config.ChatProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatHistoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsHistoryIdAcrossRestarts() {
+        ChatHistory first = new ChatHistory(properties(ChatProperties.BrokerType.LOCAL));
+        String id = first.id();
+        first.destroy();
+
+        ChatHistory second = new ChatHistory(properties(ChatProperties.BrokerType.LOCAL));
+        assertThat(second.id()).isEqualTo(id);
+        second.destroy();
+    }
+
+    @Test
+    void rejectsOffsetsFromAnotherNodesHistory() {
+        ChatHistory history = new ChatHistory(properties(ChatProperties.BrokerType.POSTGRES));
+        try {
+            assertThat(history.canResume(null, 0)).isTrue();
+            assertThat(history.canResume(history.id(), 120)).isTrue();
+            assertThat(history.canResume("other-node", 120)).isFalse();
+            assertThat(history.canResume(null, 120)).isFalse();
+
+            List<TextMessage> sent = new ArrayList<>();
+            history.resume("lobby", 120, "other-node", sent::add);
+            assertThat(sent).singleElement().extracting(TextMessage::getPayload).asString()
+                    .contains("\"history mismatch\"").contains(history.id());
+        } finally {
+            history.destroy();
+        }
+    }
+
+    @Test
+    void singleNodeAcceptsLegacyResumeWithoutHistory() {
+        ChatHistory history = new ChatHistory(properties(ChatProperties.BrokerType.LOCAL));
+        try {
+            assertThat(history.canResume(null, 120)).isTrue();
+            assertThat(history.canResume("other-node", 120)).isFalse();
+        } finally {
+            history.destroy();
+        }
+    }
+
+    private ChatProperties properties(ChatProperties.BrokerType broker) {
+        ChatProperties properties = new ChatProperties();
+        properties.getHistory().setDir(dir.toString());
+        properties.getBroker().setType(broker);
+        return properties;
+    }
+}
@@ -0,0 +1,160 @@
+package com.dalmuri.socket.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int INDEX_INTERVAL = 128;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void assignsSequentialOffsetsAndReplaysAfterSince() throws IOException {
+        RoomLog log = RoomLog.open(dir, SEGMENT_SIZE, INDEX_INTERVAL);
+        for (int i = 1; i <= 100; i++) {
+            assertThat(log.append("{\"type\":\"message\",\"n\":" + i + "}")).isEqualTo(i);
+        }
+
+        List<LogEntry> entries = log.read(42, 10, Integer.MAX_VALUE);
+
+        assertThat(entries).extracting(LogEntry::offset).containsExactly(43L, 44L, 45L, 46L, 47L, 48L, 49L, 50L, 51L, 52L);
+        assertThat(entries.get(0).payload()).isEqualTo("{\"type\":\"message\",\"n\":43}");
+        assertThat(segmentCount()).isGreaterThan(1);
+    }
+
+    @Test
+    void recoversOffsetsAfterReopen() throws IOException {
+        RoomLog first = RoomLog.open(dir, SEGMENT_SIZE, INDEX_INTERVAL);
+        for (int i = 1; i <= 60; i++) {
+            first.append("message " + i);
+        }
+        first.closeIfIdle(Long.MAX_VALUE);
+
+        RoomLog reopened = RoomLog.open(dir, SEGMENT_SIZE, INDEX_INTERVAL);
+
+        assertThat(reopened.append("message 61")).isEqualTo(61);
+        assertThat(reopened.read(0, 1000, Integer.MAX_VALUE)).extracting(LogEntry::payload)
+                .startsWith("message 1", "message 2").endsWith("message 60", "message 61").hasSize(61);
+    }
+
+    @Test
+    void stopsReplayAtByteLimit() throws IOException {
+        RoomLog log = RoomLog.open(dir, SEGMENT_SIZE, INDEX_INTERVAL);
+        for (int i = 0; i < 10; i++) {
+            log.append("x".repeat(50));
+        }
+
+        assertThat(log.read(0, 1000, 120)).hasSize(2);
+    }
+
+    @Test
+    void retentionDropsOldSegmentsButKeepsActive() throws IOException {
+        RoomLog log = RoomLog.open(dir, SEGMENT_SIZE, INDEX_INTERVAL);
+        for (int i = 0; i < 200; i++) {
+            log.append("message " + i);
+        }
+        long segments = segmentCount();
+
+        // 모든 메시지가 기준 시각보다 먼저 쓰였다. (파일 mtime이 아니라 레코드의 timestamp로 판단)
+        log.applyRetention(Instant.now().plusSeconds(3600), Long.MAX_VALUE);
+
+        assertThat(segments).isGreaterThan(1);
+        assertThat(segmentCount()).isEqualTo(1);
+        List<LogEntry> remaining = log.read(0, 1000, Integer.MAX_VALUE);
+        assertThat(remaining).isNotEmpty();
+        assertThat(remaining.get(remaining.size() - 1).offset()).isEqualTo(200);
+        assertThat(log.append("after retention")).isEqualTo(201);
+    }
+
+    @Test
+    void retentionKeepsRecentSegmentsEvenIfFilesLookOld() throws IOException {
+        RoomLog log = RoomLog.open(dir, SEGMENT_SIZE, INDEX_INTERVAL);
+        for (int i = 0; i < 200; i++) {
+            log.append("message " + i);
+        }
+        long segments = segmentCount();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(3600)));
+            }
+        }
+
+        log.applyRetention(Instant.now().minusSeconds(60), Long.MAX_VALUE);
+
+        assertThat(segmentCount()).isEqualTo(segments);
+    }
+
+    @Test
+    void mapsLazilyAndTruncatesSealedSegments() throws IOException {
+        int largeSegment = 8 * 1024 * 1024;
+        RoomLog log = RoomLog.open(dir, largeSegment, INDEX_INTERVAL);
+        log.append("hello");
+        Path active = LogSegment.pathOf(dir, 1);
+
+        assertThat(Files.size(active)).isEqualTo(LogSegment.INITIAL_MAPPING);
+
+        log.closeIfIdle(Long.MAX_VALUE);
+        assertThat(Files.size(active)).isEqualTo(LogSegment.HEADER_LENGTH + "hello".length());
+
+        RoomLog reopened = RoomLog.open(dir, largeSegment, INDEX_INTERVAL);
+        assertThat(reopened.append("x".repeat(100 * 1024))).isEqualTo(2);
+        assertThat(reopened.read(0, 10, Integer.MAX_VALUE)).extracting(LogEntry::offset).containsExactly(1L, 2L);
+        assertThat(Files.size(active)).isGreaterThan(LogSegment.INITIAL_MAPPING).isLessThan(largeSegment);
+    }
+
+    @Test
+    void sizeRetentionCountsWrittenBytes() throws IOException {
+        RoomLog log = RoomLog.open(dir, SEGMENT_SIZE, INDEX_INTERVAL);
+        for (int i = 0; i < 200; i++) {
+            log.append("message " + i);
+        }
+        long written;
+        try (Stream<Path> files = Files.list(dir)) {
+            written = files.filter(file -> LogSegment.baseOffsetOf(file) > 0)
+                    .filter(file -> !file.equals(lastSegment()))
+                    .mapToLong(RoomLogTest::sizeOf).sum();
+        }
+        long segments = segmentCount();
+
+        // 다 쓴 segment는 잘려 있어서 SEGMENT_SIZE보다 작다. 쓴 바이트 합만큼은 남긴다.
+        log.applyRetention(Instant.EPOCH, written + SEGMENT_SIZE);
+
+        assertThat(written).isLessThan((segments - 1) * SEGMENT_SIZE);
+        assertThat(segmentCount()).isEqualTo(segments);
+    }
+
+    private Path lastSegment() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> LogSegment.baseOffsetOf(file) > 0).max(Path::compareTo).orElseThrow();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> LogSegment.baseOffsetOf(file) > 0).count();
+        }
+    }
+}
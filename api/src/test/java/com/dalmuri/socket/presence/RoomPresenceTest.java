@@ -0,0 +1,58 @@
+package com.dalmuri.socket.presence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomPresenceTest {
+
+    @Test
+    void coalescesChangesWithinATick() {
+        RoomPresence room = new RoomPresence();
+        room.enter("a");
+        room.enter("b");
+        room.drain(0);
+
+        room.exit("a");
+        room.enter("a");
+        room.exit("b");
+        room.enter("c");
+
+        RoomPresence.Delta delta = room.drain(0);
+        assertThat(delta.online()).containsExactly("c");
+        assertThat(delta.offline()).containsExactly("b");
+        assertThat(delta.typing()).isNull();
+        assertThat(room.drain(0)).isNull();
+    }
+
+    @Test
+    void reportsTypingOnceUntilItExpires() {
+        RoomPresence room = new RoomPresence();
+        room.enter("a");
+        room.drain(0);
+
+        room.typing("a", 1_000);
+        room.typing("a", 2_000);
+        room.typing("stranger", 2_000);
+
+        assertThat(room.drain(500).typing()).containsExactly("a");
+        assertThat(room.drain(1_500)).isNull();
+        assertThat(room.drain(2_000).typing()).isEmpty();
+    }
+
+    @Test
+    void keepsUserOnlineWhileAnotherSessionRemains() {
+        RoomPresence room = new RoomPresence();
+        room.enter("a");
+        room.enter("a");
+        room.drain(0);
+
+        room.exit("a");
+
+        assertThat(room.drain(0)).isNull();
+        assertThat(room.snapshot().online()).containsExactly("a");
+        room.exit("a");
+        assertThat(room.drain(0).offline()).containsExactly("a");
+        assertThat(room.isIdle()).isTrue();
+    }
+}